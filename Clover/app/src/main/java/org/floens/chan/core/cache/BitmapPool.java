@@ -0,0 +1,184 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.cache;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.util.SparseArray;
+import androidx.annotation.AnyThread;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Bitmaps that are not drawn anymore, to decode new bitmaps into with
+ * {@link android.graphics.BitmapFactory.Options#inBitmap} instead of allocating them.
+ * <p>
+ * The bitmaps are kept in buckets by their size in bytes, a bucket has the bitmaps from a power
+ * of two up to the next. A bitmap is only taken from the bucket of the needed size or the one
+ * after it, it is at most four times as large as needed. Before KitKat a bitmap can only be
+ * reused for one with the same dimensions and config. The pool keeps the bitmaps under the
+ * maximum size by dropping the ones that were put first.
+ * <p>
+ * A bitmap that is put in the pool must not be used anymore by whoever put it.
+ */
+@AnyThread
+public class BitmapPool {
+    private final long maxSize;
+
+    // Guarded by this.
+    private final SparseArray<ArrayDeque<Bitmap>> buckets = new SparseArray<>();
+    private final ArrayDeque<Bitmap> order = new ArrayDeque<>();
+    private long size;
+
+    // Metrics, guarded by this.
+    private long hits;
+    private long misses;
+    private long dropped;
+
+    public BitmapPool(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Take a bitmap that a bitmap of the size can be decoded into, or {@code null} if there is
+     * none. From KitKat on the bitmap may be larger and have another config, decoding into it
+     * changes them.
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        int needed = width * height * bytesPerPixel(config);
+        int bucket = bucketOf(needed);
+        for (int i = bucket; i <= bucket + 1; i++) {
+            ArrayDeque<Bitmap> bitmaps = buckets.get(i);
+            if (bitmaps == null) {
+                continue;
+            }
+
+            Iterator<Bitmap> iterator = bitmaps.iterator();
+            while (iterator.hasNext()) {
+                Bitmap bitmap = iterator.next();
+                if (fits(bitmap, width, height, config, needed)) {
+                    iterator.remove();
+                    order.remove(bitmap);
+                    size -= byteCount(bitmap);
+                    hits++;
+                    return bitmap;
+                }
+            }
+        }
+
+        misses++;
+        return null;
+    }
+
+    /**
+     * Take a bitmap with exactly the size and config, to draw into. It is erased.
+     *
+     * @return a bitmap from the pool, or a new one
+     */
+    public Bitmap getDirty(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = get(width, height, config);
+        if (bitmap == null) {
+            return Bitmap.createBitmap(width, height, config);
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT &&
+                (bitmap.getWidth() != width || bitmap.getHeight() != height || bitmap.getConfig() != config)) {
+            reconfigure(bitmap, width, height, config);
+        }
+        bitmap.eraseColor(0);
+        return bitmap;
+    }
+
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+
+        long bytes = byteCount(bitmap);
+        if (bytes > maxSize / 4) {
+            dropped++;
+            return;
+        }
+
+        int bucket = bucketOf(bytes);
+        ArrayDeque<Bitmap> bitmaps = buckets.get(bucket);
+        if (bitmaps == null) {
+            bitmaps = new ArrayDeque<>();
+            buckets.put(bucket, bitmaps);
+        }
+        bitmaps.addLast(bitmap);
+        order.addLast(bitmap);
+        size += bytes;
+
+        while (size > maxSize) {
+            Bitmap oldest = order.removeFirst();
+            buckets.get(bucketOf(byteCount(oldest))).remove(oldest);
+            size -= byteCount(oldest);
+            dropped++;
+        }
+    }
+
+    public synchronized void clear() {
+        buckets.clear();
+        order.clear();
+        size = 0;
+    }
+
+    public synchronized String getSummary() {
+        return "Pooled: " + order.size() + " bitmaps, " + (size / 1024) + "/" + (maxSize / 1024) + "KB" +
+                ", hits " + hits + ", misses " + misses + ", dropped " + dropped + "\n";
+    }
+
+    private static boolean fits(Bitmap bitmap, int width, int height, Bitmap.Config config, int needed) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount() >= needed;
+        } else {
+            return bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config;
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static void reconfigure(Bitmap bitmap, int width, int height, Bitmap.Config config) {
+        bitmap.reconfigure(width, height, config);
+    }
+
+    private static long byteCount(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        } else {
+            return bitmap.getByteCount();
+        }
+    }
+
+    // The power of two at or below the size.
+    private static int bucketOf(long bytes) {
+        return 63 - Long.numberOfLeadingZeros(Math.max(bytes, 1));
+    }
+
+    private static int bytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        } else if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        } else {
+            return 4;
+        }
+    }
+}
@@ -20,59 +20,220 @@ package org.floens.chan.core.cache;
 import androidx.annotation.AnyThread;
 import androidx.annotation.MainThread;
 import androidx.annotation.WorkerThread;
-import android.util.Pair;
 
 import org.floens.chan.utils.Logger;
+import org.floens.chan.utils.Time;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * The files of the {@link FileCache}, named by the SHA-256 of their url.
+ * <p>
+ * Which files there are is kept in memory, looking a file up doesn't touch the disk. The
+ * {@link CacheJournal} keeps that index over restarts, all disk access for it happens on one
+ * thread. Files are written to a temporary file and renamed when complete, a file with its final
+ * name is always complete. A download that stopped leaves its temporary file as a partial entry,
+ * that a later download continues.
+ */
 public class CacheHandler {
     private static final String TAG = "CacheHandler";
-    private static final int TRIM_TRIES = 20;
+    private static final boolean LOG_TIMING = false;
+    // Trimming starts above the maximum size, and removes files until this percentage of it.
+    private static final int TRIM_LOW_WATER_PERCENT = 90;
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
 
-    private final ExecutorService pool = Executors.newFixedThreadPool(1);
+    private final ExecutorService pool = Executors.newSingleThreadExecutor();
 
     private final File directory;
     private final long maxSize;
 
-    /**
-     * An estimation of the current size of the directory. Used to check if trim must be run
-     * because the folder exceeds the maximum size.
-     */
-    private AtomicLong size = new AtomicLong();
+    // The files in the cache by name, least recently used first. Guarded by itself.
+    private final LinkedHashMap<String, CacheJournal.Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Names of the files being written, and the total length of the entries. Guarded by entries.
+    private final Set<String> writing = new HashSet<>();
+    private long size;
+    // Names of the files that must not be trimmed to their count of users. Guarded by entries.
+    private final Map<String, Integer> readers = new HashMap<>();
+    // Files used since the journal was last written to, in the order they were used. Guarded by
+    // entries.
+    private final LinkedHashMap<String, Long> pendingReads = new LinkedHashMap<>();
+    // Set when the journal was read, until then lookups check the disk.
+    private volatile boolean loaded;
+
     private AtomicBoolean trimRunning = new AtomicBoolean(false);
 
+    // Only used on the pool.
+    private CacheJournal journal;
+
     public CacheHandler(File directory, long maxSize) {
         this.directory = directory;
         this.maxSize = maxSize;
 
-        createDirectories();
-        backgroundRecalculateSize();
+        pool.execute(this::load);
     }
 
     @MainThread
     public boolean exists(String key) {
-        return get(key).exists();
+        String name = hash(key);
+        if (!loaded) {
+            return new File(directory, name).exists();
+        }
+        synchronized (entries) {
+            CacheJournal.Entry entry = entries.get(name);
+            return entry != null && !entry.isPartial();
+        }
+    }
+
+    /**
+     * Get the partial file that an earlier download of the file left in its temporary file.
+     *
+     * @return the partial file, or {@code null} if there is none
+     */
+    @MainThread
+    CacheJournal.Entry getPartial(File file) {
+        synchronized (entries) {
+            CacheJournal.Entry entry = entries.get(file.getName());
+            return entry != null && entry.isPartial() ? entry : null;
+        }
     }
 
+    /**
+     * Get the file for the key, it may not exist. Marks the file as used when it exists.
+     */
     @MainThread
     public File get(String key) {
-        createDirectories();
+        String name = hash(key);
+        boolean flush = false;
+        synchronized (entries) {
+            CacheJournal.Entry entry = entries.get(name);
+            if (entry != null) {
+                entry.lastAccess = Time.get();
+                pendingReads.remove(name);
+                pendingReads.put(name, entry.lastAccess);
+                flush = pendingReads.size() == 1;
+            }
+        }
+
+        // The reads that happen before the pool gets to it are written together.
+        if (flush) {
+            pool.execute(this::flushReads);
+        }
+
+        return new File(directory, name);
+    }
+
+    /**
+     * The file to write to before the file is complete and renamed to its name.
+     */
+    @AnyThread
+    static File getTemporaryFile(File file) {
+        return new File(file.getParentFile(), file.getName() + TEMPORARY_EXTENSION);
+    }
+
+    /**
+     * Keep the file from being trimmed until it is released, while it is used.
+     */
+    @MainThread
+    protected void retain(File file) {
+        String name = file.getName();
+        synchronized (entries) {
+            Integer count = readers.get(name);
+            readers.put(name, count == null ? 1 : count + 1);
+        }
+    }
+
+    @MainThread
+    protected void release(File file) {
+        String name = file.getName();
+        synchronized (entries) {
+            Integer count = readers.get(name);
+            if (count == null) {
+                throw new IllegalStateException("Released a file that was not retained");
+            } else if (count == 1) {
+                readers.remove(name);
+            } else {
+                readers.put(name, count - 1);
+            }
+        }
+    }
 
-        return new File(directory, hash(key));
+    /**
+     * Mark the file as being written, until {@link #fileWasAdded(File, long)},
+     * {@link #fileWasPartiallyAdded(File, long, String)} or {@link #fileWasNotAdded(File)}. Call
+     * before writing to its temporary file.
+     */
+    @MainThread
+    protected void fileWillBeAdded(File file) {
+        String name = file.getName();
+        synchronized (entries) {
+            writing.add(name);
+        }
+        pool.execute(() -> journal(() -> journal.dirty(name)));
     }
 
+    /**
+     * The file was renamed from its temporary file and is complete.
+     */
     @MainThread
-    protected void fileWasAdded(File file) {
-        long adjustedSize = size.addAndGet(file.length());
+    protected void fileWasAdded(File file, long length) {
+        String name = file.getName();
+        long time = Time.get();
+        long adjustedSize;
+        synchronized (entries) {
+            writing.remove(name);
+            CacheJournal.Entry previous = entries.put(name, new CacheJournal.Entry(name, length, time, null));
+            size += length - (previous != null ? previous.length : 0);
+            adjustedSize = size;
+        }
+        pool.execute(() -> journal(() -> journal.clean(name, length, time)));
+
+        trimIfNeeded(adjustedSize);
+    }
 
+    /**
+     * Writing the file stopped, the temporary file has the first part of it. It stays in the
+     * cache to be continued, until it is trimmed.
+     *
+     * @param length    bytes in the temporary file
+     * @param validator to continue the file with, see {@link ResumableDownload}
+     */
+    @MainThread
+    protected void fileWasPartiallyAdded(File file, long length, String validator) {
+        String name = file.getName();
+        long time = Time.get();
+        long adjustedSize;
+        synchronized (entries) {
+            if (!writing.remove(name)) {
+                return;
+            }
+            CacheJournal.Entry previous = entries.put(name, new CacheJournal.Entry(name, length, time, validator));
+            size += length - (previous != null ? previous.length : 0);
+            adjustedSize = size;
+        }
+        pool.execute(() -> journal(() -> journal.partial(name, length, time, validator)));
+
+        trimIfNeeded(adjustedSize);
+    }
+
+    @MainThread
+    private void trimIfNeeded(long adjustedSize) {
         if (adjustedSize > maxSize && trimRunning.compareAndSet(false, true)) {
             pool.submit(() -> {
                 try {
@@ -86,90 +247,261 @@ public class CacheHandler {
         }
     }
 
+    /**
+     * Writing the file failed or was cancelled, remove what was written, also a partial file
+     * that was continued. Does nothing if the file was added.
+     */
+    @MainThread
+    protected void fileWasNotAdded(File file) {
+        String name = file.getName();
+        synchronized (entries) {
+            if (!writing.remove(name)) {
+                return;
+            }
+            CacheJournal.Entry partial = entries.get(name);
+            if (partial != null && partial.isPartial()) {
+                entries.remove(name);
+                size -= partial.length;
+            }
+        }
+        pool.execute(() -> {
+            delete(getTemporaryFile(file));
+            journal(() -> journal.remove(name));
+        });
+    }
+
     @MainThread
     public void clearCache() {
         Logger.d(TAG, "Clearing cache");
 
-        if (directory.exists() && directory.isDirectory()) {
-            for (File file : directory.listFiles()) {
-                if (!file.delete()) {
-                    Logger.d(TAG, "Could not delete cache file while clearing cache " +
-                            file.getName());
+        List<CacheJournal.Entry> removed;
+        synchronized (entries) {
+            removed = new ArrayList<>(entries.values());
+            entries.clear();
+            size = 0;
+        }
+
+        pool.execute(() -> {
+            for (CacheJournal.Entry entry : removed) {
+                delete(fileOf(entry));
+            }
+            rebuildJournal();
+        });
+    }
+
+    @WorkerThread
+    private void load() {
+        long start = Time.startTiming();
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            Logger.e(TAG, "Unable to create file cache dir " + directory.getAbsolutePath());
+        }
+
+        journal = new CacheJournal(directory);
+        LinkedHashMap<String, CacheJournal.Entry> read = new LinkedHashMap<>(16, 0.75f, true);
+        Set<String> unfinished = new HashSet<>();
+        boolean valid;
+        try {
+            valid = journal.read(read, unfinished);
+        } catch (IOException e) {
+            Logger.e(TAG, "Error reading the cache journal", e);
+            valid = false;
+        }
+
+        if (!valid) {
+            // No journal to say which files are complete, the files from before it existed have
+            // other names. Start empty, this is the only time the directory is listed.
+            Logger.i(TAG, "No cache journal, clearing the cache directory");
+            read.clear();
+            unfinished.clear();
+            Set<String> keep = new HashSet<>();
+            synchronized (entries) {
+                keep.addAll(entries.keySet());
+                for (String name : writing) {
+                    keep.add(getTemporaryFile(new File(directory, name)).getName());
+                }
+            }
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (!keep.contains(file.getName())) {
+                        delete(file);
+                    }
                 }
             }
         }
 
-        recalculateSize();
-    }
+        synchronized (entries) {
+            // Files added before the journal was read are the most recently used.
+            LinkedHashMap<String, CacheJournal.Entry> added = new LinkedHashMap<>(entries);
+            entries.clear();
+            entries.putAll(read);
+            entries.putAll(added);
+            size = 0;
+            for (CacheJournal.Entry entry : entries.values()) {
+                size += entry.length;
+            }
 
-    @MainThread
-    public void createDirectories() {
-        if (!directory.exists()) {
-            if (!directory.mkdirs()) {
-                Logger.e(TAG, "Unable to create file cache dir " +
-                        directory.getAbsolutePath());
+            unfinished.removeAll(writing);
+            // A partial file that was being continued may have more in it than it says.
+            for (String name : unfinished) {
+                CacheJournal.Entry partial = entries.get(name);
+                if (partial != null && partial.isPartial()) {
+                    entries.remove(name);
+                    size -= partial.length;
+                }
             }
         }
-    }
 
-    @MainThread
-    private void backgroundRecalculateSize() {
-        pool.submit(this::recalculateSize);
-    }
+        for (String name : unfinished) {
+            delete(getTemporaryFile(new File(directory, name)));
+        }
 
-    @AnyThread
-    private void recalculateSize() {
-        long calculatedSize = 0;
+        int count;
+        synchronized (entries) {
+            count = entries.size();
+        }
+        if (!valid || !unfinished.isEmpty() || journal.needsRebuild(count)) {
+            rebuildJournal();
+        }
 
-        File[] files = directory.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                calculatedSize += file.length();
-            }
+        loaded = true;
+
+        boolean over;
+        synchronized (entries) {
+            over = size > maxSize;
+        }
+        if (over) {
+            trim();
         }
 
-        size.set(calculatedSize);
+        if (LOG_TIMING) {
+            Time.endTiming("Load cache journal with " + count + " files", start);
+        }
     }
 
+    /**
+     * Remove the least recently used files until the cache is below the low water mark. Files
+     * that are retained are skipped, they keep their place.
+     */
     @WorkerThread
     private void trim() {
-        File[] directoryFiles = directory.listFiles();
-
-        // Don't try to trim empty directories or just one file in it.
-        if (directoryFiles == null || directoryFiles.length <= 1) {
-            return;
+        long start = Time.startTiming();
+
+        List<CacheJournal.Entry> removed = new ArrayList<>();
+        long trimmedSize;
+        synchronized (entries) {
+            long lowWater = maxSize / 100 * TRIM_LOW_WATER_PERCENT;
+            Iterator<CacheJournal.Entry> iterator = entries.values().iterator();
+            while (size > lowWater && iterator.hasNext()) {
+                CacheJournal.Entry entry = iterator.next();
+                if (!readers.containsKey(entry.name)) {
+                    iterator.remove();
+                    size -= entry.length;
+                    removed.add(entry);
+                }
+            }
+            trimmedSize = size;
         }
 
-        // Get all files with their last modified times.
-        List<Pair<File, Long>> files = new ArrayList<>(directoryFiles.length);
-        for (File file : directoryFiles) {
-            files.add(new Pair<>(file, file.lastModified()));
+        List<String> names = new ArrayList<>(removed.size());
+        for (CacheJournal.Entry entry : removed) {
+            names.add(entry.name);
+            synchronized (entries) {
+                // Downloaded again since it was removed, the new file replaces it.
+                if (writing.contains(entry.name) || entries.containsKey(entry.name)) {
+                    continue;
+                }
+            }
+            delete(fileOf(entry));
         }
+        journal(() -> journal.remove(names));
 
-        // Sort by oldest first.
-        Collections.sort(files, (o1, o2) -> Long.signum(o1.second - o2.second));
+        if (LOG_TIMING) {
+            Time.endTiming("Trim " + removed.size() + " files to " + trimmedSize + " bytes", start);
+        }
+    }
 
-        // Trim as long as the directory size exceeds the threshold and we haven't reached
-        // the trim limit.
-        long workingSize = size.get();
-        for (int i = 0; workingSize >= maxSize && i < Math.min(files.size(), TRIM_TRIES); i++) {
-            File file = files.get(i).first;
+    @WorkerThread
+    private void flushReads() {
+        Map<String, Long> reads;
+        synchronized (entries) {
+            reads = new LinkedHashMap<>(pendingReads);
+            pendingReads.clear();
+        }
+        journal(() -> journal.read(reads));
+    }
 
-            Logger.d(TAG, "Delete for trim " + file.getAbsolutePath());
-            workingSize -= file.length();
+    @WorkerThread
+    private void journal(JournalWrite write) {
+        try {
+            write.write();
+        } catch (IOException e) {
+            Logger.e(TAG, "Error writing the cache journal", e);
+            rebuildJournal();
+            return;
+        }
 
-            boolean deleteResult = file.delete();
+        int count;
+        synchronized (entries) {
+            count = entries.size();
+        }
+        if (journal.needsRebuild(count)) {
+            rebuildJournal();
+        }
+    }
 
-            if (!deleteResult) {
-                Logger.e(TAG, "Failed to delete cache file for trim");
+    @WorkerThread
+    private void rebuildJournal() {
+        List<CacheJournal.Entry> current;
+        List<String> currentWriting;
+        synchronized (entries) {
+            current = new ArrayList<>(entries.size());
+            for (CacheJournal.Entry entry : entries.values()) {
+                current.add(new CacheJournal.Entry(entry.name, entry.length, entry.lastAccess, entry.validator));
             }
+            currentWriting = new ArrayList<>(writing);
         }
 
-        recalculateSize();
+        try {
+            journal.rebuild(current, currentWriting);
+        } catch (IOException e) {
+            Logger.e(TAG, "Error rebuilding the cache journal", e);
+        }
+    }
+
+    @AnyThread
+    private File fileOf(CacheJournal.Entry entry) {
+        File file = new File(directory, entry.name);
+        return entry.isPartial() ? getTemporaryFile(file) : file;
+    }
+
+    @WorkerThread
+    private void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            Logger.e(TAG, "Could not delete cache file " + file.getName());
+        }
     }
 
     @AnyThread
     private String hash(String key) {
-        return String.valueOf(key.hashCode());
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+
+        byte[] bytes = digest.digest(key.getBytes(UTF_8));
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    private interface JournalWrite {
+        void write() throws IOException;
     }
 }
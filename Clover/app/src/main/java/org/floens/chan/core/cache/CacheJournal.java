@@ -0,0 +1,350 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.cache;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The journal of the file cache, a log of the files that were added, read and removed, in the
+ * way of DiskLruCache. Replaying it gives the files in the cache with their sizes in access
+ * order, without looking at the directory.
+ * <p>After a header, each line is one of:
+ * <pre>
+ * DIRTY name                 a file is being written
+ * CLEAN name length time     the file was written, or kept on a rebuild
+ * PARTIAL name length time validator
+ *                            the write stopped, the temporary file can be continued
+ * READ name time             the file was used
+ * REMOVE name                the file was deleted, or the write failed
+ * </pre>
+ * A file only gets its name by a rename after it was written, a DIRTY without a following CLEAN,
+ * PARTIAL or REMOVE is from a write that was interrupted. The validator is url encoded.
+ * <p>Not thread safe, the cache uses it on one thread.
+ */
+class CacheJournal {
+    static final String JOURNAL = "journal";
+    static final String JOURNAL_TEMP = "journal.tmp";
+    static final String JOURNAL_BACKUP = "journal.bkp";
+
+    private static final String MAGIC = "clover.cache.journal";
+    private static final String VERSION = "1";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String CLEAN = "CLEAN";
+    private static final String DIRTY = "DIRTY";
+    private static final String PARTIAL = "PARTIAL";
+    private static final String REMOVE = "REMOVE";
+    private static final String READ = "READ";
+
+    private static final int REBUILD_OPS = 2000;
+
+    private final File file;
+    private final File tempFile;
+    private final File backupFile;
+
+    private Writer writer;
+    // Lines that the journal would not need if it were rebuilt.
+    private int redundantOps;
+    // Set when the end of the journal was broken, appending to it would break the next line.
+    private boolean broken;
+
+    CacheJournal(File directory) {
+        file = new File(directory, JOURNAL);
+        tempFile = new File(directory, JOURNAL_TEMP);
+        backupFile = new File(directory, JOURNAL_BACKUP);
+    }
+
+    static boolean isJournalFile(String name) {
+        return name.equals(JOURNAL) || name.equals(JOURNAL_TEMP) || name.equals(JOURNAL_BACKUP);
+    }
+
+    /**
+     * Replay the journal. A line that can't be read, the end of a journal that was cut off, ends
+     * the replay.
+     *
+     * @param entries    gets the files in the cache, least recently used first
+     * @param unfinished gets the names of the files that were not finished writing
+     * @return {@code false} if there was no journal or it had no valid header
+     */
+    boolean read(LinkedHashMap<String, Entry> entries, Set<String> unfinished) throws IOException {
+        if (backupFile.exists()) {
+            // Interrupted while rebuilding, either one of them is complete.
+            if (file.exists()) {
+                delete(backupFile);
+            } else if (!backupFile.renameTo(file)) {
+                throw new IOException("Could not restore the journal backup");
+            }
+        }
+
+        if (!file.exists()) {
+            return false;
+        }
+
+        int lines = 0;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
+        try {
+            if (!MAGIC.equals(reader.readLine()) || !VERSION.equals(reader.readLine()) ||
+                    !"".equals(reader.readLine())) {
+                return false;
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null && readLine(line, entries, unfinished)) {
+                lines++;
+            }
+            broken = line != null || !endsWithNewline();
+        } finally {
+            reader.close();
+        }
+
+        redundantOps = lines - entries.size();
+        return true;
+    }
+
+    private boolean readLine(String line, LinkedHashMap<String, Entry> entries, Set<String> unfinished) {
+        String[] parts = line.split(" ");
+        if (parts.length < 2 || parts[1].isEmpty()) {
+            return false;
+        }
+        String name = parts[1];
+
+        try {
+            switch (parts[0]) {
+                case DIRTY:
+                    if (parts.length != 2) {
+                        return false;
+                    }
+                    unfinished.add(name);
+                    return true;
+                case CLEAN:
+                    if (parts.length != 4) {
+                        return false;
+                    }
+                    entries.remove(name);
+                    entries.put(name, new Entry(name, Long.parseLong(parts[2]), Long.parseLong(parts[3]), null));
+                    unfinished.remove(name);
+                    return true;
+                case PARTIAL:
+                    if (parts.length != 5) {
+                        return false;
+                    }
+                    entries.remove(name);
+                    entries.put(name, new Entry(name, Long.parseLong(parts[2]), Long.parseLong(parts[3]),
+                            URLDecoder.decode(parts[4], "UTF-8")));
+                    unfinished.remove(name);
+                    return true;
+                case REMOVE:
+                    if (parts.length != 2) {
+                        return false;
+                    }
+                    entries.remove(name);
+                    unfinished.remove(name);
+                    return true;
+                case READ:
+                    if (parts.length != 3) {
+                        return false;
+                    }
+                    Entry entry = entries.remove(name);
+                    if (entry != null) {
+                        entry.lastAccess = Long.parseLong(parts[2]);
+                        entries.put(name, entry);
+                    }
+                    return true;
+                default:
+                    return false;
+            }
+        } catch (IllegalArgumentException | UnsupportedEncodingException e) {
+            return false;
+        }
+    }
+
+    void dirty(String name) throws IOException {
+        append(DIRTY + " " + name);
+    }
+
+    void clean(String name, long length, long time) throws IOException {
+        append(CLEAN + " " + name + " " + length + " " + time);
+    }
+
+    void partial(String name, long length, long time, String validator) throws IOException {
+        append(partialLine(name, length, time, validator));
+    }
+
+    void remove(String name) throws IOException {
+        append(REMOVE + " " + name);
+    }
+
+    /**
+     * Mark files as used, with one write to the disk.
+     *
+     * @param reads names of the files to the time they were used, in the order they were used
+     */
+    void read(Map<String, Long> reads) throws IOException {
+        for (Map.Entry<String, Long> read : reads.entrySet()) {
+            write(READ + " " + read.getKey() + " " + read.getValue());
+        }
+        flush();
+    }
+
+    /**
+     * Mark files as deleted, with one write to the disk.
+     */
+    void remove(Collection<String> names) throws IOException {
+        for (String name : names) {
+            write(REMOVE + " " + name);
+        }
+        flush();
+    }
+
+    boolean needsRebuild(int entryCount) {
+        return broken || (redundantOps >= REBUILD_OPS && redundantOps >= entryCount);
+    }
+
+    /**
+     * Replace the journal by one with only the given state. The old journal stays until the new
+     * one is complete.
+     *
+     * @param entries files in the cache, least recently used first
+     * @param writing names of the files being written, a partial file that is being continued is
+     *                in both
+     */
+    void rebuild(Collection<Entry> entries, Collection<String> writing) throws IOException {
+        close();
+
+        Writer temp = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), UTF_8));
+        try {
+            temp.write(MAGIC + "\n" + VERSION + "\n\n");
+            for (Entry entry : entries) {
+                if (entry.isPartial()) {
+                    temp.write(partialLine(entry.name, entry.length, entry.lastAccess, entry.validator));
+                } else {
+                    temp.write(CLEAN + " " + entry.name + " " + entry.length + " " + entry.lastAccess);
+                }
+                temp.write('\n');
+            }
+            // After the entries, a partial file that is being continued is unfinished.
+            for (String name : writing) {
+                temp.write(DIRTY + " " + name + "\n");
+            }
+        } finally {
+            temp.close();
+        }
+
+        if (file.exists() && !file.renameTo(backupFile)) {
+            throw new IOException("Could not back up the journal");
+        }
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("Could not replace the journal");
+        }
+        delete(backupFile);
+
+        redundantOps = 0;
+        broken = false;
+    }
+
+    void close() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException ignored) {
+            }
+            writer = null;
+        }
+    }
+
+    private void append(String line) throws IOException {
+        write(line);
+        flush();
+    }
+
+    private void write(String line) throws IOException {
+        if (writer == null) {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), UTF_8));
+        }
+        writer.write(line);
+        writer.write('\n');
+        redundantOps++;
+    }
+
+    // After every change, so that a crash loses at most the lines being written.
+    private void flush() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    private boolean endsWithNewline() throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            long length = in.length();
+            if (length == 0) {
+                return false;
+            }
+            in.seek(length - 1);
+            return in.read() == '\n';
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String partialLine(String name, long length, long time, String validator)
+            throws UnsupportedEncodingException {
+        return PARTIAL + " " + name + " " + length + " " + time + " " + URLEncoder.encode(validator, "UTF-8");
+    }
+
+    private static void delete(File file) {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    static class Entry {
+        final String name;
+        final long length;
+        long lastAccess;
+        // The validator of a partial file, see ResumableDownload. Null when the file is complete.
+        final String validator;
+
+        Entry(String name, long length, long lastAccess, String validator) {
+            this.name = name;
+            this.length = length;
+            this.lastAccess = lastAccess;
+            this.validator = validator;
+        }
+
+        boolean isPartial() {
+            return validator != null;
+        }
+    }
+}
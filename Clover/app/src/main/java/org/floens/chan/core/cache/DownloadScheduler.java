@@ -0,0 +1,395 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.cache;
+
+import androidx.annotation.AnyThread;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the downloads of the {@link FileCache} by {@link Priority}, with a limit on the downloads
+ * that run at the same time, in total and per host. Downloads with the same priority start in
+ * the order they were submitted.
+ * <p>
+ * A download that can't start because of the limits pauses a running download with a lower
+ * priority, that download continues when there is room again. Pausing is cooperative, a running
+ * download calls {@link Job#awaitResume()} between the parts it reads. The limits are on the
+ * downloads that are running, a paused download keeps its thread while it waits. It should close
+ * its response when it can be continued later, see {@link Job#isPaused()}.
+ * <p>
+ * A download that makes more requests at the same time takes a slot for each of them with
+ * {@link Job#acquireSlots(int)}. A paused download keeps those, its requests wait with it.
+ */
+@AnyThread
+public class DownloadScheduler {
+    public enum Priority {
+        /** Shown to the user now. */
+        VISIBLE,
+        /** Probably shown soon. */
+        PRELOAD,
+        /** Saved to the disk by the user. */
+        SAVE,
+        /** An update of the app. */
+        UPDATE
+    }
+
+    private enum State {
+        QUEUED,
+        RUNNING,
+        PAUSED,
+        // Cancelled before it ran, or while it was paused. It runs to finish, without a slot.
+        DRAINING,
+        DONE
+    }
+
+    private final int maxRunning;
+    private final int maxRunningPerHost;
+    private final ExecutorService executor = Executors.newCachedThreadPool(new DownloadThreadFactory());
+
+    // Guarded by this. Waiting jobs, queued or paused, in the order they start in.
+    private final List<Job> waiting = new ArrayList<>();
+    private final List<Job> running = new ArrayList<>();
+    private long sequence;
+
+    // Metrics, per priority. Guarded by this.
+    private final int[] maxWaiting = new int[Priority.values().length];
+    private final long[] completed = new long[Priority.values().length];
+    private final long[] cancelled = new long[Priority.values().length];
+    private final long[] paused = new long[Priority.values().length];
+    private final long[] waitNanos = new long[Priority.values().length];
+
+    public DownloadScheduler(int maxRunning, int maxRunningPerHost) {
+        this.maxRunning = maxRunning;
+        this.maxRunningPerHost = maxRunningPerHost;
+    }
+
+    /**
+     * Queue a download.
+     *
+     * @param host     the host it downloads from, for the limit per host
+     * @param priority the priority, it can be changed later with {@link Job#setPriority(Priority)}
+     * @param runnable the download
+     */
+    public Job submit(String host, Priority priority, Runnable runnable) {
+        Job job = new Job(host, priority, runnable);
+        synchronized (this) {
+            job.order = sequence++;
+            job.queuedAt = System.nanoTime();
+            insert(job);
+            dispatch();
+        }
+        return job;
+    }
+
+    /**
+     * @return the number of downloads with the priority waiting to start or continue.
+     */
+    public synchronized int getQueueDepth(Priority priority) {
+        int depth = 0;
+        for (int i = 0; i < waiting.size(); i++) {
+            if (waiting.get(i).priority == priority) {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    public synchronized int getRunningCount() {
+        return running.size();
+    }
+
+    public synchronized String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        summary.append("Max running: ").append(maxRunning)
+                .append(", per host: ").append(maxRunningPerHost)
+                .append(", running: ").append(running.size()).append("\n");
+        for (Priority priority : Priority.values()) {
+            int i = priority.ordinal();
+            summary.append(priority.name().toLowerCase())
+                    .append(": waiting ").append(getQueueDepth(priority))
+                    .append(" (max ").append(maxWaiting[i]).append(")")
+                    .append(", done ").append(completed[i])
+                    .append(", cancelled ").append(cancelled[i])
+                    .append(", paused ").append(paused[i])
+                    .append(", avg wait ")
+                    .append(completed[i] == 0 ? 0 : waitNanos[i] / completed[i] / 1_000_000L).append("ms\n");
+        }
+        return summary.toString();
+    }
+
+    private void insert(Job job) {
+        int index = waiting.size();
+        while (index > 0 && job.compareTo(waiting.get(index - 1)) < 0) {
+            index--;
+        }
+        waiting.add(index, job);
+
+        int i = job.priority.ordinal();
+        int depth = getQueueDepth(job.priority);
+        if (depth > maxWaiting[i]) {
+            maxWaiting[i] = depth;
+        }
+    }
+
+    // Start or continue the waiting jobs that fit, pausing running jobs for them when needed.
+    private void dispatch() {
+        for (int i = 0; i < waiting.size(); ) {
+            Job job = waiting.get(i);
+            boolean fits = usedSlots(null) < maxRunning && usedSlots(job.host) < maxRunningPerHost;
+            if (!fits) {
+                Job victim = findVictim(job);
+                if (victim != null) {
+                    pause(victim);
+                    fits = true;
+                }
+            }
+
+            if (fits) {
+                // Pausing inserted the victim after the job.
+                waiting.remove(job);
+                start(job);
+            } else {
+                i++;
+            }
+        }
+    }
+
+    // The running job to pause for the job, the one with the lowest priority that started last.
+    private Job findVictim(Job job) {
+        boolean hostFull = usedSlots(job.host) >= maxRunningPerHost;
+        Job victim = null;
+        for (int i = 0; i < running.size(); i++) {
+            Job candidate = running.get(i);
+            if (candidate.priority.compareTo(job.priority) > 0 &&
+                    (!hostFull || candidate.host.equals(job.host)) &&
+                    (victim == null || candidate.compareTo(victim) > 0)) {
+                victim = candidate;
+            }
+        }
+        return victim;
+    }
+
+    private void pause(Job job) {
+        running.remove(job);
+        job.state = State.PAUSED;
+        paused[job.priority.ordinal()]++;
+        insert(job);
+    }
+
+    private void start(Job job) {
+        running.add(job);
+        if (job.state == State.QUEUED) {
+            job.state = State.RUNNING;
+            waitNanos[job.priority.ordinal()] += System.nanoTime() - job.queuedAt;
+            executor.execute(job.task);
+        } else {
+            job.state = State.RUNNING;
+            notifyAll();
+        }
+    }
+
+    // The slots taken by the running jobs and the extra slots of the paused ones, of the host or
+    // of all hosts if it is null.
+    private int usedSlots(String host) {
+        int count = 0;
+        for (int i = 0; i < running.size(); i++) {
+            Job job = running.get(i);
+            if (host == null || job.host.equals(host)) {
+                count += 1 + job.extraSlots;
+            }
+        }
+        for (int i = 0; i < waiting.size(); i++) {
+            Job job = waiting.get(i);
+            if (host == null || job.host.equals(host)) {
+                count += job.extraSlots;
+            }
+        }
+        return count;
+    }
+
+    private synchronized void finished(Job job) {
+        if (job.isCancelled) {
+            cancelled[job.priority.ordinal()]++;
+        } else {
+            completed[job.priority.ordinal()]++;
+        }
+        running.remove(job);
+        waiting.remove(job);
+        job.state = State.DONE;
+        job.extraSlots = 0;
+        dispatch();
+    }
+
+    /**
+     * A download submitted to the scheduler.
+     */
+    public class Job implements Comparable<Job> {
+        private final String host;
+        private final FutureTask<Void> task;
+
+        // Guarded by the scheduler.
+        private Priority priority;
+        private long order;
+        private long queuedAt;
+        private State state = State.QUEUED;
+        private boolean isCancelled;
+        private int extraSlots;
+
+        private Job(String host, Priority priority, Runnable runnable) {
+            this.host = host;
+            this.priority = priority;
+            // Finished before the future is done, for who waits on it.
+            task = new FutureTask<>(() -> {
+                try {
+                    runnable.run();
+                } finally {
+                    finished(this);
+                }
+            }, null);
+        }
+
+        /**
+         * Done when the download finished running.
+         */
+        public Future<?> getFuture() {
+            return task;
+        }
+
+        public Priority getPriority() {
+            synchronized (DownloadScheduler.this) {
+                return priority;
+            }
+        }
+
+        /**
+         * Change the priority, for example when a preloaded file is shown. A job with a higher
+         * priority may start now, and a running job with a lower one can be paused.
+         */
+        public void setPriority(Priority priority) {
+            synchronized (DownloadScheduler.this) {
+                if (this.priority == priority || state == State.DONE) {
+                    return;
+                }
+                this.priority = priority;
+                if (waiting.remove(this)) {
+                    insert(this);
+                }
+                dispatch();
+            }
+        }
+
+        /**
+         * Stop waiting. A job that did not start yet still runs, so that it can finish and its
+         * future is done, but it doesn't wait for room. The download itself must stop.
+         */
+        public void cancel() {
+            synchronized (DownloadScheduler.this) {
+                if (isCancelled || state == State.DONE) {
+                    return;
+                }
+                isCancelled = true;
+                if (state == State.QUEUED) {
+                    waiting.remove(this);
+                    state = State.DRAINING;
+                    executor.execute(task);
+                } else if (state == State.PAUSED) {
+                    waiting.remove(this);
+                    state = State.DRAINING;
+                    DownloadScheduler.this.notifyAll();
+                }
+            }
+        }
+
+        /**
+         * @return {@code true} if the download is paused for a download with a higher priority.
+         * A download that can be continued with a range request stops reading then, and closes
+         * its response before it calls {@link #awaitResume()}.
+         */
+        public boolean isPaused() {
+            synchronized (DownloadScheduler.this) {
+                return state == State.PAUSED;
+            }
+        }
+
+        /**
+         * Take slots for more requests at the same time, as far as the limits allow it now.
+         *
+         * @param wanted the number of extra requests
+         * @return the number of slots taken, release them with {@link #releaseSlots()}.
+         */
+        public int acquireSlots(int wanted) {
+            synchronized (DownloadScheduler.this) {
+                if (state != State.RUNNING) {
+                    return 0;
+                }
+                int free = Math.min(maxRunning - usedSlots(null), maxRunningPerHost - usedSlots(host));
+                int taken = Math.max(0, Math.min(wanted, free));
+                extraSlots += taken;
+                return taken;
+            }
+        }
+
+        /**
+         * Give back the slots of {@link #acquireSlots(int)}, when the extra requests are done.
+         */
+        public void releaseSlots() {
+            synchronized (DownloadScheduler.this) {
+                if (extraSlots > 0) {
+                    extraSlots = 0;
+                    dispatch();
+                }
+            }
+        }
+
+        /**
+         * Called by the running download between parts, waits while it is paused for a download
+         * with a higher priority.
+         *
+         * @throws InterruptedException when interrupted while paused
+         */
+        public void awaitResume() throws InterruptedException {
+            synchronized (DownloadScheduler.this) {
+                while (state == State.PAUSED) {
+                    DownloadScheduler.this.wait();
+                }
+            }
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(order, other.order);
+        }
+    }
+
+    private static class DownloadThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, "DownloadScheduler-" + count.incrementAndGet());
+        }
+    }
+}
@@ -19,26 +19,23 @@ package org.floens.chan.core.cache;
 
 import androidx.annotation.MainThread;
 
-import org.floens.chan.utils.Logger;
-import org.floens.chan.utils.Time;
-
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
+import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.Protocol;
 
 public class FileCache implements FileCacheDownloader.Callback {
     private static final String TAG = "FileCache";
     private static final int TIMEOUT = 10000;
-    private static final int DOWNLOAD_POOL_SIZE = 2;
+    private static final int MAX_DOWNLOADS = 4;
+    private static final int MAX_DOWNLOADS_PER_HOST = 2;
 
-    private final ExecutorService downloadPool = Executors.newFixedThreadPool(DOWNLOAD_POOL_SIZE);
+    private final DownloadScheduler downloadScheduler = new DownloadScheduler(MAX_DOWNLOADS, MAX_DOWNLOADS_PER_HOST);
     private String userAgent;
     protected OkHttpClient httpClient;
 
@@ -68,34 +65,56 @@ public class FileCache implements FileCacheDownloader.Callback {
         cacheHandler.clearCache();
     }
 
+    /**
+     * Start downloading the file located at the url, as a file that is visible to the user.
+     *
+     * @see #downloadFile(String, DownloadScheduler.Priority, FileCacheListener)
+     */
+    @MainThread
+    public FileCacheDownloader downloadFile(String url, FileCacheListener listener) {
+        return downloadFile(url, DownloadScheduler.Priority.VISIBLE, listener);
+    }
+
     /**
      * Start downloading the file located at the url.<br>
      * If the file is in the cache then the callback is executed immediately and null is
      * returned.<br>
      * Otherwise if the file is downloading or has not yet started downloading a
-     * {@link FileCacheDownloader} is returned.<br>
+     * {@link FileCacheDownloader} is returned. A download that is already running gets the
+     * priority if it is higher.
      *
      * @param url      the url to download.
+     * @param priority the priority of the download.
      * @param listener listener to execute callbacks on.
      * @return {@code null} if in the cache, {@link FileCacheDownloader} otherwise.
      */
     @MainThread
-    public FileCacheDownloader downloadFile(String url, FileCacheListener listener) {
+    public FileCacheDownloader downloadFile(String url, DownloadScheduler.Priority priority,
+                                           FileCacheListener listener) {
         FileCacheDownloader runningDownloaderForKey = getDownloaderByKey(url);
         if (runningDownloaderForKey != null) {
             runningDownloaderForKey.addListener(listener);
+            if (priority.compareTo(runningDownloaderForKey.getPriority()) < 0) {
+                runningDownloaderForKey.setPriority(priority);
+            }
             return runningDownloaderForKey;
         }
 
-        File file = get(url);
-        if (file.exists()) {
-            handleFileImmediatelyAvailable(listener, file);
+        if (cacheHandler.exists(url)) {
+            handleFileImmediatelyAvailable(listener, get(url));
             return null;
         } else {
-            return handleStartDownload(listener, file, url);
+            return handleStartDownload(listener, get(url), url, priority);
         }
     }
 
+    /**
+     * The state of the download queue, for debugging.
+     */
+    public String getSchedulerSummary() {
+        return downloadScheduler.getSummary();
+    }
+
     public FileCacheDownloader getDownloaderByKey(String key) {
         for (FileCacheDownloader downloader : downloaders) {
             if (downloader.getUrl().equals(key)) {
@@ -107,12 +126,22 @@ public class FileCache implements FileCacheDownloader.Callback {
 
     @Override
     public void downloaderFinished(FileCacheDownloader fileCacheDownloader) {
-        downloaders.remove(fileCacheDownloader);
+        // Called again when a downloader that was cancelled before it ran still runs.
+        if (!downloaders.remove(fileCacheDownloader)) {
+            return;
+        }
+        cacheHandler.fileWasNotAdded(fileCacheDownloader.getOutput());
+        cacheHandler.release(fileCacheDownloader.getOutput());
     }
 
     @Override
-    public void downloaderAddedFile(File file) {
-        cacheHandler.fileWasAdded(file);
+    public void downloaderAddedFile(File file, long length) {
+        cacheHandler.fileWasAdded(file, length);
+    }
+
+    @Override
+    public void downloaderKeptPartialFile(File file, long length, String validator) {
+        cacheHandler.fileWasPartiallyAdded(file, length, validator);
     }
 
     public boolean exists(String key) {
@@ -124,20 +153,23 @@ public class FileCache implements FileCacheDownloader.Callback {
     }
 
     private void handleFileImmediatelyAvailable(FileCacheListener listener, File file) {
-        // TODO: setLastModified doesn't seem to work on Android...
-        if (!file.setLastModified(Time.get())) {
-            Logger.e(TAG, "Could not set last modified time on file");
-        }
         listener.onSuccess(file);
         listener.onEnd();
     }
 
     private FileCacheDownloader handleStartDownload(
-            FileCacheListener listener, File file, String url) {
+            FileCacheListener listener, File file, String url, DownloadScheduler.Priority priority) {
         FileCacheDownloader downloader = FileCacheDownloader.fromCallbackClientUrlOutputUserAgent(
                 this, httpClient, url, file, userAgent);
         downloader.addListener(listener);
-        downloader.execute(downloadPool);
+        CacheJournal.Entry partial = cacheHandler.getPartial(file);
+        if (partial != null) {
+            downloader.resumeFrom(partial.length, partial.validator);
+        }
+        cacheHandler.retain(file);
+        cacheHandler.fileWillBeAdded(file);
+        HttpUrl httpUrl = HttpUrl.parse(url);
+        downloader.execute(downloadScheduler, httpUrl != null ? httpUrl.host() : "", priority);
         downloaders.add(downloader);
         return downloader;
     }
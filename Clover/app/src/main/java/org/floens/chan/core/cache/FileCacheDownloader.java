@@ -26,30 +26,22 @@ import androidx.annotation.WorkerThread;
 import org.floens.chan.core.settings.ChanSettings;
 import org.floens.chan.utils.Logger;
 
-import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-import okhttp3.Call;
 import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
-import okhttp3.ResponseBody;
-import okhttp3.internal.Util;
-import okio.Buffer;
-import okio.BufferedSink;
-import okio.Okio;
-import okio.Source;
 
 public class FileCacheDownloader implements Runnable {
     private static final String TAG = "FileCacheDownloader";
-    private static final long BUFFER_SIZE = 8192;
-    private static final long NOTIFY_SIZE = BUFFER_SIZE * 8;
+    private static final long NOTIFY_SIZE = 8192 * 8;
+    // Large files, webms mostly, are downloaded with up to this many requests at the same time.
+    private static final int SEGMENTS = 3;
+    private static final long SEGMENTED_MIN_LENGTH = 2 * 1024 * 1024;
 
     private final OkHttpClient httpClient;
     private final String url;
@@ -64,11 +56,18 @@ public class FileCacheDownloader implements Runnable {
     // Main and worker thread.
     private AtomicBoolean running = new AtomicBoolean(false);
     private AtomicBoolean cancel = new AtomicBoolean(false);
-    private Future<?> future;
+    private DownloadScheduler.Job job;
+
+    // Main thread only, the partial file was already reported by cancel().
+    private boolean cancelledBeforeRunning;
+
+    // Set before it runs.
+    private long resumeLength;
+    private String resumeValidator;
 
     // Worker thread.
-    private Call call;
-    private ResponseBody body;
+    private long notifyTotal;
+    private ResumableDownload download;
 
     static FileCacheDownloader fromCallbackClientUrlOutputUserAgent(
             Callback callback, OkHttpClient httpClient, String url,
@@ -88,8 +87,8 @@ public class FileCacheDownloader implements Runnable {
     }
 
     @MainThread
-    public void execute(ExecutorService executor) {
-        future = executor.submit(this);
+    public void execute(DownloadScheduler scheduler, String host, DownloadScheduler.Priority priority) {
+        job = scheduler.submit(host, priority, this);
     }
 
     @MainThread
@@ -97,9 +96,36 @@ public class FileCacheDownloader implements Runnable {
         return url;
     }
 
+    @AnyThread
+    public File getOutput() {
+        return output;
+    }
+
+    /**
+     * Continue a partial file that a previous download left, see {@link ResumableDownload}.
+     */
+    @MainThread
+    void resumeFrom(long length, String validator) {
+        resumeLength = length;
+        resumeValidator = validator;
+    }
+
     @AnyThread
     public Future<?> getFuture() {
-        return future;
+        return job.getFuture();
+    }
+
+    @AnyThread
+    public DownloadScheduler.Priority getPriority() {
+        return job.getPriority();
+    }
+
+    /**
+     * Change the priority of the download, it may start or continue sooner.
+     */
+    @AnyThread
+    public void setPriority(DownloadScheduler.Priority priority) {
+        job.setPriority(priority);
     }
 
     @MainThread
@@ -107,14 +133,31 @@ public class FileCacheDownloader implements Runnable {
         listeners.add(callback);
     }
 
+    /**
+     * Stop calling the listener, the download is shared with the other listeners. It is cancelled
+     * when no listener is left.
+     */
+    @MainThread
+    public void removeListener(FileCacheListener callback) {
+        if (listeners.remove(callback) && listeners.isEmpty()) {
+            cancel();
+        }
+    }
+
     /**
      * Cancel this download.
      */
     @MainThread
     public void cancel() {
         if (cancel.compareAndSet(false, true)) {
+            job.cancel();
+
             // Did not start running yet, mark finished here.
             if (!running.get()) {
+                cancelledBeforeRunning = true;
+                if (resumeValidator != null) {
+                    callback.downloaderKeptPartialFile(output, resumeLength, resumeValidator);
+                }
                 callback.downloaderFinished(this);
             }
         }
@@ -149,30 +192,58 @@ public class FileCacheDownloader implements Runnable {
 
     @WorkerThread
     private void execute() {
-        Closeable sourceCloseable = null;
-        Closeable sinkCloseable = null;
+        // Written to the temporary file, the output only exists when it is complete.
+        File temporary = CacheHandler.getTemporaryFile(output);
+        download = new ResumableDownload(
+                httpClient.newBuilder().proxy(ChanSettings.getProxy()).build(),
+                url, userAgent, temporary);
+        if (resumeValidator != null) {
+            log("resume from " + resumeLength);
+            download.resumeFrom(resumeLength, resumeValidator);
+        } else {
+            download.segmented(SEGMENTS, SEGMENTED_MIN_LENGTH, new ResumableDownload.Slots() {
+                @Override
+                public int acquire(int wanted) {
+                    return job.acquireSlots(wanted);
+                }
+
+                @Override
+                public void release() {
+                    job.releaseSlots();
+                }
+            });
+        }
 
         try {
             checkCancel();
 
-            ResponseBody body = getBody();
-
-            Source source = body.source();
-            sourceCloseable = source;
-
-            BufferedSink sink = Okio.buffer(Okio.sink(output));
-            sinkCloseable = sink;
-
-            checkCancel();
+            File parent = temporary.getParentFile();
+            if (!parent.exists() && !parent.mkdirs()) {
+                throw new IOException("Could not create " + parent.getAbsolutePath());
+            }
 
-            log("got input stream");
+            while (true) {
+                try {
+                    download.execute(this::onProgress);
+                    break;
+                } catch (PauseException e) {
+                    // The response is closed while paused, continue the file with a range request.
+                    log("paused at " + download.getLength());
+                    awaitResume();
+                    checkCancel();
+                    download.resumeFrom(download.getLength(), download.getValidator());
+                }
+            }
 
-            pipeBody(source, sink);
+            if (!temporary.renameTo(output)) {
+                throw new IOException("Could not rename the temporary file");
+            }
 
             log("done");
 
+            long length = download.getLength();
             post(() -> {
-                callback.downloaderAddedFile(output);
+                callback.downloaderAddedFile(output, length);
                 callback.downloaderFinished(this);
                 for (FileCacheListener callback : listeners) {
                     callback.onSuccess(output);
@@ -182,8 +253,8 @@ public class FileCacheDownloader implements Runnable {
         } catch (IOException e) {
             boolean isNotFound = false;
             boolean cancelled = false;
-            if (e instanceof HttpCodeIOException) {
-                int code = ((HttpCodeIOException) e).code;
+            if (e instanceof ResumableDownload.HttpCodeException) {
+                int code = ((ResumableDownload.HttpCodeException) e).code;
                 log("exception: http error, code: " + code, e);
                 isNotFound = code == 404;
             } else if (e instanceof CancelException) {
@@ -194,10 +265,19 @@ public class FileCacheDownloader implements Runnable {
                 log("exception", e);
             }
 
+            // What was downloaded before it broke off is kept, if it can be continued later.
+            boolean keepPartial = !(e instanceof ResumableDownload.HttpCodeException) &&
+                    download.getLength() > 0 && download.getValidator() != null;
+            long partialLength = download.getLength();
+            String partialValidator = download.getValidator();
+
             final boolean finalIsNotFound = isNotFound;
             final boolean finalCancelled = cancelled;
             post(() -> {
-                purgeOutput();
+                // The cache may have given the same url to a new download since.
+                if (keepPartial && !cancelledBeforeRunning) {
+                    callback.downloaderKeptPartialFile(output, partialLength, partialValidator);
+                }
                 for (FileCacheListener callback : listeners) {
                     if (finalCancelled) {
                         callback.onCancel();
@@ -209,78 +289,34 @@ public class FileCacheDownloader implements Runnable {
                 }
                 callback.downloaderFinished(this);
             });
-        } finally {
-            Util.closeQuietly(sourceCloseable);
-            Util.closeQuietly(sinkCloseable);
-
-            if (call != null) {
-                call.cancel();
-            }
-
-            if (body != null) {
-                Util.closeQuietly(body);
-            }
         }
     }
 
     @WorkerThread
-    private ResponseBody getBody() throws IOException {
-        Request request = new Request.Builder()
-                .url(url)
-                .header("User-Agent", userAgent)
-                .build();
-
-        call = httpClient.newBuilder()
-                .proxy(ChanSettings.getProxy())
-                .build()
-                .newCall(request);
-
-        Response response = call.execute();
-        if (!response.isSuccessful()) {
-            throw new HttpCodeIOException(response.code());
+    private void onProgress(long downloaded, long total) throws IOException {
+        // A segmented download has no validator until all segments are done, it can't be
+        // continued and keeps its responses while paused.
+        if (job.isPaused() && download.getValidator() != null && downloaded != total) {
+            throw new PauseException();
         }
+        awaitResume();
 
-        checkCancel();
-
-        body = response.body();
-        if (body == null) {
-            throw new IOException("body == null");
+        if (downloaded >= notifyTotal + NOTIFY_SIZE) {
+            notifyTotal = downloaded;
+            log("progress " + (downloaded / (float) total));
+            postProgress(downloaded, total <= 0 ? downloaded : total);
         }
 
         checkCancel();
-
-        return body;
     }
 
     @WorkerThread
-    private void pipeBody(Source source, BufferedSink sink) throws IOException {
-        long contentLength = body.contentLength();
-
-        long read;
-        long total = 0;
-        long notifyTotal = 0;
-
-        Buffer buffer = new Buffer();
-
-        while ((read = source.read(buffer, BUFFER_SIZE)) != -1) {
-            sink.write(buffer, read);
-            total += read;
-
-            if (total >= notifyTotal + NOTIFY_SIZE) {
-                notifyTotal = total;
-                log("progress " + (total / (float) contentLength));
-                postProgress(total, contentLength <= 0 ? total : contentLength);
-            }
-
-            checkCancel();
+    private void awaitResume() throws IOException {
+        try {
+            job.awaitResume();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
         }
-
-        Util.closeQuietly(source);
-        Util.closeQuietly(sink);
-
-        call = null;
-        Util.closeQuietly(body);
-        body = null;
     }
 
     @WorkerThread
@@ -290,17 +326,6 @@ public class FileCacheDownloader implements Runnable {
         }
     }
 
-    @WorkerThread
-    private void purgeOutput() {
-        if (output.exists()) {
-            final boolean deleteResult = output.delete();
-
-            if (!deleteResult) {
-                log("could not delete the file in purgeOutput");
-            }
-        }
-    }
-
     @WorkerThread
     private void postProgress(final long downloaded, final long total) {
         post(() -> {
@@ -315,17 +340,16 @@ public class FileCacheDownloader implements Runnable {
         }
     }
 
-    private static class HttpCodeIOException extends IOException {
-        private int code;
-
-        public HttpCodeIOException(int code) {
-            this.code = code;
+    private static class PauseException extends IOException {
+        public PauseException() {
         }
     }
 
     public interface Callback {
         void downloaderFinished(FileCacheDownloader fileCacheDownloader);
 
-        void downloaderAddedFile(File file);
+        void downloaderAddedFile(File file, long length);
+
+        void downloaderKeptPartialFile(File file, long length, String validator);
     }
 }
@@ -0,0 +1,457 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.cache;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.internal.Util;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+import okio.Sink;
+
+/**
+ * Downloads a url to a file, and continues a partial download of it with a range request.
+ * <p>
+ * A partial file can be continued when its validator is known, the strong ETag or else the
+ * Last-Modified date of the response it came from. It is sent as If-Range, the server sends the
+ * rest of the file when it didn't change. When it did, or when the server doesn't do ranges, the
+ * whole file is sent again and replaces the partial file.
+ * <p>
+ * A large file that is not continued can be downloaded in segments, with range requests at the
+ * same time, see {@link #segmented(int, long, Slots)}.
+ * <p>
+ * After {@link #execute(Progress)}, also when it failed, {@link #getLength()} and
+ * {@link #getValidator()} say what is in the file.
+ */
+class ResumableDownload {
+    private static final int BUFFER_SIZE = 8192;
+
+    // Runs the segments after the first, the first is read on the thread of the download. There
+    // are only as many as the slots of the scheduler allow.
+    private static final ExecutorService segmentExecutor = Executors.newCachedThreadPool();
+
+    private final OkHttpClient httpClient;
+    private final String url;
+    private final String userAgent;
+    private final File file;
+
+    private long resumeLength;
+    private int segments = 1;
+    private long minSegmentedLength;
+    private Slots slots;
+
+    private String validator;
+    private long length;
+
+    ResumableDownload(OkHttpClient httpClient, String url, String userAgent, File file) {
+        this.httpClient = httpClient;
+        this.url = url;
+        this.userAgent = userAgent;
+        this.file = file;
+    }
+
+    /**
+     * Continue the partial download in the file.
+     *
+     * @param length    the length of the partial file
+     * @param validator the validator of the response the partial file came from
+     */
+    void resumeFrom(long length, String validator) {
+        resumeLength = length;
+        this.length = length;
+        this.validator = validator;
+    }
+
+    /**
+     * Download the file in segments at the same time when it is large, and it is not continued
+     * from a partial file. The first request asks for all of it from the start, when the server
+     * answers with a range and a validator the other segments are requested with the validator
+     * as If-Range. A server that doesn't do ranges sends the file in one go.
+     * <p>
+     * The file has holes until all segments are done, it can't be continued when it failed.
+     *
+     * @param segments  the most requests at the same time
+     * @param minLength the length from which a file is segmented
+     * @param slots     gives the requests after the first, the file is downloaded in one go when
+     *                  there are none
+     */
+    void segmented(int segments, long minLength, Slots slots) {
+        this.segments = segments;
+        minSegmentedLength = minLength;
+        this.slots = slots;
+    }
+
+    /**
+     * The number of bytes in the file.
+     */
+    long getLength() {
+        return length;
+    }
+
+    /**
+     * The validator to continue the file with, or {@code null} if it can't be continued.
+     */
+    String getValidator() {
+        return validator;
+    }
+
+    void execute(Progress progress) throws IOException {
+        try {
+            // A file that lost a part of what its journal entry says is downloaded again.
+            boolean resume = resumeLength > 0 && validator != null && file.length() >= resumeLength;
+            boolean ranged = resume || segments > 1;
+            if (!download(ranged, resume, progress) && ranged) {
+                // A broken range response, get all of it.
+                download(false, false, progress);
+            }
+        } finally {
+            length = file.exists() ? file.length() : 0;
+        }
+    }
+
+    /**
+     * @return {@code false} if the range response could not be used, nothing was written then.
+     */
+    private boolean download(boolean ranged, boolean resume, Progress progress) throws IOException {
+        long start = resume ? resumeLength : 0;
+        Request.Builder request = newRequest();
+        if (ranged) {
+            request.header("Range", "bytes=" + start + "-");
+            if (resume) {
+                request.header("If-Range", validator);
+            }
+        }
+
+        Call call = httpClient.newCall(request.build());
+        Response response = call.execute();
+        Sink sink = null;
+        try {
+            int code = response.code();
+            if (code == 206) {
+                String contentRange = response.header("Content-Range");
+                if (!ranged || !rangeStartsAt(contentRange, start)) {
+                    return false;
+                }
+
+                long total = rangeTotal(contentRange);
+                String responseValidator = validator(response);
+                if (!resume && segments > 1 && total >= minSegmentedLength && responseValidator != null) {
+                    int extra = slots.acquire(segments - 1);
+                    if (extra > 0) {
+                        try {
+                            downloadSegments(body(response), 1 + extra, total, responseValidator, progress);
+                        } finally {
+                            slots.release();
+                        }
+                        return true;
+                    }
+                }
+            } else if (code == 416 && ranged) {
+                return false;
+            } else if (!response.isSuccessful()) {
+                throw new HttpCodeException(code);
+            }
+
+            boolean append = code == 206 && resume;
+            ResponseBody body = body(response);
+
+            long written = append ? resumeLength : 0;
+            long contentLength = body.contentLength();
+            long total = contentLength < 0 ? -1 : written + contentLength;
+
+            if (append) {
+                // The file may be longer than the length it is continued from.
+                truncate(resumeLength);
+            }
+            sink = append ? Okio.appendingSink(file) : Okio.sink(file);
+            BufferedSink bufferedSink = Okio.buffer(sink);
+            sink = bufferedSink;
+
+            // The file has this response in it from now on.
+            String responseValidator = validator(response);
+            if (!append || responseValidator != null) {
+                validator = responseValidator;
+            }
+
+            BufferedSource source = body.source();
+            Buffer buffer = new Buffer();
+            long read;
+            while ((read = source.read(buffer, BUFFER_SIZE)) != -1) {
+                bufferedSink.write(buffer, read);
+                written += read;
+                progress.onProgress(written, total);
+            }
+
+            // Not quietly, the file is incomplete when flushing it fails.
+            sink.close();
+            sink = null;
+            return true;
+        } finally {
+            Util.closeQuietly(sink);
+            Util.closeQuietly(response);
+            call.cancel();
+        }
+    }
+
+    private void truncate(long length) throws IOException {
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.setLength(length);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void downloadSegments(ResponseBody first, int segments, long total, String segmentValidator,
+                                  Progress progress) throws IOException {
+        validator = null;
+
+        long segmentLength = (total + segments - 1) / segments;
+        Segments state = new Segments(progress, total);
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        List<Future<?>> others = new ArrayList<>();
+        try {
+            out.setLength(total);
+            FileChannel channel = out.getChannel();
+
+            for (long start = segmentLength; start < total; start += segmentLength) {
+                long segmentStart = start;
+                long segmentEnd = Math.min(total, start + segmentLength) - 1;
+                others.add(segmentExecutor.submit(() -> {
+                    downloadSegment(segmentStart, segmentEnd, segmentValidator, channel, state);
+                    return null;
+                }));
+            }
+
+            try {
+                writeSegment(first.source(), 0, segmentLength, channel, state);
+                for (int i = 0; i < others.size(); i++) {
+                    others.get(i).get();
+                }
+            } catch (ExecutionException e) {
+                state.fail();
+                Throwable cause = e.getCause();
+                throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+            } catch (InterruptedException e) {
+                state.fail();
+                throw new IOException(e);
+            } catch (IOException e) {
+                state.fail();
+                throw e;
+            }
+
+            validator = segmentValidator;
+        } finally {
+            // Nothing writes to the file after it is closed.
+            for (int i = 0; i < others.size(); i++) {
+                try {
+                    others.get(i).get();
+                } catch (ExecutionException | InterruptedException ignored) {
+                }
+            }
+            out.close();
+        }
+    }
+
+    private void downloadSegment(long start, long end, String segmentValidator, FileChannel channel,
+                                 Segments state) throws IOException {
+        Call call = httpClient.newCall(newRequest()
+                .header("Range", "bytes=" + start + "-" + end)
+                .header("If-Range", segmentValidator)
+                .build());
+        state.add(call);
+        Response response = call.execute();
+        try {
+            if (response.code() != 206 || !rangeStartsAt(response.header("Content-Range"), start)) {
+                // Changed since the first segment, or the range is not honoured after all.
+                throw new IOException("Segment not sent as range: " + response.code());
+            }
+            writeSegment(body(response).source(), start, end - start + 1, channel, state);
+        } finally {
+            Util.closeQuietly(response);
+        }
+    }
+
+    private void writeSegment(BufferedSource source, long position, long length, FileChannel channel,
+                              Segments state) throws IOException {
+        byte[] bytes = new byte[BUFFER_SIZE];
+        long remaining = length;
+        while (remaining > 0) {
+            int read = source.read(bytes, 0, (int) Math.min(bytes.length, remaining));
+            if (read == -1) {
+                throw new EOFException("Segment ended early");
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, read);
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            remaining -= read;
+            state.written(read);
+        }
+    }
+
+    private Request.Builder newRequest() {
+        return new Request.Builder()
+                .url(url)
+                .header("User-Agent", userAgent);
+    }
+
+    private static ResponseBody body(Response response) throws IOException {
+        ResponseBody body = response.body();
+        if (body == null) {
+            throw new IOException("body == null");
+        }
+        return body;
+    }
+
+    private static String validator(Response response) {
+        String etag = response.header("ETag");
+        // Weak ETags can't be used with If-Range.
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return response.header("Last-Modified");
+    }
+
+    // Content-Range: bytes start-end/total
+    private static boolean rangeStartsAt(String contentRange, long start) {
+        if (contentRange == null || !contentRange.startsWith("bytes ")) {
+            return false;
+        }
+        int dash = contentRange.indexOf('-');
+        if (dash < 0) {
+            return false;
+        }
+        try {
+            return Long.parseLong(contentRange.substring("bytes ".length(), dash).trim()) == start;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    // The total of a Content-Range, or -1 if it is unknown.
+    private static long rangeTotal(String contentRange) {
+        int slash = contentRange.indexOf('/');
+        if (slash < 0) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * The progress of the segments together. A failed segment stops the others.
+     */
+    private static class Segments {
+        private final Progress progress;
+        private final long total;
+        private final List<Call> calls = new ArrayList<>();
+        private long written;
+        private boolean failed;
+
+        Segments(Progress progress, long total) {
+            this.progress = progress;
+            this.total = total;
+        }
+
+        synchronized void add(Call call) {
+            calls.add(call);
+            if (failed) {
+                call.cancel();
+            }
+        }
+
+        // Holds the lock while the progress waits, a paused download pauses all segments.
+        synchronized void written(long bytes) throws IOException {
+            if (failed) {
+                throw new IOException("Another segment failed");
+            }
+            written += bytes;
+            progress.onProgress(written, total);
+        }
+
+        synchronized void fail() {
+            failed = true;
+            for (int i = 0; i < calls.size(); i++) {
+                calls.get(i).cancel();
+            }
+        }
+    }
+
+    /**
+     * The requests a segmented download may make besides the first, see
+     * {@link DownloadScheduler.Job#acquireSlots(int)}.
+     */
+    interface Slots {
+        /**
+         * @param wanted the number of extra requests
+         * @return how many of them can be made now
+         */
+        int acquire(int wanted);
+
+        /**
+         * The extra requests are done.
+         */
+        void release();
+    }
+
+    interface Progress {
+        /**
+         * Called for every part that is written, from one thread at a time.
+         *
+         * @param downloaded bytes in the file
+         * @param total      bytes the file will have, -1 if unknown
+         * @throws IOException to stop the download
+         */
+        void onProgress(long downloaded, long total) throws IOException;
+    }
+
+    /**
+     * The server answered with an error code, also used by {@link ThumbnailCache}.
+     */
+    static class HttpCodeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        final int code;
+
+        HttpCodeException(int code) {
+            this.code = code;
+        }
+    }
+}
@@ -0,0 +1,474 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.cache;
+
+import android.util.SparseArray;
+
+import org.floens.chan.core.model.Post;
+import org.floens.chan.core.model.PostHttpIcon;
+import org.floens.chan.core.model.PostImage;
+import org.floens.chan.core.model.orm.Board;
+import org.floens.chan.utils.IntSet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import okhttp3.HttpUrl;
+
+/**
+ * The posts of a thread as they were read from the site, stored by the
+ * {@link ThreadSnapshotStore} so that the thread can be shown again without loading it.
+ * <p>
+ * The posts are stored before they are parsed, with the raw comment html. Reading a snapshot gives
+ * {@link Post.Builder}s that go through the same parsing as the posts from the site, so the
+ * current theme, filters and settings apply, and the quotes rebuild the reply graph.
+ * <p>
+ * A snapshot file is a header followed by blocks. A posts block has the posts that were new in a
+ * load, a state block has the op state, deleted posts and validators of the load. Blocks are
+ * appended, later posts with the same no and later state blocks replace the earlier ones, until
+ * the file is compacted.
+ */
+public class ThreadSnapshot {
+    private static final int MAGIC = 0x43534e50;
+    private static final int VERSION = 1;
+
+    private static final int BLOCK_POSTS = 1;
+    private static final int BLOCK_STATE = 2;
+
+    // A file is compacted when it is this many times larger than its posts and state.
+    private static final int COMPACT_RATIO = 2;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public final List<Post.Builder> posts;
+    public final Post.Builder op;
+    public final IntSet deleted;
+    public final String lastModifiedHeader;
+    public final String etag;
+
+    private ThreadSnapshot(List<Post.Builder> posts, Post.Builder op, IntSet deleted,
+                           String lastModifiedHeader, String etag) {
+        this.posts = posts;
+        this.op = op;
+        this.deleted = deleted;
+        this.lastModifiedHeader = lastModifiedHeader;
+        this.etag = etag;
+    }
+
+    /**
+     * Encode a post as read from the site, before the parser modifies the builder.
+     */
+    public static byte[] encodePost(Post.Builder post) {
+        String comment = post.comment == null ? null : post.comment.toString();
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                    256 + (comment == null ? 0 : comment.length()));
+            DataOutputStream out = new DataOutputStream(bytes);
+
+            out.writeInt(post.id);
+            out.writeInt(post.opId);
+            out.writeBoolean(post.op);
+            out.writeLong(post.unixTimestampSeconds);
+            writeString(out, post.subject);
+            writeString(out, post.name);
+            writeString(out, comment);
+            writeString(out, post.tripcode);
+            writeString(out, post.posterId);
+            writeString(out, post.moderatorCapcode);
+
+            int imageCount = post.images == null ? 0 : post.images.size();
+            out.writeShort(imageCount);
+            for (int i = 0; i < imageCount; i++) {
+                PostImage image = post.images.get(i);
+                writeString(out, image.originalName);
+                writeUrl(out, image.thumbnailUrl);
+                writeUrl(out, image.spoilerThumbnailUrl);
+                writeUrl(out, image.imageUrl);
+                writeString(out, image.filename);
+                writeString(out, image.extension);
+                out.writeInt(image.imageWidth);
+                out.writeInt(image.imageHeight);
+                out.writeBoolean(image.spoiler);
+                out.writeLong(image.size);
+            }
+
+            int iconCount = post.httpIcons == null ? 0 : post.httpIcons.size();
+            out.writeShort(iconCount);
+            for (int i = 0; i < iconCount; i++) {
+                PostHttpIcon icon = post.httpIcons.get(i);
+                writeUrl(out, icon.url);
+                writeString(out, icon.name);
+            }
+
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // Not thrown by a ByteArrayOutputStream.
+            throw new RuntimeException(e);
+        }
+    }
+
+    static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    static void writePostsBlock(DataOutputStream out, List<byte[]> posts) throws IOException {
+        int length = 4;
+        for (int i = 0; i < posts.size(); i++) {
+            length += 4 + posts.get(i).length;
+        }
+
+        out.writeByte(BLOCK_POSTS);
+        out.writeInt(length);
+        out.writeInt(posts.size());
+        for (int i = 0; i < posts.size(); i++) {
+            byte[] post = posts.get(i);
+            out.writeInt(post.length);
+            out.write(post);
+        }
+    }
+
+    static void writeStateBlock(DataOutputStream out, Post.Builder op, IntSet deleted,
+                                String lastModifiedHeader, String etag) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + deleted.size() * 4);
+        DataOutputStream state = new DataOutputStream(bytes);
+        state.writeBoolean(op.sticky);
+        state.writeBoolean(op.closed);
+        state.writeBoolean(op.archived);
+        state.writeInt(op.replies);
+        state.writeInt(op.imagesCount);
+        state.writeInt(op.uniqueIps);
+        state.writeLong(op.lastModified);
+        writeString(state, lastModifiedHeader);
+        writeString(state, etag);
+        state.writeInt(deleted.size());
+        for (int i = 0; i < deleted.size(); i++) {
+            state.writeInt(deleted.get(i));
+        }
+        state.flush();
+
+        out.writeByte(BLOCK_STATE);
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+
+    /**
+     * Read a snapshot file. A block that was cut off at the end, by a write that didn't finish,
+     * is ignored.
+     *
+     * @param data  contents of the file
+     * @param board board of the thread, set on the posts
+     * @return the snapshot, or {@code null} if it has no posts or state.
+     * @throws IOException when the file is not a snapshot or is corrupt.
+     */
+    public static ThreadSnapshot read(byte[] data, Board board) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        readHeader(in);
+
+        SparseArray<Post.Builder> posts = new SparseArray<>();
+        Post.Builder op = null;
+        IntSet deleted = null;
+        String lastModifiedHeader = null;
+        String etag = null;
+
+        Block block;
+        while ((block = Block.next(data, in)) != null) {
+            DataInputStream blockIn = block.in();
+            if (block.type == BLOCK_POSTS) {
+                int count = readCount(blockIn, 4);
+                for (int i = 0; i < count; i++) {
+                    blockIn.readInt(); // length of the post
+                    Post.Builder post = readPost(blockIn, board);
+                    posts.put(post.id, post);
+                }
+            } else {
+                op = new Post.Builder();
+                op.sticky(blockIn.readBoolean());
+                op.closed(blockIn.readBoolean());
+                op.archived(blockIn.readBoolean());
+                op.replies(blockIn.readInt());
+                op.images(blockIn.readInt());
+                op.uniqueIps(blockIn.readInt());
+                op.lastModified(blockIn.readLong());
+                lastModifiedHeader = readString(blockIn);
+                etag = readString(blockIn);
+                int deletedCount = readCount(blockIn, 4);
+                deleted = new IntSet(deletedCount);
+                for (int i = 0; i < deletedCount; i++) {
+                    deleted.add(blockIn.readInt());
+                }
+            }
+        }
+
+        if (posts.size() == 0 || op == null) {
+            return null;
+        }
+
+        List<Post.Builder> list = new ArrayList<>(posts.size());
+        for (int i = 0; i < posts.size(); i++) {
+            list.add(posts.valueAt(i));
+        }
+
+        op.board(board);
+
+        return new ThreadSnapshot(list, op, deleted, lastModifiedHeader, etag);
+    }
+
+    /**
+     * Rewrite a snapshot file with only the posts and state that {@link #read} would use, when
+     * the blocks appended over time made it much larger than that, or it ends with a block that
+     * was cut off.
+     *
+     * @param data contents of the file
+     * @return the contents of the compacted file, or {@code null} if it doesn't need compacting.
+     * @throws IOException when the file is not a snapshot or is corrupt.
+     */
+    static byte[] compact(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        readHeader(in);
+
+        // Offsets and lengths of the encoded posts, and of the last state.
+        SparseArray<int[]> posts = new SparseArray<>();
+        int stateOffset = -1;
+        int stateLength = 0;
+
+        Block block;
+        while ((block = Block.next(data, in)) != null) {
+            if (block.type == BLOCK_POSTS) {
+                DataInputStream blockIn = block.in();
+                int count = readCount(blockIn, 4);
+                for (int i = 0; i < count; i++) {
+                    int length = readCount(blockIn, 1);
+                    if (length < 4) {
+                        throw new IOException("Invalid post length " + length);
+                    }
+                    int offset = block.offset + block.length - blockIn.available();
+                    int id = blockIn.readInt();
+                    blockIn.skipBytes(length - 4);
+                    posts.put(id, new int[]{offset, length});
+                }
+            } else {
+                stateOffset = block.offset;
+                stateLength = block.length;
+            }
+        }
+        int end = data.length - in.available();
+
+        if (posts.size() == 0 || stateOffset < 0) {
+            return null;
+        }
+
+        int compactedLength = 8 + 5 + 4 + 5 + stateLength;
+        for (int i = 0; i < posts.size(); i++) {
+            compactedLength += 4 + posts.valueAt(i)[1];
+        }
+        if (end == data.length && (long) compactedLength * COMPACT_RATIO > data.length) {
+            return null;
+        }
+
+        List<byte[]> list = new ArrayList<>(posts.size());
+        for (int i = 0; i < posts.size(); i++) {
+            int[] post = posts.valueAt(i);
+            list.add(Arrays.copyOfRange(data, post[0], post[0] + post[1]));
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(compactedLength);
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeHeader(out);
+        writePostsBlock(out, list);
+        out.writeByte(BLOCK_STATE);
+        out.writeInt(stateLength);
+        out.write(data, stateOffset, stateLength);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void readHeader(DataInputStream in) throws IOException {
+        if (in.available() < 8 || in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a snapshot of this version");
+        }
+    }
+
+    /**
+     * Read a count of items, that can't be more than the bytes left for them.
+     */
+    private static int readCount(DataInputStream in, int minItemLength) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > in.available() / minItemLength) {
+            throw new IOException("Invalid count " + count);
+        }
+        return count;
+    }
+
+    private static Post.Builder readPost(DataInputStream in, Board board) throws IOException {
+        Post.Builder post = new Post.Builder();
+        post.board(board);
+        post.id(in.readInt());
+        post.opId(in.readInt());
+        post.op(in.readBoolean());
+        post.setUnixTimestampSeconds(in.readLong());
+        post.subject(readString(in));
+        post.name(readString(in));
+        post.comment(readString(in));
+        post.tripcode(readString(in));
+        post.posterId(readString(in));
+        post.moderatorCapcode(readString(in));
+
+        int imageCount = in.readUnsignedShort();
+        if (imageCount > 0) {
+            List<PostImage> images = new ArrayList<>(imageCount);
+            for (int i = 0; i < imageCount; i++) {
+                images.add(new PostImage.Builder()
+                        .originalName(readString(in))
+                        .thumbnailUrl(readUrl(in))
+                        .spoilerThumbnailUrl(readUrl(in))
+                        .imageUrl(readUrl(in))
+                        .filename(readString(in))
+                        .extension(readString(in))
+                        .imageWidth(in.readInt())
+                        .imageHeight(in.readInt())
+                        .spoiler(in.readBoolean())
+                        .size(in.readLong())
+                        .build());
+            }
+            post.images(images);
+        }
+
+        int iconCount = in.readUnsignedShort();
+        for (int i = 0; i < iconCount; i++) {
+            post.addHttpIcon(new PostHttpIcon(readUrl(in), readString(in)));
+        }
+
+        return post;
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = string.getBytes(UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    // Only from a stream over a byte array, where available() is what is left.
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.available()) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static void writeUrl(DataOutputStream out, HttpUrl url) throws IOException {
+        writeString(out, url == null ? null : url.toString());
+    }
+
+    private static HttpUrl readUrl(DataInputStream in) throws IOException {
+        String url = readString(in);
+        return url == null ? null : HttpUrl.parse(url);
+    }
+
+    private static class Block {
+        final int type;
+        final int offset;
+        final int length;
+        final byte[] data;
+
+        private Block(int type, int offset, int length, byte[] data) {
+            this.type = type;
+            this.offset = offset;
+            this.length = length;
+            this.data = data;
+        }
+
+        /**
+         * Read the type and length of the next block, and skip over its contents.
+         *
+         * @param in stream over data
+         * @return the block, or {@code null} at the end of the file or at a block that was cut
+         * off.
+         */
+        static Block next(byte[] data, DataInputStream in) throws IOException {
+            if (in.available() < 5) {
+                return null;
+            }
+
+            int type = in.readUnsignedByte();
+            if (type != BLOCK_POSTS && type != BLOCK_STATE) {
+                throw new IOException("Unknown block type " + type);
+            }
+            int length = in.readInt();
+            if (length < 0) {
+                throw new IOException("Invalid block length " + length);
+            }
+            if (length > in.available()) {
+                return null;
+            }
+
+            int offset = data.length - in.available();
+            in.skipBytes(length);
+            return new Block(type, offset, length, data);
+        }
+
+        DataInputStream in() {
+            return new DataInputStream(new ByteArrayInputStream(data, offset, length));
+        }
+    }
+
+    /**
+     * Collects the encoded posts of a load, from the threads that parse the posts.
+     */
+    public static class Recorder {
+        private final SparseArray<byte[]> posts = new SparseArray<>();
+
+        public void record(Post.Builder post) {
+            byte[] encoded = encodePost(post);
+            synchronized (posts) {
+                posts.put(post.id, encoded);
+            }
+        }
+
+        /**
+         * @return the recorded posts, ordered by post no.
+         */
+        public List<byte[]> getPosts() {
+            synchronized (posts) {
+                List<byte[]> list = new ArrayList<>(posts.size());
+                for (int i = 0; i < posts.size(); i++) {
+                    list.add(posts.valueAt(i));
+                }
+                return list;
+            }
+        }
+    }
+}
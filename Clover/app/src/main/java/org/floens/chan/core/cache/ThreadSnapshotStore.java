@@ -0,0 +1,505 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.cache;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.MainThread;
+import androidx.annotation.WorkerThread;
+
+import org.floens.chan.core.model.Post;
+import org.floens.chan.core.model.orm.Loadable;
+import org.floens.chan.utils.IOUtils;
+import org.floens.chan.utils.IntSet;
+import org.floens.chan.utils.Logger;
+import org.floens.chan.utils.Time;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Stores a {@link ThreadSnapshot} per loadable, so that a thread that is opened again, also after
+ * the process was killed, can be shown before it is loaded.
+ * <p>
+ * Which snapshots there are is kept in memory, with their sizes and when they were last used. The
+ * {@link CacheJournal} keeps that index over restarts, like it does for the {@link CacheHandler}.
+ * All file access happens on one thread, in the order it was requested. A read queued after a
+ * write sees the written data. Reading only gets the contents of the file, the posts are decoded
+ * and parsed by the caller on another thread. The directory is kept under the maximum size by
+ * removing the least recently used snapshots.
+ * <p>
+ * The journal has the length of a snapshot after each complete write. A write that didn't finish
+ * is cut off to that length before the next one is appended.
+ */
+@AnyThread
+public class ThreadSnapshotStore {
+    private static final String TAG = "ThreadSnapshotStore";
+    private static final boolean LOG_TIMING = false;
+    private static final String EXTENSION = ".snapshot";
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private final File directory;
+    private final long maxSize;
+
+    // The snapshots by file name, least recently used first. Guarded by itself.
+    private final LinkedHashMap<String, CacheJournal.Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Total length of the entries. Guarded by entries.
+    private long size;
+    // Set when the journal was read, until then has() can't tell.
+    private volatile boolean loaded;
+
+    // Only used on the executor.
+    private CacheJournal journal;
+
+    public ThreadSnapshotStore(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+
+        executor.execute(this::load);
+    }
+
+    public static boolean canStore(Loadable loadable) {
+        return loadable.isThreadMode() && loadable.id != 0;
+    }
+
+    /**
+     * @return {@code false} if there is no snapshot of the thread. Before the index is loaded
+     * this is {@code true} for every thread that can be stored, {@link #read} tells.
+     */
+    @MainThread
+    public boolean has(Loadable loadable) {
+        if (!canStore(loadable)) {
+            return false;
+        }
+        if (!loaded) {
+            return true;
+        }
+        synchronized (entries) {
+            return entries.containsKey(name(loadable.id));
+        }
+    }
+
+    /**
+     * Read the snapshot file of a thread. A file that grew much larger than what it holds is
+     * compacted first.
+     *
+     * @param loadableId id of the loadable of the thread
+     * @param reader     gets the contents of the file, or {@code null} if there is none or it
+     *                   could not be read. Called on the thread of the store, decode the contents
+     *                   on another thread with {@link ThreadSnapshot#read}.
+     * @return a future of the read, cancel it to not call the reader.
+     */
+    public Future<?> read(final int loadableId, final SnapshotReader reader) {
+        return executor.submit(() -> reader.read(readFile(name(loadableId))));
+    }
+
+    /**
+     * Add the results of a load to the snapshot of the loadable.
+     *
+     * @param loadableId         id of the loadable of the thread
+     * @param first              {@code true} if the thread was loaded without cached posts, the
+     *                           snapshot is started over. Otherwise the posts are only added if
+     *                           there is a snapshot to add them to.
+     * @param posts              the posts that were new in this load, encoded with
+     *                           {@link ThreadSnapshot#encodePost(Post.Builder)}
+     * @param op                 the op builder of the load, with the op state
+     * @param deleted            no's of the posts that are deleted
+     * @param lastModifiedHeader Last-Modified of the response
+     * @param etag               ETag of the response
+     */
+    public void write(final int loadableId, final boolean first, final List<byte[]> posts,
+                      final Post.Builder op, final IntSet deleted,
+                      final String lastModifiedHeader, final String etag) {
+        if (loadableId == 0 || op == null) {
+            return;
+        }
+
+        final String name = name(loadableId);
+        executor.execute(() -> {
+            long validLength;
+            synchronized (entries) {
+                CacheJournal.Entry entry = entries.get(name);
+                if (!first && entry == null) {
+                    // Removed while the thread was open, the posts from before are gone.
+                    return;
+                }
+                validLength = first || entry == null ? 0 : entry.length;
+            }
+
+            long start = Time.startTiming();
+            File file = new File(directory, name);
+            journal(() -> journal.dirty(name));
+
+            boolean written = false;
+            DataOutputStream out = null;
+            try {
+                if (!directory.exists() && !directory.mkdirs()) {
+                    throw new IOException("Could not create " + directory);
+                }
+
+                if (!first) {
+                    truncate(file, validLength);
+                }
+                out = new DataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(file, !first)));
+                if (first) {
+                    ThreadSnapshot.writeHeader(out);
+                }
+                if (!posts.isEmpty()) {
+                    ThreadSnapshot.writePostsBlock(out, posts);
+                }
+                ThreadSnapshot.writeStateBlock(out, op, deleted, lastModifiedHeader, etag);
+                out.flush();
+                written = true;
+            } catch (IOException e) {
+                Logger.e(TAG, "Error writing snapshot " + name, e);
+            } finally {
+                IOUtils.closeQuietly(out);
+            }
+
+            if (written) {
+                put(name, file.length());
+                trim(name);
+            } else if (validLength > 0) {
+                // Keep what was there before, a read stops at the block that was cut off.
+                put(name, validLength);
+            } else {
+                remove(name);
+            }
+
+            if (LOG_TIMING) {
+                Time.endTiming("Write snapshot " + name + " with " + posts.size() + " posts", start);
+            }
+        });
+    }
+
+    public void remove(Loadable loadable) {
+        if (canStore(loadable)) {
+            final String name = name(loadable.id);
+            executor.execute(() -> remove(name));
+        }
+    }
+
+    /**
+     * Remove all snapshots.
+     *
+     * @return a future that is done when the files are removed.
+     */
+    public Future<?> clear() {
+        return executor.submit(() -> {
+            List<String> names;
+            synchronized (entries) {
+                names = new ArrayList<>(entries.keySet());
+                entries.clear();
+                size = 0;
+            }
+            for (String name : names) {
+                delete(new File(directory, name));
+            }
+            journal(() -> journal.remove(names));
+        });
+    }
+
+    private static String name(int loadableId) {
+        return loadableId + EXTENSION;
+    }
+
+    @WorkerThread
+    private byte[] readFile(String name) {
+        CacheJournal.Entry entry;
+        synchronized (entries) {
+            entry = entries.get(name);
+        }
+        if (entry == null) {
+            return null;
+        }
+
+        long start = Time.startTiming();
+        File file = new File(directory, name);
+        byte[] data;
+        byte[] compacted;
+        try {
+            // Past the length of the last complete write is a write that didn't finish. A file
+            // that was compacted is shorter than its entry until the journal has the new length.
+            long length = Math.min(file.length(), entry.length);
+            if (length > maxSize) {
+                throw new IOException("Snapshot larger than the store");
+            }
+            data = new byte[(int) length];
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try {
+                in.readFully(data);
+            } finally {
+                in.close();
+            }
+
+            compacted = ThreadSnapshot.compact(data);
+        } catch (IOException e) {
+            Logger.e(TAG, "Error reading snapshot " + name, e);
+            remove(name);
+            return null;
+        }
+
+        if (compacted != null) {
+            replace(name, compacted);
+            data = compacted;
+        }
+
+        long time = Time.get();
+        synchronized (entries) {
+            entry.lastAccess = time;
+        }
+        journal(() -> journal.read(Collections.singletonMap(name, time)));
+
+        if (LOG_TIMING) {
+            Time.endTiming("Read snapshot " + name, start);
+        }
+        return data;
+    }
+
+    /**
+     * Replace the file by the compacted one, with a rename so that there is always a complete
+     * snapshot.
+     */
+    @WorkerThread
+    private void replace(String name, byte[] compacted) {
+        File file = new File(directory, name);
+        File temporary = new File(directory, name + TEMPORARY_EXTENSION);
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(temporary);
+            out.write(compacted);
+            out.close();
+            out = null;
+            if (!temporary.renameTo(file)) {
+                throw new IOException("Could not rename " + temporary.getName());
+            }
+        } catch (IOException e) {
+            Logger.e(TAG, "Error compacting snapshot " + name, e);
+            delete(temporary);
+            return;
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+
+        put(name, compacted.length);
+    }
+
+    @WorkerThread
+    private void put(String name, long length) {
+        long time = Time.get();
+        synchronized (entries) {
+            CacheJournal.Entry previous = entries.put(name, new CacheJournal.Entry(name, length, time, null));
+            size += length - (previous == null ? 0 : previous.length);
+        }
+        journal(() -> journal.clean(name, length, time));
+    }
+
+    @WorkerThread
+    private void remove(String name) {
+        synchronized (entries) {
+            CacheJournal.Entry removed = entries.remove(name);
+            if (removed != null) {
+                size -= removed.length;
+            }
+        }
+        delete(new File(directory, name));
+        journal(() -> journal.remove(name));
+    }
+
+    /**
+     * Remove the least recently used snapshots until the directory is under the maximum size.
+     *
+     * @param keep the snapshot that was just written, never removed.
+     */
+    @WorkerThread
+    private void trim(String keep) {
+        List<String> removed = new ArrayList<>();
+        synchronized (entries) {
+            Iterator<CacheJournal.Entry> iterator = entries.values().iterator();
+            while (size > maxSize && iterator.hasNext()) {
+                CacheJournal.Entry entry = iterator.next();
+                if (!entry.name.equals(keep)) {
+                    iterator.remove();
+                    size -= entry.length;
+                    removed.add(entry.name);
+                }
+            }
+        }
+
+        if (!removed.isEmpty()) {
+            for (String name : removed) {
+                delete(new File(directory, name));
+            }
+            journal(() -> journal.remove(removed));
+        }
+    }
+
+    @WorkerThread
+    private void load() {
+        long start = Time.startTiming();
+
+        journal = new CacheJournal(directory);
+        LinkedHashMap<String, CacheJournal.Entry> read = new LinkedHashMap<>(16, 0.75f, true);
+        Set<String> unfinished = new HashSet<>();
+        boolean valid;
+        try {
+            valid = journal.read(read, unfinished);
+        } catch (IOException e) {
+            Logger.e(TAG, "Error reading the snapshot journal", e);
+            valid = false;
+        }
+
+        if (!valid) {
+            // No journal to say which snapshots are complete, start empty.
+            read.clear();
+            unfinished.clear();
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    delete(file);
+                }
+            }
+        }
+
+        for (String name : unfinished) {
+            File file = new File(directory, name);
+            CacheJournal.Entry entry = read.get(name);
+            if (entry == null) {
+                // The first write didn't finish.
+                delete(file);
+            } else {
+                try {
+                    truncate(file, entry.length);
+                } catch (IOException e) {
+                    Logger.e(TAG, "Error truncating snapshot " + name, e);
+                    read.remove(name);
+                    delete(file);
+                }
+            }
+        }
+
+        long readSize = 0;
+        for (CacheJournal.Entry entry : read.values()) {
+            readSize += entry.length;
+        }
+        int count;
+        boolean over;
+        synchronized (entries) {
+            entries.putAll(read);
+            size = readSize;
+            count = entries.size();
+            over = size > maxSize;
+        }
+
+        if (!valid || !unfinished.isEmpty() || journal.needsRebuild(count)) {
+            rebuildJournal();
+        }
+
+        loaded = true;
+
+        if (over) {
+            trim(null);
+        }
+
+        if (LOG_TIMING) {
+            Time.endTiming("Load snapshot journal with " + count + " snapshots", start);
+        }
+    }
+
+    @WorkerThread
+    private void journal(JournalWrite write) {
+        try {
+            write.write();
+        } catch (IOException e) {
+            Logger.e(TAG, "Error writing the snapshot journal", e);
+            rebuildJournal();
+            return;
+        }
+
+        int count;
+        synchronized (entries) {
+            count = entries.size();
+        }
+        if (journal.needsRebuild(count)) {
+            rebuildJournal();
+        }
+    }
+
+    @WorkerThread
+    private void rebuildJournal() {
+        List<CacheJournal.Entry> current;
+        synchronized (entries) {
+            current = new ArrayList<>(entries.size());
+            for (CacheJournal.Entry entry : entries.values()) {
+                current.add(new CacheJournal.Entry(entry.name, entry.length, entry.lastAccess, null));
+            }
+        }
+
+        try {
+            journal.rebuild(current, Collections.<String>emptyList());
+        } catch (IOException e) {
+            Logger.e(TAG, "Error rebuilding the snapshot journal", e);
+        }
+    }
+
+    /**
+     * Cut off what a write that didn't finish left after the given length.
+     */
+    @WorkerThread
+    private static void truncate(File file, long length) throws IOException {
+        if (file.length() > length) {
+            RandomAccessFile out = new RandomAccessFile(file, "rw");
+            try {
+                out.setLength(length);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    @WorkerThread
+    private void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            Logger.e(TAG, "Could not delete snapshot " + file.getName());
+        }
+    }
+
+    public interface SnapshotReader {
+        void read(byte[] data);
+    }
+
+    private interface JournalWrite {
+        void write() throws IOException;
+    }
+}
@@ -0,0 +1,507 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.cache;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+import androidx.annotation.MainThread;
+import androidx.annotation.WorkerThread;
+
+import org.floens.chan.core.settings.ChanSettings;
+import org.floens.chan.utils.IOUtils;
+import org.floens.chan.utils.ImageDecoder;
+import org.floens.chan.utils.Logger;
+import org.floens.chan.utils.Time;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Loads the thumbnails of the {@link org.floens.chan.ui.view.ThumbnailView}s.
+ * <p>
+ * A thumbnail is downloaded once, scaled down to the size it is shown at and stored in a disk
+ * cache of its own. Loading it again decodes the small file. Decoded thumbnails are kept in
+ * memory, and a thumbnail that fell out of memory and is not shown anymore gives its bitmap to the
+ * {@link BitmapPool}, to decode the next one into.
+ * <p>
+ * Loads of the same thumbnail at the same size share one request. A request that did not start
+ * when all of its loads were cancelled is dropped, one that started finishes and is cached. The
+ * newest request runs first, during a fling the thumbnails that are in view load before the ones
+ * that scrolled by.
+ */
+@MainThread
+public class ThumbnailCache {
+    private static final String TAG = "ThumbnailCache";
+    private static final boolean LOG_TIMING = false;
+    private static final int THREADS = 3;
+    private static final int JPEG_QUALITY = 90;
+
+    private final OkHttpClient httpClient;
+    private final String userAgent;
+    private final CacheHandler diskCache;
+    private final BitmapPool bitmapPool;
+    private final LruCache<String, Entry> memoryCache;
+    private final ThreadPoolExecutor executor;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final Map<String, Request> requests = new HashMap<>();
+
+    // Metrics.
+    private long memoryHits;
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong downloads = new AtomicLong();
+    private long coalesced;
+    private long cancelled;
+
+    /**
+     * @param maxMemorySize the size of the decoded thumbnails in memory, in kilobytes
+     */
+    public ThumbnailCache(OkHttpClient httpClient, File directory, long maxDiskSize,
+                          int maxMemorySize, BitmapPool bitmapPool, String userAgent) {
+        this.httpClient = httpClient;
+        this.userAgent = userAgent;
+        this.bitmapPool = bitmapPool;
+
+        diskCache = new CacheHandler(directory, maxDiskSize);
+
+        memoryCache = new LruCache<String, Entry>(maxMemorySize) {
+            @Override
+            protected int sizeOf(String key, Entry entry) {
+                return entry.bitmap.getRowBytes() * entry.bitmap.getHeight() / 1024;
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Entry oldValue, Entry newValue) {
+                oldValue.cached = false;
+                oldValue.poolIfUnused();
+            }
+        };
+
+        // Last in, first out.
+        executor = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingDeque<Runnable>() {
+                    @Override
+                    public boolean offer(Runnable runnable) {
+                        return offerFirst(runnable);
+                    }
+                }, new ThumbnailThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Load the thumbnail at the url, scaled to cover the size. A size of 0 loads it as is.
+     * <p>
+     * The listener is called on the main thread, right away if the thumbnail is in memory. The
+     * bitmap it gets is drawn until the ticket is cancelled, it may be reused after that.
+     *
+     * @return the ticket to cancel the load with, or to release the bitmap when it was loaded
+     */
+    public Ticket load(String url, int width, int height, Listener listener) {
+        String key = url + "@" + width + "x" + height;
+        Ticket ticket = new Ticket(url, listener);
+
+        Entry entry = memoryCache.get(key);
+        if (entry != null) {
+            memoryHits++;
+            ticket.deliver(entry, true);
+            return ticket;
+        }
+
+        Request request = requests.get(key);
+        if (request != null) {
+            coalesced++;
+        } else {
+            boolean cached = diskCache.exists(key);
+            File file = diskCache.get(key);
+            if (!cached) {
+                diskCache.fileWillBeAdded(file);
+            }
+            request = new Request(key, url, width, height, file, cached);
+            requests.put(key, request);
+            executor.execute(request);
+        }
+
+        ticket.request = request;
+        request.tickets.add(ticket);
+        return ticket;
+    }
+
+    public String getSummary() {
+        return "Memory: " + (memoryCache.size() / 1024) + "/" + (memoryCache.maxSize() / 1024) + "MB" +
+                ", requests " + requests.size() + ", queued " + executor.getQueue().size() + "\n" +
+                "Memory hits " + memoryHits + ", disk hits " + diskHits + ", downloads " + downloads +
+                ", coalesced " + coalesced + ", cancelled " + cancelled + "\n" +
+                bitmapPool.getSummary();
+    }
+
+    private void requestCancelled(Request request) {
+        if (request.started.compareAndSet(false, true)) {
+            executor.remove(request);
+            requests.remove(request.key);
+            if (!request.cached) {
+                diskCache.fileWasNotAdded(request.file);
+            }
+            cancelled++;
+        }
+    }
+
+    private void requestFinished(Request request, Bitmap bitmap, long written, boolean serverError) {
+        requests.remove(request.key);
+
+        if (!request.cached) {
+            if (written >= 0) {
+                diskCache.fileWasAdded(request.file, written);
+            } else {
+                diskCache.fileWasNotAdded(request.file);
+            }
+        }
+
+        List<Ticket> tickets = new ArrayList<>(request.tickets);
+        request.tickets.clear();
+        if (bitmap != null) {
+            Entry entry = new Entry(bitmap);
+            // Used before it is cached, so that it isn't pooled if it doesn't fit.
+            for (Ticket ticket : tickets) {
+                ticket.deliver(entry, false);
+            }
+            memoryCache.put(request.key, entry);
+        } else {
+            for (Ticket ticket : tickets) {
+                ticket.fail(serverError);
+            }
+        }
+    }
+
+    @WorkerThread
+    private void execute(Request request) {
+        long start = Time.startTiming();
+
+        Bitmap bitmap = null;
+        long written = -1;
+        boolean serverError = false;
+        try {
+            if (request.cached) {
+                bitmap = decodeFile(request.file);
+                if (bitmap == null) {
+                    Logger.w(TAG, "Could not decode cached thumbnail " + request.url);
+                } else {
+                    diskHits.incrementAndGet();
+                }
+            }
+
+            if (bitmap == null) {
+                downloads.incrementAndGet();
+                bitmap = decodeScaled(download(request.url), request.width, request.height);
+                if (bitmap == null) {
+                    throw new IOException("Could not decode thumbnail");
+                }
+
+                if (!request.cached) {
+                    written = write(bitmap, request.file);
+                }
+            }
+        } catch (ResumableDownload.HttpCodeException e) {
+            Logger.e(TAG, "Thumbnail http error " + e.code + " for " + request.url);
+            serverError = true;
+        } catch (IOException | OutOfMemoryError e) {
+            Logger.e(TAG, "Could not load thumbnail " + request.url, e);
+        }
+
+        if (LOG_TIMING) {
+            Time.endTiming("Thumbnail " + request.key + (request.cached ? " from disk" : ""), start);
+        }
+
+        Bitmap result = bitmap;
+        long resultWritten = written;
+        boolean resultServerError = serverError;
+        handler.post(() -> requestFinished(request, result, resultWritten, resultServerError));
+    }
+
+    @WorkerThread
+    private byte[] download(String url) throws IOException {
+        Call call = httpClient.newBuilder()
+                .proxy(ChanSettings.getProxy())
+                .build()
+                .newCall(new okhttp3.Request.Builder()
+                        .url(url)
+                        .header("User-Agent", userAgent)
+                        .build());
+        Response response = call.execute();
+        try {
+            if (!response.isSuccessful()) {
+                throw new ResumableDownload.HttpCodeException(response.code());
+            }
+            ResponseBody body = response.body();
+            if (body == null) {
+                throw new IOException("body == null");
+            }
+            return body.bytes();
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Decode a thumbnail that was stored at its size, into a bitmap from the pool.
+     */
+    @WorkerThread
+    private Bitmap decodeFile(File file) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+        options.inBitmap = bitmapPool.get(options.outWidth, options.outHeight, Bitmap.Config.ARGB_8888);
+        try {
+            return BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap could not be decoded into.
+            bitmapPool.put(options.inBitmap);
+            options.inBitmap = null;
+            return BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+        }
+    }
+
+    /**
+     * Decode a downloaded thumbnail scaled to cover the size, never larger than it is.
+     */
+    @WorkerThread
+    private Bitmap decodeScaled(byte[] data, int width, int height) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        int actualWidth = options.outWidth;
+        int actualHeight = options.outHeight;
+        if (actualWidth <= 0 || actualHeight <= 0) {
+            return null;
+        }
+
+        float scale = width <= 0 || height <= 0 ? 1f :
+                Math.min(1f, Math.max((float) width / actualWidth, (float) height / actualHeight));
+        int targetWidth = Math.max(1, Math.round(actualWidth * scale));
+        int targetHeight = Math.max(1, Math.round(actualHeight * scale));
+
+        // Decode to the power of two that is still larger, and scale the rest.
+        int sampleSize = 1;
+        while (actualWidth / (sampleSize * 2) >= targetWidth && actualHeight / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+        options.inSampleSize = sampleSize;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT || sampleSize == 1) {
+            options.inBitmap = bitmapPool.get((actualWidth + sampleSize - 1) / sampleSize,
+                    (actualHeight + sampleSize - 1) / sampleSize, Bitmap.Config.ARGB_8888);
+        }
+
+        Bitmap sampled;
+        try {
+            sampled = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        } catch (IllegalArgumentException e) {
+            bitmapPool.put(options.inBitmap);
+            options.inBitmap = null;
+            sampled = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+        if (sampled == null || (sampled.getWidth() == targetWidth && sampled.getHeight() == targetHeight)) {
+            return sampled;
+        }
+
+        return ImageDecoder.scale(sampled, targetWidth, targetHeight, bitmapPool);
+    }
+
+    /**
+     * @return the length of the file, or -1 if it could not be written
+     */
+    @WorkerThread
+    private long write(Bitmap bitmap, File file) {
+        File temporary = CacheHandler.getTemporaryFile(file);
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(temporary);
+            Bitmap.CompressFormat format = bitmap.hasAlpha() ?
+                    Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG;
+            if (!bitmap.compress(format, JPEG_QUALITY, out)) {
+                throw new IOException("Could not compress");
+            }
+            out.close();
+            out = null;
+
+            if (!temporary.renameTo(file)) {
+                throw new IOException("Could not rename the temporary file");
+            }
+            return file.length();
+        } catch (IOException e) {
+            Logger.e(TAG, "Could not store thumbnail " + file.getName(), e);
+            return -1;
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * A decoded thumbnail, with the tickets it was delivered to that didn't cancel yet.
+     */
+    private class Entry {
+        private final Bitmap bitmap;
+        private int users;
+        private boolean cached = true;
+
+        private Entry(Bitmap bitmap) {
+            this.bitmap = bitmap;
+        }
+
+        private void poolIfUnused() {
+            if (users == 0 && !cached) {
+                bitmapPool.put(bitmap);
+            }
+        }
+    }
+
+    private class Request implements Runnable {
+        private final String key;
+        private final String url;
+        private final int width;
+        private final int height;
+        private final File file;
+        // Decoded from the file, otherwise downloaded and written to the file.
+        private final boolean cached;
+
+        private final List<Ticket> tickets = new ArrayList<>(1);
+        // Set when it runs, or when it is cancelled before that.
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        private Request(String key, String url, int width, int height, File file, boolean cached) {
+            this.key = key;
+            this.url = url;
+            this.width = width;
+            this.height = height;
+            this.file = file;
+            this.cached = cached;
+        }
+
+        @Override
+        public void run() {
+            if (started.compareAndSet(false, true)) {
+                execute(this);
+            }
+        }
+    }
+
+    public class Ticket {
+        private final String url;
+        private Listener listener;
+        private Request request;
+        private Entry entry;
+
+        private Ticket(String url, Listener listener) {
+            this.url = url;
+            this.listener = listener;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * Stop the load, or release the bitmap if it was loaded. The listener is not called
+         * anymore, the bitmap must not be drawn anymore.
+         */
+        public void cancel() {
+            listener = null;
+
+            if (request != null) {
+                request.tickets.remove(this);
+                if (request.tickets.isEmpty()) {
+                    requestCancelled(request);
+                }
+                request = null;
+            }
+
+            if (entry != null) {
+                entry.users--;
+                entry.poolIfUnused();
+                entry = null;
+            }
+        }
+
+        private void deliver(Entry entry, boolean immediate) {
+            request = null;
+            if (listener == null) {
+                // Cancelled by a listener of the same request.
+                return;
+            }
+            this.entry = entry;
+            entry.users++;
+            listener.onThumbnail(entry.bitmap, immediate);
+        }
+
+        private void fail(boolean serverError) {
+            request = null;
+            if (listener == null) {
+                return;
+            }
+            listener.onThumbnailError(serverError);
+        }
+    }
+
+    public interface Listener {
+        void onThumbnail(Bitmap bitmap, boolean immediate);
+
+        /**
+         * @param serverError {@code true} if the server answered with an error, otherwise the
+         *                    thumbnail could not be downloaded or decoded
+         */
+        void onThumbnailError(boolean serverError);
+    }
+
+    private static class ThumbnailThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, "ThumbnailCache-" + count.incrementAndGet());
+        }
+    }
+}
@@ -151,7 +151,7 @@ public class DatabaseBoardManager {
     }
 
     public Callable<Board> getBoard(final Site site, final String code) {
-        return () -> {
+        return DatabaseManager.read(() -> {
             Board board = helper.boardsDao.queryBuilder()
                     .where().eq("site", site.id())
                     .and().eq("value", code)
@@ -162,12 +162,12 @@ public class DatabaseBoardManager {
             }
 
             return board;
-        };
+        });
     }
 
     @SuppressLint("UseSparseArrays")
     public Callable<List<Pair<Site, List<Board>>>> getBoardsForAllSitesOrdered(List<Site> sites) {
-        return () -> {
+        return DatabaseManager.read(() -> {
             long start = Time.startTiming();
 
             // Query the orders of the sites.
@@ -229,11 +229,11 @@ public class DatabaseBoardManager {
             start = Time.startTiming();
 
             return res;
-        };
+        });
     }
 
     public Callable<List<Board>> getSiteBoards(final Site site) {
-        return () -> {
+        return DatabaseManager.read(() -> {
             List<Board> boards = helper.boardsDao.queryBuilder()
                     .where().eq("site", site.id())
                     .query();
@@ -242,11 +242,11 @@ public class DatabaseBoardManager {
                 board.site = site;
             }
             return boards;
-        };
+        });
     }
 
     public Callable<List<Board>> getSiteSavedBoards(final Site site) {
-        return () -> {
+        return DatabaseManager.read(() -> {
             List<Board> boards = helper.boardsDao.queryBuilder()
                     .where().eq("site", site.id())
                     .and().eq("saved", true)
@@ -256,6 +256,6 @@ public class DatabaseBoardManager {
                 board.site = site;
             }
             return boards;
-        };
+        });
     }
 }
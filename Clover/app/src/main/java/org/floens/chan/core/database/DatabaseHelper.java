@@ -63,6 +63,9 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
 
         this.context = context;
 
+        // Reads on the reader threads of the DatabaseManager don't wait for a write in progress.
+        setWriteAheadLoggingEnabled(true);
+
         try {
             pinDao = getDao(Pin.class);
             loadableDao = getDao(Loadable.class);
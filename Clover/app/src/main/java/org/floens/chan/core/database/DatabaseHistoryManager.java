@@ -21,8 +21,10 @@ import com.j256.ormlite.stmt.QueryBuilder;
 import com.j256.ormlite.table.TableUtils;
 
 import org.floens.chan.core.model.orm.History;
+import org.floens.chan.core.model.orm.Loadable;
 import org.floens.chan.utils.Time;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
 
@@ -54,18 +56,24 @@ public class DatabaseHistoryManager {
     }
 
     public Callable<List<History>> getHistory() {
-        return new Callable<List<History>>() {
+        return DatabaseManager.read(new Callable<List<History>>() {
             @Override
             public List<History> call() throws Exception {
                 QueryBuilder<History, Integer> historyQuery = helper.historyDao.queryBuilder();
                 List<History> date = historyQuery.orderBy("date", false).query();
+
+                List<Loadable> loadables = new ArrayList<>(date.size());
+                for (int i = 0; i < date.size(); i++) {
+                    loadables.add(date.get(i).loadable);
+                }
+                databaseLoadableManager.refreshForeign(loadables);
                 for (int i = 0; i < date.size(); i++) {
-                    History history = date.get(i);
-                    history.loadable = databaseLoadableManager.refreshForeign(history.loadable);
+                    date.get(i).loadable = loadables.get(i);
                 }
+
                 return date;
             }
-        };
+        });
     }
 
     public Callable<History> addHistory(final History history) {
@@ -29,17 +29,24 @@ import org.floens.chan.utils.Time;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 
 public class DatabaseLoadableManager {
     private static final String TAG = "DatabaseLoadableManager";
 
+    // Below the sqlite limit of 999 variables in one statement.
+    private static final int MAX_IN_QUERY_IDS = 500;
+
     private DatabaseManager databaseManager;
     private DatabaseHelper helper;
 
-    private Map<Loadable, Loadable> cachedLoadables = new HashMap<>();
+    // Guarded by cachedLoadables, the reads of pins and history fill them from the reader threads.
+    private final Map<Loadable, Loadable> cachedLoadables = new HashMap<>();
+    private final Map<Integer, Loadable> cachedLoadablesById = new HashMap<>();
 
     public DatabaseLoadableManager(DatabaseManager databaseManager, DatabaseHelper helper) {
         this.databaseManager = databaseManager;
@@ -55,10 +62,12 @@ public class DatabaseLoadableManager {
             @Override
             public Void call() throws Exception {
                 List<Loadable> toFlush = new ArrayList<>();
-                for (Loadable loadable : cachedLoadables.values()) {
-                    if (loadable.dirty) {
-                        loadable.dirty = false;
-                        toFlush.add(loadable);
+                synchronized (cachedLoadables) {
+                    for (Loadable loadable : cachedLoadables.values()) {
+                        if (loadable.dirty) {
+                            loadable.dirty = false;
+                            toFlush.add(loadable);
+                        }
                     }
                 }
 
@@ -115,19 +124,61 @@ public class DatabaseLoadableManager {
             throw new IllegalArgumentException("This only works loadables that have their id loaded");
         }
 
-        // If the loadable was already loaded in the cache, return that entry
-        for (Loadable key : cachedLoadables.keySet()) {
-            if (key.id == loadable.id) {
-                return key;
+        synchronized (cachedLoadables) {
+            // If the loadable was already loaded in the cache, return that entry
+            Loadable cachedLoadable = cachedLoadablesById.get(loadable.id);
+            if (cachedLoadable != null) {
+                return cachedLoadable;
             }
+
+            // Add it to the cache, refresh contents
+            helper.loadableDao.refresh(loadable);
+            cache(loadable);
+            return loadable;
         }
+    }
 
-        // Add it to the cache, refresh contents
-        helper.loadableDao.refresh(loadable);
-        loadable.site = SiteRepository.forId(loadable.siteId);
-        loadable.board = loadable.site.board(loadable.boardCode);
-        cachedLoadables.put(loadable, loadable);
-        return loadable;
+    /**
+     * Like {@link #refreshForeign(Loadable)}, for the loadables of all rows of a table at once.
+     * <p>The loadables that are not cached yet are loaded with a query per {@link #MAX_IN_QUERY_IDS} ids,
+     * instead of a query per row.
+     *
+     * @param loadables Loadables that only have their id loaded, replaced by the loadables ready to use.
+     * @throws SQLException
+     */
+    public void refreshForeign(final List<Loadable> loadables) throws SQLException {
+        synchronized (cachedLoadables) {
+            List<Integer> missing = new ArrayList<>();
+            Set<Integer> missingSet = new HashSet<>();
+            for (int i = 0; i < loadables.size(); i++) {
+                int id = loadables.get(i).id;
+                if (id == 0) {
+                    throw new IllegalArgumentException("This only works loadables that have their id loaded");
+                }
+
+                if (!cachedLoadablesById.containsKey(id) && missingSet.add(id)) {
+                    missing.add(id);
+                }
+            }
+
+            for (int i = 0; i < missing.size(); i += MAX_IN_QUERY_IDS) {
+                List<Integer> ids = missing.subList(i, Math.min(missing.size(), i + MAX_IN_QUERY_IDS));
+                List<Loadable> results = helper.loadableDao.queryBuilder().where().in("id", ids).query();
+                for (int j = 0; j < results.size(); j++) {
+                    cache(results.get(j));
+                }
+            }
+
+            for (int i = 0; i < loadables.size(); i++) {
+                Loadable loadable = loadables.get(i);
+                Loadable cachedLoadable = cachedLoadablesById.get(loadable.id);
+                if (cachedLoadable != null) {
+                    loadables.set(i, cachedLoadable);
+                } else {
+                    Logger.w(TAG, "Loadable " + loadable.id + " not found");
+                }
+            }
+        }
     }
 
     private Callable<Loadable> getLoadable(final Loadable loadable) {
@@ -138,41 +189,51 @@ public class DatabaseLoadableManager {
         return new Callable<Loadable>() {
             @Override
             public Loadable call() throws Exception {
-                Loadable cachedLoadable = cachedLoadables.get(loadable);
-                if (cachedLoadable != null) {
-                    Logger.v(TAG, "Cached loadable found");
-                    return cachedLoadable;
-                } else {
-                    QueryBuilder<Loadable, Integer> builder = helper.loadableDao.queryBuilder();
-                    List<Loadable> results = builder.where()
-                            .eq("site", loadable.siteId).and()
-                            .eq("mode", loadable.mode)
-                            .and().eq("board", loadable.boardCode)
-                            .and().eq("no", loadable.no)
-                            .query();
-
-                    if (results.size() > 1) {
-                        Log.w(TAG, "Multiple loadables found for where Loadable.equals() would return true");
-                        for (Loadable result : results) {
-                            Log.w(TAG, result.toString());
+                synchronized (cachedLoadables) {
+                    Loadable cachedLoadable = cachedLoadables.get(loadable);
+                    if (cachedLoadable != null) {
+                        Logger.v(TAG, "Cached loadable found");
+                        return cachedLoadable;
+                    } else {
+                        QueryBuilder<Loadable, Integer> builder = helper.loadableDao.queryBuilder();
+                        List<Loadable> results = builder.where()
+                                .eq("site", loadable.siteId).and()
+                                .eq("mode", loadable.mode)
+                                .and().eq("board", loadable.boardCode)
+                                .and().eq("no", loadable.no)
+                                .query();
+
+                        if (results.size() > 1) {
+                            Log.w(TAG, "Multiple loadables found for where Loadable.equals() would return true");
+                            for (Loadable result : results) {
+                                Log.w(TAG, result.toString());
+                            }
                         }
-                    }
 
-                    Loadable result = results.isEmpty() ? null : results.get(0);
-                    if (result == null) {
-                        Log.d(TAG, "Creating loadable");
-                        helper.loadableDao.create(loadable);
-                        result = loadable;
-                    } else {
-                        Log.d(TAG, "Loadable found in db");
-                        result.site = SiteRepository.forId(result.siteId);
-                        result.board = result.site.board(result.boardCode);
-                    }
+                        Loadable result = results.isEmpty() ? null : results.get(0);
+                        if (result == null) {
+                            Log.d(TAG, "Creating loadable");
+                            helper.loadableDao.create(loadable);
+                            result = loadable;
+                            cachedLoadables.put(result, result);
+                            cachedLoadablesById.put(result.id, result);
+                        } else {
+                            Log.d(TAG, "Loadable found in db");
+                            cache(result);
+                        }
 
-                    cachedLoadables.put(result, result);
-                    return result;
+                        return result;
+                    }
                 }
             }
         };
     }
+
+    // Call with the cachedLoadables lock held.
+    private void cache(Loadable loadable) {
+        loadable.site = SiteRepository.forId(loadable.siteId);
+        loadable.board = loadable.site.board(loadable.boardCode);
+        cachedLoadables.put(loadable, loadable);
+        cachedLoadablesById.put(loadable.id, loadable);
+    }
 }
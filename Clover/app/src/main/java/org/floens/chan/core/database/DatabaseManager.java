@@ -31,14 +31,18 @@ import org.floens.chan.utils.Logger;
 import org.floens.chan.utils.Time;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -47,18 +51,50 @@ import de.greenrobot.event.EventBus;
 
 /**
  * The central point for database related access.<br>
- * <b>All database queries are run on a single database thread</b>, therefor all functions return a
- * {@link Callable} that needs to be queued on either {@link #runTaskAsync(Callable)},
- * {@link #runTaskAsync(Callable, TaskResult)} or {@link #runTask(Callable)}.<br>
+ * All functions return a {@link Callable} that needs to be queued on either
+ * {@link #runTaskAsync(Callable)}, {@link #runTaskAsync(Callable, TaskResult)} or
+ * {@link #runTask(Callable)}.<br>
  * You often want the sync flavour for queries that return data, it waits for the task to be finished on the other thread.<br>
  * Use the async versions when you don't care when the query is done.
+ * <p>
+ * <b>All writes are run on a single database thread</b>, each in a transaction. Writes that
+ * were queued async and are waiting together run in one transaction, each in a savepoint so that
+ * a failing write doesn't take the others with it. Queries that only read are wrapped with
+ * {@link #read(Callable)}, they run on a small pool of reader threads without a transaction, the
+ * database is in WAL mode so they don't wait for the writes. A read waits for the async writes
+ * that the same thread queued before it, it sees them, but not for the writes of other threads.
+ * A read with more than one query may see a write that happened in between.
  */
 @Singleton
 public class DatabaseManager {
     private static final String TAG = "DatabaseManager";
 
-    private final ExecutorService backgroundExecutor;
-    private Thread executorThread;
+    private static final int READER_THREADS = 2;
+
+    private final ExecutorService writeExecutor;
+    private final ThreadPoolExecutor readExecutor;
+    // Async writes waiting for the writer, guarded by itself.
+    private final List<DatabaseTask<?>> pendingWrites = new ArrayList<>();
+    private boolean pendingWritesScheduled;
+    // The last async write of every thread, a read of that thread waits for it.
+    private final ThreadLocal<DatabaseTask<?>> lastAsyncWrite = new ThreadLocal<>();
+    // Writes queued on the writer that didn't finish yet.
+    private final AtomicInteger outstandingWrites = new AtomicInteger();
+
+    // Metrics.
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong readsDuringWrites = new AtomicLong();
+    private final AtomicLong readsAfterOwnWrite = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong asyncWrites = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failedBatchWrites = new AtomicLong();
+    private final AtomicInteger maxPendingWrites = new AtomicInteger();
+    private final AtomicLong readWaitNanos = new AtomicLong();
+    private final AtomicLong writeWaitNanos = new AtomicLong();
+    private final AtomicLong mainThreadWaits = new AtomicLong();
+    private final AtomicLong mainThreadWaitNanos = new AtomicLong();
+
     private final DatabaseHelper helper;
 
     private final DatabasePinManager databasePinManager;
@@ -72,10 +108,15 @@ public class DatabaseManager {
 
     @Inject
     public DatabaseManager(Context context) {
-        backgroundExecutor = new ThreadPoolExecutor(
+        writeExecutor = new ThreadPoolExecutor(
                 1, 1,
                 1000L, TimeUnit.DAYS,
-                new LinkedBlockingQueue<>());
+                new LinkedBlockingQueue<>(), new DatabaseThreadFactory(true));
+        readExecutor = new ThreadPoolExecutor(
+                READER_THREADS, READER_THREADS,
+                30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new DatabaseThreadFactory(false));
+        readExecutor.allowCoreThreadTimeOut(true);
 
         helper = new DatabaseHelper(context);
 
@@ -174,6 +215,29 @@ public class DatabaseManager {
         return o;
     }
 
+    /**
+     * Summary of the database threads, for the developer screen.
+     */
+    public String getTaskSummary() {
+        int pending;
+        synchronized (pendingWrites) {
+            pending = pendingWrites.size();
+        }
+        long readCount = reads.get();
+        long writeCount = writes.get() + asyncWrites.get();
+        long waits = mainThreadWaits.get();
+        return "Reads: " + readCount + ", avg wait " +
+                (readCount == 0 ? 0 : readWaitNanos.get() / readCount / 1_000_000L) + "ms, " +
+                readsDuringWrites.get() + " while writing, " +
+                readsAfterOwnWrite.get() + " after their own write\n" +
+                "Writes: " + writes.get() + " sync, " + asyncWrites.get() + " async, avg wait " +
+                (writeCount == 0 ? 0 : writeWaitNanos.get() / writeCount / 1_000_000L) + "ms\n" +
+                "Async batches: " + batches.get() + ", failed writes " + failedBatchWrites.get() +
+                ", pending " + pending + " (max " + maxPendingWrites.get() + ")\n" +
+                "Main thread waits: " + waits + ", avg " +
+                (waits == 0 ? 0 : mainThreadWaitNanos.get() / waits / 1_000_000L) + "ms\n";
+    }
+
     /**
      * Trim a table with the specified trigger and trim count.
      *
@@ -195,85 +259,308 @@ public class DatabaseManager {
         }
     }
 
+    /**
+     * Mark a task that only reads, it runs on a reader thread.
+     */
+    public static <T> Callable<T> read(Callable<T> taskCallable) {
+        return new ReadTask<>(taskCallable);
+    }
+
     public <T> void runTaskAsync(final Callable<T> taskCallable) {
         runTaskAsync(taskCallable, result -> {
         });
     }
 
     public <T> void runTaskAsync(final Callable<T> taskCallable, final TaskResult<T> taskResult) {
-        executeTask(taskCallable, taskResult);
+        DatabaseTask<T> task = new DatabaseTask<>(taskCallable, taskResult);
+        if (task.runsInline()) {
+            task.run();
+        } else if (task.read) {
+            queueRead(task);
+        } else {
+            asyncWrites.incrementAndGet();
+            task.queued();
+            lastAsyncWrite.set(task);
+            synchronized (pendingWrites) {
+                pendingWrites.add(task);
+                updateMax(maxPendingWrites, pendingWrites.size());
+                if (!pendingWritesScheduled) {
+                    pendingWritesScheduled = true;
+                    writeExecutor.execute(this::runPendingWrites);
+                }
+            }
+        }
     }
 
     public <T> T runTask(final Callable<T> taskCallable) {
+        DatabaseTask<T> task = new DatabaseTask<>(taskCallable, null);
+        if (task.runsInline()) {
+            task.run();
+        } else {
+            if (task.read) {
+                queueRead(task);
+            } else {
+                writes.incrementAndGet();
+                task.queued();
+                writeExecutor.execute(task);
+            }
+        }
+
+        boolean mainThread = Looper.myLooper() == Looper.getMainLooper();
+        long start = mainThread ? System.nanoTime() : 0L;
         try {
-            return executeTask(taskCallable, null).get();
+            return task.get();
         } catch (InterruptedException | ExecutionException e) {
             throw new RuntimeException(e);
+        } finally {
+            if (mainThread) {
+                mainThreadWaits.incrementAndGet();
+                mainThreadWaitNanos.addAndGet(System.nanoTime() - start);
+            }
         }
     }
 
-    private <T> Future<T> executeTask(final Callable<T> taskCallable, final TaskResult<T> taskResult) {
-        if (Thread.currentThread() == executorThread) {
-            DatabaseCallable<T> databaseCallable = new DatabaseCallable<>(taskCallable, taskResult);
-            T result = databaseCallable.call();
+    // On the readers, after the last async write of this thread finished.
+    private void queueRead(DatabaseTask<?> task) {
+        DatabaseTask<?> write = lastAsyncWrite.get();
+        if (write == null || !write.runAfter(task)) {
+            lastAsyncWrite.remove();
+            readExecutor.execute(task);
+        } else {
+            readsAfterOwnWrite.incrementAndGet();
+        }
+    }
 
-            return new Future<T>() {
-                @Override
-                public boolean cancel(boolean mayInterruptIfRunning) {
-                    return false;
-                }
+    // On the writer thread.
+    private void runPendingWrites() {
+        List<DatabaseTask<?>> batch;
+        synchronized (pendingWrites) {
+            batch = new ArrayList<>(pendingWrites);
+            pendingWrites.clear();
+            pendingWritesScheduled = false;
+        }
 
-                @Override
-                public boolean isCancelled() {
-                    return false;
-                }
+        if (batch.size() == 1) {
+            batch.get(0).run();
+            return;
+        }
 
-                @Override
-                public boolean isDone() {
-                    return true;
+        batches.incrementAndGet();
+        try {
+            TransactionManager.callInTransaction(helper.getConnectionSource(), () -> {
+                SQLiteDatabase database = helper.getWritableDatabase();
+                for (int i = 0; i < batch.size(); i++) {
+                    database.execSQL("SAVEPOINT batch");
+                    if (!batch.get(i).callInBatch()) {
+                        // The leading ; keeps SQLiteSession from taking it for the end of the
+                        // transaction, SQLite skips the empty statement.
+                        database.execSQL(";ROLLBACK TO batch");
+                        failedBatchWrites.incrementAndGet();
+                    }
+                    database.execSQL("RELEASE batch");
                 }
+                return null;
+            });
+        } catch (SQLException e) {
+            // Nothing was written, none of them ran twice.
+            Logger.e(TAG, "Batch of " + batch.size() + " writes failed", e);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).failBatch(e);
+            }
+            return;
+        }
 
-                @Override
-                public T get() throws InterruptedException, ExecutionException {
-                    return result;
-                }
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).finishBatch();
+        }
+    }
 
-                @Override
-                public T get(long timeout, @NonNull TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-                    return result;
-                }
-            };
-        } else {
-            return backgroundExecutor.submit(new DatabaseCallable<>(taskCallable, taskResult));
+    private static void updateMax(AtomicInteger max, int value) {
+        int current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
         }
     }
 
-    private class DatabaseCallable<T> implements Callable<T> {
+    private static class ReadTask<T> implements Callable<T> {
         private final Callable<T> taskCallable;
-        private final TaskResult<T> taskResult;
 
-        public DatabaseCallable(Callable<T> taskCallable, TaskResult<T> taskResult) {
+        private ReadTask(Callable<T> taskCallable) {
             this.taskCallable = taskCallable;
-            this.taskResult = taskResult;
         }
 
         @Override
-        public T call() {
-            executorThread = Thread.currentThread();
+        public T call() throws Exception {
+            return taskCallable.call();
+        }
+    }
+
+    private class DatabaseTask<T> implements Runnable {
+        private final Callable<T> taskCallable;
+        private final TaskResult<T> taskResult;
+        private final boolean read;
+        private final long queuedNanos = System.nanoTime();
+
+        private FutureTask<T> future;
+        private boolean outstanding;
+        // Reads to queue once this write finished, guarded by this.
+        private boolean written;
+        private List<DatabaseTask<?>> readsAfter;
+        private T batchResult;
+        private Exception batchError;
+
+        public DatabaseTask(Callable<T> taskCallable, TaskResult<T> taskResult) {
+            this.taskCallable = taskCallable;
+            this.taskResult = taskResult;
+            read = taskCallable instanceof ReadTask;
+            future = newFuture();
+        }
 
+        /**
+         * Tasks that are queued from a database thread run right away, that thread waiting on
+         * another could deadlock. Reads only run right away on a reader, a write from a reader
+         * waits for the writer, the writer never waits on a reader.
+         */
+        boolean runsInline() {
+            Thread thread = Thread.currentThread();
+            return thread instanceof DatabaseThread && (read || ((DatabaseThread) thread).writer);
+        }
+
+        // Queued on the writer.
+        void queued() {
+            outstanding = true;
+            outstandingWrites.incrementAndGet();
+        }
+
+        @Override
+        public void run() {
+            (read ? readWaitNanos : writeWaitNanos).addAndGet(System.nanoTime() - queuedNanos);
+            if (read) {
+                reads.incrementAndGet();
+            }
             try {
-                final T result = TransactionManager.callInTransaction(helper.getConnectionSource(), taskCallable);
-                if (taskResult != null) {
-                    new Handler(Looper.getMainLooper()).post(() -> taskResult.onComplete(result));
+                future.run();
+            } finally {
+                if (read && outstandingWrites.get() > 0) {
+                    readsDuringWrites.incrementAndGet();
+                }
+                finished();
+            }
+        }
+
+        // Queues the read on the readers when this write finished, false if it already did.
+        boolean runAfter(DatabaseTask<?> task) {
+            synchronized (this) {
+                if (written) {
+                    return false;
+                }
+                if (readsAfter == null) {
+                    readsAfter = new ArrayList<>();
                 }
-                return result;
+                readsAfter.add(task);
+                return true;
+            }
+        }
+
+        T get() throws InterruptedException, ExecutionException {
+            return future.get();
+        }
+
+        // In the transaction of the batch, the result is delivered after it committed. Returns
+        // false when it failed, its savepoint is rolled back.
+        boolean callInBatch() {
+            writeWaitNanos.addAndGet(System.nanoTime() - queuedNanos);
+            try {
+                batchResult = taskCallable.call();
+                return true;
             } catch (Exception e) {
                 Logger.e(TAG, "executeTask", e);
-                throw new RuntimeException(e);
+                batchError = e;
+                return false;
+            }
+        }
+
+        void finishBatch() {
+            future = new FutureTask<>(() -> {
+                if (batchError != null) {
+                    throw new RuntimeException(batchError);
+                }
+                deliver(batchResult);
+                return batchResult;
+            });
+            future.run();
+            finished();
+        }
+
+        // The transaction of the batch failed.
+        void failBatch(Exception e) {
+            batchError = e;
+            finishBatch();
+        }
+
+        private void finished() {
+            if (outstanding) {
+                outstanding = false;
+                outstandingWrites.decrementAndGet();
+            }
+
+            List<DatabaseTask<?>> waiting;
+            synchronized (this) {
+                written = true;
+                waiting = readsAfter;
+                readsAfter = null;
+            }
+            if (waiting != null) {
+                for (int i = 0; i < waiting.size(); i++) {
+                    readExecutor.execute(waiting.get(i));
+                }
+            }
+        }
+
+        private FutureTask<T> newFuture() {
+            return new FutureTask<>(() -> {
+                try {
+                    T result = read ? taskCallable.call() :
+                            TransactionManager.callInTransaction(helper.getConnectionSource(), taskCallable);
+                    deliver(result);
+                    return result;
+                } catch (Exception e) {
+                    Logger.e(TAG, "executeTask", e);
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+
+        private void deliver(T result) {
+            if (taskResult != null) {
+                new Handler(Looper.getMainLooper()).post(() -> taskResult.onComplete(result));
             }
         }
     }
 
+    private static class DatabaseThread extends Thread {
+        private final boolean writer;
+
+        private DatabaseThread(Runnable runnable, String name, boolean writer) {
+            super(runnable, name);
+            this.writer = writer;
+        }
+    }
+
+    private static class DatabaseThreadFactory implements ThreadFactory {
+        private final boolean writer;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private DatabaseThreadFactory(boolean writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            String name = writer ? "DatabaseWriter" : "DatabaseReader #" + count.incrementAndGet();
+            return new DatabaseThread(runnable, name, writer);
+        }
+    }
+
     public interface TaskResult<T> {
         void onComplete(T result);
     }
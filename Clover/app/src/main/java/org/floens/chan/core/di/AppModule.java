@@ -6,11 +6,23 @@ import com.android.volley.RequestQueue;
 import com.android.volley.toolbox.ImageLoader;
 
 import org.codejargon.feather.Provides;
+import org.floens.chan.core.cache.BitmapPool;
+import org.floens.chan.core.cache.ThreadSnapshotStore;
+import org.floens.chan.core.cache.ThumbnailCache;
 import org.floens.chan.core.net.BitmapLruImageCache;
 
+import java.io.File;
+
 import javax.inject.Singleton;
 
+import okhttp3.OkHttpClient;
+
 public class AppModule {
+    private static final long THREAD_SNAPSHOT_DISK_SIZE = 20 * 1024 * 1024;
+    private static final String THREAD_SNAPSHOT_NAME = "snapshots";
+    private static final long THUMBNAIL_DISK_SIZE = 20 * 1024 * 1024;
+    private static final String THUMBNAIL_CACHE_NAME = "thumbnails";
+
     private Context applicationContext;
     private UserAgentProvider userAgentProvider;
 
@@ -35,7 +47,31 @@ public class AppModule {
     @Singleton
     public ImageLoader provideImageLoader(RequestQueue requestQueue) {
         final int runtimeMemory = (int) (Runtime.getRuntime().maxMemory() / 1024);
-        final int lruImageCacheSize = runtimeMemory / 8;
+        // The thumbnails have their own cache, see provideThumbnailCache.
+        final int lruImageCacheSize = runtimeMemory / 16;
         return new ImageLoader(requestQueue, new BitmapLruImageCache(lruImageCacheSize));
     }
+
+    @Provides
+    @Singleton
+    public BitmapPool provideBitmapPool() {
+        return new BitmapPool(Runtime.getRuntime().maxMemory() / 32);
+    }
+
+    @Provides
+    @Singleton
+    public ThumbnailCache provideThumbnailCache(OkHttpClient httpClient, BitmapPool bitmapPool,
+                                                UserAgentProvider userAgentProvider) {
+        final long runtimeMemory = Runtime.getRuntime().maxMemory();
+        return new ThumbnailCache(httpClient,
+                new File(applicationContext.getCacheDir(), THUMBNAIL_CACHE_NAME), THUMBNAIL_DISK_SIZE,
+                (int) (runtimeMemory / 1024 / 8), bitmapPool, userAgentProvider.getUserAgent());
+    }
+
+    @Provides
+    @Singleton
+    public ThreadSnapshotStore provideThreadSnapshotStore() {
+        return new ThreadSnapshotStore(new File(applicationContext.getCacheDir(), THREAD_SNAPSHOT_NAME),
+                THREAD_SNAPSHOT_DISK_SIZE);
+    }
 }
@@ -10,12 +10,16 @@ import org.floens.chan.core.cache.FileCache;
 import org.floens.chan.core.net.ProxiedHurlStack;
 
 import java.io.File;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Singleton;
 
+import okhttp3.OkHttpClient;
+
 public class NetModule {
     private static final long FILE_CACHE_DISK_SIZE = 50 * 1024 * 1024;
     private static final String FILE_CACHE_NAME = "filecache";
+    private static final int TIMEOUT = 30000;
 
     @Provides
     @Singleton
@@ -24,6 +28,20 @@ public class NetModule {
         return Volley.newRequestQueue(applicationContext, new ProxiedHurlStack(userAgent));
     }
 
+    /**
+     * Client used by the thread and catalog loaders for streaming the json, and for the
+     * thumbnails.
+     */
+    @Provides
+    @Singleton
+    public OkHttpClient provideOkHttpClient() {
+        return new OkHttpClient.Builder()
+                .connectTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
+                .readTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
+                .writeTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
     @Provides
     @Singleton
     public FileCache provideFileCache(Context applicationContext, UserAgentProvider userAgentProvider) {
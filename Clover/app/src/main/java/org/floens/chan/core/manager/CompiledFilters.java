@@ -0,0 +1,557 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.manager;
+
+import androidx.annotation.AnyThread;
+import android.text.TextUtils;
+
+import org.floens.chan.core.model.Post;
+import org.floens.chan.core.model.PostFilterFields;
+import org.floens.chan.core.model.PostImage;
+import org.floens.chan.core.model.orm.Filter;
+import org.floens.chan.utils.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The enabled filters of a board, compiled into one matcher per {@link FilterType}. Plain words
+ * and "exact sentences" are found together with a {@link KeywordAutomaton}. The other patterns
+ * are only tried when a literal that they require was found, or when they have no such literal,
+ * after they matched together as one regex.
+ * <p>Immutable, get it with {@link FilterEngine#getCompiledFilters}. It isn't changed when the
+ * filters change, a new one is compiled with a new {@link #version}.
+ */
+@AnyThread
+public class CompiledFilters {
+    private static final String TAG = "CompiledFilters";
+
+    // Constructs that break when patterns are joined: backreferences and named groups refer
+    // to the groups of the other patterns, and comments or quotes can run past the end.
+    private static final Pattern unmergeablePattern =
+            Pattern.compile("\\\\[1-9]|\\\\k<|\\(\\?<[a-zA-Z]|\\(\\?[a-zA-Z]*x|\\\\Q");
+
+    // Shorter literals are in too many texts to skip a pattern.
+    private static final int MIN_LITERAL_LENGTH = 2;
+
+    private static final FilterType[] TYPES = FilterType.values();
+
+    public final int version;
+
+    private final Filter[] filters;
+    private final FieldMatcher[] matchers = new FieldMatcher[TYPES.length];
+
+    CompiledFilters(FilterEngine filterEngine, int version, List<Filter> filters) {
+        this.version = version;
+
+        this.filters = new Filter[filters.size()];
+        for (int i = 0; i < filters.size(); i++) {
+            // Copied, they are used on other threads.
+            this.filters[i] = filters.get(i).copy();
+        }
+
+        for (FilterType type : TYPES) {
+            matchers[type.ordinal()] = type.isRegex ?
+                    new RegexMatcher(filterEngine, this.filters, type) :
+                    new ExactMatcher(this.filters, type);
+        }
+    }
+
+    public boolean isEmpty() {
+        return filters.length == 0;
+    }
+
+    /**
+     * Find the filter to apply to the post. When more filters match, the last one in the list
+     * is returned, that's the one that would be left after applying all of them in order.
+     *
+     * @param post the post, with the comment html
+     * @return the filter, or {@code null} when none matched
+     */
+    public Filter match(Post.Builder post) {
+        return match(new PostFilterFields(post));
+    }
+
+    /**
+     * Find the filter to apply to a post, see {@link #match(Post.Builder)}.
+     *
+     * @param post the fields of the post as they were read from the site
+     * @return the filter, or {@code null} when none matched
+     */
+    public Filter match(PostFilterFields post) {
+        if (filters.length == 0) {
+            return null;
+        }
+
+        int last = -1;
+        last = find(FilterType.TRIPCODE, post.tripcode, last);
+        last = find(FilterType.NAME, post.name, last);
+        last = find(FilterType.COMMENT, post.comment, last);
+        last = find(FilterType.ID, post.posterId, last);
+        last = find(FilterType.SUBJECT, post.subject, last);
+
+        if (post.images != null && !post.images.isEmpty() &&
+                matchers[FilterType.FILENAME.ordinal()].canFind(last)) {
+            StringBuilder filename = new StringBuilder();
+            for (PostImage image : post.images) {
+                filename.append(image.filename).append(" ");
+            }
+            last = find(FilterType.FILENAME, filename.toString(), last);
+        }
+
+        return last >= 0 ? filters[last] : null;
+    }
+
+    private int find(FilterType type, String text, int last) {
+        FieldMatcher matcher = matchers[type.ordinal()];
+        if (TextUtils.isEmpty(text) || !matcher.canFind(last)) {
+            return last;
+        }
+        return matcher.find(text, last);
+    }
+
+    private static abstract class FieldMatcher {
+        // The largest index of the filters of the field, or -1 without any.
+        int maxIndex = -1;
+
+        boolean canFind(int last) {
+            return maxIndex > last;
+        }
+
+        /**
+         * @return the largest index of the matching filters, or {@code last} when none of
+         * the filters after it match.
+         */
+        abstract int find(String text, int last);
+    }
+
+    // The types that aren't regexes, they are compared with equals.
+    private static class ExactMatcher extends FieldMatcher {
+        private final Map<String, Integer> lastByPattern = new HashMap<>();
+
+        ExactMatcher(Filter[] filters, FilterType type) {
+            for (int i = 0; i < filters.length; i++) {
+                Filter filter = filters[i];
+                if (filter.hasFilter(type) && !TextUtils.isEmpty(filter.pattern)) {
+                    lastByPattern.put(filter.pattern, i);
+                    maxIndex = i;
+                }
+            }
+        }
+
+        @Override
+        int find(String text, int last) {
+            Integer index = lastByPattern.get(text);
+            return index != null && index > last ? index : last;
+        }
+    }
+
+    private static class RegexMatcher extends FieldMatcher {
+        private KeywordAutomaton keywords;
+
+        // The other patterns, by ascending filter index.
+        private final int[] indexes;
+        private final Pattern[] patterns;
+        // Literals that the patterns can't match without, the value is the position in patterns.
+        private KeywordAutomaton anchors;
+        private final boolean[] anchored;
+        // The patterns without anchors as one alternation, or null when they can't be joined.
+        private Pattern merged;
+        private boolean hasUnanchored;
+
+        RegexMatcher(FilterEngine filterEngine, Filter[] filters, FilterType type) {
+            KeywordAutomaton.Builder keywordsBuilder = new KeywordAutomaton.Builder();
+            boolean hasKeywords = false;
+            KeywordAutomaton.Builder anchorsBuilder = new KeywordAutomaton.Builder();
+            List<Integer> indexList = new ArrayList<>();
+            List<Pattern> patternList = new ArrayList<>();
+            List<Boolean> anchoredList = new ArrayList<>();
+            List<Pattern> unanchored = new ArrayList<>();
+
+            for (int i = 0; i < filters.length; i++) {
+                Filter filter = filters[i];
+                if (!filter.hasFilter(type) || TextUtils.isEmpty(filter.pattern)) {
+                    continue;
+                }
+
+                if (addKeywords(keywordsBuilder, filter.pattern, i)) {
+                    hasKeywords = true;
+                    maxIndex = i;
+                } else {
+                    Pattern pattern = filterEngine.compile(filter.pattern);
+                    if (pattern == null) {
+                        Logger.w(TAG, "Invalid pattern " + filter.pattern);
+                        continue;
+                    }
+
+                    List<String> literals = requiredLiterals(filter.pattern, pattern);
+                    if (literals != null) {
+                        for (String literal : literals) {
+                            anchorsBuilder.add(literal, patternList.size(), false);
+                        }
+                    } else {
+                        unanchored.add(pattern);
+                    }
+                    anchoredList.add(literals != null);
+                    indexList.add(i);
+                    patternList.add(pattern);
+                    maxIndex = i;
+                }
+            }
+
+            if (hasKeywords) {
+                keywords = keywordsBuilder.build();
+            }
+
+            indexes = new int[indexList.size()];
+            anchored = new boolean[indexes.length];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = indexList.get(i);
+                anchored[i] = anchoredList.get(i);
+            }
+            patterns = patternList.toArray(new Pattern[0]);
+            if (unanchored.size() < patterns.length) {
+                anchors = anchorsBuilder.build();
+            }
+            hasUnanchored = !unanchored.isEmpty();
+            if (unanchored.size() > 1) {
+                merged = merge(unanchored);
+            }
+        }
+
+        @Override
+        int find(String text, int last) {
+            if (keywords != null) {
+                last = keywords.findMaxValue(text, last);
+            }
+
+            if (indexes.length == 0 || indexes[indexes.length - 1] <= last) {
+                return last;
+            }
+
+            boolean[] found = new boolean[patterns.length];
+            if (anchors != null) {
+                anchors.findAll(text, found);
+            }
+            boolean unanchoredCanMatch = hasUnanchored && (merged == null || find(merged, text));
+
+            for (int i = indexes.length - 1; i >= 0 && indexes[i] > last; i--) {
+                if ((anchored[i] ? found[i] : unanchoredCanMatch) && find(patterns[i], text)) {
+                    return indexes[i];
+                }
+            }
+            return last;
+        }
+
+        private static boolean find(Pattern pattern, String text) {
+            Matcher matcher = pattern.matcher(text);
+            try {
+                return matcher.find();
+            } catch (IllegalArgumentException e) {
+                Logger.w(TAG, "matcher.find() exception", e);
+                return false;
+            }
+        }
+
+        /**
+         * Add the words of a word filter, or the sentence of an "exact sentence" filter, the
+         * same as {@link FilterEngine#compile(String)} would match them.
+         *
+         * @return false if the pattern has to be matched as a regex
+         */
+        private static boolean addKeywords(KeywordAutomaton.Builder builder, String rawPattern, int index) {
+            if (FilterEngine.isRegexPattern.matcher(rawPattern).matches()) {
+                return false;
+            }
+
+            if (rawPattern.length() >= 2 && rawPattern.charAt(0) == '"' &&
+                    rawPattern.charAt(rawPattern.length() - 1) == '"') {
+                String sentence = rawPattern.substring(1, rawPattern.length() - 1);
+                if (sentence.isEmpty() || !KeywordAutomaton.isAscii(sentence)) {
+                    return false;
+                }
+                builder.add(sentence, index, false);
+                return true;
+            }
+
+            // Wildcards and empty words between two spaces stay regexes.
+            String[] words = rawPattern.split(" ");
+            for (String word : words) {
+                if (word.isEmpty() || word.indexOf('*') >= 0 || !KeywordAutomaton.isAscii(word)) {
+                    return false;
+                }
+            }
+            for (String word : words) {
+                builder.add(word, index, true);
+            }
+            return true;
+        }
+
+        /**
+         * Literals that are in every match of the pattern: one per alternative of the regex, or
+         * one per word of a word filter with wildcards. They are ascii and found case
+         * insensitive, that finds more than the pattern and never less.
+         *
+         * @return the literals, or null when the pattern has no usable literal for everything
+         * it can match
+         */
+        private static List<String> requiredLiterals(String rawPattern, Pattern pattern) {
+            if ((pattern.flags() & ~Pattern.CASE_INSENSITIVE) != 0) {
+                return null;
+            }
+
+            List<String> literals = new ArrayList<>();
+            if (FilterEngine.isRegexPattern.matcher(rawPattern).matches()) {
+                String regex = pattern.pattern();
+                int start = 0;
+                while (true) {
+                    int end = alternativeEnd(regex, start);
+                    if (end < 0) {
+                        return null;
+                    }
+                    String literal = longestLiteral(regex, start, end);
+                    if (literal == null) {
+                        return null;
+                    }
+                    literals.add(literal);
+                    if (end == regex.length()) {
+                        return literals;
+                    }
+                    start = end + 1;
+                }
+            } else {
+                // Word filters, the quoted sentences that are left aren't ascii.
+                if (rawPattern.charAt(0) == '"') {
+                    return null;
+                }
+                for (String word : rawPattern.split(" ")) {
+                    String longest = "";
+                    for (String part : word.split("\\*")) {
+                        if (part.length() > longest.length()) {
+                            longest = part;
+                        }
+                    }
+                    if (longest.length() < MIN_LITERAL_LENGTH || !KeywordAutomaton.isAscii(longest)) {
+                        return null;
+                    }
+                    literals.add(longest);
+                }
+                return literals;
+            }
+        }
+
+        // The end of the top level alternative starting at start, or -1 when the regex is too
+        // complicated to tell.
+        private static int alternativeEnd(String regex, int start) {
+            int i = start;
+            while (i < regex.length()) {
+                char c = regex.charAt(i);
+                if (c == '|') {
+                    return i;
+                } else if (c == '\\') {
+                    i += 2;
+                } else if (c == '[') {
+                    i = classEnd(regex, i);
+                } else if (c == '(') {
+                    i = groupEnd(regex, i);
+                } else if (c == ')') {
+                    return -1;
+                } else {
+                    i++;
+                }
+                if (i < 0) {
+                    return -1;
+                }
+            }
+            return i > regex.length() ? -1 : regex.length();
+        }
+
+        // The longest run of literal characters every match of the alternative has, or null
+        // when there is no long enough run, or the alternative has something not understood.
+        private static String longestLiteral(String regex, int start, int end) {
+            String longest = "";
+            StringBuilder run = new StringBuilder();
+            int i = start;
+            while (i < end) {
+                char c = regex.charAt(i);
+                char literal = 0;
+                boolean isLiteral = false;
+                if (c == '\\') {
+                    if (i + 1 >= end) {
+                        return null;
+                    }
+                    char escaped = regex.charAt(i + 1);
+                    if ("xupPNckQE0".indexOf(escaped) >= 0) {
+                        // Escapes with a variable length, or quoting.
+                        return null;
+                    }
+                    if (!Character.isLetterOrDigit(escaped)) {
+                        isLiteral = true;
+                        literal = escaped;
+                    }
+                    // Otherwise a character class, an assertion or a backreference.
+                    i += 2;
+                } else if (c == '[') {
+                    i = classEnd(regex, i);
+                } else if (c == '(') {
+                    // Lookarounds, named groups and flags aren't simple groups.
+                    if (regex.startsWith("(?", i) && !regex.startsWith("(?:", i)) {
+                        return null;
+                    }
+                    i = groupEnd(regex, i);
+                } else if (c == '*' || c == '+' || c == '?' || c == '{' || c == ')') {
+                    return null;
+                } else {
+                    isLiteral = c != '.' && c != '^' && c != '$';
+                    literal = c;
+                    i++;
+                }
+                if (i < 0 || i > end) {
+                    return null;
+                }
+
+                // A quantified literal may be left out, or repeated.
+                char next = i < end ? regex.charAt(i) : 0;
+                boolean quantified = next == '*' || next == '+' || next == '?' || next == '{';
+                if (isLiteral && literal < 0x80 && (!quantified || next == '+')) {
+                    run.append(literal);
+                }
+                if (!isLiteral || literal >= 0x80 || quantified) {
+                    if (run.length() > longest.length()) {
+                        longest = run.toString();
+                    }
+                    run.setLength(0);
+                }
+                if (quantified) {
+                    i = quantifierEnd(regex, i);
+                    if (i < 0 || i > end) {
+                        return null;
+                    }
+                }
+            }
+            if (run.length() > longest.length()) {
+                longest = run.toString();
+            }
+            return longest.length() >= MIN_LITERAL_LENGTH ? longest : null;
+        }
+
+        private static int quantifierEnd(String regex, int i) {
+            if (regex.charAt(i) == '{') {
+                i = regex.indexOf('}', i);
+                if (i < 0) {
+                    return -1;
+                }
+            }
+            i++;
+            // Lazy or possessive.
+            if (i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+                i++;
+            }
+            return i;
+        }
+
+        // The index after the group opened at start, or -1.
+        private static int groupEnd(String regex, int start) {
+            int depth = 0;
+            int i = start;
+            while (i < regex.length()) {
+                char c = regex.charAt(i);
+                if (c == '\\') {
+                    i += 2;
+                    continue;
+                } else if (c == '[') {
+                    i = classEnd(regex, i);
+                    if (i < 0) {
+                        return -1;
+                    }
+                    continue;
+                } else if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                    if (depth == 0) {
+                        return i + 1;
+                    }
+                }
+                i++;
+            }
+            return -1;
+        }
+
+        // The index after the character class opened at start, or -1. Classes can be nested,
+        // and a ] right after the opening [ or [^ is a literal.
+        private static int classEnd(String regex, int start) {
+            int depth = 0;
+            int i = start;
+            while (i < regex.length()) {
+                char c = regex.charAt(i);
+                if (c == '\\') {
+                    i += 2;
+                    continue;
+                } else if (c == '[') {
+                    depth++;
+                    i++;
+                    if (i < regex.length() && regex.charAt(i) == '^') {
+                        i++;
+                    }
+                    if (i < regex.length() && regex.charAt(i) == ']') {
+                        i++;
+                    }
+                    continue;
+                } else if (c == ']') {
+                    depth--;
+                    if (depth == 0) {
+                        return i + 1;
+                    }
+                }
+                i++;
+            }
+            return -1;
+        }
+
+        private static Pattern merge(List<Pattern> patterns) {
+            StringBuilder alternation = new StringBuilder();
+            for (int i = 0; i < patterns.size(); i++) {
+                Pattern pattern = patterns.get(i);
+                if (unmergeablePattern.matcher(pattern.pattern()).find() ||
+                        (pattern.flags() & ~Pattern.CASE_INSENSITIVE) != 0) {
+                    return null;
+                }
+
+                if (i > 0) {
+                    alternation.append('|');
+                }
+                boolean caseInsensitive = (pattern.flags() & Pattern.CASE_INSENSITIVE) != 0;
+                alternation.append(caseInsensitive ? "(?i:" : "(?:")
+                        .append(pattern.pattern())
+                        .append(')');
+            }
+
+            try {
+                return Pattern.compile(alternation.toString());
+            } catch (PatternSyntaxException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -28,6 +28,7 @@ import org.floens.chan.core.model.orm.Board;
 import org.floens.chan.core.model.orm.Filter;
 import org.floens.chan.ui.helper.BoardHelper;
 import org.floens.chan.utils.Logger;
+import org.floens.chan.utils.Time;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -43,6 +44,7 @@ import javax.inject.Singleton;
 @Singleton
 public class FilterEngine {
     private static final String TAG = "FilterEngine";
+    private static final boolean LOG_TIMING = false;
 
     public enum FilterAction {
         HIDE(0),
@@ -76,6 +78,11 @@ public class FilterEngine {
     private final Map<String, Pattern> patternCache = new HashMap<>();
     private final List<Filter> enabledFilters = new ArrayList<>();
 
+    // The compiled filters by board unique id, of the current version. Guarded by itself.
+    private final Map<String, CompiledFilters> compiledFilters = new HashMap<>();
+    private List<Filter> compiledFrom = new ArrayList<>();
+    private int version;
+
     @Inject
     public FilterEngine(DatabaseManager databaseManager, BoardManager boardManager) {
         this.databaseManager = databaseManager;
@@ -102,6 +109,48 @@ public class FilterEngine {
         return enabledFilters;
     }
 
+    /**
+     * Get the enabled filters for the board, compiled for matching. The result is cached until
+     * the filters change.
+     *
+     * @param board the board to get the filters for
+     * @return the compiled filters, may be empty
+     */
+    @AnyThread
+    public CompiledFilters getCompiledFilters(Board board) {
+        String key = BoardHelper.boardUniqueId(board);
+        synchronized (compiledFilters) {
+            CompiledFilters compiled = compiledFilters.get(key);
+            if (compiled == null) {
+                List<Filter> boardFilters = new ArrayList<>();
+                for (int i = 0; i < compiledFrom.size(); i++) {
+                    Filter filter = compiledFrom.get(i);
+                    if (matchesBoard(filter, board)) {
+                        boardFilters.add(filter);
+                    }
+                }
+
+                long start = Time.startTiming();
+                compiled = new CompiledFilters(this, version, boardFilters);
+                if (LOG_TIMING) {
+                    Time.endTiming("Compile " + boardFilters.size() + " filters for " + key, start);
+                }
+                compiledFilters.put(key, compiled);
+            }
+            return compiled;
+        }
+    }
+
+    /**
+     * The version of the filters, it changes every time the filters change.
+     */
+    @AnyThread
+    public int getVersion() {
+        synchronized (compiledFilters) {
+            return version;
+        }
+    }
+
     @AnyThread
     public boolean matchesBoard(Filter filter, Board board) {
         if (filter.allBoards || TextUtils.isEmpty(filter.boards)) {
@@ -213,7 +262,7 @@ public class FilterEngine {
         }
     }
 
-    private static final Pattern isRegexPattern = Pattern.compile("^/(.*)/(i?)$");
+    static final Pattern isRegexPattern = Pattern.compile("^/(.*)/(i?)$");
     private static final Pattern filterFilthyPattern = Pattern.compile("(\\.|\\^|\\$|\\*|\\+|\\?|\\(|\\)|\\[|\\]|\\{|\\}|\\\\|\\||\\-)");
     private static final Pattern wildcardPattern = Pattern.compile("\\\\\\*"); // an escaped \ and an escaped *, to replace an escaped * from escapeRegex
 
@@ -277,5 +326,16 @@ public class FilterEngine {
 
         enabledFilters.clear();
         enabledFilters.addAll(enabled);
+
+        // Copied, the compiled filters are made on other threads.
+        List<Filter> copies = new ArrayList<>(enabled.size());
+        for (int i = 0; i < enabled.size(); i++) {
+            copies.add(enabled.get(i).copy());
+        }
+        synchronized (compiledFilters) {
+            compiledFrom = copies;
+            compiledFilters.clear();
+            version++;
+        }
     }
 }
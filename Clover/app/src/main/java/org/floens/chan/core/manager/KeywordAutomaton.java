@@ -0,0 +1,267 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.manager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An Aho-Corasick automaton over ascii keywords, to find all keywords in a text in one pass.<br>
+ * Matching is case insensitive for ascii letters only, like {@link java.util.regex.Pattern#CASE_INSENSITIVE}.
+ * A keyword can require a word boundary on both sides, the same as {@code \b} around it.
+ * <p>Immutable once built, matching is thread safe.
+ */
+class KeywordAutomaton {
+    // Per node, the sorted characters of the edges and the nodes they go to.
+    private final char[][] edgeChars;
+    private final int[][] edgeNodes;
+    private final int[] fail;
+    // The keywords ending at the node, and the next node on the fail path with keywords, or -1.
+    private final int[][] keywords;
+    private final int[] outputLink;
+
+    private final int[] keywordLengths;
+    private final int[] keywordValues;
+    private final boolean[] keywordBounded;
+
+    private KeywordAutomaton(Builder builder) {
+        int nodes = builder.edgeChars.size();
+        edgeChars = builder.edgeChars.toArray(new char[nodes][]);
+        edgeNodes = builder.edgeNodes.toArray(new int[nodes][]);
+        keywords = builder.nodeKeywords.toArray(new int[nodes][]);
+
+        keywordLengths = toArray(builder.keywordLengths);
+        keywordValues = toArray(builder.keywordValues);
+        keywordBounded = new boolean[builder.keywordBounded.size()];
+        for (int i = 0; i < keywordBounded.length; i++) {
+            keywordBounded[i] = builder.keywordBounded.get(i);
+        }
+
+        fail = new int[nodes];
+        outputLink = new int[nodes];
+        Arrays.fill(outputLink, -1);
+
+        // Breadth first, the fail node of a node is always closer to the root.
+        int[] queue = new int[nodes];
+        int head = 0, tail = 0;
+        queue[tail++] = 0;
+        while (head < tail) {
+            int node = queue[head++];
+            for (int i = 0; i < edgeChars[node].length; i++) {
+                char c = edgeChars[node][i];
+                int child = edgeNodes[node][i];
+                if (node != 0) {
+                    int f = fail[node];
+                    while (f != 0 && next(f, c) < 0) {
+                        f = fail[f];
+                    }
+                    int target = next(f, c);
+                    fail[child] = target >= 0 ? target : 0;
+                }
+                int failNode = fail[child];
+                outputLink[child] = keywords[failNode].length > 0 ? failNode : outputLink[failNode];
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return keywordValues.length == 0;
+    }
+
+    /**
+     * Find the keywords in the text.
+     *
+     * @param text    the text to search
+     * @param atLeast only keywords with a larger value are interesting
+     * @return the largest value of the keywords found, or {@code atLeast} when none was larger
+     */
+    public int findMaxValue(String text, int atLeast) {
+        int max = atLeast;
+        int node = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = fold(text.charAt(i));
+            int target;
+            while ((target = next(node, c)) < 0 && node != 0) {
+                node = fail[node];
+            }
+            node = target >= 0 ? target : 0;
+
+            int output = keywords[node].length > 0 ? node : outputLink[node];
+            while (output >= 0) {
+                int[] found = keywords[output];
+                for (int j = 0; j < found.length; j++) {
+                    int k = found[j];
+                    int value = keywordValues[k];
+                    if (value > max && (!keywordBounded[k] ||
+                            (isBoundary(text, i + 1 - keywordLengths[k]) && isBoundary(text, i + 1)))) {
+                        max = value;
+                    }
+                }
+                output = outputLink[output];
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Find all keywords in the text.
+     *
+     * @param text  the text to search
+     * @param found set to true at the values of the keywords found, values must fit in it
+     */
+    public void findAll(String text, boolean[] found) {
+        int node = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = fold(text.charAt(i));
+            int target;
+            while ((target = next(node, c)) < 0 && node != 0) {
+                node = fail[node];
+            }
+            node = target >= 0 ? target : 0;
+
+            int output = keywords[node].length > 0 ? node : outputLink[node];
+            while (output >= 0) {
+                int[] ending = keywords[output];
+                for (int j = 0; j < ending.length; j++) {
+                    int k = ending[j];
+                    if (!keywordBounded[k] ||
+                            (isBoundary(text, i + 1 - keywordLengths[k]) && isBoundary(text, i + 1))) {
+                        found[keywordValues[k]] = true;
+                    }
+                }
+                output = outputLink[output];
+            }
+        }
+    }
+
+    private int next(int node, char c) {
+        int index = Arrays.binarySearch(edgeChars[node], c);
+        return index >= 0 ? edgeNodes[node][index] : -1;
+    }
+
+    private static char fold(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    // Letters, digits and underscores, the word characters of \b in the regexes on Android.
+    private static boolean isWord(char c) {
+        return c == '_' || Character.isLetterOrDigit(c);
+    }
+
+    private static boolean isBoundary(String text, int index) {
+        boolean before = index > 0 && isWord(text.charAt(index - 1));
+        boolean after = index < text.length() && isWord(text.charAt(index));
+        return before != after;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    public static boolean isAscii(String keyword) {
+        for (int i = 0; i < keyword.length(); i++) {
+            if (keyword.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static class Builder {
+        private final List<char[]> edgeChars = new ArrayList<>();
+        private final List<int[]> edgeNodes = new ArrayList<>();
+        private final List<int[]> nodeKeywords = new ArrayList<>();
+
+        private final List<Integer> keywordLengths = new ArrayList<>();
+        private final List<Integer> keywordValues = new ArrayList<>();
+        private final List<Boolean> keywordBounded = new ArrayList<>();
+
+        public Builder() {
+            addNode();
+        }
+
+        /**
+         * Add a keyword. The same keyword can be added more than once, with different values.
+         *
+         * @param keyword a non empty ascii keyword, see {@link #isAscii(String)}
+         * @param value   the value to find for the keyword, not negative
+         * @param bounded if the keyword must be surrounded by word boundaries
+         */
+        public Builder add(String keyword, int value, boolean bounded) {
+            if (keyword.isEmpty() || !isAscii(keyword) || value < 0) {
+                throw new IllegalArgumentException("Invalid keyword");
+            }
+
+            int node = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                char c = fold(keyword.charAt(i));
+                char[] chars = edgeChars.get(node);
+                int index = Arrays.binarySearch(chars, c);
+                if (index >= 0) {
+                    node = edgeNodes.get(node)[index];
+                } else {
+                    int child = addNode();
+                    int insert = -index - 1;
+                    edgeChars.set(node, insertChar(chars, insert, c));
+                    edgeNodes.set(node, insertInt(edgeNodes.get(node), insert, child));
+                    node = child;
+                }
+            }
+
+            int k = keywordValues.size();
+            keywordLengths.add(keyword.length());
+            keywordValues.add(value);
+            keywordBounded.add(bounded);
+            nodeKeywords.set(node, insertInt(nodeKeywords.get(node), nodeKeywords.get(node).length, k));
+            return this;
+        }
+
+        public KeywordAutomaton build() {
+            return new KeywordAutomaton(this);
+        }
+
+        private int addNode() {
+            edgeChars.add(new char[0]);
+            edgeNodes.add(new int[0]);
+            nodeKeywords.add(new int[0]);
+            return nodeKeywords.size() - 1;
+        }
+
+        private static char[] insertChar(char[] array, int index, char value) {
+            char[] copy = new char[array.length + 1];
+            System.arraycopy(array, 0, copy, 0, index);
+            copy[index] = value;
+            System.arraycopy(array, index, copy, index + 1, array.length - index);
+            return copy;
+        }
+
+        private static int[] insertInt(int[] array, int index, int value) {
+            int[] copy = new int[array.length + 1];
+            System.arraycopy(array, 0, copy, 0, index);
+            copy[index] = value;
+            System.arraycopy(array, index, copy, index + 1, array.length - index);
+            return copy;
+        }
+    }
+}
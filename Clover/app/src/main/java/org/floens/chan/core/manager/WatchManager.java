@@ -39,14 +39,21 @@ import org.floens.chan.core.exception.ChanLoaderException;
 import org.floens.chan.core.model.ChanThread;
 import org.floens.chan.core.model.Post;
 import org.floens.chan.core.model.PostImage;
+import org.floens.chan.core.model.ThreadIndex;
+import org.floens.chan.core.model.WatchPost;
 import org.floens.chan.core.model.orm.Loadable;
 import org.floens.chan.core.model.orm.Pin;
 import org.floens.chan.core.pool.ChanLoaderFactory;
 import org.floens.chan.core.settings.ChanSettings;
+import org.floens.chan.core.site.Site;
+import org.floens.chan.core.site.SiteActions;
 import org.floens.chan.core.site.loader.ChanThreadLoader;
+import org.floens.chan.core.site.loader.ThreadWatchLoader;
+import org.floens.chan.core.site.loader.ThreadWatchResponse;
 import org.floens.chan.ui.helper.PostHelper;
 import org.floens.chan.ui.notification.ThreadWatchNotifications;
 import org.floens.chan.utils.Logger;
+import org.floens.chan.utils.Time;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -56,6 +63,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import javax.inject.Inject;
@@ -73,8 +81,12 @@ import static org.floens.chan.utils.AndroidUtils.getAppContext;
  * <p>Pins are threads that are pinned to a pane on the left.
  * <p/>
  * <p>The pin watcher is an optional feature that watches threads for new posts and displays a new
- * post counter next to the pin view. Watching happens with the same backoff timer as used for
- * the auto updater for open threads.
+ * post counter next to the pin view. When each thread is loaded is decided by the
+ * {@link WatchScheduler}, from the rate of new posts in the thread. Loads that are due close
+ * together are done at the same wakeup.
+ * <p/>
+ * <p>For sites with a {@link Site.Feature#THREAD_INDEX} the watched threads of a board are checked
+ * with one request for the index of the board, only the threads that changed are loaded.
  * <p/>
  * <p>Background watching is a feature that can be enabled. With background watching enabled then
  * the PinManager will register an AlarmManager to check for updates in intervals. It will acquire
@@ -83,12 +95,13 @@ import static org.floens.chan.utils.AndroidUtils.getAppContext;
  * <p>All pin adding and removing must go through this class to properly update the watchers.
  */
 @Singleton
-public class WatchManager {
+public class WatchManager implements ChanLoaderFactory.ShownListener {
     private static final String TAG = "WatchManager";
 
     private enum IntervalType {
         /**
-         * A timer that uses a {@link Handler} that calls {@link #update(boolean)} every {@value #FOREGROUND_INTERVAL}ms.
+         * A timer that uses a {@link Handler} that calls {@link #update(boolean)} when the next
+         * watched thread is due.
          */
         FOREGROUND,
 
@@ -105,7 +118,10 @@ public class WatchManager {
 
     public static final int DEFAULT_BACKGROUND_INTERVAL = 15 * 60 * 1000;
 
-    private static final long FOREGROUND_INTERVAL = 15 * 1000;
+    // Bounds of the time between the loads of a watched thread.
+    private static final long MIN_WATCH_INTERVAL = 15 * 1000;
+    private static final long MAX_WATCH_INTERVAL = 60 * 60 * 1000;
+    private static final double WATCH_JITTER = 0.1;
     private static final int MESSAGE_UPDATE = 1;
     private static final int REQUEST_CODE_WATCH_UPDATE = 2;
     private static final String WATCHER_UPDATE_ACTION = "org.floens.chan.intent.action.WATCHER_UPDATE";
@@ -134,6 +150,10 @@ public class WatchManager {
     private IntervalType currentInterval = IntervalType.NONE;
 
     private Map<Pin, PinWatcher> pinWatchers = new HashMap<>();
+    private WatchScheduler<PinWatcher> watchScheduler =
+            new WatchScheduler<>(MIN_WATCH_INTERVAL, MAX_WATCH_INTERVAL, WATCH_JITTER, new Random());
+    // Boards that a thread index request is running for.
+    private Set<String> threadIndexRequests = new HashSet<>();
 
     private Set<PinWatcher> waitingForPinWatchersForBackgroundUpdate;
     private PowerManager.WakeLock wakeLock;
@@ -169,6 +189,7 @@ public class WatchManager {
         });
 
         EventBus.getDefault().register(this);
+        chanLoaderFactory.setShownListener(this);
 
         updateState();
     }
@@ -412,6 +433,31 @@ public class WatchManager {
         return pinWatchers.get(pin);
     }
 
+    @Override
+    public void onThreadLoaderShown(ChanThreadLoader chanLoader) {
+        PinWatcher pinWatcher = findPinWatcher(chanLoader.getLoadable());
+        if (pinWatcher != null) {
+            pinWatcher.attach();
+        }
+    }
+
+    @Override
+    public void onThreadLoaderHidden(ChanThreadLoader chanLoader) {
+        PinWatcher pinWatcher = findPinWatcher(chanLoader.getLoadable());
+        if (pinWatcher != null) {
+            pinWatcher.detach();
+        }
+    }
+
+    private PinWatcher findPinWatcher(Loadable loadable) {
+        for (PinWatcher pinWatcher : pinWatchers.values()) {
+            if (pinWatcher.pin.loadable.equals(loadable)) {
+                return pinWatcher;
+            }
+        }
+        return null;
+    }
+
     // Called when the user changes the watch enabled preference
     private void onWatchEnabledChanged(boolean watchEnabled) {
         updateState(watchEnabled, isBackgroundWatchingSettingEnabled());
@@ -452,6 +498,7 @@ public class WatchManager {
     private boolean destroyPinWatcher(Pin pin) {
         PinWatcher pinWatcher = pinWatchers.remove(pin);
         if (pinWatcher != null) {
+            watchScheduler.remove(pinWatcher);
             pinWatcher.destroy();
         }
         return pinWatcher != null;
@@ -528,8 +575,8 @@ public class WatchManager {
 
             switch (currentInterval) {
                 case FOREGROUND:
-                    // Schedule a delayed handler that will call update(false)
-                    handler.sendMessageDelayed(handler.obtainMessage(MESSAGE_UPDATE), FOREGROUND_INTERVAL);
+                    // The handler that will call update(false) is scheduled below, for the
+                    // updated pin watchers.
                     break;
                 case BACKGROUND:
                     // Schedule an intervaled broadcast receiver
@@ -552,6 +599,10 @@ public class WatchManager {
             }
         }
 
+        if (currentInterval == IntervalType.FOREGROUND) {
+            scheduleForegroundUpdate();
+        }
+
         // Update notification state
         if (watchEnabled && backgroundEnabled) {
             // Show/update notification
@@ -584,19 +635,40 @@ public class WatchManager {
         }
     }
 
+    // Wake at the time the next watched thread is due.
+    private void scheduleForegroundUpdate() {
+        handler.removeMessages(MESSAGE_UPDATE);
+
+        long now = Time.get();
+        updateScheduledPins(now);
+        long wakeup = watchScheduler.nextWakeup();
+        if (wakeup != Long.MAX_VALUE) {
+            handler.sendMessageDelayed(handler.obtainMessage(MESSAGE_UPDATE), Math.max(0L, wakeup - now));
+        }
+    }
+
+    // Only the pins that are watched are scheduled, a pin that is watched again is due now.
+    private void updateScheduledPins(long now) {
+        for (Map.Entry<Pin, PinWatcher> entry : pinWatchers.entrySet()) {
+            Pin pin = entry.getKey();
+            PinWatcher pinWatcher = entry.getValue();
+            if (pin.watching && !pin.isError) {
+                watchScheduler.add(pinWatcher, now);
+            } else {
+                watchScheduler.remove(pinWatcher);
+            }
+        }
+    }
+
     // Update the watching pins
     private void update(boolean fromBackground) {
         Logger.d(TAG, "update() fromBackground = " + fromBackground);
 
-        switch (currentInterval) {
-            case FOREGROUND:
-                // reschedule handler message
-                handler.sendMessageDelayed(handler.obtainMessage(MESSAGE_UPDATE), FOREGROUND_INTERVAL);
-                break;
-            case BACKGROUND:
-                // AlarmManager is scheduled as an interval
-                break;
-        }
+        long now = Time.get();
+        updateScheduledPins(now);
+        // The AlarmManager is scheduled as an interval, load what is due before the next one.
+        List<PinWatcher> duePinWatchers = watchScheduler.takeDue(now,
+                fromBackground ? now + getBackgroundIntervalSetting() : now);
 
         // A set of watchers that all have to complete being updated
         // before the wakelock is released again
@@ -605,16 +677,25 @@ public class WatchManager {
             waitingForPinWatchersForBackgroundUpdate = new HashSet<>();
         }
 
-        List<Pin> watchingPins = getWatchingPins();
-        for (int i = 0; i < watchingPins.size(); i++) {
-            Pin pin = watchingPins.get(i);
-            PinWatcher pinWatcher = getPinWatcher(pin);
-            if (pinWatcher != null && pinWatcher.update(fromBackground)) {
-                EventBus.getDefault().post(new PinChangedMessage(pin));
-
-                if (fromBackground) {
-                    waitingForPinWatchersForBackgroundUpdate.add(pinWatcher);
+        Map<String, List<PinWatcher>> threadIndexWatchers = new HashMap<>();
+        for (int i = 0; i < duePinWatchers.size(); i++) {
+            PinWatcher pinWatcher = duePinWatchers.get(i);
+            if (pinWatcher.usesThreadIndex()) {
+                String board = threadIndexKey(pinWatcher.pin.loadable);
+                List<PinWatcher> boardWatchers = threadIndexWatchers.get(board);
+                if (boardWatchers == null) {
+                    boardWatchers = new ArrayList<>();
+                    threadIndexWatchers.put(board, boardWatchers);
                 }
+                boardWatchers.add(pinWatcher);
+            } else if (pinWatcher.update()) {
+                pinWatcherLoading(pinWatcher, fromBackground);
+            }
+        }
+
+        for (Map.Entry<String, List<PinWatcher>> entry : threadIndexWatchers.entrySet()) {
+            if (threadIndexRequests.add(entry.getKey())) {
+                requestThreadIndex(entry.getKey(), entry.getValue(), fromBackground);
             }
         }
 
@@ -622,15 +703,79 @@ public class WatchManager {
             Logger.i(TAG, "Acquiring wakelock for pin watcher updates");
             manageLock(true);
         }
+
+        if (currentInterval == IntervalType.FOREGROUND) {
+            scheduleForegroundUpdate();
+        }
+    }
+
+    private void pinWatcherLoading(PinWatcher pinWatcher, boolean fromBackground) {
+        EventBus.getDefault().post(new PinChangedMessage(pinWatcher.pin));
+
+        if (fromBackground) {
+            waitingForPinWatchersForBackgroundUpdate.add(pinWatcher);
+        }
+    }
+
+    // One request for the watched threads of a board, the threads that changed are loaded.
+    private void requestThreadIndex(String board, List<PinWatcher> boardWatchers, boolean fromBackground) {
+        if (fromBackground) {
+            waitingForPinWatchersForBackgroundUpdate.addAll(boardWatchers);
+        }
+
+        Loadable loadable = boardWatchers.get(0).pin.loadable;
+        loadable.site.actions().threadIndex(loadable.board, new SiteActions.ThreadIndexListener() {
+            @Override
+            public void onThreadIndex(ThreadIndex threadIndex) {
+                threadIndexRequests.remove(board);
+
+                int loads = 0;
+                for (PinWatcher pinWatcher : boardWatchers) {
+                    if (getPinWatcher(pinWatcher.pin) != pinWatcher) {
+                        // Destroyed in the meantime.
+                        pinWatcherDone(pinWatcher);
+                    } else if (pinWatcher.updateFromThreadIndex(threadIndex.get(pinWatcher.pin.loadable.no))) {
+                        EventBus.getDefault().post(new PinChangedMessage(pinWatcher.pin));
+                        loads++;
+                    } else {
+                        pinWatcherDone(pinWatcher);
+                    }
+                }
+                Logger.d(TAG, "Thread index of " + board + ": " + loads + " of " +
+                        boardWatchers.size() + " watched threads changed");
+            }
+
+            @Override
+            public void onThreadIndexError() {
+                threadIndexRequests.remove(board);
+
+                // Load the threads themselves instead.
+                for (PinWatcher pinWatcher : boardWatchers) {
+                    if (getPinWatcher(pinWatcher.pin) == pinWatcher && pinWatcher.update()) {
+                        EventBus.getDefault().post(new PinChangedMessage(pinWatcher.pin));
+                    } else {
+                        pinWatcherDone(pinWatcher);
+                    }
+                }
+            }
+        });
+    }
+
+    private static String threadIndexKey(Loadable loadable) {
+        return loadable.siteId + "/" + loadable.boardCode;
     }
 
     private void pinWatcherUpdated(PinWatcher pinWatcher) {
         updateState();
         EventBus.getDefault().post(new PinChangedMessage(pinWatcher.pin));
 
-        if (waitingForPinWatchersForBackgroundUpdate != null) {
-            waitingForPinWatchersForBackgroundUpdate.remove(pinWatcher);
+        pinWatcherDone(pinWatcher);
+    }
 
+    // The watcher finished updating, with or without a load.
+    private void pinWatcherDone(PinWatcher pinWatcher) {
+        if (waitingForPinWatchersForBackgroundUpdate != null &&
+                waitingForPinWatchersForBackgroundUpdate.remove(pinWatcher)) {
             if (waitingForPinWatchersForBackgroundUpdate.isEmpty()) {
                 Logger.i(TAG, "All watchers updated, removing wakelock");
                 waitingForPinWatchersForBackgroundUpdate = null;
@@ -687,22 +832,29 @@ public class WatchManager {
         }
     }
 
-    public class PinWatcher implements ChanThreadLoader.ChanLoaderCallback, ImageLoader.ImageListener {
+    public class PinWatcher implements ChanThreadLoader.BackgroundChanLoaderCallback,
+            ThreadWatchLoader.Callback, ImageLoader.ImageListener {
         private static final String TAG = "PinWatcher";
 
         // Width and height of the bitmap for the notification image.
         private static final int THUMBNAIL_SIZE = 128;
 
         private final Pin pin;
+        // Loads the thread without keeping it, used while the thread isn't open.
+        private final ThreadWatchLoader watchLoader;
+        // The loader of the thread while it is shown, the watcher follows its loads instead.
         private ChanThreadLoader chanLoader;
 
-        private final List<Post> posts = new ArrayList<>();
-        private final List<Post> quotes = new ArrayList<>();
+        private final List<WatchPost> posts = new ArrayList<>();
+        private final List<WatchPost> quotes = new ArrayList<>();
         private boolean wereNewQuotes = false;
         private boolean wereNewPosts = false;
 
         private boolean requireNotificationUpdate = true;
 
+        // The entry in the thread index of the board when the thread was last loaded for it.
+        private ThreadIndex.ThreadIndexItem threadIndexItem;
+
         private Bitmap thumbnailBitmap = null;
         private ImageLoader.ImageContainer thumbnailContainer;
 
@@ -711,7 +863,10 @@ public class WatchManager {
             inject(this);
 
             Logger.d(TAG, "PinWatcher: created for " + pin);
-            chanLoader = chanLoaderFactory.obtain(pin.loadable, this);
+            watchLoader = new ThreadWatchLoader(pin.loadable, ThreadWatchNotifications.MAX_MESSAGES, this);
+            if (chanLoaderFactory.isShown(pin.loadable)) {
+                attach();
+            }
         }
 
         public int getPinId() {
@@ -735,7 +890,7 @@ public class WatchManager {
             return thumbnailBitmap;
         }
 
-        public List<Post> getUnviewedPosts() {
+        public List<WatchPost> getUnviewedPosts() {
             if (posts.size() == 0) {
                 return posts;
             } else {
@@ -743,7 +898,7 @@ public class WatchManager {
             }
         }
 
-        public List<Post> getUnviewedQuotes() {
+        public List<WatchPost> getUnviewedQuotes() {
             return quotes.subList(Math.max(0, quotes.size() - pin.getNewQuoteCount()), quotes.size());
         }
 
@@ -766,39 +921,111 @@ public class WatchManager {
         }
 
         private void destroy() {
+            Logger.d(TAG, "PinWatcher: destroyed for " + pin);
+            watchLoader.cancel();
             if (chanLoader != null) {
-                Logger.d(TAG, "PinWatcher: destroyed for " + pin);
                 chanLoaderFactory.release(chanLoader, this);
                 chanLoader = null;
             }
         }
 
+        /**
+         * The thread is shown, watch with its loader that has the parsed thread anyway.
+         */
+        private void attach() {
+            if (chanLoader == null) {
+                Logger.d(TAG, "PinWatcher: using the loader of the shown thread for " + pin);
+                watchLoader.cancel();
+                chanLoader = chanLoaderFactory.obtain(pin.loadable, this);
+                // A cancelled load doesn't call back.
+                pinWatcherDone(this);
+            }
+        }
+
+        /**
+         * The thread isn't shown anymore, the loader goes to the cache and the watcher loads
+         * by itself again.
+         */
+        private void detach() {
+            if (chanLoader != null) {
+                Logger.d(TAG, "PinWatcher: loading by itself again for " + pin);
+                ChanThreadLoader released = chanLoader;
+                chanLoader = null;
+                chanLoaderFactory.release(released, this);
+                pinWatcherDone(this);
+            }
+        }
+
         private void onViewed() {
             wereNewPosts = false;
             wereNewQuotes = false;
             requireNotificationUpdate = true;
         }
 
-        private boolean update(boolean fromBackground) {
+        /**
+         * Load the thread, it is due.
+         *
+         * @return {@code true} if a load was started
+         */
+        private boolean update() {
             if (!pin.isError && pin.watching) {
                 loadThumbnailBitmapIfNeeded();
-
-                if (fromBackground) {
-                    // Always load regardless of timer, since the time left is not accurate for 15min+ intervals
-                    chanLoader.clearTimer();
-                    chanLoader.requestMoreData();
-                    return true;
-                } else {
-                    // true if a load was started
-                    return chanLoader.loadMoreIfTime();
-                }
+                return requestMoreData();
             } else {
                 return false;
             }
         }
 
+        /**
+         * Whether the thread index of the board is checked instead of loading the thread. The
+         * thread is loaded by itself the first time, the counts need its posts.
+         */
+        private boolean usesThreadIndex() {
+            boolean loaded = chanLoader != null ? chanLoader.getThread() != null : watchLoader.hasLoaded();
+            return loaded && pin.loadable.board != null &&
+                    pin.loadable.site.feature(Site.Feature.THREAD_INDEX);
+        }
+
+        /**
+         * Load the thread if its entry in the thread index changed. A thread that is not in the
+         * index anymore was archived or deleted, the load finds out which.
+         *
+         * @return {@code true} if a load was started
+         */
+        private boolean updateFromThreadIndex(@Nullable ThreadIndex.ThreadIndexItem item) {
+            loadThumbnailBitmapIfNeeded();
+
+            if (item != null && item.sameAs(threadIndexItem)) {
+                watchScheduler.loaded(this, Time.get(), 0);
+                return false;
+            }
+
+            threadIndexItem = item;
+            return requestMoreData();
+        }
+
+        // The shown thread is already loaded on the timer of its presenter, its loads reach
+        // onChanLoaderData and the scheduler learns from them. Only load when that timer is late.
+        private boolean requestMoreData() {
+            return chanLoader != null ? chanLoader.loadMoreIfTime() : watchLoader.requestMoreData();
+        }
+
+        @Override
+        public void onChanLoaderFiltered(ChanThread thread, List<Post> changed) {
+            // The notifications don't depend on the filters.
+        }
+
         @Override
         public void onChanLoaderError(ChanLoaderException error) {
+            onError(error);
+        }
+
+        @Override
+        public void onWatchError(ChanLoaderException error) {
+            onError(error);
+        }
+
+        private void onError(ChanLoaderException error) {
             // Ignore normal network errors, we only pause pins when there is absolutely no way
             // we'll ever need watching again: a 404.
             if (error.isNotFound()) {
@@ -806,24 +1033,12 @@ public class WatchManager {
                 pin.watching = false;
             }
 
+            watchScheduler.failed(this, Time.get());
             pinWatcherUpdated(this);
         }
 
         @Override
         public void onChanLoaderData(ChanThread thread) {
-            pin.isError = false;
-
-            if (pin.thumbnailUrl == null && thread.op != null && thread.op.image() != null) {
-                pin.thumbnailUrl = thread.op.image().getThumbnailUrl().toString();
-            }
-
-            // Populate posts list
-            posts.clear();
-            posts.addAll(thread.posts);
-
-            // Populate quotes list
-            quotes.clear();
-
             // Get list of saved replies from this thread
             Set<Integer> savedReplies = new HashSet<>();
             for (Post item : thread.posts) {
@@ -832,17 +1047,66 @@ public class WatchManager {
                 }
             }
 
-            // Now get a list of posts that have a quote to a saved reply
-            out:
-            for (Post post : thread.posts) {
-                for (Integer no : post.repliesTo) {
+            List<WatchPost> threadPosts = new ArrayList<>(thread.posts.size());
+            List<WatchPost> threadQuotes = new ArrayList<>();
+            int textFrom = thread.posts.size() - ThreadWatchNotifications.MAX_MESSAGES;
+            for (int i = 0; i < thread.posts.size(); i++) {
+                Post post = thread.posts.get(i);
+
+                // Now get a list of posts that have a quote to a saved reply
+                boolean quote = false;
+                for (int no : post.repliesTo) {
                     if (savedReplies.contains(no)) {
-                        quotes.add(post);
-                        continue out;
+                        quote = true;
+                        break;
                     }
                 }
+
+                WatchPost watchPost = WatchPost.fromPost(post, quote || i >= textFrom);
+                threadPosts.add(watchPost);
+                if (quote) {
+                    threadQuotes.add(watchPost);
+                }
+            }
+
+            String thumbnailUrl = null;
+            if (thread.op != null && thread.op.image() != null) {
+                thumbnailUrl = thread.op.image().getThumbnailUrl().toString();
+            }
+
+            onData(threadPosts, threadQuotes, thread.archived, thread.closed, thumbnailUrl);
+        }
+
+        @Override
+        public void onWatchData(ThreadWatchResponse response) {
+            onData(response.posts, response.quotes, response.archived, response.closed,
+                    response.thumbnailUrl);
+        }
+
+        @Override
+        public void onWatchNotModified() {
+            watchScheduler.loaded(this, Time.get(), 0);
+            pinWatcherUpdated(this);
+        }
+
+        private void onData(List<WatchPost> threadPosts, List<WatchPost> threadQuotes,
+                            boolean archived, boolean closed, String thumbnailUrl) {
+            pin.isError = false;
+
+            if (pin.thumbnailUrl == null && thumbnailUrl != null) {
+                pin.thumbnailUrl = thumbnailUrl;
             }
 
+            watchScheduler.loaded(this, Time.get(), threadPosts.size() - posts.size());
+
+            // Populate posts list
+            posts.clear();
+            posts.addAll(threadPosts);
+
+            // Populate quotes list
+            quotes.clear();
+            quotes.addAll(threadQuotes);
+
             boolean isFirstLoad = pin.watchNewCount < 0 || pin.quoteNewCount < 0;
 
             // If it was more than before processing
@@ -874,12 +1138,12 @@ public class WatchManager {
 
             if (Logger.debugEnabled()) {
                 Logger.d(TAG, String.format(Locale.ENGLISH,
-                        "postlast=%d postnew=%d werenewposts=%b quotelast=%d quotenew=%d werenewquotes=%b nextload=%ds",
+                        "postlast=%d postnew=%d werenewposts=%b quotelast=%d quotenew=%d werenewquotes=%b interval=%ds",
                         pin.watchLastCount, pin.watchNewCount, wereNewPosts, pin.quoteLastCount,
-                        pin.quoteNewCount, wereNewQuotes, chanLoader.getTimeUntilLoadMore() / 1000));
+                        pin.quoteNewCount, wereNewQuotes, watchScheduler.getInterval(this) / 1000));
             }
 
-            if (thread.archived || thread.closed) {
+            if (archived || closed) {
                 pin.archived = true;
                 pin.watching = false;
                 requireNotificationUpdate = true;
@@ -0,0 +1,214 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.manager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Decides when the watched threads are loaded, for the {@link WatchManager}.
+ * <p>
+ * The rate of new posts of every thread is learned from its loads, a thread is loaded again
+ * about when the next few posts are expected. A load without new posts lowers the rate, so a
+ * dying thread is loaded less and less often, up to the maximum interval. A random jitter spreads
+ * the loads, so threads that were pinned together don't stay in step.
+ * <p>
+ * A load may be done a part of its interval early, see {@link #takeDue(long, long)}. The loads
+ * that are close together are done at the same wakeup that way, the manager only has to wake at
+ * {@link #nextWakeup()}.
+ * <p>
+ * All times are in milliseconds, from the caller, for a simulated clock in the tests.
+ */
+public class WatchScheduler<K> {
+    // The weight of the last load in the post rate of a thread.
+    private static final double RATE_WEIGHT = 0.3;
+    // The number of new posts a load is scheduled for.
+    private static final double POSTS_PER_LOAD = 0.5;
+    // An interval grows at most this much per load, a thread that became quiet is backed off
+    // gradually.
+    private static final double MAX_GROWTH = 1.5;
+    // The part of its interval a load may be done early, to share a wakeup.
+    private static final double SLACK = 0.25;
+
+    private final long minInterval;
+    private final long maxInterval;
+    private final double jitter;
+    private final Random random;
+
+    private final Map<K, Entry<K>> entries = new HashMap<>();
+    private final PriorityQueue<Entry<K>> queue =
+            new PriorityQueue<>(11, (a, b) -> Long.compare(a.due, b.due));
+
+    /**
+     * @param minInterval the shortest time between the loads of a thread
+     * @param maxInterval the longest time between the loads of a thread
+     * @param jitter      the part of an interval it is randomly made longer or shorter
+     * @param random      the source of the jitter
+     */
+    public WatchScheduler(long minInterval, long maxInterval, double jitter, Random random) {
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.jitter = jitter;
+        this.random = random;
+    }
+
+    /**
+     * Start scheduling the thread, it is due now.
+     */
+    public void add(K key, long now) {
+        if (!entries.containsKey(key)) {
+            Entry<K> entry = new Entry<>(key, minInterval);
+            entry.due = now;
+            entries.put(key, entry);
+            queue.add(entry);
+        }
+    }
+
+    public void remove(K key) {
+        Entry<K> entry = entries.remove(key);
+        if (entry != null) {
+            queue.remove(entry);
+        }
+    }
+
+    public boolean contains(K key) {
+        return entries.containsKey(key);
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * The thread was loaded, scheduled or not. Learns the post rate and schedules the next load.
+     *
+     * @param newPosts the number of posts that were added since the last load
+     */
+    public void loaded(K key, long now, int newPosts) {
+        Entry<K> entry = entries.get(key);
+        if (entry == null) {
+            return;
+        }
+
+        if (entry.hasLoaded && now > entry.lastLoad) {
+            double observed = (double) Math.max(0, newPosts) / (now - entry.lastLoad);
+            entry.rate = entry.hasRate ? RATE_WEIGHT * observed + (1.0 - RATE_WEIGHT) * entry.rate : observed;
+            entry.hasRate = true;
+        }
+        entry.hasLoaded = true;
+        entry.lastLoad = now;
+
+        long interval;
+        if (!entry.hasRate) {
+            // Known after the second load.
+            interval = minInterval;
+        } else {
+            interval = entry.rate > 0.0 ? (long) (POSTS_PER_LOAD / entry.rate) : maxInterval;
+            long maxGrown = (long) (entry.interval * MAX_GROWTH);
+            interval = Math.max(minInterval, Math.min(interval, Math.min(maxGrown, maxInterval)));
+        }
+        schedule(entry, now, interval);
+    }
+
+    /**
+     * Loading the thread failed, it is backed off without changing the post rate.
+     */
+    public void failed(K key, long now) {
+        Entry<K> entry = entries.get(key);
+        if (entry != null) {
+            schedule(entry, now, Math.min(maxInterval, (long) (entry.interval * MAX_GROWTH)));
+        }
+    }
+
+    /**
+     * The time of the next load that is due, or {@link Long#MAX_VALUE} if nothing is scheduled.
+     */
+    public long nextWakeup() {
+        Entry<K> first = queue.peek();
+        return first == null ? Long.MAX_VALUE : first.due;
+    }
+
+    /**
+     * Take the threads to load now, the ones that are due at {@code until} and the ones that are
+     * due a little later. Until their load calls {@link #loaded(Object, long, int)} or
+     * {@link #failed(Object, long)} they are scheduled an interval later, a load that is lost is
+     * tried again then.
+     *
+     * @param now   the current time
+     * @param until the time that the loads must be done for, {@code now} or the next time the
+     *              caller can wake up
+     * @return the keys in the order they were due
+     */
+    public List<K> takeDue(long now, long until) {
+        List<Entry<K>> due = new ArrayList<>();
+        for (Entry<K> entry : entries.values()) {
+            if (entry.due - entry.slack <= until) {
+                due.add(entry);
+            }
+        }
+        Collections.sort(due, (a, b) -> Long.compare(a.due, b.due));
+
+        List<K> keys = new ArrayList<>(due.size());
+        for (int i = 0; i < due.size(); i++) {
+            Entry<K> entry = due.get(i);
+            schedule(entry, now, entry.interval);
+            keys.add(entry.key);
+        }
+        return keys;
+    }
+
+    /**
+     * The interval the thread is loaded at now, for the logs and the tests.
+     */
+    public long getInterval(K key) {
+        Entry<K> entry = entries.get(key);
+        return entry == null ? -1 : entry.interval;
+    }
+
+    private void schedule(Entry<K> entry, long now, long interval) {
+        entry.interval = interval;
+        long jittered = interval + (long) ((random.nextDouble() * 2.0 - 1.0) * jitter * interval);
+        queue.remove(entry);
+        entry.due = now + jittered;
+        entry.slack = (long) (jittered * SLACK);
+        queue.add(entry);
+    }
+
+    private static class Entry<K> {
+        final K key;
+        long interval;
+        long due;
+        long slack;
+
+        boolean hasLoaded;
+        long lastLoad;
+        boolean hasRate;
+        // New posts per millisecond.
+        double rate;
+
+        Entry(K key, long interval) {
+            this.key = key;
+            this.interval = interval;
+        }
+    }
+}
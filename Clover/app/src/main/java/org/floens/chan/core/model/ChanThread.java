@@ -27,6 +27,8 @@ public class ChanThread {
     public Post op;
     public boolean closed = false;
     public boolean archived = false;
+    // Quotes between the posts, null in catalog mode.
+    public ReplyGraph replyGraph;
 
     public ChanThread(Loadable loadable, List<Post> posts) {
         this.loadable = loadable;
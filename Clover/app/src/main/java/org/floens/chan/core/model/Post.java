@@ -17,15 +17,15 @@
  */
 package org.floens.chan.core.model;
 
+import androidx.annotation.AnyThread;
 import androidx.annotation.MainThread;
 
 import org.floens.chan.core.model.orm.Board;
+import org.floens.chan.utils.IntSet;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -45,8 +45,6 @@ public class Post {
 
     public final String name;
 
-    public final CharSequence comment;
-
     public final String subject;
 
     /**
@@ -66,20 +64,15 @@ public class Post {
 
     public final boolean isSavedReply;
 
-    public final int filterHighlightedColor;
-
-    public final boolean filterStub;
-
-    public final boolean filterRemove;
-
     /**
-     * This post replies to the these ids.
+     * The fields the filters matched, or {@code null} when the post wasn't matched.
      */
-    public final Set<Integer> repliesTo;
-
-    public final List<PostLinkable> linkables;
+    public final PostFilterFields filterFields;
 
-    public final CharSequence subjectSpan;
+    /**
+     * This post replies to the these ids, sorted ascending.
+     */
+    public final int[] repliesTo;
 
     public final CharSequence nameTripcodeIdCapcodeSpan;
 
@@ -94,7 +87,18 @@ public class Post {
      * <p><b>Manual synchronization is needed, since this list can be modified from any thread.
      * Wrap all accesses in a {@code synchronized} block.</b>
      */
-    public final List<Integer> repliesFrom = new ArrayList<>();
+    public final IntSet repliesFrom = new IntSet();
+
+    /**
+     * The parsed comment, or {@code null} while the comment is not parsed yet.
+     * See {@link #getComment()}.
+     */
+    private volatile CharSequence comment;
+
+    private List<PostLinkable> linkables;
+
+    // The builder with the raw comment html, kept until the lazy comment is parsed.
+    private Builder lazyCommentBuilder;
 
     // These members may only mutate on the main thread.
     private boolean sticky;
@@ -106,6 +110,14 @@ public class Post {
     private long lastModified;
     private String title = "";
 
+    // The result of the filters, changed when the post is matched again after the filters
+    // changed. The subject span depends on it.
+    private int filterHighlightedColor;
+    private boolean filterStub;
+    private boolean filterRemove;
+    private int filterVersion;
+    private CharSequence subjectSpan;
+
     private Post(Builder builder) {
         board = builder.board;
         boardId = builder.board.code;
@@ -122,7 +134,6 @@ public class Post {
 
         subject = builder.subject;
         name = builder.name;
-        comment = builder.comment;
         tripcode = builder.tripcode;
 
         time = builder.unixTimestampSeconds;
@@ -141,17 +152,71 @@ public class Post {
         id = builder.posterId;
         capcode = builder.moderatorCapcode;
 
+        filterFields = builder.filterFields;
         filterHighlightedColor = builder.filterHighlightedColor;
         filterStub = builder.filterStub;
         filterRemove = builder.filterRemove;
+        filterVersion = builder.filterVersion;
 
         isSavedReply = builder.isSavedReply;
 
         subjectSpan = builder.subjectSpan;
         nameTripcodeIdCapcodeSpan = builder.nameTripcodeIdCapcodeSpan;
 
-        linkables = Collections.unmodifiableList(builder.linkables);
-        repliesTo = Collections.unmodifiableSet(builder.repliesToIds);
+        // Copied, the builder may still get quotes added while parsing a lazy comment.
+        repliesTo = builder.repliesToIds.toArray();
+
+        if (builder.lazyCommentParser != null) {
+            lazyCommentBuilder = builder;
+        } else {
+            linkables = Collections.unmodifiableList(builder.linkables);
+            comment = builder.comment;
+        }
+    }
+
+    /**
+     * Get the parsed comment.<br>
+     * When the post was built with a lazy comment, the comment html is parsed on the first call,
+     * on the calling thread. Use {@link #isCommentParsed()} to check if that will happen.
+     *
+     * @return the parsed comment
+     */
+    @AnyThread
+    public CharSequence getComment() {
+        CharSequence comment = this.comment;
+        if (comment == null) {
+            comment = parseLazyComment();
+        }
+        return comment;
+    }
+
+    /**
+     * Get the links in the comment. Parses the comment if it wasn't already, see
+     * {@link #getComment()}.
+     *
+     * @return a list of the linkables in the comment
+     */
+    @AnyThread
+    public List<PostLinkable> getLinkables() {
+        getComment();
+        return linkables;
+    }
+
+    @AnyThread
+    public boolean isCommentParsed() {
+        return comment != null;
+    }
+
+    private synchronized CharSequence parseLazyComment() {
+        if (comment == null) {
+            Builder builder = lazyCommentBuilder;
+            CharSequence parsed = builder.lazyCommentParser.parseComment(builder);
+            linkables = Collections.unmodifiableList(builder.linkables);
+            lazyCommentBuilder = null;
+            // Publish the comment last, the volatile write makes linkables visible as well.
+            comment = parsed;
+        }
+        return comment;
     }
 
     @MainThread
@@ -234,6 +299,57 @@ public class Post {
         this.title = title;
     }
 
+    @MainThread
+    public int getFilterHighlightedColor() {
+        return filterHighlightedColor;
+    }
+
+    @MainThread
+    public boolean isFilterStub() {
+        return filterStub;
+    }
+
+    @MainThread
+    public boolean isFilterRemove() {
+        return filterRemove;
+    }
+
+    /**
+     * The version of the filters the post was matched with, see
+     * {@link org.floens.chan.core.manager.FilterEngine#getVersion()}.
+     */
+    @MainThread
+    public int getFilterVersion() {
+        return filterVersion;
+    }
+
+    /**
+     * Set the result of matching the post again with newer filters.
+     *
+     * @return {@code true} if the result is different from before
+     */
+    @MainThread
+    public boolean setFilter(int highlightedColor, boolean stub, boolean remove, int version) {
+        filterVersion = version;
+        if (filterHighlightedColor == highlightedColor && filterStub == stub && filterRemove == remove) {
+            return false;
+        }
+        filterHighlightedColor = highlightedColor;
+        filterStub = stub;
+        filterRemove = remove;
+        return true;
+    }
+
+    @MainThread
+    public CharSequence getSubjectSpan() {
+        return subjectSpan;
+    }
+
+    @MainThread
+    public void setSubjectSpan(CharSequence subjectSpan) {
+        this.subjectSpan = subjectSpan;
+    }
+
     /**
      * Return the first image, or {@code null} if post has no images.
      *
@@ -271,17 +387,26 @@ public class Post {
         public String posterId = "";
         public String moderatorCapcode = "";
 
+        public PostFilterFields filterFields;
         public int filterHighlightedColor;
         public boolean filterStub;
         public boolean filterRemove;
+        public int filterVersion;
 
         public boolean isSavedReply;
 
         public CharSequence subjectSpan;
         public CharSequence nameTripcodeIdCapcodeSpan;
 
+        /**
+         * Don't parse the comment html while parsing the post, let the post parse it when it
+         * is first needed with the {@link #lazyCommentParser}.
+         */
+        public boolean lazyComment;
+        public LazyCommentParser lazyCommentParser;
+
         private List<PostLinkable> linkables = new ArrayList<>();
-        private Set<Integer> repliesToIds = new HashSet<>();
+        private IntSet repliesToIds = new IntSet();
 
         public Builder() {
         }
@@ -402,6 +527,12 @@ public class Post {
             return this;
         }
 
+        public Builder filterFields(PostFilterFields filterFields, int filterVersion) {
+            this.filterFields = filterFields;
+            this.filterVersion = filterVersion;
+            return this;
+        }
+
         public Builder isSavedReply(boolean isSavedReply) {
             this.isSavedReply = isSavedReply;
             return this;
@@ -418,6 +549,33 @@ public class Post {
             return this;
         }
 
+        public int linkableCount() {
+            return linkables.size();
+        }
+
+        /**
+         * Drop the linkables added after the first {@code count}, used when a comment parse is
+         * abandoned halfway and started over.
+         */
+        public Builder truncateLinkables(int count) {
+            linkables.subList(count, linkables.size()).clear();
+            return this;
+        }
+
+        public Builder lazyComment(boolean lazyComment) {
+            this.lazyComment = lazyComment;
+            return this;
+        }
+
+        public Builder lazyCommentParser(LazyCommentParser lazyCommentParser) {
+            this.lazyCommentParser = lazyCommentParser;
+            return this;
+        }
+
+        public IntSet getRepliesToIds() {
+            return repliesToIds;
+        }
+
         public Builder addReplyTo(int postId) {
             repliesToIds.add(postId);
             return this;
@@ -431,4 +589,14 @@ public class Post {
             return new Post(this);
         }
     }
+
+    public interface LazyCommentParser {
+        /**
+         * Parse the comment html of the builder. Called at most once, on any thread.
+         *
+         * @param builder the builder of the post, with the raw comment
+         * @return the parsed comment
+         */
+        CharSequence parseComment(Builder builder);
+    }
 }
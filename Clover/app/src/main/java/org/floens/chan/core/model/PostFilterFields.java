@@ -0,0 +1,42 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.model;
+
+import java.util.List;
+
+/**
+ * The fields of a post that the filters match, as they were read from the site and before the
+ * post was parsed. Kept on the post, to match it again when the filters change.
+ */
+public class PostFilterFields {
+    public final String tripcode;
+    public final String name;
+    public final String comment;
+    public final String posterId;
+    public final String subject;
+    public final List<PostImage> images;
+
+    public PostFilterFields(Post.Builder builder) {
+        tripcode = builder.tripcode;
+        name = builder.name;
+        comment = builder.comment.toString();
+        posterId = builder.posterId;
+        subject = builder.subject;
+        images = builder.images;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.model;
+
+import android.util.SparseArray;
+
+import org.floens.chan.utils.IntSet;
+
+import java.util.List;
+
+/**
+ * The quotes between the posts of a thread, kept for as long as the thread is loaded so that a
+ * refresh only has to apply the posts that are new.
+ * <p>
+ * Posts are never removed from a loaded thread, deleted posts stay in it marked as deleted, and so
+ * do their quotes. Quotes to posts that are not in the thread are kept as well, they are added to
+ * the post when it shows up.
+ * <p>Safe to use from any thread, {@link Post#repliesFrom} is updated under its own lock.
+ */
+public class ReplyGraph {
+    // Post no to the no's of the posts quoting it.
+    private final SparseArray<IntSet> quotedBy = new SparseArray<>();
+    // The posts that were added, by no.
+    private final SparseArray<Post> posts = new SparseArray<>();
+
+    /**
+     * Add the posts that are not in the graph yet, and add them to the
+     * {@link Post#repliesFrom} of the posts they quote.
+     *
+     * @param newPosts posts to add, posts already in the graph are skipped.
+     * @return the number of posts that were added.
+     */
+    public synchronized int addPosts(List<Post> newPosts) {
+        int added = 0;
+        for (int i = 0; i < newPosts.size(); i++) {
+            Post post = newPosts.get(i);
+            if (posts.get(post.no) == post) {
+                continue;
+            }
+
+            posts.put(post.no, post);
+            added++;
+
+            // Posts that quoted this one before it was added.
+            IntSet quotes = quotedBy.get(post.no);
+            if (quotes != null) {
+                synchronized (post.repliesFrom) {
+                    post.repliesFrom.addAll(quotes);
+                }
+            }
+
+            for (int replyTo : post.repliesTo) {
+                IntSet from = quotedBy.get(replyTo);
+                if (from == null) {
+                    from = new IntSet(2);
+                    quotedBy.put(replyTo, from);
+                }
+
+                if (from.add(post.no)) {
+                    // Sometimes a post replies to a ghost, a post that doesn't exist.
+                    Post subject = posts.get(replyTo);
+                    if (subject != null) {
+                        synchronized (subject.repliesFrom) {
+                            subject.repliesFrom.add(post.no);
+                        }
+                    }
+                }
+            }
+        }
+        return added;
+    }
+
+    public synchronized int size() {
+        return posts.size();
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.model;
+
+import java.util.Map;
+
+/**
+ * The threads of a board with when they last changed, without their posts.
+ */
+public class ThreadIndex {
+    private final Map<Integer, ThreadIndexItem> items;
+
+    public static ThreadIndex fromItems(Map<Integer, ThreadIndexItem> items) {
+        return new ThreadIndex(items);
+    }
+
+    private ThreadIndex(Map<Integer, ThreadIndexItem> items) {
+        this.items = items;
+    }
+
+    /**
+     * The thread with the number, or {@code null} if it is not on the board anymore.
+     */
+    public ThreadIndexItem get(int no) {
+        return items.get(no);
+    }
+
+    public static class ThreadIndexItem {
+        public final int no;
+
+        /**
+         * Seconds since the epoch, changes with every new or deleted post.
+         */
+        public final long lastModified;
+
+        public final int replies;
+
+        public static ThreadIndexItem fromNoLastModifiedReplies(int no, long lastModified, int replies) {
+            return new ThreadIndexItem(no, lastModified, replies);
+        }
+
+        private ThreadIndexItem(int no, long lastModified, int replies) {
+            this.no = no;
+            this.lastModified = lastModified;
+            this.replies = replies;
+        }
+
+        public boolean sameAs(ThreadIndexItem other) {
+            return other != null && no == other.no && lastModified == other.lastModified &&
+                    replies == other.replies;
+        }
+    }
+}
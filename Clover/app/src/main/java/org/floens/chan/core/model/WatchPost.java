@@ -0,0 +1,44 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.model;
+
+/**
+ * A post as the thread watcher keeps it. Only the posts that can end up in a notification have
+ * their name and comment, as plain text.
+ */
+public class WatchPost {
+    public final int no;
+    public final long time;
+    public final boolean hasImage;
+    public final CharSequence name;
+    public final CharSequence comment;
+
+    public WatchPost(int no, long time, boolean hasImage, CharSequence name, CharSequence comment) {
+        this.no = no;
+        this.time = time;
+        this.hasImage = hasImage;
+        this.name = name;
+        this.comment = comment;
+    }
+
+    public static WatchPost fromPost(Post post, boolean withText) {
+        return new WatchPost(post.no, post.time, post.image() != null,
+                withText ? post.nameTripcodeIdCapcodeSpan : null,
+                withText ? post.getComment() : null);
+    }
+}
@@ -82,6 +82,13 @@ public class Loadable implements SiteReference, BoardReference {
 
     public int markedNo = -1;
 
+    /**
+     * Last-Modified and ETag headers of the last successful load, used to make the next
+     * refresh a conditional request. Not stored in the database.
+     */
+    public String lastModifiedHeader;
+    public String etag;
+
     // when the title, listViewTop, listViewIndex or lastViewed were changed
     public boolean dirty = false;
 
@@ -282,6 +289,8 @@ public class Loadable implements SiteReference, BoardReference {
         copy.listViewTop = listViewTop;
         copy.lastViewed = lastViewed;
         copy.lastLoaded = lastLoaded;
+        copy.lastModifiedHeader = lastModifiedHeader;
+        copy.etag = etag;
 
         return copy;
     }
@@ -30,8 +30,11 @@ import com.android.volley.toolbox.HttpHeaderParser;
 import org.floens.chan.utils.IOUtils;
 
 import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Map;
 
 public abstract class JsonReaderRequest<T> extends Request<T> {
     private static final Charset UTF8 = Charset.forName("UTF-8");
@@ -51,19 +54,24 @@ public abstract class JsonReaderRequest<T> extends Request<T> {
 
     @Override
     protected Response<T> parseNetworkResponse(NetworkResponse response) {
-        ByteArrayInputStream baos = new ByteArrayInputStream(response.data);
-        JsonReader reader = new JsonReader(new InputStreamReader(baos, UTF8));
+        readHeaders(response.headers != null ?
+                response.headers : Collections.<String, String>emptyMap());
+
+        if (response.notModified) {
+            T notModified = readNotModified();
+            if (notModified != null) {
+                return Response.success(notModified, HttpHeaderParser.parseCacheHeaders(response));
+            }
+        }
 
         Exception exception = null;
         T read = null;
         try {
-            read = readJson(reader);
+            read = readStream(new ByteArrayInputStream(response.data));
         } catch (Exception e) {
             exception = e;
         }
 
-        IOUtils.closeQuietly(reader);
-
         if (read == null) {
             if (exception != null) {
                 return Response.error(new VolleyError(exception));
@@ -75,6 +83,43 @@ public abstract class JsonReaderRequest<T> extends Request<T> {
         }
     }
 
+    /**
+     * Called with the headers of the response, before the body is read.
+     *
+     * @param headers the response headers, with case insensitive keys
+     */
+    public void readHeaders(Map<String, String> headers) {
+    }
+
+    /**
+     * Called when the server responded with 304 Not Modified to a conditional request.
+     * Return the data to deliver without reading any body. The default returns null, in that
+     * case the body Volley has cached is read instead, or an error is delivered if there is none.
+     *
+     * @return null or the data
+     */
+    public T readNotModified() {
+        return null;
+    }
+
+    /**
+     * Read the json from an input stream. The stream is read as UTF-8 and is closed afterwards.
+     * Used by {@link #parseNetworkResponse(NetworkResponse)} with the buffered data, and by
+     * {@link JsonReaderStreamingCall} with the body as it comes in from the network.
+     *
+     * @param inputStream the stream to read from
+     * @return null or the data
+     * @throws Exception none or an exception
+     */
+    public T readStream(InputStream inputStream) throws Exception {
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, UTF8));
+        try {
+            return readJson(reader);
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+    }
+
     /**
      * Read your json. Returning null or throwing something means a Response.error, Response.success is returned otherwise.
      * The reader is closed for you.
@@ -0,0 +1,198 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.net;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.MalformedJsonException;
+
+import androidx.annotation.MainThread;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.NetworkError;
+import com.android.volley.NetworkResponse;
+import com.android.volley.ServerError;
+import com.android.volley.TimeoutError;
+import com.android.volley.VolleyError;
+
+import org.floens.chan.core.settings.ChanSettings;
+import org.floens.chan.utils.IOUtils;
+import org.floens.chan.utils.Logger;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.HttpURLConnection;
+import java.util.Map;
+import java.util.TreeMap;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Executes a {@link JsonReaderRequest} with OkHttp instead of Volley.<br>
+ * The response body is fed to {@link JsonReaderRequest#readJson(android.util.JsonReader)} while
+ * it is coming in from the socket, instead of first being buffered in a byte array. This means
+ * parsing starts with the first bytes, and the whole response never has to be on the heap.
+ * <p>The listeners of the request are called on the main thread, the same as Volley does.
+ */
+public class JsonReaderStreamingCall<T> implements Callback {
+    private static final String TAG = "JsonReaderStreamingCall";
+
+    private final JsonReaderRequest<T> request;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private Call call;
+
+    public JsonReaderStreamingCall(JsonReaderRequest<T> request) {
+        this.request = request;
+    }
+
+    public JsonReaderRequest<T> getRequest() {
+        return request;
+    }
+
+    @MainThread
+    public void enqueue(OkHttpClient client, String userAgent) {
+        Request.Builder requestBuilder = new Request.Builder()
+                .url(request.getUrl());
+
+        try {
+            for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+                requestBuilder.header(header.getKey(), header.getValue());
+            }
+        } catch (AuthFailureError e) {
+            Logger.e(TAG, "Error getting headers", e);
+        }
+
+        Request httpRequest = requestBuilder
+                .header("User-Agent", userAgent)
+                .build();
+
+        call = client.newBuilder()
+                .proxy(ChanSettings.getProxy())
+                .build()
+                .newCall(httpRequest);
+        call.enqueue(this);
+    }
+
+    /**
+     * Cancel the call. The listeners of the request will not be called after this.
+     */
+    @MainThread
+    public void cancel() {
+        request.cancel();
+        if (call != null) {
+            call.cancel();
+        }
+    }
+
+    @Override
+    public void onResponse(Call call, Response response) {
+        ResponseBody body = response.body();
+        try {
+            request.readHeaders(toHeaderMap(response));
+
+            if (response.code() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                T notModified = request.readNotModified();
+                if (notModified == null) {
+                    postError(new ServerError(toNetworkResponse(response)));
+                } else {
+                    postResponse(notModified);
+                }
+                return;
+            }
+
+            if (!response.isSuccessful()) {
+                postError(new ServerError(toNetworkResponse(response)));
+                return;
+            }
+
+            if (body == null) {
+                postError(new VolleyError("No body. HTTP " + response.code()));
+                return;
+            }
+
+            T result = request.readStream(body.byteStream());
+            if (result == null) {
+                postError(new VolleyError("Unknown error"));
+            } else {
+                postResponse(result);
+            }
+        } catch (Exception e) {
+            if (!request.isCanceled()) {
+                Logger.e(TAG, "Error reading response", e);
+            }
+            postError(toVolleyError(e));
+        } finally {
+            IOUtils.closeQuietly(body);
+        }
+    }
+
+    @Override
+    public void onFailure(Call call, IOException e) {
+        if (!request.isCanceled()) {
+            Logger.e(TAG, "onFailure", e);
+        }
+        postError(toVolleyError(e));
+    }
+
+    private void postResponse(final T result) {
+        handler.post(() -> {
+            if (!request.isCanceled()) {
+                request.deliverResponse(result);
+            }
+        });
+    }
+
+    private void postError(final VolleyError error) {
+        handler.post(() -> {
+            if (!request.isCanceled()) {
+                request.deliverError(error);
+            }
+        });
+    }
+
+    private VolleyError toVolleyError(Exception e) {
+        if (e instanceof SocketTimeoutException) {
+            return new TimeoutError();
+        } else if (e instanceof IOException && !(e instanceof MalformedJsonException)) {
+            // Connection errors, also when the connection breaks halfway through parsing.
+            return new NetworkError(e);
+        } else {
+            return new VolleyError(e);
+        }
+    }
+
+    private NetworkResponse toNetworkResponse(Response response) {
+        return new NetworkResponse(response.code(), null, toHeaderMap(response),
+                response.code() == HttpURLConnection.HTTP_NOT_MODIFIED);
+    }
+
+    private Map<String, String> toHeaderMap(Response response) {
+        // Same as Volley, header names are case insensitive.
+        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (String name : response.headers().names()) {
+            headers.put(name, response.header(name));
+        }
+        return headers;
+    }
+}
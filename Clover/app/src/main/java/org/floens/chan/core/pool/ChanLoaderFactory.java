@@ -22,7 +22,9 @@ import android.util.LruCache;
 import org.floens.chan.core.site.loader.ChanThreadLoader;
 import org.floens.chan.core.model.orm.Loadable;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.inject.Inject;
@@ -41,11 +43,22 @@ public class ChanLoaderFactory {
 
     private Map<Loadable, ChanThreadLoader> threadLoaders = new HashMap<>();
     private LruCache<Loadable, ChanThreadLoader> threadLoadersCache = new LruCache<>(THREAD_LOADERS_CACHE_SIZE);
+    // Catalog loaders aren't shared, but are kept to match their posts again in refilter().
+    private List<ChanThreadLoader> catalogLoaders = new ArrayList<>();
+    private ShownListener shownListener;
 
     @Inject
     public ChanLoaderFactory() {
     }
 
+    /**
+     * Set the listener that is told when a thread loader is shown or hidden, see
+     * {@link ChanThreadLoader#isShown()}.
+     */
+    public void setShownListener(ShownListener shownListener) {
+        this.shownListener = shownListener;
+    }
+
     public ChanThreadLoader obtain(Loadable loadable, ChanThreadLoader.ChanLoaderCallback listener) {
         ChanThreadLoader chanLoader;
         if (loadable.isThreadMode()) {
@@ -68,13 +81,27 @@ public class ChanLoaderFactory {
             }
         } else {
             chanLoader = new ChanThreadLoader(loadable);
+            catalogLoaders.add(chanLoader);
         }
 
+        boolean wasShown = chanLoader.isShown();
         chanLoader.addListener(listener);
 
+        if (loadable.isThreadMode() && !wasShown && chanLoader.isShown() && shownListener != null) {
+            shownListener.onThreadLoaderShown(chanLoader);
+        }
+
         return chanLoader;
     }
 
+    /**
+     * Whether the loader of this thread is in use and shown, see {@link ChanThreadLoader#isShown()}.
+     */
+    public boolean isShown(Loadable loadable) {
+        ChanThreadLoader chanLoader = threadLoaders.get(loadable);
+        return chanLoader != null && chanLoader.isShown();
+    }
+
     public void release(ChanThreadLoader chanLoader, ChanThreadLoader.ChanLoaderCallback listener) {
         Loadable loadable = chanLoader.getLoadable();
         if (loadable.isThreadMode()) {
@@ -84,12 +111,46 @@ public class ChanLoaderFactory {
                 throw new IllegalStateException("The released loader does not exist");
             }
 
+            boolean wasShown = chanLoader.isShown();
             if (chanLoader.removeListener(listener)) {
                 threadLoaders.remove(loadable);
                 threadLoadersCache.put(loadable, chanLoader);
+            } else if (wasShown && !chanLoader.isShown() && shownListener != null) {
+                // The listener may release its own reference here.
+                shownListener.onThreadLoaderHidden(chanLoader);
             }
         } else {
-            chanLoader.removeListener(listener);
+            if (chanLoader.removeListener(listener)) {
+                catalogLoaders.remove(chanLoader);
+            }
         }
     }
+
+    /**
+     * Match the posts of all loaders, in use or cached, again after the filters changed.
+     * See {@link ChanThreadLoader#refilter()}.
+     */
+    public void refilter() {
+        for (ChanThreadLoader chanLoader : threadLoaders.values()) {
+            chanLoader.refilter();
+        }
+        for (ChanThreadLoader chanLoader : threadLoadersCache.snapshot().values()) {
+            chanLoader.refilter();
+        }
+        for (int i = 0; i < catalogLoaders.size(); i++) {
+            catalogLoaders.get(i).refilter();
+        }
+    }
+
+    public interface ShownListener {
+        /**
+         * The first listener that shows the thread was added to the loader.
+         */
+        void onThreadLoaderShown(ChanThreadLoader chanLoader);
+
+        /**
+         * The last listener that showed the thread was removed, background listeners are left.
+         */
+        void onThreadLoaderHidden(ChanThreadLoader chanLoader);
+    }
 }
@@ -0,0 +1,332 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.pool;
+
+import androidx.annotation.AnyThread;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * The threads that parse posts, shared by all loads in the app.
+ * <p>
+ * Tasks are queued by {@link Priority}, so the thread the user is looking at is parsed before the
+ * threads the watcher refreshes in the background, and the comments that are prefetched are
+ * parsed last. Tasks with the same priority run in the order they were submitted.
+ * <p>
+ * Tasks are submitted through a {@link Group}, one per load. Cancelling the group removes its
+ * tasks that did not start yet from the queue. A task may wait on the tasks of its group, a parse
+ * thread that waits in {@link Group#invokeAll} runs the tasks itself instead of blocking a thread
+ * the tasks need.
+ */
+@Singleton
+@AnyThread
+public class ParseScheduler {
+    public enum Priority {
+        FOREGROUND_THREAD,
+        FOREGROUND_CATALOG,
+        WATCHER,
+        PREFETCH
+    }
+
+    private final int threadCount;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong sequence = new AtomicLong();
+
+    // Metrics, per priority.
+    private final AtomicInteger[] queued = new AtomicInteger[Priority.values().length];
+    private final AtomicInteger[] maxQueued = new AtomicInteger[Priority.values().length];
+    private final AtomicLong[] completed = new AtomicLong[Priority.values().length];
+    private final AtomicLong[] cancelled = new AtomicLong[Priority.values().length];
+    private final AtomicLong[] waitNanos = new AtomicLong[Priority.values().length];
+
+    @Inject
+    public ParseScheduler() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ParseScheduler(int threadCount) {
+        this.threadCount = threadCount;
+
+        for (int i = 0; i < queued.length; i++) {
+            queued[i] = new AtomicInteger();
+            maxQueued[i] = new AtomicInteger();
+            completed[i] = new AtomicLong();
+            cancelled[i] = new AtomicLong();
+            waitNanos[i] = new AtomicLong();
+        }
+
+        executor = new ThreadPoolExecutor(threadCount, threadCount, 30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ParseThreadFactory()) {
+            @Override
+            protected void beforeExecute(Thread t, Runnable r) {
+                super.beforeExecute(t, r);
+                ((Task<?>) r).onStart();
+            }
+        };
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public Group newGroup(Priority priority) {
+        return new Group(priority);
+    }
+
+    /**
+     * @return the number of tasks with the priority waiting for a thread.
+     */
+    public int getQueueDepth(Priority priority) {
+        return queued[priority.ordinal()].get();
+    }
+
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        summary.append("Threads: ").append(threadCount)
+                .append(", active: ").append(executor.getActiveCount()).append("\n");
+        for (Priority priority : Priority.values()) {
+            int i = priority.ordinal();
+            long done = completed[i].get();
+            summary.append(priority.name().toLowerCase())
+                    .append(": queued ").append(queued[i].get())
+                    .append(" (max ").append(maxQueued[i].get()).append(")")
+                    .append(", done ").append(done)
+                    .append(", cancelled ").append(cancelled[i].get())
+                    .append(", avg wait ")
+                    .append(done == 0 ? 0 : waitNanos[i].get() / done / 1_000_000L).append("ms\n");
+        }
+        return summary.toString();
+    }
+
+    /**
+     * The tasks of one load. All tasks of a group have the priority of the group, except for
+     * {@link #prefetch(Runnable)}.
+     */
+    public class Group {
+        private final Priority priority;
+        private final List<Task<?>> tasks = new ArrayList<>();
+        private boolean isCancelled;
+
+        private Group(Priority priority) {
+            this.priority = priority;
+        }
+
+        public Priority getPriority() {
+            return priority;
+        }
+
+        /**
+         * Run a task with the priority of the group.
+         *
+         * @throws CancellationException if the group is cancelled.
+         */
+        public <T> Future<T> submit(Callable<T> callable) {
+            return submit(priority, callable);
+        }
+
+        /**
+         * Run the tasks and wait for all of them, like
+         * {@link java.util.concurrent.ExecutorService#invokeAll}.
+         *
+         * @throws CancellationException if the group was cancelled before the tasks completed.
+         */
+        public <T> List<T> invokeAll(List<? extends Callable<T>> callables)
+                throws InterruptedException, ExecutionException {
+            boolean onParseThread = Thread.currentThread() instanceof ParseThread;
+            List<Task<T>> submitted = new ArrayList<>(callables.size());
+            try {
+                for (int i = 0; i < callables.size(); i++) {
+                    submitted.add(submit(priority, callables.get(i)));
+                }
+
+                List<T> results = new ArrayList<>(submitted.size());
+                for (int i = 0; i < submitted.size(); i++) {
+                    Task<T> task = submitted.get(i);
+                    if (onParseThread) {
+                        // All threads could be waiting here, run the tasks no other thread took.
+                        task.runHere();
+                    }
+                    results.add(task.get());
+                }
+                return results;
+            } finally {
+                for (int i = 0; i < submitted.size(); i++) {
+                    Task<T> task = submitted.get(i);
+                    if (!task.isDone()) {
+                        task.cancel(false);
+                    }
+                    remove(task);
+                }
+            }
+        }
+
+        /**
+         * Run a task with the lowest priority, for work that is only done in advance.
+         */
+        public Future<?> prefetch(Runnable runnable) {
+            return submit(Priority.PREFETCH, () -> {
+                runnable.run();
+                return null;
+            });
+        }
+
+        /**
+         * Cancel the tasks of this group that didn't start yet, and refuse new tasks.
+         */
+        public void cancel() {
+            List<Task<?>> toCancel;
+            synchronized (this) {
+                if (isCancelled) {
+                    return;
+                }
+                isCancelled = true;
+                toCancel = new ArrayList<>(tasks);
+                tasks.clear();
+            }
+
+            for (int i = 0; i < toCancel.size(); i++) {
+                Task<?> task = toCancel.get(i);
+                task.cancel(false);
+                executor.remove(task);
+            }
+        }
+
+        public synchronized boolean isCancelled() {
+            return isCancelled;
+        }
+
+        private <T> Task<T> submit(Priority priority, Callable<T> callable) {
+            Task<T> task = new Task<>(this, priority, callable);
+            synchronized (this) {
+                if (isCancelled) {
+                    throw new CancellationException("Group is cancelled");
+                }
+                tasks.add(task);
+            }
+            task.onQueued();
+            executor.execute(task);
+            return task;
+        }
+
+        private synchronized void remove(Task<?> task) {
+            tasks.remove(task);
+        }
+    }
+
+    private class Task<T> extends FutureTask<T> implements Comparable<Task<?>> {
+        private final Group group;
+        private final Priority priority;
+        private final long order;
+        private long queuedAt;
+        private boolean started;
+
+        Task(Group group, Priority priority, Callable<T> callable) {
+            super(callable);
+            this.group = group;
+            this.priority = priority;
+            order = sequence.getAndIncrement();
+        }
+
+        void onQueued() {
+            queuedAt = System.nanoTime();
+            int i = priority.ordinal();
+            int depth = queued[i].incrementAndGet();
+            int max;
+            while (depth > (max = maxQueued[i].get()) && !maxQueued[i].compareAndSet(max, depth)) {
+                // Retry.
+            }
+        }
+
+        synchronized void onStart() {
+            if (!started) {
+                started = true;
+                int i = priority.ordinal();
+                queued[i].decrementAndGet();
+                waitNanos[i].addAndGet(System.nanoTime() - queuedAt);
+            }
+        }
+
+        /**
+         * Run the task on the calling thread, if no thread took it yet.
+         */
+        void runHere() {
+            executor.remove(this);
+            onStart();
+            run();
+        }
+
+        @Override
+        protected void done() {
+            int i = priority.ordinal();
+            synchronized (this) {
+                if (!started) {
+                    // Cancelled in the queue, it is removed when a thread takes it.
+                    started = true;
+                    queued[i].decrementAndGet();
+                }
+            }
+
+            if (isCancelled()) {
+                cancelled[i].incrementAndGet();
+            } else {
+                completed[i].incrementAndGet();
+            }
+
+            if (priority == Priority.PREFETCH) {
+                group.remove(this);
+            }
+        }
+
+        @Override
+        public int compareTo(Task<?> other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(order, other.order);
+        }
+    }
+
+    private static class ParseThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new ParseThread(r, "ParseScheduler-" + count.incrementAndGet());
+        }
+    }
+
+    private static class ParseThread extends Thread {
+        ParseThread(Runnable runnable, String name) {
+            super(runnable, name);
+        }
+    }
+}
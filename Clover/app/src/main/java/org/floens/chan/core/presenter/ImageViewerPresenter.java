@@ -17,9 +17,9 @@
  */
 package org.floens.chan.core.presenter;
 
-import android.net.ConnectivityManager;
 import androidx.viewpager.widget.ViewPager;
 
+import org.floens.chan.core.cache.DownloadScheduler;
 import org.floens.chan.core.cache.FileCache;
 import org.floens.chan.core.cache.FileCacheDownloader;
 import org.floens.chan.core.cache.FileCacheListener;
@@ -36,7 +36,6 @@ import java.util.Set;
 import javax.inject.Inject;
 
 import static org.floens.chan.Chan.inject;
-import static org.floens.chan.utils.AndroidUtils.isConnected;
 
 public class ImageViewerPresenter implements MultiImageView.Callback, ViewPager.OnPageChangeListener {
     private static final String TAG = "ImageViewerPresenter";
@@ -250,7 +249,7 @@ public class ImageViewerPresenter implements MultiImageView.Callback, ViewPager.
                 // pass the filecachedownloader itself).
                 final FileCacheDownloader[] preloadDownload =
                         new FileCacheDownloader[1];
-                preloadDownload[0] = fileCache.downloadFile(fileUrl,
+                preloadDownload[0] = fileCache.downloadFile(fileUrl, DownloadScheduler.Priority.PRELOAD,
                         new FileCacheListener() {
                             @Override
                             public void onEnd() {
@@ -352,24 +351,11 @@ public class ImageViewerPresenter implements MultiImageView.Callback, ViewPager.
 
     private boolean imageAutoLoad(PostImage postImage) {
         // Auto load the image when it is cached
-        return fileCache.exists(postImage.imageUrl.toString()) || shouldLoadForNetworkType(ChanSettings.imageAutoLoadNetwork.get());
+        return fileCache.exists(postImage.imageUrl.toString()) || ChanSettings.imageAutoLoadNetwork.get().shouldLoad();
     }
 
     private boolean videoAutoLoad(PostImage postImage) {
-        return imageAutoLoad(postImage) && shouldLoadForNetworkType(ChanSettings.videoAutoLoadNetwork.get());
-    }
-
-    private boolean shouldLoadForNetworkType(ChanSettings.MediaAutoLoadMode networkType) {
-        if (networkType == ChanSettings.MediaAutoLoadMode.NONE) {
-            return false;
-        } else if (networkType == ChanSettings.MediaAutoLoadMode.WIFI) {
-            return isConnected(ConnectivityManager.TYPE_WIFI);
-        } else if (networkType == ChanSettings.MediaAutoLoadMode.ALL) {
-            return true;
-        }
-
-        // Not connected or unrecognized
-        return false;
+        return imageAutoLoad(postImage) && ChanSettings.videoAutoLoadNetwork.get().shouldLoad();
     }
 
     private void setTitle(PostImage postImage, int position) {
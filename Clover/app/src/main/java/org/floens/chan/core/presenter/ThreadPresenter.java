@@ -310,6 +310,11 @@ public class ThreadPresenter implements
         threadPresenterCallback.showError(error);
     }
 
+    @Override
+    public void onChanLoaderFiltered(ChanThread result, List<Post> changed) {
+        threadPresenterCallback.showFilteredPosts(result, new PostsFilter(order, searchQuery), changed);
+    }
+
     /*
      * PostAdapter callbacks
      */
@@ -514,7 +519,7 @@ public class ThreadPresenter implements
                 showPostInfo(post);
                 break;
             case POST_OPTION_LINKS:
-                if (post.linkables.size() > 0) {
+                if (post.getLinkables().size() > 0) {
                     threadPresenterCallback.showPostLinkables(post);
                 }
                 break;
@@ -596,8 +601,8 @@ public class ThreadPresenter implements
     public void onShowPostReplies(Post post) {
         List<Post> posts = new ArrayList<>();
         synchronized (post.repliesFrom) {
-            for (int no : post.repliesFrom) {
-                Post replyPost = findPostById(no);
+            for (int i = 0; i < post.repliesFrom.size(); i++) {
+                Post replyPost = findPostById(post.repliesFrom.get(i));
                 if (replyPost != null) {
                     posts.add(replyPost);
                 }
@@ -754,6 +759,13 @@ public class ThreadPresenter implements
     public interface ThreadPresenterCallback {
         void showPosts(ChanThread thread, PostsFilter filter);
 
+        /**
+         * Show the posts again after the filter of some of them changed.
+         *
+         * @param changed the posts with a different filter result
+         */
+        void showFilteredPosts(ChanThread thread, PostsFilter filter, List<Post> changed);
+
         void postClicked(Post post);
 
         void showError(ChanLoaderException error);
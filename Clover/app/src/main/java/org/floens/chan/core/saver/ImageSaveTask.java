@@ -22,6 +22,8 @@ import android.graphics.Bitmap;
 import android.media.MediaScannerConnection;
 import android.net.Uri;
 
+import org.floens.chan.core.cache.BitmapPool;
+import org.floens.chan.core.cache.DownloadScheduler;
 import org.floens.chan.core.cache.FileCacheListener;
 import org.floens.chan.core.cache.FileCache;
 import org.floens.chan.core.cache.FileCacheDownloader;
@@ -46,6 +48,9 @@ public class ImageSaveTask extends FileCacheListener implements Runnable {
     @Inject
     FileCache fileCache;
 
+    @Inject
+    BitmapPool bitmapPool;
+
     private PostImage postImage;
     private ImageSaveTaskCallback callback;
     private File destination;
@@ -119,7 +124,8 @@ public class ImageSaveTask extends FileCacheListener implements Runnable {
                 postFinished(success);
             } else {
                 FileCacheDownloader fileCacheDownloader =
-                        fileCache.downloadFile(postImage.imageUrl.toString(), this);
+                        fileCache.downloadFile(postImage.imageUrl.toString(),
+                                DownloadScheduler.Priority.SAVE, this);
 
                 // If the fileCacheDownloader is null then the destination already existed and onSuccess() has been called.
                 // Wait otherwise for the download to finish to avoid that the next task is immediately executed.
@@ -165,7 +171,7 @@ public class ImageSaveTask extends FileCacheListener implements Runnable {
         success = true;
         scanDestination();
         if (makeBitmap) {
-            bitmap = ImageDecoder.decodeFile(destination, dp(512), dp(256));
+            bitmap = ImageDecoder.decodeFile(destination, dp(512), dp(256), bitmapPool);
         }
     }
 
@@ -17,6 +17,7 @@
  */
 package org.floens.chan.core.settings;
 
+import android.net.ConnectivityManager;
 import android.os.Environment;
 import android.text.TextUtils;
 
@@ -52,6 +53,19 @@ public class ChanSettings {
         public String getKey() {
             return name;
         }
+
+        /**
+         * If media loads automatically with this mode on the current network.
+         */
+        public boolean shouldLoad() {
+            if (this == NONE) {
+                return false;
+            } else if (this == WIFI) {
+                return AndroidUtils.isConnected(ConnectivityManager.TYPE_WIFI);
+            } else {
+                return this == ALL;
+            }
+        }
     }
 
     public enum PostViewMode implements OptionSettingItem {
@@ -135,6 +149,7 @@ public class ChanSettings {
     public static final BooleanSetting saveBoardFolder;
     public static final BooleanSetting videoDefaultMuted;
     public static final BooleanSetting videoAutoLoop;
+    public static final BooleanSetting prefetchMedia;
 
     public static final BooleanSetting watchEnabled;
     public static final BooleanSetting watchCountdown;
@@ -217,6 +232,7 @@ public class ChanSettings {
         saveBoardFolder = new BooleanSetting(p, "preference_save_subboard", false);
         videoDefaultMuted = new BooleanSetting(p, "preference_video_default_muted", true);
         videoAutoLoop = new BooleanSetting(p, "preference_video_loop", true);
+        prefetchMedia = new BooleanSetting(p, "preference_prefetch_media", false);
 
         watchEnabled = new BooleanSetting(p, "preference_watch_enabled", false);
         watchEnabled.addCallback((setting, value) ->
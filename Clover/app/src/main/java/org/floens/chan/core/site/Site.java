@@ -60,7 +60,16 @@ public interface Site {
          * @see SiteActions#login(LoginRequest, SiteActions.LoginListener)
          * @see SiteEndpoints#login()
          */
-        LOGIN
+        LOGIN,
+
+        /**
+         * This site has an index of the threads of a board with when they were last modified,
+         * used to only load the watched threads that changed.
+         *
+         * @see SiteActions#threadIndex(Board, SiteActions.ThreadIndexListener)
+         * @see SiteEndpoints#threadIndex(Board)
+         */
+        THREAD_INDEX
     }
 
     /**
@@ -18,6 +18,7 @@
 package org.floens.chan.core.site;
 
 import org.floens.chan.core.model.Archive;
+import org.floens.chan.core.model.ThreadIndex;
 import org.floens.chan.core.model.orm.Board;
 import org.floens.chan.core.site.http.DeleteRequest;
 import org.floens.chan.core.site.http.DeleteResponse;
@@ -73,6 +74,14 @@ public interface SiteActions {
         void onArchiveError();
     }
 
+    void threadIndex(Board board, ThreadIndexListener threadIndexListener);
+
+    interface ThreadIndexListener {
+        void onThreadIndex(ThreadIndex threadIndex);
+
+        void onThreadIndexError();
+    }
+
     /* TODO(multi-site) this login mechanism is probably not generic enough right now,
      * especially if we're thinking about what a login really is
      * We'll expand this later when we have a better idea of what other sites require.
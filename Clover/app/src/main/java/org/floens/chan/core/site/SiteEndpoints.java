@@ -45,6 +45,8 @@ public interface SiteEndpoints {
 
     HttpUrl archive(Board board);
 
+    HttpUrl threadIndex(Board board);
+
     HttpUrl reply(Loadable thread);
 
     HttpUrl delete(Post post);
@@ -362,6 +362,11 @@ public abstract class CommonSite extends SiteBase {
             return null;
         }
 
+        @Override
+        public HttpUrl threadIndex(Board board) {
+            return null;
+        }
+
         @Override
         public HttpUrl reply(Loadable thread) {
             return null;
@@ -531,6 +536,11 @@ public abstract class CommonSite extends SiteBase {
         public void archive(Board board, ArchiveListener archiveListener) {
         }
 
+        @Override
+        public void threadIndex(Board board, ThreadIndexListener threadIndexListener) {
+            threadIndexListener.onThreadIndexError();
+        }
+
         @Override
         public void login(LoginRequest loginRequest, LoginListener loginListener) {
         }
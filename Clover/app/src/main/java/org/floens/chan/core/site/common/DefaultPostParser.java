@@ -19,6 +19,7 @@ package org.floens.chan.core.site.common;
 
 
 import androidx.annotation.AnyThread;
+import androidx.annotation.VisibleForTesting;
 import android.text.SpannableString;
 import android.text.TextUtils;
 import android.text.style.BackgroundColorSpan;
@@ -27,6 +28,7 @@ import org.floens.chan.core.model.Post;
 import org.floens.chan.core.settings.ChanSettings;
 import org.floens.chan.core.site.parser.CommentParser;
 import org.floens.chan.core.site.parser.CommentParserHelper;
+import org.floens.chan.core.site.parser.CommentTokenizer;
 import org.floens.chan.core.site.parser.PostParser;
 import org.floens.chan.ui.span.AbsoluteSizeSpanHashed;
 import org.floens.chan.ui.span.ForegroundColorSpanHashed;
@@ -42,6 +44,7 @@ import org.jsoup.parser.Parser;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Pattern;
 
 import static org.floens.chan.utils.AndroidUtils.sp;
 
@@ -49,12 +52,27 @@ import static org.floens.chan.utils.AndroidUtils.sp;
 public class DefaultPostParser implements PostParser {
     private static final String TAG = "DefaultPostParser";
 
+    // Parse comments with the single pass CommentTokenizer, Jsoup is only used when it gives up.
+    private static final boolean USE_TOKENIZER = true;
+
+    private static final Pattern PLAIN_BREAK_PATTERN = Pattern.compile("<br\\s*/?>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern PLAIN_TAG_PATTERN = Pattern.compile("<[^>]*>");
+
     private CommentParser commentParser;
+    private boolean useTokenizer = USE_TOKENIZER;
 
     public DefaultPostParser(CommentParser commentParser) {
         this.commentParser = commentParser;
     }
 
+    /**
+     * Switch between the tokenizer and the Jsoup path, the benchmarks compare the two.
+     */
+    @VisibleForTesting
+    public void setUseTokenizer(boolean useTokenizer) {
+        this.useTokenizer = useTokenizer;
+    }
+
     @Override
     public Post parse(Theme theme, Post.Builder builder, Callback callback) {
         if (theme == null) {
@@ -71,12 +89,22 @@ public class DefaultPostParser implements PostParser {
 
         parseSpans(theme, builder);
 
-        if (builder.comment != null) {
-            builder.comment = parseComment(theme, builder, builder.comment, callback);
-        } else {
+        if (builder.comment == null) {
             builder.comment = "";
         }
 
+        if (builder.lazyComment) {
+            // Only extract the quotes now, the reply graph of the thread needs them. The rest of
+            // the comment is parsed when the post first needs it.
+            commentParser.parseQuotes(builder, builder.comment, callback);
+
+            final Theme commentTheme = theme;
+            builder.lazyCommentParser(lazyBuilder ->
+                    parseComment(commentTheme, lazyBuilder, lazyBuilder.comment, callback));
+        } else {
+            builder.comment = parseComment(theme, builder, builder.comment, callback);
+        }
+
         return builder.build();
     }
 
@@ -102,7 +130,6 @@ public class DefaultPostParser implements PostParser {
             builder.posterId("");
         }
 
-        SpannableString subjectSpan = null;
         SpannableString nameSpan = null;
         SpannableString tripcodeSpan = null;
         SpannableString idSpan = null;
@@ -110,13 +137,7 @@ public class DefaultPostParser implements PostParser {
 
         int detailsSizePx = sp(Integer.parseInt(ChanSettings.fontSize.get()) - 4);
 
-        if (!TextUtils.isEmpty(builder.subject)) {
-            subjectSpan = new SpannableString(builder.subject);
-            // Do not set another color when the post is in stub mode, it sets text_color_secondary
-            if (!builder.filterStub) {
-                subjectSpan.setSpan(new ForegroundColorSpanHashed(theme.subjectColor), 0, subjectSpan.length(), 0);
-            }
-        }
+        CharSequence subjectSpan = parseSubjectSpan(theme, builder.subject, builder.filterStub);
 
         if (!TextUtils.isEmpty(builder.name) && (!builder.name.equals(defaultName) || ChanSettings.showAnonymousName.get())) {
             nameSpan = new SpannableString(builder.name);
@@ -175,7 +196,62 @@ public class DefaultPostParser implements PostParser {
         builder.spans(subjectSpan, nameTripcodeIdCapcodeSpan);
     }
 
+    @Override
+    public CharSequence parseSubjectSpan(Theme theme, String subject, boolean stub) {
+        if (TextUtils.isEmpty(subject)) {
+            return null;
+        }
+
+        SpannableString subjectSpan = new SpannableString(subject);
+        // Do not set another color when the post is in stub mode, it sets text_color_secondary
+        if (!stub) {
+            subjectSpan.setSpan(new ForegroundColorSpanHashed(theme.subjectColor), 0, subjectSpan.length(), 0);
+        }
+        return subjectSpan;
+    }
+
+    @Override
+    public void parseQuotes(Post.Builder builder, Callback callback) {
+        if (builder.comment != null) {
+            commentParser.parseQuotes(builder, builder.comment, callback);
+        }
+    }
+
+    @Override
+    public String parsePlainText(Post.Builder builder) {
+        if (ChanSettings.anonymize.get()) {
+            builder.name("Anonymous");
+            builder.tripcode("");
+        } else if (!TextUtils.isEmpty(builder.name)) {
+            builder.name = Parser.unescapeEntities(builder.name, false);
+        }
+
+        if (TextUtils.isEmpty(builder.comment)) {
+            return "";
+        }
+        String comment = PLAIN_BREAK_PATTERN.matcher(builder.comment).replaceAll("\n");
+        comment = PLAIN_TAG_PATTERN.matcher(comment).replaceAll("");
+        return Parser.unescapeEntities(comment, false);
+    }
+
     private CharSequence parseComment(Theme theme, Post.Builder post, CharSequence commentRaw, Callback callback) {
+        if (useTokenizer) {
+            int linkableCount = post.linkableCount();
+            try {
+                CharSequence tokenized = new CommentTokenizer(commentParser, theme, post, callback,
+                        node -> parseNode(theme, post, callback, node))
+                        .parse(commentRaw.toString());
+                if (tokenized != null) {
+                    return tokenized;
+                }
+            } catch (Exception e) {
+                Logger.e(TAG, "Error tokenizing comment html", e);
+            }
+
+            // Start over with Jsoup, without the linkables of the abandoned attempt.
+            post.truncateLinkables(linkableCount);
+        }
+
         CharSequence total = new SpannableString("");
 
         try {
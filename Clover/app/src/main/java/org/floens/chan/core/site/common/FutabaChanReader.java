@@ -114,13 +114,23 @@ public class FutabaChanReader implements ChanReader {
         // 4chan pass leaf
         int since4pass = 0;
 
+        // Set when the post number is read and that post is already cached. The values that
+        // can't change are skipped from then on, without decoding them.
+        boolean skipImmutable = false;
+
         reader.beginObject();
         while (reader.hasNext()) {
             String key = reader.nextName();
 
+            if (skipImmutable && !isMutableKey(key)) {
+                reader.skipValue();
+                continue;
+            }
+
             switch (key) {
                 case "no":
                     builder.id(reader.nextInt());
+                    skipImmutable = queue.canSkipImmutable(builder.id);
                     break;
                 /*case "now":
                     post.date = reader.nextString();
@@ -225,6 +235,26 @@ public class FutabaChanReader implements ChanReader {
         }
         reader.endObject();
 
+        if (builder.op) {
+            // Update OP fields later on the main thread
+            Post.Builder op = new Post.Builder();
+            op.closed(builder.closed);
+            op.archived(builder.archived);
+            op.sticky(builder.sticky);
+            op.replies(builder.replies);
+            op.images(builder.imagesCount);
+            op.uniqueIps(builder.uniqueIps);
+            op.lastModified(builder.lastModified);
+            queue.setOp(op);
+        }
+
+        Post cached = queue.getReusablePost(builder);
+        if (cached != null) {
+            // Id is known, use the cached post object.
+            queue.addForReuse(cached, builder);
+            return;
+        }
+
         // The file from between the other values.
         if (fileId != null && fileName != null && fileExt != null) {
             Map<String, String> args = makeArgument("tim", fileId,
@@ -247,26 +277,6 @@ public class FutabaChanReader implements ChanReader {
 
         builder.images(files);
 
-        if (builder.op) {
-            // Update OP fields later on the main thread
-            Post.Builder op = new Post.Builder();
-            op.closed(builder.closed);
-            op.archived(builder.archived);
-            op.sticky(builder.sticky);
-            op.replies(builder.replies);
-            op.images(builder.imagesCount);
-            op.uniqueIps(builder.uniqueIps);
-            op.lastModified(builder.lastModified);
-            queue.setOp(op);
-        }
-
-        Post cached = queue.getCachedPost(builder.id);
-        if (cached != null) {
-            // Id is known, use the cached post object.
-            queue.addForReuse(cached);
-            return;
-        }
-
         if (countryCode != null && countryName != null) {
             Map<String, String> arg = new HashMap<>(1);
             HttpUrl countryUrl = endpoints.icon(builder, "country",
@@ -288,6 +298,25 @@ public class FutabaChanReader implements ChanReader {
         queue.addForParse(builder);
     }
 
+    /**
+     * Keys of values that can still change after a post was first loaded.
+     */
+    private static boolean isMutableKey(String key) {
+        switch (key) {
+            case "resto":
+            case "sticky":
+            case "closed":
+            case "archived":
+            case "replies":
+            case "images":
+            case "unique_ips":
+            case "last_modified":
+                return true;
+            default:
+                return false;
+        }
+    }
+
     private PostImage readPostImage(JsonReader reader, Post.Builder builder,
                                     SiteEndpoints endpoints) throws IOException {
         reader.beginObject();
@@ -95,13 +95,23 @@ public class VichanApi extends CommonSite.CommonApi {
         String trollCountryCode = null;
         String countryName = null;
 
+        // Set when the post number is read and that post is already cached. The values that
+        // can't change are skipped from then on, without decoding them.
+        boolean skipImmutable = false;
+
         reader.beginObject();
         while (reader.hasNext()) {
             String key = reader.nextName();
 
+            if (skipImmutable && !isMutableKey(key)) {
+                reader.skipValue();
+                continue;
+            }
+
             switch (key) {
                 case "no":
                     builder.id(reader.nextInt());
+                    skipImmutable = queue.canSkipImmutable(builder.id);
                     break;
                 case "sub":
                     builder.subject(reader.nextString());
@@ -200,6 +210,26 @@ public class VichanApi extends CommonSite.CommonApi {
         }
         reader.endObject();
 
+        if (builder.op) {
+            // Update OP fields later on the main thread
+            Post.Builder op = new Post.Builder();
+            op.closed(builder.closed);
+            op.archived(builder.archived);
+            op.sticky(builder.sticky);
+            op.replies(builder.replies);
+            op.images(builder.imagesCount);
+            op.uniqueIps(builder.uniqueIps);
+            op.lastModified(builder.lastModified);
+            queue.setOp(op);
+        }
+
+        Post cached = queue.getReusablePost(builder);
+        if (cached != null) {
+            // Id is known, use the cached post object.
+            queue.addForReuse(cached, builder);
+            return;
+        }
+
         // The file from between the other values.
         if (fileId != null && fileName != null && fileExt != null) {
             Map<String, String> args = makeArgument("tim", fileId,
@@ -222,26 +252,6 @@ public class VichanApi extends CommonSite.CommonApi {
 
         builder.images(files);
 
-        if (builder.op) {
-            // Update OP fields later on the main thread
-            Post.Builder op = new Post.Builder();
-            op.closed(builder.closed);
-            op.archived(builder.archived);
-            op.sticky(builder.sticky);
-            op.replies(builder.replies);
-            op.images(builder.imagesCount);
-            op.uniqueIps(builder.uniqueIps);
-            op.lastModified(builder.lastModified);
-            queue.setOp(op);
-        }
-
-        Post cached = queue.getCachedPost(builder.id);
-        if (cached != null) {
-            // Id is known, use the cached post object.
-            queue.addForReuse(cached);
-            return;
-        }
-
         if (countryCode != null && countryName != null) {
             HttpUrl countryUrl = endpoints.icon(builder, "country",
                     makeArgument("country_code", countryCode));
@@ -257,6 +267,25 @@ public class VichanApi extends CommonSite.CommonApi {
         queue.addForParse(builder);
     }
 
+    /**
+     * Keys of values that can still change after a post was first loaded.
+     */
+    private static boolean isMutableKey(String key) {
+        switch (key) {
+            case "resto":
+            case "sticky":
+            case "closed":
+            case "archived":
+            case "replies":
+            case "images":
+            case "unique_ips":
+            case "last_modified":
+                return true;
+            default:
+                return false;
+        }
+    }
+
     private PostImage readPostImage(JsonReader reader, Post.Builder builder,
                                     SiteEndpoints endpoints) throws IOException {
         reader.beginObject();
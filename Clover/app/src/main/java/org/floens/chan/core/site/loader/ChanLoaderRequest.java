@@ -20,14 +20,42 @@ package org.floens.chan.core.site.loader;
 
 import com.android.volley.Request;
 
+import org.floens.chan.core.net.JsonReaderStreamingCall;
+
+/**
+ * A running load of a {@link ChanThreadLoader}. Either a Volley request, that buffers the whole
+ * response, a {@link JsonReaderStreamingCall} that parses while the response comes in, or a
+ * {@link ThreadSnapshotLoad} that reads the thread from disk.
+ */
 public class ChanLoaderRequest {
     private Request<ChanLoaderResponse> volleyRequest;
+    private JsonReaderStreamingCall<ChanLoaderResponse> streamingCall;
+    private ThreadSnapshotLoad snapshotLoad;
 
     public ChanLoaderRequest(Request<ChanLoaderResponse> volleyRequest) {
         this.volleyRequest = volleyRequest;
     }
 
+    public ChanLoaderRequest(JsonReaderStreamingCall<ChanLoaderResponse> streamingCall) {
+        this.volleyRequest = streamingCall.getRequest();
+        this.streamingCall = streamingCall;
+    }
+
+    public ChanLoaderRequest(ThreadSnapshotLoad snapshotLoad) {
+        this.snapshotLoad = snapshotLoad;
+    }
+
     public Request<ChanLoaderResponse> getVolleyRequest() {
         return volleyRequest;
     }
+
+    public void cancel() {
+        if (snapshotLoad != null) {
+            snapshotLoad.cancel();
+        } else if (streamingCall != null) {
+            streamingCall.cancel();
+        } else {
+            volleyRequest.cancel();
+        }
+    }
 }
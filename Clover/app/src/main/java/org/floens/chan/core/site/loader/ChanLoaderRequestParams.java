@@ -21,6 +21,8 @@ package org.floens.chan.core.site.loader;
 import com.android.volley.Response;
 
 import org.floens.chan.core.model.Post;
+import org.floens.chan.core.model.ReplyGraph;
+import org.floens.chan.core.pool.ParseScheduler;
 import org.floens.chan.core.model.orm.Loadable;
 import org.floens.chan.core.site.parser.ChanReader;
 
@@ -42,6 +44,16 @@ public class ChanLoaderRequestParams {
      */
     public final List<Post> cached;
 
+    /**
+     * Reply graph of the cached posts, or null to build a new one.
+     */
+    public final ReplyGraph replyGraph;
+
+    /**
+     * Priority to parse the posts with.
+     */
+    public final ParseScheduler.Priority priority;
+
     /**
      * Success listener.
      */
@@ -55,12 +67,16 @@ public class ChanLoaderRequestParams {
     public ChanLoaderRequestParams(Loadable loadable,
                                    ChanReader chanReader,
                                    List<Post> cached,
+                                   ReplyGraph replyGraph,
+                                   ParseScheduler.Priority priority,
                                    Response.Listener<ChanLoaderResponse> listener,
                                    Response.ErrorListener errorListener) {
 
         this.loadable = loadable;
         this.chanReader = chanReader;
         this.cached = cached;
+        this.replyGraph = replyGraph;
+        this.priority = priority;
         this.listener = listener;
         this.errorListener = errorListener;
     }
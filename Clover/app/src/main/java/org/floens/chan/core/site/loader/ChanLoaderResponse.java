@@ -18,8 +18,11 @@
 package org.floens.chan.core.site.loader;
 
 import org.floens.chan.core.model.Post;
+import org.floens.chan.core.model.ReplyGraph;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 public class ChanLoaderResponse {
     // Op Post that is created new each time.
@@ -27,8 +30,31 @@ public class ChanLoaderResponse {
     public final Post.Builder op;
     public final List<Post> posts;
 
+    // The server responded with 304 Not Modified, op is null and posts is empty.
+    public final boolean notModified;
+
+    // Validators of the response, for the next conditional request.
+    public String lastModifiedHeader;
+    public String etag;
+
+    // The reply graph of the thread with the posts applied, null in catalog mode.
+    public ReplyGraph replyGraph;
+
+    // Catalog mode only, the values read for the ops that were reused from the previous catalog,
+    // by post number. Copied to the reused posts on the main thread.
+    public Map<Integer, Post.Builder> reusedState;
+
     public ChanLoaderResponse(Post.Builder op, List<Post> posts) {
+        this(op, posts, false);
+    }
+
+    private ChanLoaderResponse(Post.Builder op, List<Post> posts, boolean notModified) {
         this.op = op;
         this.posts = posts;
+        this.notModified = notModified;
+    }
+
+    public static ChanLoaderResponse notModified() {
+        return new ChanLoaderResponse(null, Collections.<Post>emptyList(), true);
     }
 }
@@ -23,13 +23,20 @@ import com.android.volley.RequestQueue;
 import com.android.volley.Response;
 import com.android.volley.VolleyError;
 
+import org.floens.chan.core.cache.ThreadSnapshotStore;
+import org.floens.chan.core.di.UserAgentProvider;
 import org.floens.chan.core.exception.ChanLoaderException;
+import org.floens.chan.core.manager.FilterEngine;
 import org.floens.chan.core.model.ChanThread;
 import org.floens.chan.core.model.Post;
+import org.floens.chan.core.model.ReplyGraph;
 import org.floens.chan.core.model.orm.Loadable;
+import org.floens.chan.core.net.JsonReaderStreamingCall;
+import org.floens.chan.core.pool.ParseScheduler;
 import org.floens.chan.core.site.parser.ChanReader;
 import org.floens.chan.core.site.parser.ChanReaderRequest;
 import org.floens.chan.ui.helper.PostHelper;
+import org.floens.chan.ui.theme.ThemeHelper;
 import org.floens.chan.utils.AndroidUtils;
 import org.floens.chan.utils.Logger;
 import org.floens.chan.utils.Time;
@@ -43,6 +50,8 @@ import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 
+import okhttp3.OkHttpClient;
+
 import static org.floens.chan.Chan.inject;
 
 /**
@@ -54,16 +63,38 @@ import static org.floens.chan.Chan.inject;
  */
 public class ChanThreadLoader implements Response.ErrorListener, Response.Listener<ChanLoaderResponse> {
     private static final String TAG = "ChanThreadLoader";
+    private static final boolean LOG_TIMING = false;
     private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
 
+    // Stream the json straight from the socket into the reader, instead of letting Volley
+    // buffer the whole response first.
+    private static final boolean STREAMING = true;
+
     private static final int[] WATCH_TIMEOUTS = {10, 15, 20, 30, 60, 90, 120, 180, 240, 300, 600, 1800, 3600};
 
     @Inject
     RequestQueue volleyRequestQueue;
 
+    @Inject
+    OkHttpClient okHttpClient;
+
+    @Inject
+    ThreadSnapshotStore snapshotStore;
+
+    @Inject
+    UserAgentProvider userAgentProvider;
+
+    @Inject
+    FilterEngine filterEngine;
+
+    @Inject
+    ParseScheduler parseScheduler;
+
     private final List<ChanLoaderCallback> listeners = new ArrayList<>();
     private final Loadable loadable;
     private ChanThread thread;
+    // The posts of the last loaded catalog, ops that didn't change are reused on a reload.
+    private List<Post> previousCatalog;
 
     private ChanLoaderRequest request;
 
@@ -71,6 +102,8 @@ public class ChanThreadLoader implements Response.ErrorListener, Response.Listen
     private int lastPostCount;
     private long lastLoadTime;
     private ScheduledFuture<?> pendingFuture;
+    // Matching the posts again after the filters changed, see refilter().
+    private PostRefilter refilter;
 
     /**
      * <b>Do not call this constructor yourself, obtain ChanLoaders through {@link org.floens.chan.core.pool.ChanLoaderFactory}</b>
@@ -105,7 +138,7 @@ public class ChanThreadLoader implements Response.ErrorListener, Response.Listen
         if (listeners.isEmpty()) {
             clearTimer();
             if (request != null) {
-                request.getVolleyRequest().cancel();
+                request.cancel();
                 request = null;
             }
             return true;
@@ -118,6 +151,19 @@ public class ChanThreadLoader implements Response.ErrorListener, Response.Listen
         return thread;
     }
 
+    /**
+     * Whether a listener shows the posts, any listener that is not a
+     * {@link BackgroundChanLoaderCallback}.
+     */
+    public boolean isShown() {
+        for (ChanLoaderCallback listener : listeners) {
+            if (!(listener instanceof BackgroundChanLoaderCallback)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Request data for the first time.
      */
@@ -125,7 +171,7 @@ public class ChanThreadLoader implements Response.ErrorListener, Response.Listen
         clearTimer();
 
         if (request != null) {
-            request.getVolleyRequest().cancel();
+            request.cancel();
             // request = null;
         }
 
@@ -133,12 +179,21 @@ public class ChanThreadLoader implements Response.ErrorListener, Response.Listen
             loadable.no = 0;
             loadable.listViewIndex = 0;
             loadable.listViewTop = 0;
+
+            if (thread != null) {
+                previousCatalog = thread.posts;
+            }
         }
 
         currentTimeout = -1;
         thread = null;
+        refilter = null;
 
-        request = getData();
+        if (snapshotStore.has(loadable)) {
+            request = getSnapshot();
+        } else {
+            request = getData();
+        }
     }
 
     /**
@@ -174,6 +229,8 @@ public class ChanThreadLoader implements Response.ErrorListener, Response.Listen
             l.onChanLoaderData(thread);
         }
 
+        // The filters may have changed while the loader wasn't used.
+        refilter();
         requestMoreData();
     }
 
@@ -232,26 +289,135 @@ public class ChanThreadLoader implements Response.ErrorListener, Response.Listen
         }
     }
 
+    /**
+     * Match the posts of the thread again when the filters changed since they were parsed,
+     * instead of loading the thread again. This happens in the background, the listeners get
+     * {@link ChanLoaderCallback#onChanLoaderFiltered} when the filter of any post changed.
+     */
+    public void refilter() {
+        // A newer one is started for the current posts.
+        refilter = null;
+        if (thread == null) {
+            return;
+        }
+
+        int version = filterEngine.getVersion();
+        List<Post> stale = new ArrayList<>();
+        for (int i = 0; i < thread.posts.size(); i++) {
+            Post post = thread.posts.get(i);
+            if (post.getFilterVersion() < version) {
+                stale.add(post);
+            }
+        }
+        if (stale.isEmpty()) {
+            return;
+        }
+
+        final PostRefilter refilter = new PostRefilter(
+                loadable.getSite().chanReader().getParser(), ThemeHelper.theme(), stale);
+        this.refilter = refilter;
+        parseScheduler.newGroup(getParsePriority()).submit(() -> {
+            long start = Time.startTiming();
+            refilter.match(filterEngine.getCompiledFilters(loadable.board));
+            if (LOG_TIMING) {
+                Time.endTiming("Refilter " + refilter.getPostCount() + " posts", start);
+            }
+            AndroidUtils.runOnUiThread(() -> onRefiltered(refilter));
+            return null;
+        });
+    }
+
     private ChanLoaderRequest getData() {
         Logger.d(TAG, "Requested " + loadable.boardCode + ", " + loadable.no);
 
-        List<Post> cached = thread == null ? new ArrayList<Post>() : thread.posts;
+        List<Post> cached;
+        if (thread != null) {
+            cached = thread.posts;
+        } else if (previousCatalog != null) {
+            cached = previousCatalog;
+        } else {
+            cached = new ArrayList<>();
+        }
+        ReplyGraph replyGraph = thread == null ? null : thread.replyGraph;
 
         ChanReader chanReader = loadable.getSite().chanReader();
 
-        ChanLoaderRequestParams requestParams = new ChanLoaderRequestParams(loadable, chanReader, cached, this, this);
+        ChanLoaderRequestParams requestParams = new ChanLoaderRequestParams(
+                loadable, chanReader, cached, replyGraph, getParsePriority(), this, this);
         ChanReaderRequest readerRequest = new ChanReaderRequest(requestParams);
-        request = new ChanLoaderRequest(readerRequest);
 
-        volleyRequestQueue.add(request.getVolleyRequest());
+        if (STREAMING) {
+            JsonReaderStreamingCall<ChanLoaderResponse> call =
+                    new JsonReaderStreamingCall<>(readerRequest);
+            request = new ChanLoaderRequest(call);
+            call.enqueue(okHttpClient, userAgentProvider.getUserAgent());
+        } else {
+            request = new ChanLoaderRequest(readerRequest);
+            volleyRequestQueue.add(request.getVolleyRequest());
+        }
 
         return request;
     }
 
+    private ChanLoaderRequest getSnapshot() {
+        Logger.d(TAG, "Requested snapshot of " + loadable.boardCode + ", " + loadable.no);
+
+        ChanReader chanReader = loadable.getSite().chanReader();
+
+        ChanLoaderRequestParams requestParams = new ChanLoaderRequestParams(
+                loadable, chanReader, new ArrayList<Post>(), null, getParsePriority(), this, this);
+        ThreadSnapshotLoad snapshotLoad = new ThreadSnapshotLoad(new ChanReaderRequest(requestParams));
+        snapshotLoad.enqueue(snapshotStore, loadable, this::onSnapshotLoaded);
+
+        return new ChanLoaderRequest(snapshotLoad);
+    }
+
+    private ParseScheduler.Priority getParsePriority() {
+        if (loadable.isCatalogMode()) {
+            return ParseScheduler.Priority.FOREGROUND_CATALOG;
+        }
+
+        return isShown() ? ParseScheduler.Priority.FOREGROUND_THREAD : ParseScheduler.Priority.WATCHER;
+    }
+
+    private void onSnapshotLoaded(ChanLoaderResponse response) {
+        request = null;
+
+        if (response == null || response.posts.isEmpty()) {
+            // No usable snapshot, load it from the site.
+            request = getData();
+            return;
+        }
+
+        onResponse(response);
+
+        // Shown from the snapshot, now ask the site for what changed since.
+        requestMoreData();
+    }
+
     @Override
     public void onResponse(ChanLoaderResponse response) {
         request = null;
 
+        // A 304 may leave out the validators, keep the ones of the response it confirmed.
+        if (!response.notModified || response.lastModifiedHeader != null) {
+            loadable.lastModifiedHeader = response.lastModifiedHeader;
+        }
+        if (!response.notModified || response.etag != null) {
+            loadable.etag = response.etag;
+        }
+
+        if (response.notModified && thread == null && previousCatalog != null) {
+            // The catalog didn't change since the last load, show those posts again.
+            thread = new ChanThread(loadable, new ArrayList<>(previousCatalog));
+            previousCatalog = null;
+        }
+
+        if (response.notModified && thread != null) {
+            onNotModified();
+            return;
+        }
+
         if (response.posts.isEmpty()) {
             onErrorResponse(new VolleyError("Post size is 0"));
             return;
@@ -263,6 +429,8 @@ public class ChanThreadLoader implements Response.ErrorListener, Response.Listen
 
         thread.posts.clear();
         thread.posts.addAll(response.posts);
+        thread.replyGraph = response.replyGraph;
+        previousCatalog = null;
 
         processResponse(response);
 
@@ -287,6 +455,40 @@ public class ChanThreadLoader implements Response.ErrorListener, Response.Listen
         for (ChanLoaderCallback l : listeners) {
             l.onChanLoaderData(thread);
         }
+
+        // The posts may be parsed with filters that changed during the load, or be reused
+        // from before the change.
+        refilter();
+    }
+
+    /**
+     * The server responded with 304 to the conditional request. The posts we have are still
+     * up to date, so only back off the timer and tell the listeners the load finished.
+     */
+    private void onNotModified() {
+        lastLoadTime = Time.get();
+        currentTimeout = Math.min(currentTimeout + 1, WATCH_TIMEOUTS.length - 1);
+
+        for (ChanLoaderCallback l : listeners) {
+            l.onChanLoaderData(thread);
+        }
+
+        refilter();
+    }
+
+    private void onRefiltered(PostRefilter refilter) {
+        if (this.refilter != refilter) {
+            // The thread changed, or the filters changed again.
+            return;
+        }
+        this.refilter = null;
+
+        List<Post> changed = refilter.apply();
+        if (!changed.isEmpty()) {
+            for (ChanLoaderCallback l : listeners) {
+                l.onChanLoaderFiltered(thread, changed);
+            }
+        }
     }
 
     /**
@@ -302,21 +504,38 @@ public class ChanThreadLoader implements Response.ErrorListener, Response.Listen
             thread.op = realOp;
             Post.Builder fakeOp = response.op;
             if (fakeOp != null) {
-                realOp.setClosed(fakeOp.closed);
+                setMutableState(realOp, fakeOp);
                 thread.closed = realOp.isClosed();
-                realOp.setArchived(fakeOp.archived);
                 thread.archived = realOp.isArchived();
-                realOp.setSticky(fakeOp.sticky);
-                realOp.setReplies(fakeOp.replies);
-                realOp.setImagesCount(fakeOp.imagesCount);
-                realOp.setUniqueIps(fakeOp.uniqueIps);
-                realOp.setLastModified(fakeOp.lastModified);
+                if (thread.archived) {
+                    // Won't change anymore, no need to show it before loading.
+                    snapshotStore.remove(loadable);
+                }
             } else {
                 Logger.e(TAG, "Thread has no op!");
             }
+        } else if (loadable.isCatalogMode() && response.reusedState != null) {
+            // The ops reused from the previous catalog still have the old values.
+            for (int i = 0; i < thread.posts.size(); i++) {
+                Post post = thread.posts.get(i);
+                Post.Builder state = response.reusedState.get(post.no);
+                if (state != null) {
+                    setMutableState(post, state);
+                }
+            }
         }
     }
 
+    private void setMutableState(Post post, Post.Builder state) {
+        post.setClosed(state.closed);
+        post.setArchived(state.archived);
+        post.setSticky(state.sticky);
+        post.setReplies(state.replies);
+        post.setImagesCount(state.imagesCount);
+        post.setUniqueIps(state.uniqueIps);
+        post.setLastModified(state.lastModified);
+    }
+
     @Override
     public void onErrorResponse(VolleyError error) {
         request = null;
@@ -326,6 +545,9 @@ public class ChanThreadLoader implements Response.ErrorListener, Response.Listen
         clearTimer();
 
         ChanLoaderException loaderException = new ChanLoaderException(error);
+        if (loaderException.isNotFound()) {
+            snapshotStore.remove(loadable);
+        }
 
         for (ChanLoaderCallback l : listeners) {
             l.onChanLoaderError(loaderException);
@@ -344,5 +566,21 @@ public class ChanThreadLoader implements Response.ErrorListener, Response.Listen
         void onChanLoaderData(ChanThread result);
 
         void onChanLoaderError(ChanLoaderException error);
+
+        /**
+         * Posts of the thread were matched again after the filters changed, and their filter
+         * result changed in place.
+         *
+         * @param result  the thread, the same as the last {@link #onChanLoaderData}
+         * @param changed the posts with a different filter result
+         */
+        void onChanLoaderFiltered(ChanThread result, List<Post> changed);
+    }
+
+    /**
+     * A callback that doesn't show the thread to the user, like the watcher. When a loader only
+     * has these callbacks its posts are parsed with a lower priority.
+     */
+    public interface BackgroundChanLoaderCallback extends ChanLoaderCallback {
     }
 }
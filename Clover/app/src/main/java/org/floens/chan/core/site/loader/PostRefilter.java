@@ -0,0 +1,126 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.site.loader;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.WorkerThread;
+
+import org.floens.chan.core.manager.CompiledFilters;
+import org.floens.chan.core.manager.FilterEngine;
+import org.floens.chan.core.model.Post;
+import org.floens.chan.core.model.orm.Filter;
+import org.floens.chan.core.site.parser.PostParser;
+import org.floens.chan.ui.theme.Theme;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Matches posts that were parsed with older filters again, without loading or parsing them
+ * again. Only the filter result of a post, and the subject span that depends on it, change.
+ * <p>The posts are matched on a background thread with {@link #match(CompiledFilters)}, and
+ * changed on the main thread with {@link #apply()}.
+ */
+class PostRefilter {
+    private final PostParser parser;
+    private final Theme theme;
+    private final List<Post> posts;
+    // The stub state of the posts when this was made, only a post that got in or out of stub
+    // mode needs a new subject span.
+    private final boolean[] wereStub;
+
+    private final int[] colors;
+    private final boolean[] stubs;
+    private final boolean[] removes;
+    private final CharSequence[] subjectSpans;
+    // Set by match(), the filters are compiled on the same background thread.
+    private CompiledFilters filters;
+
+    @MainThread
+    PostRefilter(PostParser parser, Theme theme, List<Post> posts) {
+        this.parser = parser;
+        this.theme = theme;
+        this.posts = posts;
+
+        wereStub = new boolean[posts.size()];
+        for (int i = 0; i < posts.size(); i++) {
+            wereStub[i] = posts.get(i).isFilterStub();
+        }
+
+        colors = new int[posts.size()];
+        stubs = new boolean[posts.size()];
+        removes = new boolean[posts.size()];
+        subjectSpans = new CharSequence[posts.size()];
+    }
+
+    public int getPostCount() {
+        return posts.size();
+    }
+
+    @WorkerThread
+    public void match(CompiledFilters filters) {
+        this.filters = filters;
+        for (int i = 0; i < posts.size(); i++) {
+            Post post = posts.get(i);
+            // Posts that were never matched stay that way.
+            Filter filter = post.filterFields == null ? null : filters.match(post.filterFields);
+            if (filter != null) {
+                switch (FilterEngine.FilterAction.forId(filter.action)) {
+                    case COLOR:
+                        colors[i] = filter.color;
+                        break;
+                    case HIDE:
+                        stubs[i] = true;
+                        break;
+                    case REMOVE:
+                        removes[i] = true;
+                        break;
+                }
+            }
+
+            if (stubs[i] != wereStub[i]) {
+                subjectSpans[i] = parser.parseSubjectSpan(theme, post.subject, stubs[i]);
+            }
+        }
+    }
+
+    /**
+     * Set the new filter results on the posts. Posts that were matched with newer filters in
+     * the meantime are left alone.
+     *
+     * @return the posts with a different filter result
+     */
+    @MainThread
+    public List<Post> apply() {
+        List<Post> changed = new ArrayList<>();
+        for (int i = 0; i < posts.size(); i++) {
+            Post post = posts.get(i);
+            if (post.getFilterVersion() >= filters.version) {
+                continue;
+            }
+
+            if (post.setFilter(colors[i], stubs[i], removes[i], filters.version)) {
+                changed.add(post);
+            }
+            if (stubs[i] != wereStub[i]) {
+                post.setSubjectSpan(subjectSpans[i]);
+            }
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.site.loader;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.MainThread;
+
+import org.floens.chan.core.cache.ThreadSnapshot;
+import org.floens.chan.core.cache.ThreadSnapshotStore;
+import org.floens.chan.core.model.orm.Loadable;
+import org.floens.chan.core.site.parser.ChanReaderRequest;
+import org.floens.chan.utils.Logger;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+
+/**
+ * Shows a thread from its snapshot in the {@link ThreadSnapshotStore}, instead of loading it from
+ * the site. The posts go through the same processing as the posts of a {@link ChanReaderRequest}.
+ * The store only reads the file, the snapshot is decoded and processed with the parse tasks of
+ * the request.
+ */
+public class ThreadSnapshotLoad {
+    private static final String TAG = "ThreadSnapshotLoad";
+
+    private final ChanReaderRequest request;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private volatile boolean canceled;
+    private Future<?> future;
+
+    public ThreadSnapshotLoad(ChanReaderRequest request) {
+        this.request = request;
+    }
+
+    /**
+     * Read and process the snapshot in the background.
+     *
+     * @param listener called on the main thread with the response, or with {@code null} if there
+     *                 was no snapshot that could be used. Not called after {@link #cancel()}.
+     */
+    @MainThread
+    public void enqueue(final ThreadSnapshotStore store, final Loadable loadable, final Listener listener) {
+        future = store.read(loadable.id, data -> {
+            if (data == null || canceled) {
+                deliver(listener, null);
+                return;
+            }
+
+            try {
+                request.getParseGroup().submit(() -> {
+                    deliver(listener, process(store, loadable, data));
+                    return null;
+                });
+            } catch (CancellationException ignored) {
+                // Canceled after the read, nothing to deliver.
+            }
+        });
+    }
+
+    @MainThread
+    public void cancel() {
+        canceled = true;
+        request.cancel();
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    private ChanLoaderResponse process(ThreadSnapshotStore store, Loadable loadable, byte[] data) {
+        if (canceled) {
+            return null;
+        }
+
+        ThreadSnapshot snapshot;
+        try {
+            snapshot = ThreadSnapshot.read(data, loadable.board);
+        } catch (IOException e) {
+            Logger.e(TAG, "Error reading snapshot", e);
+            store.remove(loadable);
+            return null;
+        }
+        if (snapshot == null) {
+            return null;
+        }
+
+        try {
+            return request.readSnapshot(snapshot);
+        } catch (Exception e) {
+            if (!canceled) {
+                Logger.e(TAG, "Error processing snapshot", e);
+            }
+            return null;
+        }
+    }
+
+    private void deliver(final Listener listener, final ChanLoaderResponse response) {
+        handler.post(() -> {
+            if (!canceled) {
+                listener.onSnapshotLoaded(response);
+            }
+        });
+    }
+
+    public interface Listener {
+        void onSnapshotLoaded(ChanLoaderResponse response);
+    }
+}
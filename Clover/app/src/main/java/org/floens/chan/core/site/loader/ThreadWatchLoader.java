@@ -0,0 +1,139 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.site.loader;
+
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+
+import org.floens.chan.core.di.UserAgentProvider;
+import org.floens.chan.core.exception.ChanLoaderException;
+import org.floens.chan.core.model.orm.Loadable;
+import org.floens.chan.core.net.JsonReaderStreamingCall;
+import org.floens.chan.core.site.parser.ThreadWatchRequest;
+import org.floens.chan.utils.Logger;
+
+import javax.inject.Inject;
+
+import okhttp3.OkHttpClient;
+
+import static org.floens.chan.Chan.inject;
+
+/**
+ * Loads a thread for the watcher, without keeping the thread. The posts are not parsed, see
+ * {@link ThreadWatchRequest}. When to load is up to the watcher.
+ */
+public class ThreadWatchLoader implements Response.ErrorListener, Response.Listener<ThreadWatchResponse> {
+    private static final String TAG = "ThreadWatchLoader";
+
+    @Inject
+    OkHttpClient okHttpClient;
+
+    @Inject
+    UserAgentProvider userAgentProvider;
+
+    private final Loadable loadable;
+    private final int textPosts;
+    private final Callback callback;
+
+    private JsonReaderStreamingCall<ThreadWatchResponse> call;
+    private boolean loaded;
+    private String lastModifiedHeader;
+    private String etag;
+
+    /**
+     * @param textPosts the number of last posts to keep the text of, see {@link ThreadWatchRequest}
+     */
+    public ThreadWatchLoader(Loadable loadable, int textPosts, Callback callback) {
+        this.loadable = loadable;
+        this.textPosts = textPosts;
+        this.callback = callback;
+
+        inject(this);
+    }
+
+    /**
+     * Whether the thread was loaded at least once.
+     */
+    public boolean hasLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Request the thread, unless it is loading already.
+     *
+     * @return {@code true} if a new request was started, {@code false} otherwise.
+     */
+    public boolean requestMoreData() {
+        if (call != null) {
+            return false;
+        }
+
+        Logger.d(TAG, "Requested " + loadable.boardCode + ", " + loadable.no);
+        // Only conditional when there is a response to keep.
+        call = new JsonReaderStreamingCall<>(new ThreadWatchRequest(loadable, textPosts,
+                loaded ? lastModifiedHeader : null, loaded ? etag : null, this, this));
+        call.enqueue(okHttpClient, userAgentProvider.getUserAgent());
+        return true;
+    }
+
+    public void cancel() {
+        if (call != null) {
+            call.cancel();
+            call = null;
+        }
+    }
+
+    @Override
+    public void onResponse(ThreadWatchResponse response) {
+        call = null;
+
+        if (response.lastModifiedHeader != null || response.etag != null) {
+            lastModifiedHeader = response.lastModifiedHeader;
+            etag = response.etag;
+        }
+
+        if (response.notModified) {
+            callback.onWatchNotModified();
+            return;
+        }
+
+        loaded = true;
+
+        callback.onWatchData(response);
+    }
+
+    @Override
+    public void onErrorResponse(VolleyError error) {
+        call = null;
+
+        Logger.i(TAG, "Loading error", error);
+
+        callback.onWatchError(new ChanLoaderException(error));
+    }
+
+    public interface Callback {
+        void onWatchData(ThreadWatchResponse response);
+
+        /**
+         * The thread didn't change since the last {@link #onWatchData}.
+         */
+        void onWatchNotModified();
+
+        void onWatchError(ChanLoaderException error);
+    }
+}
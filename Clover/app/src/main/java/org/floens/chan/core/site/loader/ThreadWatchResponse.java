@@ -0,0 +1,65 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.site.loader;
+
+import org.floens.chan.core.model.WatchPost;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What a {@link ThreadWatchLoader} read from the thread.
+ */
+public class ThreadWatchResponse {
+    public final List<WatchPost> posts;
+    // The posts that quote one of your posts.
+    public final List<WatchPost> quotes;
+
+    public final boolean archived;
+    public final boolean closed;
+    // The thumbnail of the op, or null if it has no image.
+    public final String thumbnailUrl;
+
+    // The server responded with 304 Not Modified, the lists are empty.
+    public final boolean notModified;
+
+    // Validators of the response, for the next conditional request.
+    public String lastModifiedHeader;
+    public String etag;
+
+    public ThreadWatchResponse(List<WatchPost> posts, List<WatchPost> quotes,
+                               boolean archived, boolean closed, String thumbnailUrl) {
+        this(posts, quotes, archived, closed, thumbnailUrl, false);
+    }
+
+    private ThreadWatchResponse(List<WatchPost> posts, List<WatchPost> quotes,
+                                boolean archived, boolean closed, String thumbnailUrl,
+                                boolean notModified) {
+        this.posts = posts;
+        this.quotes = quotes;
+        this.archived = archived;
+        this.closed = closed;
+        this.thumbnailUrl = thumbnailUrl;
+        this.notModified = notModified;
+    }
+
+    public static ThreadWatchResponse notModified() {
+        return new ThreadWatchResponse(Collections.<WatchPost>emptyList(),
+                Collections.<WatchPost>emptyList(), false, false, null, true);
+    }
+}
@@ -37,6 +37,12 @@ public class ChanReaderProcessingQueue {
     private List<Post.Builder> toParse = new ArrayList<>();
     private Post.Builder op;
 
+    // Catalog mode only, the values read for the reused posts and the order the posts were read in.
+    @SuppressLint("UseSparseArrays")
+    private Map<Integer, Post.Builder> reusedState = new HashMap<>();
+    @SuppressLint("UseSparseArrays")
+    private Map<Integer, Integer> readOrder = new HashMap<>();
+
     public ChanReaderProcessingQueue(List<Post> toReuse, Loadable loadable) {
         this.loadable = loadable;
 
@@ -50,11 +56,47 @@ public class ChanReaderProcessingQueue {
         return cachedByNo.get(no);
     }
 
-    public void addForReuse(Post post) {
+    /**
+     * Whether the values that can't change may be skipped while reading the post, because the
+     * cached post will be reused anyway. Catalog posts are only reused when their counters are
+     * unchanged, which isn't known until the whole post is read.
+     * <p>Only useful to readers that get the post number before the large values, like the
+     * {@code no} of 4chan and vichan. 2ch sends its keys sorted, {@code num} after the comment
+     * and the files, so DvachApi doesn't skip.
+     */
+    public boolean canSkipImmutable(int no) {
+        return loadable.isThreadMode() && cachedByNo.containsKey(no);
+    }
+
+    /**
+     * Get the cached post to use instead of parsing the builder.<br>
+     * In thread mode any cached post with the same number. In catalog mode only when the last
+     * modified time, reply and image counts of the thread didn't change, otherwise the op might
+     * have been edited and is parsed again.
+     *
+     * @param builder the post as read from the response
+     * @return the post to reuse, or {@code null} to parse the builder
+     */
+    public Post getReusablePost(Post.Builder builder) {
+        Post cached = cachedByNo.get(builder.id);
+        if (cached != null && loadable.isCatalogMode() && !countersEqual(cached, builder)) {
+            return null;
+        }
+        return cached;
+    }
+
+    public void addForReuse(Post post, Post.Builder builder) {
+        if (loadable.isCatalogMode()) {
+            reusedState.put(post.no, builder);
+            readOrder.put(post.no, readOrder.size());
+        }
         toReuse.add(post);
     }
 
     public void addForParse(Post.Builder postBuilder) {
+        if (loadable.isCatalogMode()) {
+            readOrder.put(postBuilder.id, readOrder.size());
+        }
         toParse.add(postBuilder);
     }
 
@@ -77,4 +119,22 @@ public class ChanReaderProcessingQueue {
     Post.Builder getOp() {
         return op;
     }
+
+    Map<Integer, Post.Builder> getReusedState() {
+        return reusedState;
+    }
+
+    int getReadPosition(int no) {
+        Integer position = readOrder.get(no);
+        return position == null ? Integer.MAX_VALUE : position;
+    }
+
+    // The counters of a cached post are only set on the main thread when its response is
+    // delivered, which happened before this request was made.
+    @SuppressLint("WrongThread")
+    private static boolean countersEqual(Post cached, Post.Builder builder) {
+        return cached.getLastModified() == builder.lastModified &&
+                cached.getReplies() == builder.replies &&
+                cached.getImagesCount() == builder.imagesCount;
+    }
 }
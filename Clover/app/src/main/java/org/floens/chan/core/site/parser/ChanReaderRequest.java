@@ -19,29 +19,31 @@ package org.floens.chan.core.site.parser;
 
 import android.util.JsonReader;
 
+import androidx.annotation.VisibleForTesting;
+
+import org.floens.chan.core.cache.ThreadSnapshot;
+import org.floens.chan.core.cache.ThreadSnapshotStore;
 import org.floens.chan.core.database.DatabaseManager;
 import org.floens.chan.core.database.DatabaseSavedReplyManager;
+import org.floens.chan.core.manager.CompiledFilters;
 import org.floens.chan.core.manager.FilterEngine;
 import org.floens.chan.core.model.Post;
-import org.floens.chan.core.model.orm.Filter;
+import org.floens.chan.core.model.ReplyGraph;
 import org.floens.chan.core.model.orm.Loadable;
 import org.floens.chan.core.net.JsonReaderRequest;
+import org.floens.chan.core.pool.ParseScheduler;
 import org.floens.chan.core.site.loader.ChanLoaderRequestParams;
 import org.floens.chan.core.site.loader.ChanLoaderResponse;
+import org.floens.chan.utils.IntSet;
 import org.floens.chan.utils.Time;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 
 import javax.inject.Inject;
 
@@ -58,13 +60,14 @@ public class ChanReaderRequest extends JsonReaderRequest<ChanLoaderResponse> {
     private static final String TAG = "ChanReaderRequest";
     private static final boolean LOG_TIMING = false;
 
-    private static final int THREAD_COUNT;
-    private static final ExecutorService EXECUTOR;
+    // Only parse the comments of the posts around the last viewed position before delivering.
+    // The other comments are parsed in the background, or when they are first displayed.
+    private static final boolean LAZY_COMMENTS = true;
+    private static final int LAZY_PARSE_BEFORE = 10;
+    private static final int LAZY_PARSE_AFTER = 30;
 
-    static {
-        THREAD_COUNT = Runtime.getRuntime().availableProcessors();
-        EXECUTOR = Executors.newFixedThreadPool(THREAD_COUNT);
-    }
+    // Comments prefetched per task, small enough that other loads don't wait long for a thread.
+    private static final int PREFETCH_CHUNK = 20;
 
     @Inject
     DatabaseManager databaseManager;
@@ -72,14 +75,27 @@ public class ChanReaderRequest extends JsonReaderRequest<ChanLoaderResponse> {
     @Inject
     FilterEngine filterEngine;
 
+    @Inject
+    ThreadSnapshotStore snapshotStore;
+
+    @Inject
+    ParseScheduler parseScheduler;
+
     private Loadable loadable;
     private List<Post> cached;
+    private ReplyGraph replyGraph;
+    private boolean newReplyGraph;
+    private int snapshotLoadableId;
+    private ThreadSnapshot.Recorder snapshotRecorder;
     private ChanReader reader;
+    private ParseScheduler.Group parseGroup;
     private DatabaseSavedReplyManager databaseSavedReplyManager;
 
-    private List<Filter> filters;
     private long startLoad;
 
+    private String responseLastModified;
+    private String responseEtag;
+
     public ChanReaderRequest(ChanLoaderRequestParams request) {
         super(getChanUrl(request.loadable).toString(), request.listener, request.errorListener);
         inject(this);
@@ -87,17 +103,18 @@ public class ChanReaderRequest extends JsonReaderRequest<ChanLoaderResponse> {
         // Copy the loadable and cached list. The cached array may changed/cleared by other threads.
         loadable = request.loadable.copy();
         cached = new ArrayList<>(request.cached);
+        replyGraph = request.replyGraph;
+        if (replyGraph == null) {
+            replyGraph = new ReplyGraph();
+            newReplyGraph = true;
+        }
         reader = request.chanReader;
+        parseGroup = parseScheduler.newGroup(request.priority);
 
-        filters = new ArrayList<>();
-        List<Filter> enabledFilters = filterEngine.getEnabledFilters();
-        for (int i = 0; i < enabledFilters.size(); i++) {
-            Filter filter = enabledFilters.get(i);
-
-            if (filterEngine.matchesBoard(filter, loadable.board)) {
-                // copy the filter because it will get used on other threads
-                filters.add(filter.copy());
-            }
+        // The copy doesn't have the id.
+        if (ThreadSnapshotStore.canStore(request.loadable)) {
+            snapshotLoadableId = request.loadable.id;
+            snapshotRecorder = new ThreadSnapshot.Recorder();
         }
 
         startLoad = Time.startTiming();
@@ -131,6 +148,58 @@ public class ChanReaderRequest extends JsonReaderRequest<ChanLoaderResponse> {
         return Priority.HIGH;
     }
 
+    /**
+     * @return the parse tasks of this request, cancelled with the request.
+     */
+    public ParseScheduler.Group getParseGroup() {
+        return parseGroup;
+    }
+
+    @Override
+    public void cancel() {
+        super.cancel();
+        // Don't parse posts for a response that won't be delivered.
+        parseGroup.cancel();
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        Map<String, String> headers = new HashMap<>();
+        // Only make the request conditional if there are posts to show when nothing changed.
+        if (!cached.isEmpty()) {
+            if (loadable.lastModifiedHeader != null) {
+                headers.put("If-Modified-Since", loadable.lastModifiedHeader);
+            }
+            if (loadable.etag != null) {
+                headers.put("If-None-Match", loadable.etag);
+            }
+        }
+        return headers;
+    }
+
+    @Override
+    public void readHeaders(Map<String, String> headers) {
+        responseLastModified = headers.get("Last-Modified");
+        responseEtag = headers.get("ETag");
+    }
+
+    @Override
+    public ChanLoaderResponse readNotModified() {
+        if (cached.isEmpty()) {
+            // Can't do anything without the cached posts, read the body.
+            return null;
+        }
+
+        if (LOG_TIMING) {
+            Time.endTiming("Network, not modified", startLoad);
+        }
+
+        ChanLoaderResponse response = ChanLoaderResponse.notModified();
+        response.lastModifiedHeader = responseLastModified;
+        response.etag = responseEtag;
+        return response;
+    }
+
     @Override
     public ChanLoaderResponse readJson(JsonReader reader) throws Exception {
         if (LOG_TIMING) {
@@ -154,7 +223,70 @@ public class ChanReaderRequest extends JsonReaderRequest<ChanLoaderResponse> {
         }
 
         List<Post> list = parsePosts(processing);
-        return processPosts(processing.getOp(), list);
+        ChanLoaderResponse response = processPosts(processing, list);
+
+        if (snapshotRecorder != null) {
+            IntSet deleted = new IntSet();
+            for (int i = 0; i < response.posts.size(); i++) {
+                Post post = response.posts.get(i);
+                if (post.deleted.get()) {
+                    deleted.add(post.no);
+                }
+            }
+
+            snapshotStore.write(snapshotLoadableId, cached.isEmpty(), snapshotRecorder.getPosts(),
+                    processing.getOp(), deleted, responseLastModified, responseEtag);
+        }
+
+        if (LAZY_COMMENTS) {
+            parseCommentsAroundViewport(response.posts);
+        }
+
+        response.lastModifiedHeader = responseLastModified;
+        response.etag = responseEtag;
+        return response;
+    }
+
+    /**
+     * Process the posts of a snapshot the same way as the posts of a response, so that a thread
+     * can be shown before it is loaded.
+     *
+     * @param snapshot the snapshot of the thread
+     * @return the response to deliver, with the validators of the snapshot.
+     */
+    public ChanLoaderResponse readSnapshot(ThreadSnapshot snapshot) throws Exception {
+        long load = Time.startTiming();
+
+        // These posts are in the snapshot already.
+        snapshotRecorder = null;
+
+        ChanReaderProcessingQueue processing = new ChanReaderProcessingQueue(cached, loadable);
+        for (int i = 0; i < snapshot.posts.size(); i++) {
+            processing.addForParse(snapshot.posts.get(i));
+        }
+        processing.setOp(snapshot.op);
+
+        List<Post> list = parsePosts(processing);
+        ChanLoaderResponse response = processPosts(processing, list);
+
+        if (snapshot.deleted != null) {
+            for (int i = 0; i < response.posts.size(); i++) {
+                Post post = response.posts.get(i);
+                post.deleted.set(snapshot.deleted.contains(post.no));
+            }
+        }
+
+        if (LAZY_COMMENTS) {
+            parseCommentsAroundViewport(response.posts);
+        }
+
+        if (LOG_TIMING) {
+            Time.endTiming("Read snapshot with " + response.posts.size() + " posts", load);
+        }
+
+        response.lastModifiedHeader = snapshot.lastModifiedHeader;
+        response.etag = snapshot.etag;
+        return response;
     }
 
     // Concurrently parses the new posts with an executor
@@ -170,7 +302,7 @@ public class ChanReaderRequest extends JsonReaderRequest<ChanLoaderResponse> {
 
         // A list of all ids in the thread. Used for checking if a quote if for the current
         // thread or externally.
-        Set<Integer> internalIds = new HashSet<>();
+        IntSet internalIds = new IntSet(cached.size() + toParse.size());
         // All ids of cached posts.
         for (int i = 0; i < cached.size(); i++) {
             internalIds.add(cached.get(i).no);
@@ -180,39 +312,108 @@ public class ChanReaderRequest extends JsonReaderRequest<ChanLoaderResponse> {
             internalIds.add(toParse.get(i).id);
         }
         // Do not modify internalIds after this point.
-        internalIds = Collections.unmodifiableSet(internalIds);
 
+        // Compiles the filters if they changed, not on the main thread.
+        CompiledFilters filters = filterEngine.getCompiledFilters(loadable.board);
         List<Callable<Post>> tasks = new ArrayList<>(toParse.size());
         for (int i = 0; i < toParse.size(); i++) {
             Post.Builder post = toParse.get(i);
-            tasks.add(new PostParseCallable(filterEngine,
-                    filters,
+            post.lazyComment(LAZY_COMMENTS);
+            tasks.add(new PostParseCallable(filters,
                     databaseSavedReplyManager,
                     post,
                     reader,
-                    internalIds));
+                    internalIds,
+                    snapshotRecorder));
         }
 
         if (!tasks.isEmpty()) {
-            List<Future<Post>> futures = EXECUTOR.invokeAll(tasks);
-            for (int i = 0; i < futures.size(); i++) {
-                Future<Post> future = futures.get(i);
-                Post parsedPost = future.get();
+            List<Post> parsedPosts = parseGroup.invokeAll(tasks);
+            for (int i = 0; i < parsedPosts.size(); i++) {
+                Post parsedPost = parsedPosts.get(i);
                 if (parsedPost != null) {
                     total.add(parsedPost);
                 }
             }
 
             if (LOG_TIMING) {
-                Time.endTiming("Parse posts with " + THREAD_COUNT + " threads", parsePosts);
+                Time.endTiming("Parse posts with " + parseScheduler.getThreadCount() + " threads, " +
+                        parseGroup.getPriority(), parsePosts);
             }
         }
 
         return total;
     }
 
-    private ChanLoaderResponse processPosts(Post.Builder op, List<Post> allPost) throws Exception {
-        ChanLoaderResponse response = new ChanLoaderResponse(op, new ArrayList<Post>(allPost.size()));
+    // Parses the comments of the posts that are visible first, and leaves the rest for prefetch
+    // tasks, closest to the viewport first.
+    private void parseCommentsAroundViewport(List<Post> posts) throws InterruptedException, ExecutionException {
+        if (posts.isEmpty()) {
+            return;
+        }
+
+        long parseViewport = Time.startTiming();
+
+        int index = Math.max(0, Math.min(loadable.listViewIndex, posts.size() - 1));
+        int from = Math.max(0, index - LAZY_PARSE_BEFORE);
+        int to = Math.min(posts.size(), index + LAZY_PARSE_AFTER);
+
+        List<Callable<CharSequence>> tasks = new ArrayList<>();
+        // The op is always needed for the title.
+        if (from > 0) {
+            addCommentParseTask(tasks, posts.get(0));
+        }
+        for (int i = from; i < to; i++) {
+            addCommentParseTask(tasks, posts.get(i));
+        }
+
+        if (!tasks.isEmpty()) {
+            parseGroup.invokeAll(tasks);
+
+            if (LOG_TIMING) {
+                Time.endTiming("Parse " + tasks.size() + " comments around the viewport", parseViewport);
+            }
+        }
+
+        final List<Post> prefetch = new ArrayList<>();
+        for (int after = to, before = from - 1; after < posts.size() || before >= 0; after++, before--) {
+            if (after < posts.size() && !posts.get(after).isCommentParsed()) {
+                prefetch.add(posts.get(after));
+            }
+            if (before >= 0 && !posts.get(before).isCommentParsed()) {
+                prefetch.add(posts.get(before));
+            }
+        }
+
+        for (int start = 0; start < prefetch.size(); start += PREFETCH_CHUNK) {
+            final List<Post> chunk = prefetch.subList(start, Math.min(prefetch.size(), start + PREFETCH_CHUNK));
+            parseGroup.prefetch(() -> {
+                for (int i = 0; i < chunk.size(); i++) {
+                    chunk.get(i).getComment();
+                }
+            });
+        }
+    }
+
+    private void addCommentParseTask(List<Callable<CharSequence>> tasks, final Post post) {
+        if (!post.isCommentParsed()) {
+            tasks.add(post::getComment);
+        }
+    }
+
+    @VisibleForTesting
+    ChanLoaderResponse processPosts(final ChanReaderProcessingQueue queue, List<Post> allPost) throws Exception {
+        ChanLoaderResponse response = new ChanLoaderResponse(queue.getOp(), new ArrayList<Post>(allPost.size()));
+
+        if (loadable.isCatalogMode()) {
+            // The catalog is what the server sent, in its order. Threads that fell off the board
+            // are not kept, and the reused ops get their counters updated on the main thread.
+            Collections.sort(allPost, (a, b) ->
+                    Integer.compare(queue.getReadPosition(a.no), queue.getReadPosition(b.no)));
+            response.posts.addAll(allPost);
+            response.reusedState = queue.getReusedState();
+            return response;
+        }
 
         List<Post> cachedPosts = new ArrayList<>();
         List<Post> newPosts = new ArrayList<>();
@@ -221,23 +422,21 @@ public class ChanReaderRequest extends JsonReaderRequest<ChanLoaderResponse> {
             // Add all posts that were parsed before
             cachedPosts.addAll(cached);
 
-            Map<Integer, Post> cachedPostsByNo = new HashMap<>();
+            IntSet cachedNos = new IntSet(cachedPosts.size());
             for (int i = 0; i < cachedPosts.size(); i++) {
-                Post post = cachedPosts.get(i);
-                cachedPostsByNo.put(post.no, post);
+                cachedNos.add(cachedPosts.get(i).no);
             }
 
-            Map<Integer, Post> serverPostsByNo = new HashMap<>();
+            IntSet serverNos = new IntSet(allPost.size());
             for (int i = 0; i < allPost.size(); i++) {
-                Post post = allPost.get(i);
-                serverPostsByNo.put(post.no, post);
+                serverNos.add(allPost.get(i).no);
             }
 
             // If there's a cached post but it's not in the list received from the server, mark it as deleted
             if (loadable.isThreadMode()) {
                 for (int i = 0; i < cachedPosts.size(); i++) {
                     Post cachedPost = cachedPosts.get(i);
-                    cachedPost.deleted.set(!serverPostsByNo.containsKey(cachedPost.no));
+                    cachedPost.deleted.set(!serverNos.contains(cachedPost.no));
                 }
             }
             if (LOG_TIMING) {
@@ -248,7 +447,7 @@ public class ChanReaderRequest extends JsonReaderRequest<ChanLoaderResponse> {
             // If there's a post in the list from the server, that's not in the cached list, add it.
             for (int i = 0; i < allPost.size(); i++) {
                 Post serverPost = allPost.get(i);
-                if (!cachedPostsByNo.containsKey(serverPost.no)) {
+                if (!cachedNos.contains(serverPost.no)) {
                     newPosts.add(serverPost);
                 }
             }
@@ -264,49 +463,14 @@ public class ChanReaderRequest extends JsonReaderRequest<ChanLoaderResponse> {
         allPosts.addAll(newPosts);
 
         if (loadable.isThreadMode()) {
-            Map<Integer, Post> postsByNo = new HashMap<>();
-            for (int i = 0; i < allPosts.size(); i++) {
-                Post post = allPosts.get(i);
-                postsByNo.put(post.no, post);
-            }
-
-            // Maps post no's to a list of no's that that post received replies from
-            Map<Integer, List<Integer>> replies = new HashMap<>();
-
-            long collectReplies = Time.startTiming();
-            for (int i = 0; i < allPosts.size(); i++) {
-                Post sourcePost = allPosts.get(i);
-
-                for (int replyTo : sourcePost.repliesTo) {
-                    List<Integer> value = replies.get(replyTo);
-                    if (value == null) {
-                        value = new ArrayList<>(3);
-                        replies.put(replyTo, value);
-                    }
-                    value.add(sourcePost.no);
-                }
-            }
-            if (LOG_TIMING) {
-                Time.endTiming("Collect replies", collectReplies);
-            }
             long mapReplies = Time.startTiming();
 
-            for (Map.Entry<Integer, List<Integer>> entry : replies.entrySet()) {
-                int key = entry.getKey();
-                List<Integer> value = entry.getValue();
-
-                Post subject = postsByNo.get(key);
-                // Sometimes a post replies to a ghost, a post that doesn't exist.
-                if (subject != null) {
-                    synchronized (subject.repliesFrom) {
-                        subject.repliesFrom.clear();
-                        subject.repliesFrom.addAll(value);
-                    }
-                }
-            }
+            // The graph of the loaded thread has the cached posts already.
+            int added = replyGraph.addPosts(newReplyGraph ? allPosts : newPosts);
+            response.replyGraph = replyGraph;
 
             if (LOG_TIMING) {
-                Time.endTiming("Map replies", mapReplies);
+                Time.endTiming("Map replies of " + added + " posts", mapReplies);
             }
         }
 
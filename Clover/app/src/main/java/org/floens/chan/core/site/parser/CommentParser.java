@@ -30,6 +30,7 @@ import org.floens.chan.ui.span.AbsoluteSizeSpanHashed;
 import org.floens.chan.ui.span.ForegroundColorSpanHashed;
 import org.floens.chan.ui.theme.Theme;
 import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
 import org.jsoup.select.Elements;
 
 import java.util.ArrayList;
@@ -51,6 +52,8 @@ public class CommentParser {
     private Pattern fullQuotePattern = Pattern.compile("/(\\w+)/\\w+/(\\d+)#p(\\d+)");
     private Pattern quotePattern = Pattern.compile(".*#p(\\d+)");
     private Pattern colorPattern = Pattern.compile("color:#([0-9a-fA-F]+)");
+    private Pattern anchorHrefPattern = Pattern.compile("<a\\s[^>]*?href=[\"']([^\"']*)[\"']",
+            Pattern.CASE_INSENSITIVE);
 
     private Map<String, List<StyleRule>> rules = new HashMap<>();
     private List<String> internalDomains = new ArrayList<>(0);
@@ -113,22 +116,67 @@ public class CommentParser {
                                   CharSequence text,
                                   Element element) {
 
+        StyleRule rule = findRule(tag, element);
+        if (rule != null) {
+            return rule.apply(theme, callback, post, text, element);
+        }
+
+        switch (tag) {
+            default:
+                // Unknown tag, return the text;
+                return text;
+        }
+    }
+
+    public boolean hasRules(String tag) {
+        return rules.containsKey(tag);
+    }
+
+    /**
+     * Find the rule to apply on the element, rules with css classes take precedence.
+     *
+     * @return the rule, or {@code null} if no rule applies.
+     */
+    public StyleRule findRule(String tag, Element element) {
         List<StyleRule> rules = this.rules.get(tag);
         if (rules != null) {
             for (int i = 0; i < 2; i++) {
                 boolean highPriority = i == 0;
                 for (StyleRule rule : rules) {
                     if (rule.highPriority() == highPriority && rule.applies(element)) {
-                        return rule.apply(theme, callback, post, text, element);
+                        return rule;
                     }
                 }
             }
         }
+        return null;
+    }
 
-        switch (tag) {
-            default:
-                // Unknown tag, return the text;
-                return text;
+    /**
+     * Only extract the posts the comment quotes and add them to the builder, without parsing the
+     * html or building spans. Used when the comment itself is parsed lazily, so that the reply
+     * graph of the thread is still complete.
+     *
+     * @param post     the builder to add the quotes to
+     * @param comment  the raw comment html
+     * @param callback the parser callback
+     */
+    public void parseQuotes(Post.Builder post, CharSequence comment, PostParser.Callback callback) {
+        if (!rules.containsKey("a")) {
+            return;
+        }
+
+        Matcher matcher = anchorHrefPattern.matcher(comment);
+        while (matcher.find()) {
+            String href = matcher.group(1);
+            if (href.indexOf('&') >= 0) {
+                href = Parser.unescapeEntities(href, true);
+            }
+
+            Link link = matchHref(post, "", href, callback);
+            if (link.type == PostLinkable.Type.QUOTE) {
+                post.addReplyTo((int) link.value);
+            }
         }
     }
 
@@ -237,7 +285,10 @@ public class CommentParser {
     }
 
     public Link matchAnchor(Post.Builder post, CharSequence text, Element anchor, PostParser.Callback callback) {
-        String href = anchor.attr("href");
+        return matchHref(post, text, anchor.attr("href"), callback);
+    }
+
+    public Link matchHref(Post.Builder post, CharSequence text, String href, PostParser.Callback callback) {
         // For inner links we handle it as relative (for sites that have multiple domains).
         String path = "";
         if (href.startsWith("//") || href.startsWith("http://") || href.startsWith("https://")) {
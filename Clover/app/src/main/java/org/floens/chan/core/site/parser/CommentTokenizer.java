@@ -0,0 +1,513 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.site.parser;
+
+import android.text.SpannableStringBuilder;
+import android.text.SpannedString;
+
+import org.floens.chan.core.model.Post;
+import org.floens.chan.ui.theme.Theme;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Attributes;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.Tag;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Single pass parser for comment html, used instead of building a Jsoup document for every post.
+ * <p>
+ * The html is walked once, text is appended to one {@link SpannableStringBuilder} and the
+ * {@link StyleRule}s of the {@link CommentParser} are applied when an element closes. Rules that
+ * only add spans are applied on the builder directly, without copying the text. The result is the
+ * same as parsing the document with Jsoup and calling {@link CommentParser#handleTag} for every
+ * element.
+ * <p>
+ * Only the html that imageboards generate for comments is handled. For anything the html5 parser
+ * would restructure, like mismatched end tags, comments or nested anchors, {@link #parse(String)}
+ * returns {@code null} and the comment should be parsed with Jsoup instead. Tables are handed to
+ * the {@link NodeParser} as a small Jsoup fragment.
+ * <p>
+ * Not thread safe, create one per comment.
+ */
+public class CommentTokenizer {
+    private static final Set<String> SUPPORTED_TAGS = new HashSet<>(Arrays.asList(
+            "a", "b", "br", "code", "del", "div", "em", "font", "i", "ins", "p", "pre", "s",
+            "small", "span", "strike", "strong", "sub", "sup", "table", "u"));
+
+    // Start tags that implicitly close an open <p>, Jsoup moves these out of the paragraph.
+    private static final Set<String> CLOSES_PARAGRAPH = new HashSet<>(Arrays.asList(
+            "div", "p", "pre", "table"));
+
+    private final CommentParser commentParser;
+    private final Theme theme;
+    private final Post.Builder post;
+    private final PostParser.Callback callback;
+    private final NodeParser nodeParser;
+
+    private final SpannableStringBuilder out = new SpannableStringBuilder();
+    private final StringBuilder textRun = new StringBuilder();
+    private final List<Frame> stack = new ArrayList<>();
+    private final Frame root = new Frame(null, null, 0);
+
+    private String html;
+    private int pos;
+
+    public CommentTokenizer(CommentParser commentParser, Theme theme, Post.Builder post,
+                            PostParser.Callback callback, NodeParser nodeParser) {
+        this.commentParser = commentParser;
+        this.theme = theme;
+        this.post = post;
+        this.callback = callback;
+        this.nodeParser = nodeParser;
+    }
+
+    /**
+     * Parse the comment html.
+     *
+     * @param html the raw comment html
+     * @return the parsed comment, or {@code null} if the html needs the full html5 parser.
+     */
+    public CharSequence parse(String html) {
+        this.html = html;
+        pos = 0;
+
+        int length = html.length();
+        while (pos < length) {
+            int tagStart = html.indexOf('<', pos);
+            if (tagStart < 0) {
+                textRun.append(html, pos, length);
+                pos = length;
+            } else {
+                textRun.append(html, pos, tagStart);
+                pos = tagStart;
+                if (!readTag()) {
+                    return null;
+                }
+            }
+        }
+
+        flushText();
+
+        // Close what is left open, like Jsoup does at the end of the input.
+        while (!stack.isEmpty()) {
+            closeElement();
+        }
+
+        return new SpannedString(out);
+    }
+
+    private boolean readTag() {
+        // Same as the replace("<wbr>", "") of the Jsoup path, the text around it is one text node.
+        if (html.startsWith("<wbr>", pos)) {
+            pos += 5;
+            return true;
+        }
+
+        int length = html.length();
+        if (pos + 1 >= length) {
+            return false;
+        }
+
+        char next = html.charAt(pos + 1);
+        if (next == '/') {
+            return readEndTag();
+        } else if (isAsciiLetter(next)) {
+            return readStartTag();
+        } else if (next == '!' || next == '?') {
+            // Comments, doctypes and processing instructions.
+            return false;
+        } else {
+            // Not a tag, html5 emits the '<' as text.
+            textRun.append('<');
+            pos++;
+            return true;
+        }
+    }
+
+    private boolean readStartTag() {
+        int tagStart = pos;
+        int nameStart = pos + 1;
+        int nameEnd = readName(nameStart);
+        if (nameEnd >= html.length() || !(isWhitespace(html.charAt(nameEnd)) ||
+                html.charAt(nameEnd) == '>' || html.charAt(nameEnd) == '/')) {
+            return false;
+        }
+        String name = html.substring(nameStart, nameEnd).toLowerCase();
+
+        if (!SUPPORTED_TAGS.contains(name) || (name.equals("a") && isOpen("a")) ||
+                (CLOSES_PARAGRAPH.contains(name) && isOpen("p"))) {
+            return false;
+        }
+
+        Attributes attributes = new Attributes();
+        pos = nameEnd;
+        boolean selfClosing = false;
+        int length = html.length();
+        while (true) {
+            skipWhitespace();
+            if (pos >= length) {
+                return false;
+            }
+
+            char c = html.charAt(pos);
+            if (c == '>') {
+                pos++;
+                break;
+            } else if (c == '/') {
+                if (pos + 1 < length && html.charAt(pos + 1) == '>') {
+                    selfClosing = true;
+                    pos += 2;
+                    break;
+                }
+                return false;
+            } else if (!readAttribute(attributes)) {
+                return false;
+            }
+        }
+
+        boolean isVoid = name.equals("br");
+        if (selfClosing && !isVoid) {
+            return false;
+        }
+
+        // The element is a sibling of the text before it.
+        flushText();
+        Frame parent = current();
+        breakIfNeeded(parent);
+
+        if (name.equals("table")) {
+            return readTable(tagStart);
+        }
+
+        Frame frame = new Frame(name, attributes, out.length());
+        if (isVoid) {
+            stack.add(frame);
+            closeElement();
+        } else {
+            stack.add(frame);
+        }
+
+        return true;
+    }
+
+    private boolean readEndTag() {
+        int nameStart = pos + 2;
+        if (nameStart >= html.length() || !isAsciiLetter(html.charAt(nameStart))) {
+            return false;
+        }
+
+        int nameEnd = readName(nameStart);
+        pos = nameEnd;
+        skipWhitespace();
+        if (pos >= html.length() || html.charAt(pos) != '>') {
+            return false;
+        }
+        pos++;
+
+        if (stack.isEmpty() || !html.regionMatches(true, nameStart,
+                stack.get(stack.size() - 1).tag, 0, nameEnd - nameStart) ||
+                stack.get(stack.size() - 1).tag.length() != nameEnd - nameStart) {
+            // Stray or misnested end tag.
+            return false;
+        }
+
+        flushText();
+        closeElement();
+        return true;
+    }
+
+    private boolean readAttribute(Attributes attributes) {
+        int nameStart = pos;
+        int length = html.length();
+        while (pos < length) {
+            char c = html.charAt(pos);
+            if (isWhitespace(c) || c == '=' || c == '>' || c == '/' || c == '"' || c == '\'' || c == '<') {
+                break;
+            }
+            pos++;
+        }
+        if (pos == nameStart) {
+            return false;
+        }
+        String name = html.substring(nameStart, pos).toLowerCase();
+
+        skipWhitespace();
+        String value = "";
+        if (pos < length && html.charAt(pos) == '=') {
+            pos++;
+            skipWhitespace();
+            if (pos >= length) {
+                return false;
+            }
+
+            char quote = html.charAt(pos);
+            int valueStart;
+            int valueEnd;
+            if (quote == '"' || quote == '\'') {
+                valueStart = pos + 1;
+                valueEnd = html.indexOf(quote, valueStart);
+                if (valueEnd < 0) {
+                    return false;
+                }
+                pos = valueEnd + 1;
+            } else {
+                valueStart = pos;
+                while (pos < length && !isWhitespace(html.charAt(pos)) && html.charAt(pos) != '>') {
+                    pos++;
+                }
+                valueEnd = pos;
+            }
+
+            value = html.substring(valueStart, valueEnd);
+            if (value.indexOf('&') >= 0) {
+                value = Parser.unescapeEntities(value, true);
+            }
+        }
+
+        // Jsoup keeps the first of duplicate attributes.
+        if (!attributes.hasKey(name)) {
+            attributes.put(name, value);
+        }
+        return true;
+    }
+
+    private boolean readTable(int tagStart) {
+        int tableEnd = findTableEnd(tagStart);
+        if (tableEnd < 0) {
+            return false;
+        }
+
+        List<Node> nodes = Jsoup.parseBodyFragment(html.substring(tagStart, tableEnd))
+                .body().childNodes();
+        if (nodes.size() != 1) {
+            return false;
+        }
+
+        pos = tableEnd;
+        CharSequence parsed = nodeParser.parseNode(nodes.get(0));
+        if (parsed != null) {
+            out.append(parsed);
+        }
+        return true;
+    }
+
+    private int findTableEnd(int tagStart) {
+        int depth = 0;
+        int i = tagStart;
+        int length = html.length();
+        while ((i = html.indexOf('<', i)) >= 0) {
+            if (html.regionMatches(true, i, "<table", 0, 6)) {
+                depth++;
+            } else if (html.regionMatches(true, i, "</table", 0, 7)) {
+                depth--;
+                if (depth == 0) {
+                    int end = html.indexOf('>', i);
+                    return end < 0 ? -1 : end + 1;
+                }
+            }
+            i++;
+            if (i >= length) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    private void closeElement() {
+        Frame frame = stack.remove(stack.size() - 1);
+        int start = frame.start;
+
+        StyleRule rule = null;
+        Element element = null;
+        if (commentParser.hasRules(frame.tag)) {
+            element = new Element(Tag.valueOf(frame.tag), "", frame.attributes);
+            rule = commentParser.findRule(frame.tag, element);
+        }
+
+        if (rule == null) {
+            // Unknown tag, keep the text.
+            return;
+        }
+
+        if (rule.canApplyInPlace()) {
+            rule.applyInPlace(theme, post, out, start, out.length());
+        } else {
+            CharSequence inner = out.subSequence(start, out.length());
+            CharSequence result = rule.apply(theme, callback, post, inner, element);
+            if (result == null) {
+                // Like the Jsoup path, keep the inner text.
+                return;
+            }
+            replace(start, result);
+        }
+
+        if (rule.breaksAfter()) {
+            current().pendingBreak = true;
+        }
+    }
+
+    /**
+     * Replace the text from start to the end with the result of a rule. The result already carries
+     * the spans of the inner text, so those are removed first.
+     */
+    private void replace(int start, CharSequence result) {
+        int end = out.length();
+        if (start != end) {
+            for (Object span : out.getSpans(start, end, Object.class)) {
+                if (out.getSpanStart(span) >= start) {
+                    out.removeSpan(span);
+                }
+            }
+        }
+        out.replace(start, end, result);
+    }
+
+    private void flushText() {
+        if (textRun.length() == 0) {
+            return;
+        }
+
+        String raw = textRun.toString();
+        textRun.setLength(0);
+        if (raw.indexOf('&') >= 0) {
+            raw = Parser.unescapeEntities(raw, false);
+        }
+        String text = normaliseWhitespace(raw);
+
+        breakIfNeeded(current());
+
+        int start = out.length();
+        out.append(text);
+
+        if (text.length() > 0) {
+            CommentParserHelper.detectLinks(theme, post, text, out, start);
+        }
+    }
+
+    private void breakIfNeeded(Frame parent) {
+        if (parent.pendingBreak) {
+            out.append('\n');
+            parent.pendingBreak = false;
+        }
+    }
+
+    private Frame current() {
+        return stack.isEmpty() ? root : stack.get(stack.size() - 1);
+    }
+
+    private boolean isOpen(String tag) {
+        for (int i = 0; i < stack.size(); i++) {
+            if (stack.get(i).tag.equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int readName(int start) {
+        int i = start;
+        int length = html.length();
+        while (i < length) {
+            char c = html.charAt(i);
+            if (!isAsciiLetter(c) && !(c >= '0' && c <= '9')) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private void skipWhitespace() {
+        int length = html.length();
+        while (pos < length && isWhitespace(html.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    /**
+     * Same as the text of a Jsoup TextNode, runs of whitespace become one space and zero width
+     * characters are removed.
+     */
+    static String normaliseWhitespace(String text) {
+        StringBuilder sb = null;
+        boolean lastWasWhite = false;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            boolean white = c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r' || c == 160;
+            boolean invisible = c == 8203 || c == 8204 || c == 8205 || c == 173;
+            boolean keep = !invisible && !(white && lastWasWhite) && !(white && c != ' ');
+
+            if (!keep && sb == null) {
+                // First change, copy what was kept until now.
+                sb = new StringBuilder(length);
+                sb.append(text, 0, i);
+            }
+
+            if (white) {
+                if (!lastWasWhite && sb != null) {
+                    sb.append(' ');
+                }
+                lastWasWhite = true;
+            } else if (!invisible) {
+                if (sb != null) {
+                    sb.append(c);
+                }
+                lastWasWhite = false;
+            }
+        }
+
+        return sb == null ? text : sb.toString();
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Parses a node with the regular Jsoup path, used for the elements the tokenizer hands off.
+     */
+    public interface NodeParser {
+        CharSequence parseNode(Node node);
+    }
+
+    private static class Frame {
+        final String tag;
+        final Attributes attributes;
+        final int start;
+        // A block element closed in this element, a break goes before its next sibling.
+        boolean pendingBreak;
+
+        Frame(String tag, Attributes attributes, int start) {
+            this.tag = tag;
+            this.attributes = attributes;
+            this.start = start;
+        }
+    }
+}
@@ -17,13 +17,15 @@
  */
 package org.floens.chan.core.site.parser;
 
+import org.floens.chan.core.cache.ThreadSnapshot;
 import org.floens.chan.core.database.DatabaseSavedReplyManager;
+import org.floens.chan.core.manager.CompiledFilters;
 import org.floens.chan.core.manager.FilterEngine;
 import org.floens.chan.core.model.Post;
+import org.floens.chan.core.model.PostFilterFields;
 import org.floens.chan.core.model.orm.Filter;
+import org.floens.chan.utils.IntSet;
 
-import java.util.List;
-import java.util.Set;
 import java.util.concurrent.Callable;
 
 // Called concurrently to parse the post html and the filters on it
@@ -31,28 +33,33 @@ import java.util.concurrent.Callable;
 class PostParseCallable implements Callable<Post> {
     private static final String TAG = "PostParseCallable";
 
-    private FilterEngine filterEngine;
-    private List<Filter> filters;
+    private CompiledFilters filters;
     private DatabaseSavedReplyManager savedReplyManager;
     private Post.Builder post;
     private ChanReader reader;
-    private final Set<Integer> internalIds;
+    private final IntSet internalIds;
+    private final ThreadSnapshot.Recorder snapshotRecorder;
 
-    public PostParseCallable(FilterEngine filterEngine,
-                             List<Filter> filters,
+    public PostParseCallable(CompiledFilters filters,
                              DatabaseSavedReplyManager savedReplyManager,
                              Post.Builder post,
-                             ChanReader reader, Set<Integer> internalIds) {
-        this.filterEngine = filterEngine;
+                             ChanReader reader, IntSet internalIds,
+                             ThreadSnapshot.Recorder snapshotRecorder) {
         this.filters = filters;
         this.savedReplyManager = savedReplyManager;
         this.post = post;
         this.reader = reader;
         this.internalIds = internalIds;
+        this.snapshotRecorder = snapshotRecorder;
     }
 
     @Override
     public Post call() throws Exception {
+        // Record the post as it came from the site, parsing modifies the builder.
+        if (snapshotRecorder != null) {
+            snapshotRecorder.record(post);
+        }
+
         // Process the filters before finish, because parsing the html is dependent on filter matches
         processPostFilter(post);
 
@@ -72,22 +79,24 @@ class PostParseCallable implements Callable<Post> {
     }
 
     private void processPostFilter(Post.Builder post) {
-        int filterSize = filters.size();
-        for (int i = 0; i < filterSize; i++) {
-            Filter filter = filters.get(i);
-            if (filterEngine.matches(filter, post)) {
-                FilterEngine.FilterAction action = FilterEngine.FilterAction.forId(filter.action);
-                switch (action) {
-                    case COLOR:
-                        post.filter(filter.color, false, false);
-                        break;
-                    case HIDE:
-                        post.filter(0, true, false);
-                        break;
-                    case REMOVE:
-                        post.filter(0, false, true);
-                        break;
-                }
+        // Kept on the post, to match it again when the filters change.
+        PostFilterFields fields = new PostFilterFields(post);
+        post.filterFields(fields, filters.version);
+
+        // Only the last matching filter is applied, it would overwrite the others.
+        Filter filter = filters.match(fields);
+        if (filter != null) {
+            FilterEngine.FilterAction action = FilterEngine.FilterAction.forId(filter.action);
+            switch (action) {
+                case COLOR:
+                    post.filter(filter.color, false, false);
+                    break;
+                case HIDE:
+                    post.filter(0, true, false);
+                    break;
+                case REMOVE:
+                    post.filter(0, false, true);
+                    break;
             }
         }
     }
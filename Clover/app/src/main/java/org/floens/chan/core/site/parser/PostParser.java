@@ -23,6 +23,34 @@ import org.floens.chan.ui.theme.Theme;
 public interface PostParser {
     Post parse(Theme theme, Post.Builder builder, Callback callback);
 
+    /**
+     * Parse only the subject span of a parsed post again, for when its filter changed. Stubs
+     * show the subject differently.
+     *
+     * @param theme   the theme to use
+     * @param subject the parsed subject of the post
+     * @param stub    if the post is a stub now
+     * @return the subject span, or {@code null} for an empty subject
+     */
+    CharSequence parseSubjectSpan(Theme theme, String subject, boolean stub);
+
+    /**
+     * Only find the posts the comment quotes, added with {@link Post.Builder#addReplyTo(int)},
+     * without parsing the rest of the post. For the thread watcher, it doesn't show the posts.
+     *
+     * @param builder  the post as read from the site
+     * @param callback to tell quotes in the thread from other links
+     */
+    void parseQuotes(Post.Builder builder, Callback callback);
+
+    /**
+     * The name and comment of a post as read from the site as plain text, for notifications.
+     *
+     * @param builder the post as read from the site, its name and tripcode are set to plain text
+     * @return the comment as plain text
+     */
+    String parsePlainText(Post.Builder builder);
+
     interface Callback {
         boolean isSaved(int postNo);
 
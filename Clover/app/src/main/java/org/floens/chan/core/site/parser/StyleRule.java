@@ -18,6 +18,7 @@
 package org.floens.chan.core.site.parser;
 
 import android.graphics.Typeface;
+import android.text.Spannable;
 import android.text.SpannableString;
 import android.text.TextUtils;
 import android.text.style.StrikethroughSpan;
@@ -163,6 +164,21 @@ public class StyleRule {
         return this;
     }
 
+    /**
+     * Whether the rule appends a break after the element when it is not the last sibling.
+     */
+    public boolean breaksAfter() {
+        return blockElement && !nullify && justText == null;
+    }
+
+    /**
+     * Whether the rule only adds spans over the text of the element, and can be applied with
+     * {@link #applyInPlace(Theme, Post.Builder, Spannable, int, int)}.
+     */
+    public boolean canApplyInPlace() {
+        return !nullify && justText == null && actions.isEmpty();
+    }
+
     public boolean highPriority() {
         return classes != null && !classes.isEmpty();
     }
@@ -199,6 +215,42 @@ public class StyleRule {
             result = action.execute(theme, callback, post, text, element);
         }
 
+        List<Object> spansToApply = getSpans(theme, post, result);
+        if (!spansToApply.isEmpty()) {
+            result = applySpan(result, spansToApply);
+        }
+
+        // Apply break if not the last element.
+        if (blockElement && element.nextSibling() != null) {
+            result = TextUtils.concat(result, "\n");
+        }
+
+        if (linkify) {
+            CommentParserHelper.detectLinks(theme, post, result.toString(), new SpannableString(result));
+        }
+
+        return result;
+    }
+
+    /**
+     * Apply the rule on the range of a spannable that is being built, instead of returning a new
+     * CharSequence. Only valid when {@link #canApplyInPlace()}. The break of block elements is
+     * not added, see {@link #breaksAfter()}.
+     */
+    public void applyInPlace(Theme theme, Post.Builder post, Spannable text, int start, int end) {
+        List<Object> spansToApply = getSpans(theme, post, link != null || linkify ?
+                text.subSequence(start, end) : null);
+        for (Object span : spansToApply) {
+            text.setSpan(span, start, end, 0);
+        }
+
+        if (linkify) {
+            String linkifyText = text.subSequence(start, end).toString();
+            CommentParserHelper.detectLinks(theme, post, linkifyText, new SpannableString(linkifyText));
+        }
+    }
+
+    private List<Object> getSpans(Theme theme, Post.Builder post, CharSequence result) {
         List<Object> spansToApply = new ArrayList<>(2);
 
         if (color != null) {
@@ -231,20 +283,7 @@ public class StyleRule {
             spansToApply.add(pl);
         }
 
-        if (!spansToApply.isEmpty()) {
-            result = applySpan(result, spansToApply);
-        }
-
-        // Apply break if not the last element.
-        if (blockElement && element.nextSibling() != null) {
-            result = TextUtils.concat(result, "\n");
-        }
-
-        if (linkify) {
-            CommentParserHelper.detectLinks(theme, post, result.toString(), new SpannableString(result));
-        }
-
-        return result;
+        return spansToApply;
     }
 
     private int getColor(Theme theme, Color color) {
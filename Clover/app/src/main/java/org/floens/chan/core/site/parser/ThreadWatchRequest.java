@@ -0,0 +1,206 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.site.parser;
+
+import android.text.TextUtils;
+import android.util.JsonReader;
+
+import com.android.volley.Response;
+
+import org.floens.chan.core.database.DatabaseManager;
+import org.floens.chan.core.database.DatabaseSavedReplyManager;
+import org.floens.chan.core.model.Post;
+import org.floens.chan.core.model.WatchPost;
+import org.floens.chan.core.model.orm.Loadable;
+import org.floens.chan.core.net.JsonReaderRequest;
+import org.floens.chan.core.site.loader.ThreadWatchResponse;
+import org.floens.chan.utils.IntSet;
+import org.floens.chan.utils.Time;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+
+import static org.floens.chan.Chan.inject;
+
+/**
+ * Reads a thread for the watcher. Unlike {@link ChanReaderRequest} the posts are not parsed, only
+ * the quotes are taken from the comments to find the replies to your posts. The name and comment
+ * are kept as plain text for the last posts and the replies, for the notifications.
+ */
+public class ThreadWatchRequest extends JsonReaderRequest<ThreadWatchResponse> {
+    private static final boolean LOG_TIMING = false;
+
+    @Inject
+    DatabaseManager databaseManager;
+
+    private final Loadable loadable;
+    private final ChanReader reader;
+    private final int textPosts;
+    private final String lastModifiedHeader;
+    private final String etag;
+    private final DatabaseSavedReplyManager savedReplyManager;
+
+    private String responseLastModified;
+    private String responseEtag;
+
+    /**
+     * @param textPosts          the number of last posts to keep the text of
+     * @param lastModifiedHeader validator of the last response, or null
+     * @param etag               validator of the last response, or null
+     */
+    public ThreadWatchRequest(Loadable loadable, int textPosts,
+                              String lastModifiedHeader, String etag,
+                              Response.Listener<ThreadWatchResponse> listener,
+                              Response.ErrorListener errorListener) {
+        super(loadable.site.endpoints().thread(loadable.board, loadable).toString(), listener, errorListener);
+        inject(this);
+
+        this.loadable = loadable.copy();
+        reader = loadable.getSite().chanReader();
+        this.textPosts = textPosts;
+        this.lastModifiedHeader = lastModifiedHeader;
+        this.etag = etag;
+
+        savedReplyManager = databaseManager.getDatabaseSavedReplyManager();
+    }
+
+    @Override
+    public Priority getPriority() {
+        return Priority.LOW;
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        Map<String, String> headers = new HashMap<>();
+        if (lastModifiedHeader != null) {
+            headers.put("If-Modified-Since", lastModifiedHeader);
+        }
+        if (etag != null) {
+            headers.put("If-None-Match", etag);
+        }
+        return headers;
+    }
+
+    @Override
+    public void readHeaders(Map<String, String> headers) {
+        responseLastModified = headers.get("Last-Modified");
+        responseEtag = headers.get("ETag");
+    }
+
+    @Override
+    public ThreadWatchResponse readNotModified() {
+        if (lastModifiedHeader == null && etag == null) {
+            return null;
+        }
+        ThreadWatchResponse response = ThreadWatchResponse.notModified();
+        response.lastModifiedHeader = responseLastModified;
+        response.etag = responseEtag;
+        return response;
+    }
+
+    @Override
+    public ThreadWatchResponse readJson(JsonReader jsonReader) throws Exception {
+        long start = Time.startTiming();
+
+        ChanReaderProcessingQueue queue =
+                new ChanReaderProcessingQueue(Collections.<Post>emptyList(), loadable);
+        reader.loadThread(jsonReader, queue);
+
+        List<Post.Builder> builders = queue.getToParse();
+        if (builders.isEmpty()) {
+            return null;
+        }
+
+        IntSet internalIds = new IntSet(builders.size());
+        IntSet savedIds = new IntSet();
+        for (int i = 0; i < builders.size(); i++) {
+            Post.Builder builder = builders.get(i);
+            internalIds.add(builder.id);
+            if (savedReplyManager.isSaved(builder.board, builder.id)) {
+                savedIds.add(builder.id);
+            }
+        }
+
+        PostParser parser = reader.getParser();
+        PostParser.Callback callback = new PostParser.Callback() {
+            @Override
+            public boolean isSaved(int postNo) {
+                return savedIds.contains(postNo);
+            }
+
+            @Override
+            public boolean isInternal(int postNo) {
+                return internalIds.contains(postNo);
+            }
+        };
+
+        List<WatchPost> posts = new ArrayList<>(builders.size());
+        List<WatchPost> quotes = new ArrayList<>();
+        for (int i = 0; i < builders.size(); i++) {
+            Post.Builder builder = builders.get(i);
+
+            boolean quotesSaved = false;
+            if (!savedIds.isEmpty()) {
+                parser.parseQuotes(builder, callback);
+                IntSet repliesTo = builder.getRepliesToIds();
+                for (int j = 0; j < repliesTo.size() && !quotesSaved; j++) {
+                    quotesSaved = savedIds.contains(repliesTo.get(j));
+                }
+            }
+
+            WatchPost post;
+            if (quotesSaved || i >= builders.size() - textPosts) {
+                String comment = parser.parsePlainText(builder);
+                String name = builder.name;
+                if (!TextUtils.isEmpty(builder.tripcode)) {
+                    name = TextUtils.isEmpty(name) ? builder.tripcode : name + " " + builder.tripcode;
+                }
+                post = new WatchPost(builder.id, builder.unixTimestampSeconds,
+                        builder.images != null && !builder.images.isEmpty(), name, comment);
+            } else {
+                post = new WatchPost(builder.id, builder.unixTimestampSeconds,
+                        builder.images != null && !builder.images.isEmpty(), null, null);
+            }
+
+            posts.add(post);
+            if (quotesSaved) {
+                quotes.add(post);
+            }
+        }
+
+        Post.Builder first = builders.get(0);
+        String thumbnailUrl = first.images != null && !first.images.isEmpty() ?
+                first.images.get(0).getThumbnailUrl().toString() : null;
+        Post.Builder op = queue.getOp();
+        ThreadWatchResponse response = new ThreadWatchResponse(posts, quotes,
+                op != null && op.archived, op != null && op.closed, thumbnailUrl);
+        response.lastModifiedHeader = responseLastModified;
+        response.etag = responseEtag;
+
+        if (LOG_TIMING) {
+            Time.endTiming("Read " + posts.size() + " posts for the watcher", start);
+        }
+
+        return response;
+    }
+}
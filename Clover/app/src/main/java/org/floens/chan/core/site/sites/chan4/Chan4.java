@@ -265,6 +265,14 @@ public class Chan4 extends SiteBase {
                     .build();
         }
 
+        @Override
+        public HttpUrl threadIndex(Board board) {
+            return a.newBuilder()
+                    .addPathSegment(board.code)
+                    .addPathSegment("threads.json")
+                    .build();
+        }
+
         @Override
         public HttpUrl reply(Loadable loadable) {
             return sys.newBuilder()
@@ -356,6 +364,13 @@ public class Chan4 extends SiteBase {
                     error -> archiveListener.onArchiveError()));
         }
 
+        @Override
+        public void threadIndex(Board board, ThreadIndexListener threadIndexListener) {
+            requestQueue.add(new Chan4ThreadIndexRequest(Chan4.this, board,
+                    threadIndexListener::onThreadIndex,
+                    error -> threadIndexListener.onThreadIndexError()));
+        }
+
         @Override
         public void post(Reply reply, final PostListener postListener) {
             httpCallManager.makeHttpCall(new Chan4ReplyCall(Chan4.this, reply), new HttpCall.HttpCallback<CommonReplyHttpCall>() {
@@ -527,6 +542,9 @@ public class Chan4 extends SiteBase {
             case POST_REPORT:
                 // yes, with a custom url
                 return true;
+            case THREAD_INDEX:
+                // threads.json
+                return true;
             default:
                 return false;
         }
@@ -0,0 +1,99 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.site.sites.chan4;
+
+import android.util.JsonReader;
+
+import com.android.volley.Response.ErrorListener;
+import com.android.volley.Response.Listener;
+
+import org.floens.chan.core.model.ThreadIndex;
+import org.floens.chan.core.model.ThreadIndex.ThreadIndexItem;
+import org.floens.chan.core.model.orm.Board;
+import org.floens.chan.core.net.JsonReaderRequest;
+import org.floens.chan.core.site.Site;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads threads.json, the pages of a board with only the number, last modified time and reply
+ * count of each thread.
+ */
+public class Chan4ThreadIndexRequest extends JsonReaderRequest<ThreadIndex> {
+    public Chan4ThreadIndexRequest(Site site, Board board, Listener<ThreadIndex> listener,
+                                   ErrorListener errorListener) {
+        super(site.endpoints().threadIndex(board).toString(), listener, errorListener);
+    }
+
+    @Override
+    public ThreadIndex readJson(JsonReader reader) throws Exception {
+        Map<Integer, ThreadIndexItem> items = new HashMap<>();
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("threads")) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        ThreadIndexItem item = readThread(reader);
+                        if (item != null) {
+                            items.put(item.no, item);
+                        }
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+
+        return ThreadIndex.fromItems(items);
+    }
+
+    private ThreadIndexItem readThread(JsonReader reader) throws IOException {
+        int no = -1;
+        long lastModified = 0;
+        int replies = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "no":
+                    no = reader.nextInt();
+                    break;
+                case "last_modified":
+                    lastModified = reader.nextLong();
+                    break;
+                case "replies":
+                    replies = reader.nextInt();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        return no < 0 ? null : ThreadIndexItem.fromNoLastModifiedReplies(no, lastModified, replies);
+    }
+}
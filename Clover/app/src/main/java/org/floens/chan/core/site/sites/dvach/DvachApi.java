@@ -145,8 +145,6 @@ public class DvachApi extends CommonSite.CommonApi {
         }
         reader.endObject();
 
-        builder.images(files);
-
         if (builder.op) {
             // Update OP fields later on the main thread
             Post.Builder op = new Post.Builder();
@@ -160,13 +158,15 @@ public class DvachApi extends CommonSite.CommonApi {
             queue.setOp(op);
         }
 
-        Post cached = queue.getCachedPost(builder.id);
+        Post cached = queue.getReusablePost(builder);
         if (cached != null) {
             // Id is known, use the cached post object.
-            queue.addForReuse(cached);
+            queue.addForReuse(cached, builder);
             return;
         }
 
+        builder.images(files);
+
         queue.addForParse(builder);
     }
 
@@ -27,6 +27,7 @@ import android.text.TextUtils;
 import com.android.volley.RequestQueue;
 
 import org.floens.chan.BuildConfig;
+import org.floens.chan.core.cache.DownloadScheduler;
 import org.floens.chan.core.cache.FileCacheListener;
 import org.floens.chan.core.cache.FileCache;
 import org.floens.chan.core.net.UpdateApiRequest;
@@ -165,7 +166,7 @@ public class UpdateManager {
      * @param update update with apk details.
      */
     public void doUpdate(Update update) {
-        fileCache.downloadFile(update.apkUrl.toString(), new FileCacheListener() {
+        fileCache.downloadFile(update.apkUrl.toString(), DownloadScheduler.Priority.UPDATE, new FileCacheListener() {
             @Override
             public void onProgress(long downloaded, long total) {
                 callback.onUpdateDownloadProgress(downloaded, total);
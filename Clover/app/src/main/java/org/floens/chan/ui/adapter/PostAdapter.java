@@ -17,6 +17,7 @@
  */
 package org.floens.chan.ui.adapter;
 
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -29,6 +30,7 @@ import org.floens.chan.core.model.orm.Loadable;
 import org.floens.chan.core.settings.ChanSettings;
 import org.floens.chan.ui.cell.PostCellInterface;
 import org.floens.chan.ui.cell.ThreadStatusCell;
+import org.floens.chan.utils.IntSet;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -150,7 +152,7 @@ public class PostAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
             return TYPE_STATUS;
         } else {
             Post post = displayList.get(getPostPosition(position));
-            if (post.filterStub) {
+            if (post.isFilterStub()) {
                 return TYPE_POST_STUB;
             } else {
                 return TYPE_POST;
@@ -179,6 +181,55 @@ public class PostAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         bound = true;
         showError(null);
 
+        setPosts(thread, filter);
+
+        // Update all, recyclerview will figure out all the animations
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Show the posts of the thread again after the filter of some of them changed in place.
+     * Only the items that were removed, added back or changed are updated.
+     *
+     * @param changed the posts with a different filter result
+     */
+    public void updateThread(ChanThread thread, PostsFilter filter, List<Post> changed) {
+        final List<Post> oldDisplayList = new ArrayList<>(displayList);
+        final int oldLastSeenIndicatorPosition = lastSeenIndicatorPosition;
+        final int oldItemCount = getItemCount();
+        final IntSet changedNos = new IntSet(changed.size());
+        for (int i = 0; i < changed.size(); i++) {
+            changedNos.add(changed.get(i).no);
+        }
+
+        setPosts(thread, filter);
+
+        DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldItemCount;
+            }
+
+            @Override
+            public int getNewListSize() {
+                return getItemCount();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                return itemKey(oldDisplayList, oldLastSeenIndicatorPosition, oldItemPosition) ==
+                        itemKey(displayList, lastSeenIndicatorPosition, newItemPosition);
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                int key = itemKey(displayList, lastSeenIndicatorPosition, newItemPosition);
+                return key < 0 || !changedNos.contains(key);
+            }
+        }, false).dispatchUpdatesTo(this);
+    }
+
+    private void setPosts(ChanThread thread, PostsFilter filter) {
         sourceList.clear();
         sourceList.addAll(thread.posts);
 
@@ -196,9 +247,17 @@ public class PostAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
                 }
             }
         }
+    }
 
-        // Update all, recyclerview will figure out all the animations
-        notifyDataSetChanged();
+    // The post number of the item at the position, -1 for the status and -2 for the last seen
+    // indicator, like getItemId.
+    private static int itemKey(List<Post> posts, int lastSeenIndicatorPosition, int position) {
+        if (position == lastSeenIndicatorPosition) {
+            return -2;
+        }
+        int postPosition = lastSeenIndicatorPosition >= 0 && position > lastSeenIndicatorPosition ?
+                position - 1 : position;
+        return postPosition < posts.size() ? posts.get(postPosition).no : -1;
     }
 
     public List<Post> getDisplayList() {
@@ -279,6 +338,16 @@ public class PostAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         }
     }
 
+    /**
+     * The post at the adapter position, or {@code null} if that is not a post.
+     */
+    public Post getPost(int position) {
+        if (position < 0 || position >= getItemCount() || getItemViewType(position) != TYPE_POST) {
+            return null;
+        }
+        return displayList.get(getPostPosition(position));
+    }
+
     public int getPostPosition(int position) {
         int postPosition = position;
         if (lastSeenIndicatorPosition >= 0 && position > lastSeenIndicatorPosition) {
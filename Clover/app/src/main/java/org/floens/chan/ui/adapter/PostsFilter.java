@@ -101,7 +101,7 @@ public class PostsFilter {
             while (i.hasNext()) {
                 Post item = i.next();
                 add = false;
-                if (item.comment.toString().toLowerCase(Locale.ENGLISH).contains(lowerQuery)) {
+                if (item.getComment().toString().toLowerCase(Locale.ENGLISH).contains(lowerQuery)) {
                     add = true;
                 } else if (item.subject.toLowerCase(Locale.ENGLISH).contains(lowerQuery)) {
                     add = true;
@@ -125,7 +125,7 @@ public class PostsFilter {
         Iterator<Post> i = posts.iterator();
         while (i.hasNext()) {
             Post post = i.next();
-            if (post.filterRemove ||
+            if (post.isFilterRemove() ||
                     databaseManager.getDatabaseHideManager().isThreadHidden(post)) {
                 i.remove();
             }
@@ -52,6 +52,7 @@ public class CardPostCell extends CardView implements PostCellInterface, View.On
     private boolean bound;
     private Theme theme;
     private Post post;
+    private int filterVersion;
     private PostCellInterface.PostCellCallback callback;
     private boolean compact = false;
 
@@ -155,7 +156,7 @@ public class CardPostCell extends CardView implements PostCellInterface, View.On
                         boolean selectable, boolean highlighted, boolean selected, int markedNo,
                         boolean showDivider, ChanSettings.PostViewMode postViewMode,
                         boolean compact) {
-        if (this.post == post) {
+        if (this.post == post && this.filterVersion == post.getFilterVersion()) {
             return;
         }
 
@@ -170,6 +171,7 @@ public class CardPostCell extends CardView implements PostCellInterface, View.On
 
         this.theme = theme;
         this.post = post;
+        this.filterVersion = post.getFilterVersion();
         this.callback = callback;
 
         bindPost(theme, post);
@@ -205,26 +207,26 @@ public class CardPostCell extends CardView implements PostCellInterface, View.On
             thumbnailView.setPostImage(null, 0, 0);
         }
 
-        if (post.filterHighlightedColor != 0) {
+        if (post.getFilterHighlightedColor() != 0) {
             filterMatchColor.setVisibility(View.VISIBLE);
-            filterMatchColor.setBackgroundColor(post.filterHighlightedColor);
+            filterMatchColor.setBackgroundColor(post.getFilterHighlightedColor());
         } else {
             filterMatchColor.setVisibility(View.GONE);
         }
 
-        if (!TextUtils.isEmpty(post.subjectSpan)) {
+        if (!TextUtils.isEmpty(post.getSubjectSpan())) {
             title.setVisibility(View.VISIBLE);
-            title.setText(post.subjectSpan);
+            title.setText(post.getSubjectSpan());
         } else {
             title.setVisibility(View.GONE);
             title.setText(null);
         }
 
         CharSequence commentText;
-        if (post.comment.length() > COMMENT_MAX_LENGTH) {
-            commentText = post.comment.subSequence(0, COMMENT_MAX_LENGTH);
+        if (post.getComment().length() > COMMENT_MAX_LENGTH) {
+            commentText = post.getComment().subSequence(0, COMMENT_MAX_LENGTH);
         } else {
-            commentText = post.comment;
+            commentText = post.getComment();
         }
 
         comment.setText(commentText);
@@ -235,6 +237,8 @@ public class CardPostCell extends CardView implements PostCellInterface, View.On
 
     private void unbindPost(Post post) {
         bound = false;
+
+        thumbnailView.setPostImage(null, 0, 0);
     }
 
     private void setCompact(boolean compact) {
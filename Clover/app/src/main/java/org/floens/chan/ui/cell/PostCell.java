@@ -114,6 +114,7 @@ public class PostCell extends LinearLayout implements PostCellInterface {
     private boolean bound = false;
     private Theme theme;
     private Post post;
+    private int filterVersion;
     private PostCellCallback callback;
     private boolean selectable;
     private boolean highlighted;
@@ -270,6 +271,7 @@ public class PostCell extends LinearLayout implements PostCellInterface {
                         ChanSettings.PostViewMode postViewMode,
                         boolean compact) {
         if (this.post == post &&
+                this.filterVersion == post.getFilterVersion() &&
                 this.selectable == selectable &&
                 this.highlighted == highlighted &&
                 this.selected == selected &&
@@ -289,6 +291,8 @@ public class PostCell extends LinearLayout implements PostCellInterface {
 
         this.theme = theme;
         this.post = post;
+        // The filter of the post can change in place, it is bound again then.
+        this.filterVersion = post.getFilterVersion();
         this.callback = callback;
         this.selectable = selectable;
         this.highlighted = highlighted;
@@ -345,9 +349,9 @@ public class PostCell extends LinearLayout implements PostCellInterface {
             setBackgroundResource(R.drawable.item_background);
         }
 
-        if (post.filterHighlightedColor != 0) {
+        if (post.getFilterHighlightedColor() != 0) {
             filterMatchColor.setVisibility(View.VISIBLE);
-            filterMatchColor.setBackgroundColor(post.filterHighlightedColor);
+            filterMatchColor.setBackgroundColor(post.getFilterHighlightedColor());
         } else {
             filterMatchColor.setVisibility(View.GONE);
         }
@@ -356,8 +360,8 @@ public class PostCell extends LinearLayout implements PostCellInterface {
 
         List<CharSequence> titleParts = new ArrayList<>(5);
 
-        if (post.subjectSpan != null) {
-            titleParts.add(post.subjectSpan);
+        if (post.getSubjectSpan() != null) {
+            titleParts.add(post.getSubjectSpan());
             titleParts.add("\n");
         }
 
@@ -432,10 +436,10 @@ public class PostCell extends LinearLayout implements PostCellInterface {
         icons.apply();
 
         CharSequence commentText;
-        if (!threadMode && post.comment.length() > COMMENT_MAX_LENGTH_BOARD) {
+        if (!threadMode && post.getComment().length() > COMMENT_MAX_LENGTH_BOARD) {
             commentText = truncatePostComment(post, COMMENT_MAX_LENGTH_BOARD);
         } else {
-            commentText = post.comment;
+            commentText = post.getComment();
         }
 
         comment.setVisibility(isEmpty(commentText) && post.images == null ? GONE : VISIBLE);
@@ -539,6 +543,7 @@ public class PostCell extends LinearLayout implements PostCellInterface {
 
     private void buildThumbnails() {
         for (PostImageThumbnailView thumbnailView : thumbnailViews) {
+            thumbnailView.setPostImage(null, 0, 0);
             relativeLayoutContainer.removeView(thumbnailView);
         }
         thumbnailViews.clear();
@@ -588,13 +593,17 @@ public class PostCell extends LinearLayout implements PostCellInterface {
         bound = false;
 
         icons.cancelRequests();
+        // Recycled, stop loading the thumbnails. They are built again when it is bound.
+        for (PostImageThumbnailView thumbnailView : thumbnailViews) {
+            thumbnailView.setPostImage(null, 0, 0);
+        }
 
         setPostLinkableListener(post, false);
     }
 
     private void setPostLinkableListener(Post post, boolean bind) {
-        if (post.comment instanceof Spanned) {
-            Spanned commentSpanned = (Spanned) post.comment;
+        if (post.getComment() instanceof Spanned) {
+            Spanned commentSpanned = (Spanned) post.getComment();
             PostLinkable[] linkables = commentSpanned.getSpans(0, commentSpanned.length(), PostLinkable.class);
             for (PostLinkable linkable : linkables) {
                 linkable.setMarkedNo(bind ? markedNo : -1);
@@ -611,10 +620,10 @@ public class PostCell extends LinearLayout implements PostCellInterface {
 
     private CharSequence truncatePostComment(Post post, int maxCommentLength) {
         BreakIterator bi = BreakIterator.getWordInstance();
-        bi.setText(post.comment.toString());
+        bi.setText(post.getComment().toString());
         int precedingBoundary = bi.following(maxCommentLength);
         // Fallback to old method in case the comment does not have any spaces/individual words
-        CharSequence commentText = precedingBoundary > 0 ? post.comment.subSequence(0, precedingBoundary) : post.comment.subSequence(0, maxCommentLength);
+        CharSequence commentText = precedingBoundary > 0 ? post.getComment().subSequence(0, precedingBoundary) : post.getComment().subSequence(0, maxCommentLength);
         return TextUtils.concat(commentText, "\u2026"); // append ellipsis
     }
 
@@ -49,6 +49,7 @@ public class PostStubCell extends RelativeLayout implements PostCellInterface, V
     private boolean bound;
     private Theme theme;
     private Post post;
+    private int filterVersion;
     private ChanSettings.PostViewMode postViewMode;
     private boolean showDivider;
     private PostCellInterface.PostCellCallback callback;
@@ -149,7 +150,7 @@ public class PostStubCell extends RelativeLayout implements PostCellInterface, V
                         boolean selectable, boolean highlighted, boolean selected, int markedNo,
                         boolean showDivider, ChanSettings.PostViewMode postViewMode,
                         boolean compact) {
-        if (this.post == post) {
+        if (this.post == post && this.filterVersion == post.getFilterVersion()) {
             return;
         }
 
@@ -164,6 +165,7 @@ public class PostStubCell extends RelativeLayout implements PostCellInterface, V
 
         this.theme = theme;
         this.post = post;
+        this.filterVersion = post.getFilterVersion();
         this.callback = callback;
         this.postViewMode = postViewMode;
         this.showDivider = showDivider;
@@ -188,14 +190,14 @@ public class PostStubCell extends RelativeLayout implements PostCellInterface, V
     private void bindPost(Theme theme, Post post) {
         bound = true;
 
-        if (!TextUtils.isEmpty(post.subjectSpan)) {
-            title.setText(post.subjectSpan);
+        if (!TextUtils.isEmpty(post.getSubjectSpan())) {
+            title.setText(post.getSubjectSpan());
         } else {
             CharSequence titleText;
-            if (post.comment.length() > TITLE_MAX_LENGTH) {
-                titleText = post.comment.subSequence(0, TITLE_MAX_LENGTH);
+            if (post.getComment().length() > TITLE_MAX_LENGTH) {
+                titleText = post.getComment().subSequence(0, TITLE_MAX_LENGTH);
             } else {
-                titleText = post.comment;
+                titleText = post.getComment();
             }
             title.setText(titleText);
         }
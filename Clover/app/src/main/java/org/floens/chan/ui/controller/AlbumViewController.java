@@ -187,6 +187,11 @@ public class AlbumViewController extends Controller implements
             holder.cell.setPostImage(postImage);
         }
 
+        @Override
+        public void onViewRecycled(AlbumItemCellHolder holder) {
+            holder.thumbnailView.setPostImage(null, 0, 0);
+        }
+
         @Override
         public int getItemCount() {
             return postImages.size();
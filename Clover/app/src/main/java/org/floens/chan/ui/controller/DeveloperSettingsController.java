@@ -26,7 +26,13 @@ import android.widget.TextView;
 
 import org.floens.chan.R;
 import org.floens.chan.controller.Controller;
+import org.floens.chan.core.cache.FileCache;
+import org.floens.chan.core.cache.ThreadSnapshotStore;
+import org.floens.chan.core.cache.ThumbnailCache;
 import org.floens.chan.core.database.DatabaseManager;
+import org.floens.chan.core.pool.ParseScheduler;
+
+import java.util.concurrent.ExecutionException;
 
 import javax.inject.Inject;
 
@@ -40,6 +46,18 @@ public class DeveloperSettingsController extends Controller {
     @Inject
     DatabaseManager databaseManager;
 
+    @Inject
+    ParseScheduler parseScheduler;
+
+    @Inject
+    FileCache fileCache;
+
+    @Inject
+    ThumbnailCache thumbnailCache;
+
+    @Inject
+    ThreadSnapshotStore snapshotStore;
+
     public DeveloperSettingsController(Context context) {
         super(context);
     }
@@ -89,12 +107,28 @@ public class DeveloperSettingsController extends Controller {
             @Override
             public void onClick(View v) {
                 databaseManager.reset();
+                // The new database reuses the loadable ids, the snapshots would be of other threads.
+                try {
+                    snapshotStore.clear().get();
+                } catch (InterruptedException | ExecutionException ignored) {
+                }
                 System.exit(0);
             }
         });
         resetDbButton.setText("Delete database");
         wrapper.addView(resetDbButton);
 
+        Button clearCacheButton = new Button(context);
+        clearCacheButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                fileCache.clearCache();
+                snapshotStore.clear();
+            }
+        });
+        clearCacheButton.setText("Clear cache");
+        wrapper.addView(clearCacheButton);
+
         ScrollView scrollView = new ScrollView(context);
         scrollView.addView(wrapper);
         view = scrollView;
@@ -105,6 +139,14 @@ public class DeveloperSettingsController extends Controller {
         String dbSummary = "";
         dbSummary += "Database summary:\n";
         dbSummary += databaseManager.getSummary();
+        dbSummary += "\nDatabase threads:\n";
+        dbSummary += databaseManager.getTaskSummary();
+        dbSummary += "\nParse scheduler:\n";
+        dbSummary += parseScheduler.getSummary();
+        dbSummary += "\nDownload scheduler:\n";
+        dbSummary += fileCache.getSchedulerSummary();
+        dbSummary += "\nThumbnails:\n";
+        dbSummary += thumbnailCache.getSummary();
         summaryText.setText(dbSummary);
     }
 }
@@ -36,7 +36,7 @@ import org.floens.chan.core.database.DatabaseManager;
 import org.floens.chan.core.manager.FilterEngine;
 import org.floens.chan.core.manager.FilterType;
 import org.floens.chan.core.model.orm.Filter;
-import org.floens.chan.ui.helper.RefreshUIMessage;
+import org.floens.chan.core.pool.ChanLoaderFactory;
 import org.floens.chan.ui.layout.FilterLayout;
 import org.floens.chan.ui.toolbar.ToolbarMenuItem;
 
@@ -46,8 +46,6 @@ import java.util.Locale;
 
 import javax.inject.Inject;
 
-import de.greenrobot.event.EventBus;
-
 import static org.floens.chan.Chan.inject;
 import static org.floens.chan.ui.theme.ThemeHelper.theme;
 import static org.floens.chan.utils.AndroidUtils.getAttrColor;
@@ -62,6 +60,9 @@ public class FiltersController extends Controller implements
     @Inject
     FilterEngine filterEngine;
 
+    @Inject
+    ChanLoaderFactory chanLoaderFactory;
+
     private RecyclerView recyclerView;
     private FloatingActionButton add;
     private FilterAdapter adapter;
@@ -146,7 +147,7 @@ public class FiltersController extends Controller implements
                     @Override
                     public void onClick(DialogInterface dialog, int which) {
                         filterEngine.createOrUpdateFilter(filterLayout.getFilter());
-                        EventBus.getDefault().post(new RefreshUIMessage("filters"));
+                        chanLoaderFactory.refilter();
                         adapter.load();
                     }
                 })
@@ -164,7 +165,7 @@ public class FiltersController extends Controller implements
 
     private void deleteFilter(Filter filter) {
         filterEngine.deleteFilter(filter);
-        EventBus.getDefault().post(new RefreshUIMessage("filters"));
+        chanLoaderFactory.refilter();
         adapter.load();
         //TODO: undo
     }
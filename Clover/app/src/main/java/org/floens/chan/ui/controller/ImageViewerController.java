@@ -41,12 +41,11 @@ import android.view.animation.DecelerateInterpolator;
 import android.widget.CheckBox;
 import android.widget.Toast;
 
-import com.android.volley.VolleyError;
-import com.android.volley.toolbox.ImageLoader;
 import com.davemorrissey.labs.subscaleview.ImageViewState;
 
 import org.floens.chan.R;
 import org.floens.chan.controller.Controller;
+import org.floens.chan.core.cache.ThumbnailCache;
 import org.floens.chan.core.model.PostImage;
 import org.floens.chan.core.presenter.ImageViewerPresenter;
 import org.floens.chan.core.saver.ImageSaveTask;
@@ -90,11 +89,14 @@ public class ImageViewerController extends Controller implements ImageViewerPres
     private static final int VOLUME_ID = 1;
 
     @Inject
-    ImageLoader imageLoader;
+    ThumbnailCache thumbnailCache;
 
     private int statusBarColorPrevious;
     private AnimatorSet startAnimation;
     private AnimatorSet endAnimation;
+    // The thumbnails of the transitions, the preview image may draw them until the controller is
+    // destroyed.
+    private final List<ThumbnailCache.Ticket> previewTickets = new ArrayList<>();
 
     private ImageViewerCallback imageViewerCallback;
     private GoPostCallback goPostCallback;
@@ -213,6 +215,11 @@ public class ImageViewerController extends Controller implements ImageViewerPres
         super.onDestroy();
 
         getWindow().clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+
+        for (int i = 0; i < previewTickets.size(); i++) {
+            previewTickets.get(i).cancel();
+        }
+        previewTickets.clear();
     }
 
     private void saveShare(boolean share, PostImage postImage) {
@@ -399,21 +406,19 @@ public class ImageViewerController extends Controller implements ImageViewerPres
             }
         });
 
-        imageLoader.get(postImage.getThumbnailUrl().toString(), new ImageLoader.ImageListener() {
+        loadPreview(postImage, new ThumbnailCache.Listener() {
             @Override
-            public void onErrorResponse(VolleyError error) {
-                Log.e(TAG, "onErrorResponse for preview in transition in ImageViewerController, cannot show correct transition bitmap");
+            public void onThumbnail(Bitmap bitmap, boolean immediate) {
+                previewImage.setBitmap(bitmap);
                 startAnimation.start();
             }
 
             @Override
-            public void onResponse(ImageLoader.ImageContainer response, boolean isImmediate) {
-                if (response.getBitmap() != null) {
-                    previewImage.setBitmap(response.getBitmap());
-                    startAnimation.start();
-                }
+            public void onThumbnailError(boolean serverError) {
+                Log.e(TAG, "onThumbnailError for preview in transition in ImageViewerController, cannot show correct transition bitmap");
+                startAnimation.start();
             }
-        }, previewImage.getWidth(), previewImage.getHeight());
+        });
     }
 
     public void startPreviewOutTransition(final PostImage postImage) {
@@ -421,20 +426,23 @@ public class ImageViewerController extends Controller implements ImageViewerPres
             return;
         }
 
-        imageLoader.get(postImage.getThumbnailUrl().toString(), new ImageLoader.ImageListener() {
+        loadPreview(postImage, new ThumbnailCache.Listener() {
             @Override
-            public void onErrorResponse(VolleyError error) {
-                Log.e(TAG, "onErrorResponse for preview out transition in ImageViewerController, cannot show correct transition bitmap");
-                doPreviewOutAnimation(postImage, null);
+            public void onThumbnail(Bitmap bitmap, boolean immediate) {
+                doPreviewOutAnimation(postImage, bitmap);
             }
 
             @Override
-            public void onResponse(ImageLoader.ImageContainer response, boolean isImmediate) {
-                if (response.getBitmap() != null) {
-                    doPreviewOutAnimation(postImage, response.getBitmap());
-                }
+            public void onThumbnailError(boolean serverError) {
+                Log.e(TAG, "onThumbnailError for preview out transition in ImageViewerController, cannot show correct transition bitmap");
+                doPreviewOutAnimation(postImage, null);
             }
-        }, previewImage.getWidth(), previewImage.getHeight());
+        });
+    }
+
+    private void loadPreview(PostImage postImage, ThumbnailCache.Listener listener) {
+        previewTickets.add(thumbnailCache.load(postImage.getThumbnailUrl().toString(),
+                previewImage.getWidth(), previewImage.getHeight(), listener));
     }
 
     private void doPreviewOutAnimation(PostImage postImage, Bitmap bitmap) {
@@ -136,6 +136,11 @@ public class MediaSettingsController extends SettingsController {
                 R.string.setting_video_auto_loop,
                 R.string.setting_video_auto_loop_description));
 
+            loading.add(new BooleanSettingView(this,
+                    ChanSettings.prefetchMedia,
+                    R.string.setting_prefetch_media,
+                    R.string.setting_prefetch_media_description));
+
             groups.add(loading);
         }
     }
@@ -71,8 +71,8 @@ public class PostHelper {
         if (post != null) {
             if (!TextUtils.isEmpty(post.subject)) {
                 return post.subject;
-            } else if (!TextUtils.isEmpty(post.comment)) {
-                return "/" + post.boardId + "/ \u2013 " + post.comment.subSequence(0, Math.min(post.comment.length(), 200)).toString();
+            } else if (!TextUtils.isEmpty(post.getComment())) {
+                return "/" + post.boardId + "/ \u2013 " + post.getComment().subSequence(0, Math.min(post.getComment().length(), 200)).toString();
             } else {
                 return "/" + post.boardId + "/" + post.no;
             }
@@ -0,0 +1,337 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.ui.helper;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import androidx.recyclerview.widget.GridLayoutManager;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import android.view.View;
+
+import org.floens.chan.R;
+import org.floens.chan.core.cache.DownloadScheduler;
+import org.floens.chan.core.cache.FileCache;
+import org.floens.chan.core.cache.FileCacheDownloader;
+import org.floens.chan.core.cache.FileCacheListener;
+import org.floens.chan.core.cache.ThumbnailCache;
+import org.floens.chan.core.model.Post;
+import org.floens.chan.core.model.PostImage;
+import org.floens.chan.core.settings.ChanSettings;
+import org.floens.chan.ui.adapter.PostAdapter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.floens.chan.Chan.injector;
+import static org.floens.chan.utils.AndroidUtils.dp;
+
+/**
+ * Loads the thumbnails of the posts that are about to scroll into view, and with
+ * {@link ChanSettings#prefetchMedia} the images of them too.
+ * <p>
+ * The faster the list scrolls, the more rows ahead are loaded. What scrolled out of the rows
+ * ahead before it was loaded is cancelled, so a fling doesn't leave a queue of loads for posts
+ * that were passed. Thumbnails that are loaded stay in the memory cache for when the cell binds.
+ */
+public class PostPrefetcher extends RecyclerView.OnScrollListener {
+    private static final int MIN_ROWS = 2;
+    private static final int MAX_ROWS = 12;
+    // How far ahead in time the rows are loaded, at the current velocity.
+    private static final long LOOKAHEAD_MS = 500;
+    // Scroll events further apart than this start a new velocity.
+    private static final long VELOCITY_RESET_MS = 100;
+    private static final float VELOCITY_SMOOTHING = 0.5f;
+
+    // What may be loading at the same time, the thumbnails as decoded bitmaps.
+    private static final long MAX_THUMBNAIL_BYTES = 4 * 1024 * 1024;
+    private static final long MAX_MEDIA_BYTES = 16 * 1024 * 1024;
+
+    private final PostAdapter adapter;
+    private final ThumbnailCache thumbnailCache;
+    private final FileCache fileCache;
+    private final int listThumbnailSize;
+
+    private final Map<String, ThumbnailPrefetch> thumbnails = new HashMap<>();
+    private final Map<String, MediaPrefetch> media = new HashMap<>();
+    private long thumbnailBytes;
+    private long mediaBytes;
+
+    // px per ms, positive when scrolling down.
+    private float velocity;
+    private long lastScrollTime;
+    private int windowStart = -1;
+    private int windowEnd = -1;
+
+    public PostPrefetcher(RecyclerView recyclerView, PostAdapter adapter) {
+        this.adapter = adapter;
+        thumbnailCache = injector().instance(ThumbnailCache.class);
+        fileCache = injector().instance(FileCache.class);
+        listThumbnailSize = recyclerView.getResources().getDimensionPixelSize(R.dimen.cell_post_thumbnail_size);
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        if (dy == 0) {
+            return;
+        }
+
+        long now = SystemClock.uptimeMillis();
+        long elapsed = now - lastScrollTime;
+        lastScrollTime = now;
+        if (elapsed <= 0) {
+            return;
+        }
+        float instant = dy / (float) elapsed;
+        if (elapsed > VELOCITY_RESET_MS || Math.signum(instant) != Math.signum(velocity)) {
+            velocity = instant;
+        } else {
+            velocity = velocity * VELOCITY_SMOOTHING + instant * (1f - VELOCITY_SMOOTHING);
+        }
+
+        RecyclerView.LayoutManager layoutManager = recyclerView.getLayoutManager();
+        if (!(layoutManager instanceof LinearLayoutManager) || layoutManager.getChildCount() == 0) {
+            return;
+        }
+        prefetch(recyclerView, (LinearLayoutManager) layoutManager);
+    }
+
+    /**
+     * Cancel everything that is loading, when the list is gone or shows the posts differently.
+     */
+    public void cancelAll() {
+        for (ThumbnailPrefetch prefetch : new ArrayList<>(thumbnails.values())) {
+            prefetch.cancel();
+        }
+        for (MediaPrefetch prefetch : new ArrayList<>(media.values())) {
+            prefetch.cancel();
+        }
+        velocity = 0;
+        windowStart = windowEnd = -1;
+    }
+
+    private void prefetch(RecyclerView recyclerView, LinearLayoutManager layoutManager) {
+        int spanCount = layoutManager instanceof GridLayoutManager ?
+                ((GridLayoutManager) layoutManager).getSpanCount() : 1;
+
+        View firstChild = layoutManager.getChildAt(0);
+        int rowHeight = Math.max(dp(48), firstChild.getHeight());
+        int rows = MIN_ROWS + Math.round(Math.abs(velocity) * LOOKAHEAD_MS / rowHeight);
+        int count = Math.min(MAX_ROWS, rows) * spanCount;
+
+        int start, end;
+        if (velocity > 0) {
+            start = layoutManager.findLastVisibleItemPosition() + 1;
+            end = Math.min(adapter.getItemCount(), start + count);
+        } else {
+            end = layoutManager.findFirstVisibleItemPosition();
+            start = Math.max(0, end - count);
+        }
+        if (start < 0 || start >= end || (start == windowStart && end == windowEnd)) {
+            return;
+        }
+        windowStart = start;
+        windowEnd = end;
+
+        // Nearest to the screen first.
+        List<Post> posts = new ArrayList<>(end - start);
+        for (int i = 0; i < end - start; i++) {
+            Post post = adapter.getPost(velocity > 0 ? start + i : end - 1 - i);
+            if (post != null && !post.images.isEmpty()) {
+                posts.add(post);
+            }
+        }
+
+        prefetchThumbnails(posts, recyclerView, spanCount > 1);
+        prefetchMedia(posts);
+    }
+
+    private void prefetchThumbnails(List<Post> posts, RecyclerView recyclerView, boolean card) {
+        int width, height;
+        if (card) {
+            // The card thumbnails scale with the width of the list, take the size of a bound one.
+            width = height = 0;
+            for (int i = 0; i < recyclerView.getChildCount() && width == 0; i++) {
+                View thumbnail = recyclerView.getChildAt(i).findViewById(R.id.thumbnail);
+                if (thumbnail != null) {
+                    width = thumbnail.getWidth();
+                    height = thumbnail.getHeight();
+                }
+            }
+        } else {
+            width = height = listThumbnailSize;
+        }
+
+        Set<String> wanted = new HashSet<>();
+        List<PostImage> images = new ArrayList<>();
+        if (!ChanSettings.textOnly.get() && width > 0 && height > 0) {
+            for (Post post : posts) {
+                if (card) {
+                    images.add(post.image());
+                } else {
+                    images.addAll(post.images);
+                }
+            }
+        }
+        for (PostImage image : images) {
+            wanted.add(image.getThumbnailUrl().toString());
+        }
+
+        for (ThumbnailPrefetch prefetch : new ArrayList<>(thumbnails.values())) {
+            if (!wanted.contains(prefetch.url)) {
+                prefetch.cancel();
+            }
+        }
+
+        long bytes = (long) width * height * 4;
+        for (PostImage image : images) {
+            String url = image.getThumbnailUrl().toString();
+            if (thumbnailBytes + bytes > MAX_THUMBNAIL_BYTES) {
+                break;
+            }
+            if (!thumbnails.containsKey(url)) {
+                new ThumbnailPrefetch(url, bytes).start(width, height);
+            }
+        }
+    }
+
+    private void prefetchMedia(List<Post> posts) {
+        List<PostImage> images = new ArrayList<>();
+        if (ChanSettings.prefetchMedia.get() && ChanSettings.imageAutoLoadNetwork.get().shouldLoad()) {
+            for (Post post : posts) {
+                for (PostImage image : post.images) {
+                    if (image.type == PostImage.Type.STATIC || image.type == PostImage.Type.GIF) {
+                        images.add(image);
+                    }
+                }
+            }
+        }
+
+        Set<String> wanted = new HashSet<>();
+        for (PostImage image : images) {
+            wanted.add(image.imageUrl.toString());
+        }
+        for (MediaPrefetch prefetch : new ArrayList<>(media.values())) {
+            if (!wanted.contains(prefetch.url)) {
+                prefetch.cancel();
+            }
+        }
+
+        for (PostImage image : images) {
+            String url = image.imageUrl.toString();
+            if (media.containsKey(url) || fileCache.exists(url)) {
+                continue;
+            }
+            if (mediaBytes + image.size > MAX_MEDIA_BYTES) {
+                break;
+            }
+            new MediaPrefetch(url, image.size).start();
+        }
+    }
+
+    private class ThumbnailPrefetch implements ThumbnailCache.Listener {
+        private final String url;
+        private final long bytes;
+        private ThumbnailCache.Ticket ticket;
+        private boolean done;
+
+        private ThumbnailPrefetch(String url, long bytes) {
+            this.url = url;
+            this.bytes = bytes;
+        }
+
+        private void start(int width, int height) {
+            ticket = thumbnailCache.load(url, width, height, this);
+            if (done) {
+                // Was in memory already.
+                ticket.cancel();
+            } else {
+                thumbnails.put(url, this);
+                thumbnailBytes += bytes;
+            }
+        }
+
+        // The loaded bitmap stays in the memory cache, the ticket is only needed while loading.
+        @Override
+        public void onThumbnail(Bitmap bitmap, boolean immediate) {
+            finish();
+        }
+
+        @Override
+        public void onThumbnailError(boolean serverError) {
+            finish();
+        }
+
+        private void finish() {
+            done = true;
+            if (ticket != null) {
+                cancel();
+            }
+        }
+
+        private void cancel() {
+            ticket.cancel();
+            if (thumbnails.remove(url) == this) {
+                thumbnailBytes -= bytes;
+            }
+        }
+    }
+
+    private class MediaPrefetch extends FileCacheListener {
+        private final String url;
+        private final long bytes;
+        private FileCacheDownloader downloader;
+
+        private MediaPrefetch(String url, long bytes) {
+            this.url = url;
+            this.bytes = bytes;
+        }
+
+        private void start() {
+            downloader = fileCache.downloadFile(url, DownloadScheduler.Priority.PRELOAD, this);
+            if (downloader != null) {
+                media.put(url, this);
+                mediaBytes += bytes;
+            }
+        }
+
+        @Override
+        public void onEnd() {
+            remove();
+        }
+
+        private void cancel() {
+            // The download may be shared, with the viewer when it was opened in the meantime. It
+            // is only cancelled when this was the last listener, then it keeps what it got and
+            // continues from there next time.
+            downloader.removeListener(this);
+            remove();
+        }
+
+        private void remove() {
+            if (media.get(url) == this) {
+                media.remove(url);
+                mediaBytes -= bytes;
+            }
+        }
+    }
+}
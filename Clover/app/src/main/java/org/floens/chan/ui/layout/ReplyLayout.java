@@ -39,6 +39,7 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import org.floens.chan.R;
+import org.floens.chan.core.cache.BitmapPool;
 import org.floens.chan.core.model.ChanThread;
 import org.floens.chan.core.model.orm.Loadable;
 import org.floens.chan.core.presenter.ReplyPresenter;
@@ -80,6 +81,9 @@ public class ReplyLayout extends LoadView implements
     @Inject
     ReplyPresenter presenter;
 
+    @Inject
+    BitmapPool bitmapPool;
+
     private ReplyLayoutCallback callback;
     private boolean newCaptcha;
 
@@ -103,6 +107,8 @@ public class ReplyLayout extends LoadView implements
     private TextView commentCounter;
     private CheckBox spoiler;
     private ImageView preview;
+    private ImageDecoder.DecodeTask previewDecode;
+    private Bitmap previewBitmap;
     private TextView previewMessage;
     private ImageView attach;
     private ImageView more;
@@ -498,8 +504,14 @@ public class ReplyLayout extends LoadView implements
             theme().imageDrawable.apply(attach);
         }
 
+        if (previewDecode != null) {
+            previewDecode.cancel();
+            previewDecode = null;
+        }
+
         if (show) {
-            ImageDecoder.decodeFileOnBackgroundThread(previewFile, dp(400), dp(300), this);
+            previewDecode = ImageDecoder.decodeFileOnBackgroundThread(previewFile, dp(400), dp(300),
+                    bitmapPool, this);
         } else {
             spoiler.setVisibility(View.GONE);
             preview.setVisibility(View.GONE);
@@ -521,9 +533,14 @@ public class ReplyLayout extends LoadView implements
 
     @Override
     public void onImageBitmap(File file, Bitmap bitmap) {
+        previewDecode = null;
         if (bitmap != null) {
             preview.setImageBitmap(bitmap);
             preview.setVisibility(View.VISIBLE);
+
+            // The previous preview is not shown anymore.
+            bitmapPool.put(previewBitmap);
+            previewBitmap = bitmap;
         } else {
             openPreviewMessage(true, getString(R.string.reply_no_preview));
         }
@@ -232,6 +232,13 @@ public class ThreadLayout extends CoordinatorLayout implements
         callback.onShowPosts();
     }
 
+    @Override
+    public void showFilteredPosts(ChanThread thread, PostsFilter filter, List<Post> changed) {
+        if (visible == Visible.THREAD) {
+            threadListLayout.showFilteredPosts(thread, filter, changed);
+        }
+    }
+
     @Override
     public void postClicked(Post post) {
         if (postPopupHelper.isOpen()) {
@@ -270,7 +277,7 @@ public class ThreadLayout extends CoordinatorLayout implements
     }
 
     public void showPostLinkables(final Post post) {
-        final List<PostLinkable> linkables = post.linkables;
+        final List<PostLinkable> linkables = post.getLinkables();
         String[] keys = new String[linkables.size()];
         for (int i = 0; i < linkables.size(); i++) {
             keys[i] = linkables.get(i).key.toString();
@@ -288,7 +295,7 @@ public class ThreadLayout extends CoordinatorLayout implements
 
     public void clipboardPost(Post post) {
         ClipboardManager clipboard = (ClipboardManager) AndroidUtils.getAppContext().getSystemService(Context.CLIPBOARD_SERVICE);
-        ClipData clip = ClipData.newPlainText("Post text", post.comment.toString());
+        ClipData clip = ClipData.newPlainText("Post text", post.getComment().toString());
         clipboard.setPrimaryClip(clip);
         Toast.makeText(getContext(), R.string.post_text_copied, Toast.LENGTH_SHORT).show();
     }
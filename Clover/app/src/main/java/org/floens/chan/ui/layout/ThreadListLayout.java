@@ -50,6 +50,7 @@ import org.floens.chan.ui.adapter.PostsFilter;
 import org.floens.chan.ui.cell.PostCell;
 import org.floens.chan.ui.cell.PostCellInterface;
 import org.floens.chan.ui.cell.ThreadStatusCell;
+import org.floens.chan.ui.helper.PostPrefetcher;
 import org.floens.chan.ui.toolbar.Toolbar;
 import org.floens.chan.ui.view.FastScroller;
 import org.floens.chan.ui.view.FastScrollerHelper;
@@ -77,6 +78,7 @@ public class ThreadListLayout extends FrameLayout implements ReplyLayout.ReplyLa
     private RecyclerView.LayoutManager layoutManager;
     private FastScroller fastScroller;
     private PostAdapter postAdapter;
+    private PostPrefetcher postPrefetcher;
     private ChanThread showingThread;
     private ThreadListLayoutPresenterCallback callback;
     private ThreadListLayoutCallback threadListLayoutCallback;
@@ -125,6 +127,8 @@ public class ThreadListLayout extends FrameLayout implements ReplyLayout.ReplyLa
         postAdapter = new PostAdapter(recyclerView, postAdapterCallback, postCellCallback, statusCellCallback);
         recyclerView.setAdapter(postAdapter);
         recyclerView.addOnScrollListener(scrollListener);
+        postPrefetcher = new PostPrefetcher(recyclerView, postAdapter);
+        recyclerView.addOnScrollListener(postPrefetcher);
 
         setFastScroll(false);
 
@@ -180,6 +184,7 @@ public class ThreadListLayout extends FrameLayout implements ReplyLayout.ReplyLa
         if (this.postViewMode != postViewMode) {
             this.postViewMode = postViewMode;
 
+            postPrefetcher.cancelAll();
             layoutManager = null;
 
             switch (postViewMode) {
@@ -259,6 +264,11 @@ public class ThreadListLayout extends FrameLayout implements ReplyLayout.ReplyLa
         postAdapter.setThread(thread, filter);
     }
 
+    public void showFilteredPosts(ChanThread thread, PostsFilter filter, List<Post> changed) {
+        showingThread = thread;
+        postAdapter.updateThread(thread, filter, changed);
+    }
+
     public boolean onBack() {
         if (reply.onBack()) {
             return true;
@@ -425,6 +435,7 @@ public class ThreadListLayout extends FrameLayout implements ReplyLayout.ReplyLa
 
     public void cleanup() {
         postAdapter.cleanup();
+        postPrefetcher.cancelAll();
         reply.cleanup();
         openReply(false);
         openSearch(false);
@@ -11,7 +11,7 @@ import androidx.core.app.NotificationCompat;
 
 import org.floens.chan.R;
 import org.floens.chan.core.manager.WatchManager;
-import org.floens.chan.core.model.Post;
+import org.floens.chan.core.model.WatchPost;
 import org.floens.chan.ui.activity.BoardActivity;
 
 import java.util.List;
@@ -24,6 +24,8 @@ import javax.inject.Singleton;
 public class ThreadWatchNotifications extends NotificationHelper {
     public static final String CHANNEL_ID_WATCH_NORMAL = "watch:normal";
     public static final String CHANNEL_ID_WATCH_MENTION = "watch:mention";
+    // The last posts of a thread shown in the notification, the watcher keeps the text of these.
+    public static final int MAX_MESSAGES = 25;
     private static final int NOTIFICATION_ID_WATCH_NORMAL = 0x10000;
     private static final int NOTIFICATION_ID_WATCH_NORMAL_MASK = 0xffff;
     private static final int NOTIFICATION_ID_WATCH_MENTION = 0x20000;
@@ -89,7 +91,7 @@ public class ThreadWatchNotifications extends NotificationHelper {
     }
 
     private NotificationCompat.Builder buildMessagingStyleNotification(
-            WatchManager.PinWatcher pinWatcher, List<Post> posts, boolean mentions,
+            WatchManager.PinWatcher pinWatcher, List<WatchPost> posts, boolean mentions,
             String channelId) {
         NotificationCompat.Builder builder =
                 new NotificationCompat.Builder(applicationContext, channelId);
@@ -127,17 +129,15 @@ public class ThreadWatchNotifications extends NotificationHelper {
     }
 
     private void addPostsToMessagingStyle(NotificationCompat.MessagingStyle messagingStyle,
-                                          List<Post> unviewedPosts) {
-        final int maxLines = 25;
-
-        if (unviewedPosts.size() > maxLines) {
+                                          List<WatchPost> unviewedPosts) {
+        if (unviewedPosts.size() > MAX_MESSAGES) {
             unviewedPosts = unviewedPosts.subList(
-                    unviewedPosts.size() - maxLines, unviewedPosts.size());
+                    unviewedPosts.size() - MAX_MESSAGES, unviewedPosts.size());
         }
 
-        for (Post post : unviewedPosts) {
-            String comment = post.image() != null ? POST_COMMENT_IMAGE_PREFIX : "";
-            if (post.comment.length() > 0) {
+        for (WatchPost post : unviewedPosts) {
+            String comment = post.hasImage ? POST_COMMENT_IMAGE_PREFIX : "";
+            if (post.comment != null && post.comment.length() > 0) {
                 comment += post.comment;
             }
 
@@ -145,7 +145,7 @@ public class ThreadWatchNotifications extends NotificationHelper {
             comment = POST_COMMENT_SHORTEN_NO_PATTERN.matcher(comment)
                     .replaceAll(">$1");
 
-            CharSequence name = post.nameTripcodeIdCapcodeSpan;
+            CharSequence name = post.name;
 //            if (name.length() == 0) {
 //                name = "Anonymous";
 //            }
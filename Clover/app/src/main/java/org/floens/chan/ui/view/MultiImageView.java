@@ -20,6 +20,7 @@ package org.floens.chan.ui.view;
 import android.content.Context;
 import android.content.ContextWrapper;
 import android.content.Intent;
+import android.graphics.Bitmap;
 import android.media.AudioManager;
 import android.media.MediaPlayer;
 import android.os.Build;
@@ -32,9 +33,6 @@ import android.widget.MediaController;
 import android.widget.Toast;
 import android.widget.VideoView;
 
-import com.android.volley.VolleyError;
-import com.android.volley.toolbox.ImageLoader;
-import com.android.volley.toolbox.ImageLoader.ImageContainer;
 import com.davemorrissey.labs.subscaleview.ImageSource;
 import com.google.android.exoplayer2.ExoPlayer;
 import com.google.android.exoplayer2.ExoPlayerFactory;
@@ -52,6 +50,7 @@ import org.floens.chan.core.cache.FileCache;
 import org.floens.chan.core.cache.FileCacheDownloader;
 import org.floens.chan.core.cache.FileCacheListener;
 import org.floens.chan.core.cache.FileCacheProvider;
+import org.floens.chan.core.cache.ThumbnailCache;
 import org.floens.chan.core.di.UserAgentProvider;
 import org.floens.chan.core.model.PostImage;
 import org.floens.chan.core.settings.ChanSettings;
@@ -79,7 +78,7 @@ public class MultiImageView extends FrameLayout implements View.OnClickListener
     FileCache fileCache;
 
     @Inject
-    ImageLoader imageLoader;
+    ThumbnailCache thumbnailCache;
 
     @Inject
     UserAgentProvider userAgent;
@@ -91,7 +90,9 @@ public class MultiImageView extends FrameLayout implements View.OnClickListener
     private Mode mode = Mode.UNLOADED;
 
     private boolean hasContent = false;
-    private ImageContainer thumbnailRequest;
+    // Kept while the thumbnail is shown, its bitmap may be reused after it is cancelled.
+    private ThumbnailCache.Ticket thumbnailTicket;
+    private ImageView thumbnailView;
     private FileCacheDownloader bigImageRequest;
     private FileCacheDownloader gifRequest;
     private FileCacheDownloader videoRequest;
@@ -209,35 +210,41 @@ public class MultiImageView extends FrameLayout implements View.OnClickListener
             return;
         }
 
-        if (thumbnailRequest != null) {
+        if (thumbnailTicket != null) {
             return;
         }
 
-        // Also use volley for the thumbnails
-        thumbnailRequest = imageLoader.get(thumbnailUrl, new ImageLoader.ImageListener() {
+        // The same thumbnails as the thread, from the thumbnail cache.
+        thumbnailTicket = thumbnailCache.load(thumbnailUrl, getWidth(), getHeight(), new ThumbnailCache.Listener() {
             @Override
-            public void onErrorResponse(VolleyError error) {
-                thumbnailRequest = null;
-                onError();
+            public void onThumbnail(Bitmap bitmap, boolean immediate) {
+                if (!hasContent || mode == Mode.LOWRES) {
+                    thumbnailView = new ImageView(getContext());
+                    thumbnailView.setImageBitmap(bitmap);
+
+                    onModeLoaded(Mode.LOWRES, thumbnailView);
+                } else if (!immediate) {
+                    // The big image was first.
+                    releaseThumbnail();
+                }
             }
 
             @Override
-            public void onResponse(ImageContainer response, boolean isImmediate) {
-                thumbnailRequest = null;
-                if (response.getBitmap() != null && (!hasContent || mode == Mode.LOWRES)) {
-                    ImageView thumbnail = new ImageView(getContext());
-                    thumbnail.setImageBitmap(response.getBitmap());
-
-                    onModeLoaded(Mode.LOWRES, thumbnail);
-                }
+            public void onThumbnailError(boolean serverError) {
+                thumbnailTicket = null;
+                onError();
             }
-        }, getWidth(), getHeight());
+        });
+    }
 
-        if (thumbnailRequest.getBitmap() != null) {
-            // Request was immediate and thumbnailRequest was first set to null in onResponse, and then set to the container
-            // when the method returned
-            // Still set it to null here
-            thumbnailRequest = null;
+    private void releaseThumbnail() {
+        if (thumbnailView != null) {
+            thumbnailView.setImageBitmap(null);
+            thumbnailView = null;
+        }
+        if (thumbnailTicket != null) {
+            thumbnailTicket.cancel();
+            thumbnailTicket = null;
         }
     }
 
@@ -551,10 +558,7 @@ public class MultiImageView extends FrameLayout implements View.OnClickListener
     }
 
     private void cancelLoad() {
-        if (thumbnailRequest != null) {
-            thumbnailRequest.cancelRequest();
-            thumbnailRequest = null;
-        }
+        releaseThumbnail();
         if (bigImageRequest != null) {
             bigImageRequest.cancel();
             bigImageRequest = null;
@@ -593,6 +597,11 @@ public class MultiImageView extends FrameLayout implements View.OnClickListener
             if (!alreadyAttached) {
                 addView(view, 0, new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
             }
+
+            if (view != thumbnailView) {
+                // Not shown anymore.
+                releaseThumbnail();
+            }
         }
 
         hasContent = true;
@@ -36,21 +36,15 @@ import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.view.View;
 
-import com.android.volley.AuthFailureError;
-import com.android.volley.NetworkError;
-import com.android.volley.ParseError;
-import com.android.volley.TimeoutError;
-import com.android.volley.VolleyError;
-import com.android.volley.toolbox.ImageLoader;
-
 import org.floens.chan.R;
+import org.floens.chan.core.cache.ThumbnailCache;
 
 import static org.floens.chan.Chan.injector;
 import static org.floens.chan.utils.AndroidUtils.getString;
 import static org.floens.chan.utils.AndroidUtils.sp;
 
-public class ThumbnailView extends View implements ImageLoader.ImageListener {
-    private ImageLoader.ImageContainer container;
+public class ThumbnailView extends View implements ThumbnailCache.Listener {
+    private ThumbnailCache.Ticket ticket;
     private int fadeTime = 200;
     private ValueAnimator fadeAnimation;
     private boolean hidden = false;
@@ -107,19 +101,20 @@ public class ThumbnailView extends View implements ImageLoader.ImageListener {
     }
 
     public void setUrl(String url, int width, int height) {
-        if (container != null && container.getRequestUrl().equals(url)) {
+        if (ticket != null && ticket.getUrl().equals(url)) {
             return;
         }
 
-        if (container != null) {
-            container.cancelRequest();
-            container = null;
-            error = false;
+        if (ticket != null) {
+            // The bitmap goes back to the cache, and may be reused.
             setImageBitmap(null);
+            ticket.cancel();
+            ticket = null;
+            error = false;
         }
 
         if (!TextUtils.isEmpty(url)) {
-            container = injector().instance(ImageLoader.class).get(url, this, width, height);
+            ticket = injector().instance(ThumbnailCache.class).load(url, width, height, this);
         }
     }
 
@@ -196,21 +191,19 @@ public class ThumbnailView extends View implements ImageLoader.ImageListener {
     }
 
     @Override
-    public void onResponse(ImageLoader.ImageContainer response, boolean isImmediate) {
-        if (response.getBitmap() != null) {
-            setImageBitmap(response.getBitmap());
-            onImageSet(isImmediate);
-        }
+    public void onThumbnail(Bitmap bitmap, boolean immediate) {
+        setImageBitmap(bitmap);
+        onImageSet(immediate);
     }
 
     @Override
-    public void onErrorResponse(VolleyError e) {
+    public void onThumbnailError(boolean serverError) {
         error = true;
 
-        if (e instanceof NetworkError || e instanceof TimeoutError || e instanceof ParseError || e instanceof AuthFailureError) {
-            errorText = getString(R.string.thumbnail_load_failed_network);
-        } else {
+        if (serverError) {
             errorText = getString(R.string.thumbnail_load_failed_server);
+        } else {
+            errorText = getString(R.string.thumbnail_load_failed_network);
         }
 
         onImageSet(false);
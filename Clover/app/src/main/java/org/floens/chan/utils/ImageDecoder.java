@@ -19,98 +19,194 @@ package org.floens.chan.utils;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Build;
+import androidx.annotation.MainThread;
+import androidx.annotation.WorkerThread;
 
-import java.io.ByteArrayOutputStream;
+import org.floens.chan.core.cache.BitmapPool;
+
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Simple ImageDecoder. Taken from Volley ImageRequest.
+ * Decodes image files, downsampled to a maximum size. Sizing taken from Volley ImageRequest.
+ * <p>
+ * The file is streamed, never read into memory as a whole. The bounds are read from a marked
+ * buffered stream that is reset for decoding the pixels, so that the header is only read once.
+ * The pixels are decoded with the largest power of two sample size that still gives the size,
+ * into a bitmap from the {@link BitmapPool} when there is one that fits.
  */
 public class ImageDecoder {
-    public static void decodeFileOnBackgroundThread(final File file, final int maxWidth, final int maxHeight, final ImageDecoderCallback callback) {
-        Thread thread = new Thread(new Runnable() {
-            @Override
-            public void run() {
-                final Bitmap bitmap = decodeFile(file, maxWidth, maxHeight);
-
-                AndroidUtils.runOnUiThread(new Runnable() {
-                    @Override
-                    public void run() {
-                        callback.onImageBitmap(file, bitmap);
-                    }
-                });
-            }
-        });
-        thread.start();
+    private static final String TAG = "ImageDecoder";
+    private static final int BUFFER_SIZE = 16 * 1024;
+    // Far more than the bounds need for most files, a JPEG with a large EXIF block is opened again.
+    private static final int MARK_LIMIT = 256 * 1024;
+    private static final int THREADS = 2;
+
+    private static final ThreadPoolExecutor executor;
+
+    static {
+        AtomicInteger count = new AtomicInteger();
+        executor = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> new Thread(r, "ImageDecoder-" + count.incrementAndGet()));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Decode on one of the decode threads, and call the callback on the main thread.
+     *
+     * @return the task to cancel the decode with
+     */
+    public static DecodeTask decodeFileOnBackgroundThread(File file, int maxWidth, int maxHeight,
+                                                          BitmapPool pool, ImageDecoderCallback callback) {
+        DecodeTask task = new DecodeTask(file, maxWidth, maxHeight, pool, callback);
+        executor.execute(task);
+        return task;
     }
 
     public interface ImageDecoderCallback {
         void onImageBitmap(File file, Bitmap bitmap);
     }
 
-    public static Bitmap decodeFile(File file, int maxWidth, int maxHeight) {
-        if (!file.exists())
+    /**
+     * @return the bitmap, or {@code null} if the file could not be decoded
+     */
+    @WorkerThread
+    public static Bitmap decodeFile(File file, int maxWidth, int maxHeight, BitmapPool pool) {
+        if (!file.exists()) {
             return null;
+        }
 
-        FileInputStream fis;
-
+        InputStream in = null;
         try {
-            fis = new FileInputStream(file);
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-            return null;
-        }
+            in = open(file);
+            in.mark(MARK_LIMIT);
+
+            BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
+            decodeOptions.inJustDecodeBounds = true;
+            BitmapFactory.decodeStream(in, null, decodeOptions);
+            int actualWidth = decodeOptions.outWidth;
+            int actualHeight = decodeOptions.outHeight;
+            if (actualWidth <= 0 || actualHeight <= 0) {
+                return null;
+            }
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try {
+                in.reset();
+            } catch (IOException e) {
+                // Read past the mark.
+                IOUtils.closeQuietly(in);
+                in = open(file);
+            }
 
-        Bitmap bitmap = null;
+            // Then compute the dimensions we would ideally like to decode to.
+            int desiredWidth = getResizedDimension(maxWidth, maxHeight, actualWidth, actualHeight);
+            int desiredHeight = getResizedDimension(maxHeight, maxWidth, actualHeight, actualWidth);
+
+            // Decode to the nearest power of two scaling factor.
+            decodeOptions.inJustDecodeBounds = false;
+            decodeOptions.inMutable = true;
+            int sampleSize = findBestSampleSize(actualWidth, actualHeight, desiredWidth, desiredHeight);
+            decodeOptions.inSampleSize = sampleSize;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT || sampleSize == 1) {
+                decodeOptions.inBitmap = pool.get((actualWidth + sampleSize - 1) / sampleSize,
+                        (actualHeight + sampleSize - 1) / sampleSize, Bitmap.Config.ARGB_8888);
+            }
 
-        try {
-            IOUtils.copy(fis, baos);
-            bitmap = decode(baos.toByteArray(), maxWidth, maxHeight);
+            Bitmap tempBitmap;
+            try {
+                tempBitmap = BitmapFactory.decodeStream(in, null, decodeOptions);
+            } catch (IllegalArgumentException e) {
+                // The pooled bitmap could not be decoded into, the stream is partly read.
+                pool.put(decodeOptions.inBitmap);
+                decodeOptions.inBitmap = null;
+                IOUtils.closeQuietly(in);
+                in = open(file);
+                tempBitmap = BitmapFactory.decodeStream(in, null, decodeOptions);
+            }
+
+            // If necessary, scale down to the maximal acceptable size.
+            if (tempBitmap != null && (tempBitmap.getWidth() > desiredWidth || tempBitmap.getHeight() > desiredHeight)) {
+                return scale(tempBitmap, desiredWidth, desiredHeight, pool);
+            } else {
+                return tempBitmap;
+            }
         } catch (IOException | OutOfMemoryError e) {
-            e.printStackTrace();
+            Logger.e(TAG, "Could not decode " + file.getName(), e);
+            return null;
         } finally {
-            IOUtils.closeQuietly(fis);
-            IOUtils.closeQuietly(baos);
+            IOUtils.closeQuietly(in);
         }
+    }
 
-        return bitmap;
+    /**
+     * Draw the bitmap scaled into a bitmap from the pool, and put the bitmap in the pool.
+     */
+    @WorkerThread
+    public static Bitmap scale(Bitmap bitmap, int width, int height, BitmapPool pool) {
+        Bitmap.Config config = bitmap.getConfig() != null ? bitmap.getConfig() : Bitmap.Config.ARGB_8888;
+        Bitmap scaled = pool.getDirty(width, height, config);
+        new Canvas(scaled).drawBitmap(bitmap, null, new Rect(0, 0, width, height),
+                new Paint(Paint.FILTER_BITMAP_FLAG));
+        pool.put(bitmap);
+        return scaled;
     }
 
-    public static Bitmap decode(byte[] data, int maxWidth, int maxHeight) {
-        BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
-        Bitmap bitmap;
-
-        // If we have to resize this image, first get the natural bounds.
-        decodeOptions.inJustDecodeBounds = true;
-        BitmapFactory.decodeByteArray(data, 0, data.length, decodeOptions);
-        int actualWidth = decodeOptions.outWidth;
-        int actualHeight = decodeOptions.outHeight;
-
-        // Then compute the dimensions we would ideally like to decode to.
-        int desiredWidth = getResizedDimension(maxWidth, maxHeight, actualWidth, actualHeight);
-        int desiredHeight = getResizedDimension(maxHeight, maxWidth, actualHeight, actualWidth);
-
-        // Decode to the nearest power of two scaling factor.
-        decodeOptions.inJustDecodeBounds = false;
-
-        // decodeOptions.inPreferQualityOverSpeed = PREFER_QUALITY_OVER_SPEED;
-        decodeOptions.inSampleSize = findBestSampleSize(actualWidth, actualHeight, desiredWidth, desiredHeight);
-        Bitmap tempBitmap = BitmapFactory.decodeByteArray(data, 0, data.length, decodeOptions);
-
-        // If necessary, scale down to the maximal acceptable size.
-        if (tempBitmap != null && (tempBitmap.getWidth() > desiredWidth || tempBitmap.getHeight() > desiredHeight)) {
-            bitmap = Bitmap.createScaledBitmap(tempBitmap, desiredWidth, desiredHeight, true);
-            tempBitmap.recycle();
-        } else {
-            bitmap = tempBitmap;
+    public static class DecodeTask implements Runnable {
+        private final File file;
+        private final int maxWidth;
+        private final int maxHeight;
+        private final BitmapPool pool;
+        private final ImageDecoderCallback callback;
+        private volatile boolean cancelled;
+
+        private DecodeTask(File file, int maxWidth, int maxHeight, BitmapPool pool, ImageDecoderCallback callback) {
+            this.file = file;
+            this.maxWidth = maxWidth;
+            this.maxHeight = maxHeight;
+            this.pool = pool;
+            this.callback = callback;
+        }
+
+        /**
+         * Don't call the callback. A bitmap that was decoded anyway goes back to the pool.
+         */
+        @MainThread
+        public void cancel() {
+            cancelled = true;
+            executor.remove(this);
+        }
+
+        @Override
+        @WorkerThread
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+
+            final Bitmap bitmap = decodeFile(file, maxWidth, maxHeight, pool);
+            AndroidUtils.runOnUiThread(() -> {
+                if (cancelled) {
+                    pool.put(bitmap);
+                } else {
+                    callback.onImageBitmap(file, bitmap);
+                }
+            });
         }
+    }
 
-        return bitmap;
+    private static InputStream open(File file) throws IOException {
+        return new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
     }
 
     private static int getResizedDimension(int maxPrimary, int maxSecondary, int actualPrimary, int actualSecondary) {
@@ -0,0 +1,185 @@
+package org.floens.chan.core.cache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CacheJournalTest {
+    private File directory;
+
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("cache").toFile();
+    }
+
+    @After
+    public void teardown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void noJournal() throws IOException {
+        LinkedHashMap<String, CacheJournal.Entry> entries = new LinkedHashMap<>();
+        assertFalse(new CacheJournal(directory).read(entries, new HashSet<>()));
+        assertTrue(entries.isEmpty());
+    }
+
+    @Test
+    public void replaysInAccessOrder() throws IOException {
+        CacheJournal journal = emptyJournal();
+        journal.dirty("a");
+        journal.clean("a", 10, 1);
+        journal.dirty("b");
+        journal.clean("b", 20, 2);
+        journal.dirty("c");
+        journal.clean("c", 30, 3);
+        journal.read(Collections.singletonMap("a", 4L));
+        journal.remove("b");
+        // Only finished writes are in the cache.
+        journal.dirty("d");
+        journal.close();
+
+        LinkedHashMap<String, CacheJournal.Entry> entries = new LinkedHashMap<>();
+        Set<String> unfinished = new HashSet<>();
+        assertTrue(new CacheJournal(directory).read(entries, unfinished));
+        assertEquals(names("c", "a"), new ArrayList<>(entries.keySet()));
+        assertEquals(30, entries.get("c").length);
+        assertEquals(4, entries.get("a").lastAccess);
+        assertEquals(Collections.singleton("d"), unfinished);
+    }
+
+    @Test
+    public void brokenEndIsRebuilt() throws IOException {
+        CacheJournal journal = emptyJournal();
+        journal.clean("a", 10, 1);
+        journal.close();
+        FileOutputStream out = new FileOutputStream(new File(directory, CacheJournal.JOURNAL), true);
+        out.write("CLEAN b 2".getBytes("UTF-8"));
+        out.close();
+
+        LinkedHashMap<String, CacheJournal.Entry> entries = new LinkedHashMap<>();
+        CacheJournal broken = new CacheJournal(directory);
+        assertTrue(broken.read(entries, new HashSet<>()));
+        assertEquals(names("a"), new ArrayList<>(entries.keySet()));
+        assertTrue(broken.needsRebuild(entries.size()));
+
+        broken.rebuild(entries.values(), Collections.emptyList());
+        broken.clean("c", 30, 3);
+        broken.close();
+
+        entries.clear();
+        CacheJournal rebuilt = new CacheJournal(directory);
+        assertTrue(rebuilt.read(entries, new HashSet<>()));
+        assertEquals(names("a", "c"), new ArrayList<>(entries.keySet()));
+        assertFalse(rebuilt.needsRebuild(entries.size()));
+    }
+
+    @Test
+    public void restoresBackupOfInterruptedRebuild() throws IOException {
+        CacheJournal journal = emptyJournal();
+        journal.clean("a", 10, 1);
+        journal.close();
+        assertTrue(new File(directory, CacheJournal.JOURNAL)
+                .renameTo(new File(directory, CacheJournal.JOURNAL_BACKUP)));
+
+        LinkedHashMap<String, CacheJournal.Entry> entries = new LinkedHashMap<>();
+        assertTrue(new CacheJournal(directory).read(entries, new HashSet<>()));
+        assertEquals(names("a"), new ArrayList<>(entries.keySet()));
+        assertFalse(new File(directory, CacheJournal.JOURNAL_BACKUP).exists());
+    }
+
+    @Test
+    public void manyReadsNeedRebuild() throws IOException {
+        CacheJournal journal = emptyJournal();
+        journal.clean("a", 10, 1);
+        for (long i = 0; i < 1999; i++) {
+            assertFalse(journal.needsRebuild(1));
+            journal.read(Collections.singletonMap("a", i));
+        }
+        assertTrue(journal.needsRebuild(1));
+        journal.close();
+    }
+
+    @Test
+    public void batchedReadsKeepTheirOrder() throws IOException {
+        CacheJournal journal = emptyJournal();
+        journal.clean("a", 10, 1);
+        journal.clean("b", 20, 2);
+        journal.clean("c", 30, 3);
+        Map<String, Long> reads = new LinkedHashMap<>();
+        reads.put("b", 4L);
+        reads.put("a", 5L);
+        journal.read(reads);
+        journal.remove(Arrays.asList("c", "d"));
+        journal.close();
+
+        LinkedHashMap<String, CacheJournal.Entry> entries = new LinkedHashMap<>();
+        assertTrue(new CacheJournal(directory).read(entries, new HashSet<>()));
+        assertEquals(names("b", "a"), new ArrayList<>(entries.keySet()));
+    }
+
+    @Test
+    public void partialFiles() throws IOException {
+        CacheJournal journal = emptyJournal();
+        journal.dirty("a");
+        journal.partial("a", 10, 1, "Wed, 21 Oct 2015 07:28:00 GMT");
+        journal.dirty("b");
+        journal.partial("b", 20, 2, "\"etag\"");
+        // Being continued when it stopped.
+        journal.dirty("b");
+        journal.close();
+
+        LinkedHashMap<String, CacheJournal.Entry> entries = new LinkedHashMap<>();
+        Set<String> unfinished = new HashSet<>();
+        CacheJournal read = new CacheJournal(directory);
+        assertTrue(read.read(entries, unfinished));
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", entries.get("a").validator);
+        assertTrue(entries.get("b").isPartial());
+        assertEquals(Collections.singleton("b"), unfinished);
+
+        // A rebuild keeps the partial file that is being continued unfinished.
+        read.rebuild(entries.values(), Collections.singletonList("b"));
+        read.close();
+        entries.clear();
+        unfinished.clear();
+        assertTrue(new CacheJournal(directory).read(entries, unfinished));
+        assertEquals(names("a", "b"), new ArrayList<>(entries.keySet()));
+        assertEquals("\"etag\"", entries.get("b").validator);
+        assertEquals(Collections.singleton("b"), unfinished);
+    }
+
+    private CacheJournal emptyJournal() throws IOException {
+        CacheJournal journal = new CacheJournal(directory);
+        journal.rebuild(Collections.emptyList(), Collections.emptyList());
+        return journal;
+    }
+
+    private List<String> names(String... names) {
+        List<String> list = new ArrayList<>();
+        Collections.addAll(list, names);
+        return list;
+    }
+}
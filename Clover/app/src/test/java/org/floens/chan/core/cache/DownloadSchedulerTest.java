@@ -0,0 +1,184 @@
+package org.floens.chan.core.cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.floens.chan.core.cache.DownloadScheduler.Priority.PRELOAD;
+import static org.floens.chan.core.cache.DownloadScheduler.Priority.SAVE;
+import static org.floens.chan.core.cache.DownloadScheduler.Priority.VISIBLE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DownloadSchedulerTest {
+    private final List<String> started = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    public void startsByPriority() throws Exception {
+        DownloadScheduler scheduler = new DownloadScheduler(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        DownloadScheduler.Job blocker = scheduler.submit("a", VISIBLE, blocking("blocker", release, null));
+        DownloadScheduler.Job save = scheduler.submit("b", SAVE, record("save"));
+        DownloadScheduler.Job preload = scheduler.submit("b", PRELOAD, record("preload"));
+        DownloadScheduler.Job visible = scheduler.submit("b", VISIBLE, record("visible"));
+        assertEquals(1, scheduler.getQueueDepth(SAVE));
+
+        release.countDown();
+        for (DownloadScheduler.Job job : Arrays.asList(blocker, save, preload, visible)) {
+            job.getFuture().get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(Arrays.asList("blocker", "visible", "preload", "save"), started);
+    }
+
+    @Test
+    public void limitsPerHost() throws Exception {
+        DownloadScheduler scheduler = new DownloadScheduler(3, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.submit("a", VISIBLE, blocking("a1", release, null));
+        DownloadScheduler.Job a2 = scheduler.submit("a", VISIBLE, record("a2"));
+        DownloadScheduler.Job b1 = scheduler.submit("b", VISIBLE, record("b1"));
+
+        b1.getFuture().get(5, TimeUnit.SECONDS);
+        assertFalse(a2.getFuture().isDone());
+        assertEquals(1, scheduler.getRunningCount());
+        assertEquals(1, scheduler.getQueueDepth(VISIBLE));
+
+        release.countDown();
+        a2.getFuture().get(5, TimeUnit.SECONDS);
+        assertEquals("a2", started.get(2));
+    }
+
+    @Test
+    public void pausesLowerPriority() throws Exception {
+        DownloadScheduler scheduler = new DownloadScheduler(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        DownloadScheduler.Job[] save = new DownloadScheduler.Job[1];
+        save[0] = scheduler.submit("a", SAVE, () -> {
+            started.add("save");
+            running.countDown();
+            await(release);
+            try {
+                // Between two parts, it waits here while the visible one runs.
+                save[0].awaitResume();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            started.add("save continued");
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        DownloadScheduler.Job visible = scheduler.submit("a", VISIBLE, blocking("visible", new CountDownLatch(0), null));
+        visible.getFuture().get(5, TimeUnit.SECONDS);
+        release.countDown();
+        save[0].getFuture().get(5, TimeUnit.SECONDS);
+
+        assertEquals(Arrays.asList("save", "visible", "save continued"), started);
+        assertTrue(scheduler.getSummary().contains("save: waiting 0 (max 1), done 1, cancelled 0, paused 1"));
+    }
+
+    @Test
+    public void pausedWhileHigherPriorityRuns() throws Exception {
+        DownloadScheduler scheduler = new DownloadScheduler(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        DownloadScheduler.Job save = scheduler.submit("a", SAVE, blocking("save", release, null));
+        assertFalse(save.isPaused());
+
+        CountDownLatch releaseVisible = new CountDownLatch(1);
+        DownloadScheduler.Job visible = scheduler.submit("a", VISIBLE, blocking("visible", releaseVisible, null));
+        assertTrue(save.isPaused());
+
+        releaseVisible.countDown();
+        visible.getFuture().get(5, TimeUnit.SECONDS);
+        assertFalse(save.isPaused());
+        release.countDown();
+        save.getFuture().get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void extraSlotsCountForTheLimits() throws Exception {
+        DownloadScheduler scheduler = new DownloadScheduler(3, 2);
+        CountDownLatch submitted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        DownloadScheduler.Job[] segmented = new DownloadScheduler.Job[1];
+        int[] taken = new int[1];
+        segmented[0] = scheduler.submit("a", VISIBLE, () -> {
+            await(submitted);
+            taken[0] = segmented[0].acquireSlots(2);
+            running.countDown();
+            await(release);
+            segmented[0].releaseSlots();
+        });
+        submitted.countDown();
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        assertEquals(1, taken[0]);
+
+        // The host is full with the extra slot.
+        DownloadScheduler.Job other = scheduler.submit("a", VISIBLE, record("other"));
+        assertEquals(1, scheduler.getQueueDepth(VISIBLE));
+
+        release.countDown();
+        other.getFuture().get(5, TimeUnit.SECONDS);
+        segmented[0].getFuture().get(5, TimeUnit.SECONDS);
+        assertEquals(Collections.singletonList("other"), started);
+    }
+
+    @Test
+    public void raisedPriorityStartsFirst() throws Exception {
+        DownloadScheduler scheduler = new DownloadScheduler(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        DownloadScheduler.Job blocker = scheduler.submit("a", VISIBLE, blocking("blocker", release, null));
+        DownloadScheduler.Job first = scheduler.submit("a", PRELOAD, record("first"));
+        DownloadScheduler.Job second = scheduler.submit("a", PRELOAD, record("second"));
+        second.setPriority(VISIBLE);
+
+        release.countDown();
+        for (DownloadScheduler.Job job : Arrays.asList(blocker, first, second)) {
+            job.getFuture().get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(Arrays.asList("blocker", "second", "first"), started);
+    }
+
+    @Test
+    public void cancelledJobsFinishWithoutWaiting() throws Exception {
+        DownloadScheduler scheduler = new DownloadScheduler(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.submit("a", VISIBLE, blocking("blocker", release, null));
+        DownloadScheduler.Job cancelled = scheduler.submit("a", SAVE, record("cancelled"));
+        cancelled.cancel();
+
+        // Its future is done, the download runs to see that it is cancelled.
+        cancelled.getFuture().get(5, TimeUnit.SECONDS);
+        assertEquals(0, scheduler.getQueueDepth(SAVE));
+        release.countDown();
+    }
+
+    private Runnable record(String name) {
+        return () -> started.add(name);
+    }
+
+    private Runnable blocking(String name, CountDownLatch release, Runnable after) {
+        return () -> {
+            started.add(name);
+            await(release);
+            if (after != null) {
+                after.run();
+            }
+        };
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
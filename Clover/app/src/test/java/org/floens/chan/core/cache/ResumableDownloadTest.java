@@ -0,0 +1,270 @@
+package org.floens.chan.core.cache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ResumableDownloadTest {
+    private MockWebServer server;
+    private File file;
+
+    @Before
+    public void setup() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        file = File.createTempFile("download", ".tmp");
+    }
+
+    @After
+    public void teardown() throws IOException {
+        server.shutdown();
+        file.delete();
+    }
+
+    @Test
+    public void continuesWithRange() throws Exception {
+        write("hello ");
+        server.enqueue(new MockResponse()
+                .setResponseCode(206)
+                .setHeader("Content-Range", "bytes 6-10/11")
+                .setHeader("ETag", "\"v1\"")
+                .setBody("world"));
+
+        ResumableDownload download = download();
+        download.resumeFrom(6, "\"v1\"");
+        download.execute((downloaded, total) -> assertEquals(11, total));
+
+        assertEquals("hello world", read());
+        assertEquals(11, download.getLength());
+        RecordedRequest request = server.takeRequest();
+        assertEquals("bytes=6-", request.getHeader("Range"));
+        assertEquals("\"v1\"", request.getHeader("If-Range"));
+    }
+
+    @Test
+    public void continuesFromTheJournalLength() throws Exception {
+        // Written past the length of the journal entry before it broke off.
+        write("hello wo");
+        server.enqueue(new MockResponse()
+                .setResponseCode(206)
+                .setHeader("Content-Range", "bytes 6-10/11")
+                .setHeader("ETag", "\"v1\"")
+                .setBody("world"));
+
+        ResumableDownload download = download();
+        download.resumeFrom(6, "\"v1\"");
+        download.execute((downloaded, total) -> {
+        });
+
+        assertEquals("hello world", read());
+        assertEquals(11, download.getLength());
+    }
+
+    @Test
+    public void downloadsAgainWhenShorterThanTheJournal() throws Exception {
+        write("hel");
+        server.enqueue(new MockResponse()
+                .setHeader("ETag", "\"v1\"")
+                .setBody("hello world"));
+
+        ResumableDownload download = download();
+        download.resumeFrom(6, "\"v1\"");
+        download.execute((downloaded, total) -> {
+        });
+
+        assertEquals("hello world", read());
+        assertNull(server.takeRequest().getHeader("Range"));
+    }
+
+    @Test
+    public void replacedWhenChanged() throws Exception {
+        write("hello ");
+        // If-Range didn't match, the server sends all of it.
+        server.enqueue(new MockResponse()
+                .setHeader("ETag", "\"v2\"")
+                .setBody("changed"));
+
+        ResumableDownload download = download();
+        download.resumeFrom(6, "\"v1\"");
+        download.execute((downloaded, total) -> {
+        });
+
+        assertEquals("changed", read());
+        assertEquals("\"v2\"", download.getValidator());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void downloadsAgainOnBrokenRange() throws Exception {
+        write("hello ");
+        server.enqueue(new MockResponse()
+                .setResponseCode(206)
+                .setHeader("Content-Range", "bytes 0-10/11")
+                .setBody("hello world"));
+        server.enqueue(new MockResponse()
+                .setHeader("Last-Modified", "Wed, 21 Oct 2015 07:28:00 GMT")
+                .setBody("hello world"));
+
+        ResumableDownload download = download();
+        download.resumeFrom(6, "\"v1\"");
+        download.execute((downloaded, total) -> {
+        });
+
+        assertEquals("hello world", read());
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", download.getValidator());
+        server.takeRequest();
+        assertNull(server.takeRequest().getHeader("Range"));
+    }
+
+    @Test
+    public void keepsWhatWasDownloaded() throws Exception {
+        Buffer body = new Buffer();
+        body.write(new byte[100000]);
+        server.enqueue(new MockResponse()
+                .setHeader("ETag", "\"v1\"")
+                .setBody(body));
+
+        ResumableDownload download = download();
+        try {
+            download.execute((downloaded, total) -> {
+                throw new IOException("cancelled");
+            });
+            fail();
+        } catch (IOException e) {
+            assertEquals("cancelled", e.getMessage());
+        }
+
+        assertTrue(download.getLength() > 0);
+        assertEquals(file.length(), download.getLength());
+        assertEquals("\"v1\"", download.getValidator());
+    }
+
+    @Test
+    public void weakEtagCantContinue() throws Exception {
+        server.enqueue(new MockResponse()
+                .setHeader("ETag", "W/\"v1\"")
+                .setBody("hello"));
+
+        ResumableDownload download = download();
+        download.execute((downloaded, total) -> {
+        });
+
+        assertEquals("hello", read());
+        assertNull(download.getValidator());
+    }
+
+    @Test
+    public void downloadsInSegments() throws Exception {
+        String text = "hello segmented world";
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String[] range = request.getHeader("Range").substring("bytes=".length()).split("-", -1);
+                int start = Integer.parseInt(range[0]);
+                int end = range[1].isEmpty() ? text.length() - 1 : Integer.parseInt(range[1]);
+                return new MockResponse()
+                        .setResponseCode(206)
+                        .setHeader("Content-Range", "bytes " + start + "-" + end + "/" + text.length())
+                        .setHeader("ETag", "\"v1\"")
+                        .setBody(text.substring(start, end + 1));
+            }
+        });
+
+        ResumableDownload download = download();
+        download.segmented(3, 0, slots(2));
+        download.execute((downloaded, total) -> assertEquals(text.length(), total));
+
+        assertEquals(text, read());
+        assertEquals("\"v1\"", download.getValidator());
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    public void segmentedWithoutRanges() throws Exception {
+        server.enqueue(new MockResponse()
+                .setHeader("ETag", "\"v1\"")
+                .setBody("hello"));
+
+        ResumableDownload download = download();
+        download.segmented(3, 0, slots(2));
+        download.execute((downloaded, total) -> {
+        });
+
+        assertEquals("hello", read());
+        assertEquals(1, server.getRequestCount());
+        assertEquals("bytes=0-", server.takeRequest().getHeader("Range"));
+    }
+
+    @Test
+    public void notSegmentedWithoutSlots() throws Exception {
+        server.enqueue(new MockResponse()
+                .setResponseCode(206)
+                .setHeader("Content-Range", "bytes 0-4/5")
+                .setHeader("ETag", "\"v1\"")
+                .setBody("hello"));
+
+        ResumableDownload download = download();
+        download.segmented(3, 0, slots(0));
+        download.execute((downloaded, total) -> {
+        });
+
+        assertEquals("hello", read());
+        assertEquals("\"v1\"", download.getValidator());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void httpErrors() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(404));
+
+        try {
+            download().execute((downloaded, total) -> {
+            });
+            fail();
+        } catch (ResumableDownload.HttpCodeException e) {
+            assertEquals(404, e.code);
+        }
+    }
+
+    private ResumableDownload download() {
+        return new ResumableDownload(new OkHttpClient(), server.url("/file.webm").toString(),
+                "test", file);
+    }
+
+    private static ResumableDownload.Slots slots(int granted) {
+        return new ResumableDownload.Slots() {
+            @Override
+            public int acquire(int wanted) {
+                return Math.min(wanted, granted);
+            }
+
+            @Override
+            public void release() {
+            }
+        };
+    }
+
+    private void write(String text) throws IOException {
+        Files.write(file.toPath(), text.getBytes("UTF-8"));
+    }
+
+    private String read() throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), "UTF-8");
+    }
+}
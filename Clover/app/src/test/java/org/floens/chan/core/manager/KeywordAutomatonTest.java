@@ -0,0 +1,84 @@
+package org.floens.chan.core.manager;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class KeywordAutomatonTest {
+    @Test
+    public void findsOverlappingKeywords() {
+        KeywordAutomaton automaton = new KeywordAutomaton.Builder()
+                .add("he", 1, false)
+                .add("she", 2, false)
+                .add("hers", 3, false)
+                .add("his", 4, false)
+                .build();
+
+        assertEquals(3, automaton.findMaxValue("ushers", -1));
+        assertEquals(2, automaton.findMaxValue("ushe", -1));
+        assertEquals(1, automaton.findMaxValue("the", -1));
+        assertEquals(-1, automaton.findMaxValue("nothing", -1));
+        // Only larger values are found.
+        assertEquals(5, automaton.findMaxValue("ushers", 5));
+    }
+
+    @Test
+    public void asciiCaseInsensitive() {
+        KeywordAutomaton automaton = new KeywordAutomaton.Builder()
+                .add("Spam", 0, false)
+                .build();
+
+        assertEquals(0, automaton.findMaxValue("SPAM and eggs", -1));
+        assertEquals(0, automaton.findMaxValue("sPaM", -1));
+        assertEquals(-1, automaton.findMaxValue("spa m", -1));
+    }
+
+    @Test
+    public void wordBoundaries() {
+        KeywordAutomaton automaton = new KeywordAutomaton.Builder()
+                .add("cat", 1, true)
+                .add("c++", 2, true)
+                .build();
+
+        assertEquals(1, automaton.findMaxValue("a cat.", -1));
+        assertEquals(1, automaton.findMaxValue("cat", -1));
+        assertEquals(-1, automaton.findMaxValue("concatenate", -1));
+        assertEquals(-1, automaton.findMaxValue("cat_", -1));
+        // Like \bc\+\+\b, the boundary after the + needs a word character.
+        assertEquals(2, automaton.findMaxValue("c++a", -1));
+        assertEquals(-1, automaton.findMaxValue("c++ ", -1));
+    }
+
+    @Test
+    public void sameKeywordBoundedAndUnbounded() {
+        KeywordAutomaton automaton = new KeywordAutomaton.Builder()
+                .add("cat", 1, false)
+                .add("cat", 2, true)
+                .build();
+
+        assertEquals(1, automaton.findMaxValue("concatenate", -1));
+        assertEquals(2, automaton.findMaxValue("the cat", -1));
+        assertTrue(new KeywordAutomaton.Builder().build().isEmpty());
+    }
+
+    @Test
+    public void findsAllValues() {
+        KeywordAutomaton automaton = new KeywordAutomaton.Builder()
+                .add("ab", 0, false)
+                .add("bc", 1, false)
+                .add("cd", 1, false)
+                .add("xy", 2, false)
+                .add("b", 3, true)
+                .build();
+
+        boolean[] found = new boolean[4];
+        automaton.findAll("abcd", found);
+        assertTrue(found[0]);
+        assertTrue(found[1]);
+        assertFalse(found[2]);
+        assertFalse(found[3]);
+    }
+}
@@ -0,0 +1,325 @@
+package org.floens.chan.core.manager;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WatchSchedulerTest {
+    private static final long SECOND = 1000;
+    private static final long MINUTE = 60 * SECOND;
+    private static final long HOUR = 60 * MINUTE;
+
+    private static final long MIN_INTERVAL = 15 * SECOND;
+    private static final long MAX_INTERVAL = HOUR;
+
+    // The timer of the watcher before the scheduler: every thread on the backoff of the thread
+    // loader, checked every 15 seconds.
+    private static final int[] WATCH_TIMEOUTS = {10, 15, 20, 30, 60, 90, 120, 180, 240, 300, 600, 1800, 3600};
+    private static final long FOREGROUND_INTERVAL = 15 * SECOND;
+
+    @Test
+    public void newThreadIsDueNow() {
+        WatchScheduler<String> scheduler = newScheduler(0.0);
+        scheduler.add("a", 1000);
+
+        assertEquals(1000, scheduler.nextWakeup());
+        assertEquals(Arrays.asList("a"), scheduler.takeDue(1000, 1000));
+        assertEquals(MIN_INTERVAL, scheduler.getInterval("a"));
+    }
+
+    @Test
+    public void emptySchedulerNeverWakes() {
+        WatchScheduler<String> scheduler = newScheduler(0.0);
+        assertEquals(Long.MAX_VALUE, scheduler.nextWakeup());
+        assertTrue(scheduler.takeDue(0, HOUR).isEmpty());
+    }
+
+    @Test
+    public void quietThreadBacksOffToMax() {
+        WatchScheduler<String> scheduler = newScheduler(0.0);
+        scheduler.add("a", 0);
+
+        long now = 0;
+        long previous = 0;
+        for (int i = 0; i < 30; i++) {
+            scheduler.loaded("a", now, 0);
+            long interval = scheduler.getInterval("a");
+            assertTrue(interval >= previous);
+            // Backed off gradually.
+            assertTrue(interval <= Math.max(MIN_INTERVAL, previous * 2));
+            previous = interval;
+            now += interval;
+        }
+        assertEquals(MAX_INTERVAL, previous);
+    }
+
+    @Test
+    public void learnsThePostRate() {
+        // One post a minute and one post every twenty minutes.
+        long fast = loadAtOwnInterval(MINUTE);
+        long slow = loadAtOwnInterval(20 * MINUTE);
+
+        // Loaded for about half a post.
+        assertTrue(fast >= 20 * SECOND && fast <= 40 * SECOND);
+        assertTrue(slow >= 5 * MINUTE && slow <= 15 * MINUTE);
+    }
+
+    @Test
+    public void failureBacksOff() {
+        WatchScheduler<String> scheduler = newScheduler(0.0);
+        scheduler.add("a", 0);
+        scheduler.loaded("a", 0, 0);
+        long interval = scheduler.getInterval("a");
+
+        scheduler.failed("a", 0);
+        assertTrue(scheduler.getInterval("a") > interval);
+        assertEquals(scheduler.getInterval("a"), scheduler.nextWakeup());
+    }
+
+    @Test
+    public void coalescesLoadsThatAreCloseTogether() {
+        WatchScheduler<String> scheduler = newScheduler(0.0);
+        scheduler.add("a", 0);
+        scheduler.add("b", 0);
+        scheduler.add("c", 0);
+        scheduler.loaded("a", 0, 0);
+        scheduler.loaded("b", 2 * SECOND, 0);
+        scheduler.loaded("c", 0, 0);
+        for (int i = 0; i < 5; i++) {
+            scheduler.failed("c", 0);
+        }
+
+        long wakeup = scheduler.nextWakeup();
+        assertEquals(MIN_INTERVAL, wakeup);
+        // b is taken two seconds early, c is too far away.
+        assertEquals(Arrays.asList("a", "b"), scheduler.takeDue(wakeup, wakeup));
+        assertTrue(scheduler.nextWakeup() > wakeup);
+    }
+
+    @Test
+    public void takesWhatIsDueBeforeTheNextWakeup() {
+        WatchScheduler<String> scheduler = newScheduler(0.0);
+        scheduler.add("a", 0);
+        scheduler.add("b", 0);
+        scheduler.loaded("a", 0, 0);
+        scheduler.loaded("b", 0, 0);
+        for (int i = 0; i < 12; i++) {
+            scheduler.failed("b", 0);
+        }
+
+        // Like the background alarm, every 15 minutes.
+        assertEquals(Arrays.asList("a"), scheduler.takeDue(0, 15 * MINUTE));
+    }
+
+    @Test
+    public void jitterSpreadsThreadsThatStartedTogether() {
+        WatchScheduler<Integer> scheduler = newScheduler(0.1);
+        for (int i = 0; i < 10; i++) {
+            scheduler.add(i, 0);
+            scheduler.loaded(i, 0, 0);
+            assertEquals(MIN_INTERVAL, scheduler.getInterval(i));
+        }
+
+        Set<Long> wakeups = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            long wakeup = scheduler.nextWakeup();
+            assertTrue(wakeup >= MIN_INTERVAL - MIN_INTERVAL / 10);
+            assertTrue(wakeup <= MIN_INTERVAL + MIN_INTERVAL / 10);
+            wakeups.add(wakeup);
+            scheduler.remove(i);
+        }
+        assertTrue(wakeups.size() > 1);
+    }
+
+    /**
+     * Watches a mix of threads for six hours of simulated time, with the old timer and with the
+     * scheduler. The scheduler must wake and load less for about the same freshness.
+     */
+    @Test
+    public void simulatedWatchingUsesFewerWakeupsAndRequests() {
+        // Posts per hour, and a thread that dies after the first hour.
+        Simulation simulation = new Simulation(6 * HOUR, new double[]{120, 60, 20, 6, 2, 0.5}, 120);
+
+        Result timer = simulation.timer();
+        Result scheduled = simulation.scheduler();
+        String results = "timer " + timer + ", scheduler " + scheduled;
+
+        // The timer wakes every interval, the scheduler skips some: 1298 of 1440.
+        assertEquals(results, 6 * HOUR / FOREGROUND_INTERVAL, timer.wakeups);
+        assertTrue(results, scheduled.wakeups < timer.wakeups * 0.95);
+        // 2129 requests instead of 2941.
+        assertTrue(results, scheduled.requests < timer.requests * 0.8);
+        assertTrue(results, scheduled.meanDelay() <= timer.meanDelay() * 1.1);
+    }
+
+    @Test
+    public void simulatedQuietThreadsWakeMuchLess() {
+        Simulation simulation = new Simulation(6 * HOUR, new double[]{20, 6, 6, 2, 0.5}, 20);
+
+        Result timer = simulation.timer();
+        Result scheduled = simulation.scheduler();
+        String results = "timer " + timer + ", scheduler " + scheduled;
+
+        // 235 wakeups instead of 1440, 440 requests instead of 1172.
+        assertTrue(results, scheduled.wakeups < timer.wakeups / 5);
+        assertTrue(results, scheduled.requests < timer.requests / 2);
+        assertTrue(results, scheduled.meanDelay() <= timer.meanDelay() * 1.1);
+    }
+
+    // Loads a thread with a post every period at the intervals of the scheduler, returns the
+    // interval it settled on.
+    private static long loadAtOwnInterval(long period) {
+        WatchScheduler<String> scheduler = newScheduler(0.0);
+        scheduler.add("a", 0);
+        long last = 0;
+        for (int i = 0; i < 100; i++) {
+            long now = scheduler.nextWakeup();
+            scheduler.takeDue(now, now);
+            scheduler.loaded("a", now, (int) (now / period - last / period));
+            last = now;
+        }
+        return scheduler.getInterval("a");
+    }
+
+    private static <K> WatchScheduler<K> newScheduler(double jitter) {
+        return new WatchScheduler<>(MIN_INTERVAL, MAX_INTERVAL, jitter, new Random(1));
+    }
+
+    /**
+     * Threads with posts at random times, at a constant rate.
+     */
+    private static class Simulation {
+        final long duration;
+        final List<long[]> threads = new ArrayList<>();
+
+        /**
+         * @param rates     posts per hour of the threads
+         * @param dyingRate posts per hour of a thread that dies after the first hour
+         */
+        Simulation(long duration, double[] rates, double dyingRate) {
+            this.duration = duration;
+            Random random = new Random(42);
+            for (double rate : rates) {
+                threads.add(poisson(random, rate, duration));
+            }
+            threads.add(poisson(random, dyingRate, HOUR));
+        }
+
+        Result timer() {
+            Result result = new Result(threads);
+            int[] timeout = new int[threads.size()];
+            long[] lastLoad = new long[threads.size()];
+            Arrays.fill(lastLoad, -HOUR);
+
+            for (long now = 0; now < duration; now += FOREGROUND_INTERVAL) {
+                result.wakeups++;
+                for (int i = 0; i < threads.size(); i++) {
+                    if (now >= lastLoad[i] + WATCH_TIMEOUTS[timeout[i]] * SECOND) {
+                        if (result.load(i, now) > 0) {
+                            timeout[i] = 0;
+                        } else {
+                            timeout[i] = Math.min(timeout[i] + 1, WATCH_TIMEOUTS.length - 1);
+                        }
+                        lastLoad[i] = now;
+                    }
+                }
+            }
+            result.finish(duration);
+            return result;
+        }
+
+        Result scheduler() {
+            Result result = new Result(threads);
+            WatchScheduler<Integer> scheduler =
+                    new WatchScheduler<>(MIN_INTERVAL, MAX_INTERVAL, 0.1, new Random(7));
+            for (int i = 0; i < threads.size(); i++) {
+                scheduler.add(i, 0);
+            }
+
+            long now;
+            while ((now = scheduler.nextWakeup()) < duration) {
+                result.wakeups++;
+                for (int i : scheduler.takeDue(now, now)) {
+                    scheduler.loaded(i, now, result.load(i, now));
+                }
+            }
+            result.finish(duration);
+            return result;
+        }
+
+        private static long[] poisson(Random random, double perHour, long to) {
+            List<Long> times = new ArrayList<>();
+            long time = 0;
+            while (true) {
+                time += (long) (-Math.log(1.0 - random.nextDouble()) / perHour * HOUR);
+                if (time >= to) {
+                    break;
+                }
+                times.add(time);
+            }
+            long[] result = new long[times.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = times.get(i);
+            }
+            return result;
+        }
+    }
+
+    private static class Result {
+        final List<long[]> threads;
+        // The number of posts of every thread that were seen.
+        final int[] seen;
+        int wakeups;
+        int requests;
+        long delayTotal;
+        int delayCount;
+
+        Result(List<long[]> threads) {
+            this.threads = threads;
+            seen = new int[threads.size()];
+        }
+
+        // Loads the thread, returns the new posts.
+        int load(int thread, long now) {
+            requests++;
+            long[] posts = threads.get(thread);
+            int newPosts = 0;
+            while (seen[thread] < posts.length && posts[seen[thread]] <= now) {
+                delayTotal += now - posts[seen[thread]];
+                delayCount++;
+                seen[thread]++;
+                newPosts++;
+            }
+            return newPosts;
+        }
+
+        // Posts that weren't seen count as seen at the end.
+        void finish(long end) {
+            for (int i = 0; i < threads.size(); i++) {
+                long[] posts = threads.get(i);
+                for (int j = seen[i]; j < posts.length; j++) {
+                    delayTotal += end - posts[j];
+                    delayCount++;
+                }
+            }
+        }
+
+        double meanDelay() {
+            return delayCount == 0 ? 0.0 : (double) delayTotal / delayCount;
+        }
+
+        @Override
+        public String toString() {
+            return "wakeups=" + wakeups + " requests=" + requests +
+                    " meanDelay=" + (long) (meanDelay() / SECOND) + "s";
+        }
+    }
+}
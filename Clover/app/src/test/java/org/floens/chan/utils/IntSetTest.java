@@ -0,0 +1,44 @@
+package org.floens.chan.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class IntSetTest {
+    @Test
+    public void addKeepsValuesSortedAndUnique() {
+        IntSet set = new IntSet();
+        assertTrue(set.add(5));
+        assertTrue(set.add(1));
+        assertTrue(set.add(9));
+        assertTrue(set.add(3));
+        assertFalse(set.add(5));
+
+        assertEquals(4, set.size());
+        assertArrayEquals(new int[]{1, 3, 5, 9}, set.toArray());
+        assertEquals(9, set.get(3));
+    }
+
+    @Test
+    public void removeAndContains() {
+        IntSet set = new IntSet(2);
+        for (int i = 0; i < 100; i++) {
+            set.add(i * 2);
+        }
+
+        assertTrue(set.contains(42));
+        assertFalse(set.contains(43));
+        assertTrue(set.remove(42));
+        assertFalse(set.remove(42));
+        assertFalse(set.contains(42));
+        assertEquals(99, set.size());
+
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertArrayEquals(new int[0], set.toArray());
+    }
+}
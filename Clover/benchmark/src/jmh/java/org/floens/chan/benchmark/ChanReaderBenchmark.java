@@ -0,0 +1,62 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.benchmark;
+
+import android.util.JsonReader;
+
+import org.floens.chan.core.model.Post;
+import org.floens.chan.core.model.orm.Loadable;
+import org.floens.chan.core.site.parser.ChanReader;
+import org.floens.chan.core.site.parser.FixtureQueues;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Collections;
+
+/**
+ * Only the json decoding of the readers, from the response bytes to the post builders.
+ */
+@State(Scope.Thread)
+public class ChanReaderBenchmark {
+    @Param({"CHAN4_THREAD_SMALL", "CHAN4_THREAD_HUGE", "CHAN4_CATALOG", "VICHAN_THREAD",
+            "VICHAN_CATALOG", "DVACH_THREAD", "DVACH_CATALOG"})
+    public Fixture fixture;
+
+    private ChanReader chanReader;
+    private Loadable loadable;
+
+    @Setup
+    public void setup() {
+        chanReader = fixture.site().chanReader();
+        loadable = fixture.loadable();
+        fixture.bytes();
+    }
+
+    @Benchmark
+    public Object read() throws Exception {
+        JsonReader reader = fixture.jsonReader();
+        try {
+            return FixtureQueues.read(chanReader, loadable, Collections.<Post>emptyList(), reader);
+        } finally {
+            reader.close();
+        }
+    }
+}
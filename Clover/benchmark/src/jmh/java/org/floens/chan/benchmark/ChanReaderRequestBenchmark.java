@@ -0,0 +1,102 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.benchmark;
+
+import org.floens.chan.core.model.Post;
+import org.floens.chan.core.site.loader.ChanLoaderResponse;
+import org.floens.chan.core.site.parser.ChanReaderRequest;
+import org.floens.chan.utils.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Collections;
+
+/**
+ * A first load of a fixture, from the body to the response that is delivered: reading, filtering
+ * and parsing the posts, the reply graph and the comments around the viewport.<br>
+ * The body is either buffered completely before reading it, like Volley does, or read as it
+ * comes in, like JsonReaderStreamingCall does.
+ */
+@State(Scope.Thread)
+public class ChanReaderRequestBenchmark {
+    // Reads from the network return at most a segment.
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    @Param({"CHAN4_THREAD_SMALL", "CHAN4_THREAD_HUGE", "CHAN4_CATALOG", "VICHAN_THREAD",
+            "DVACH_THREAD"})
+    public Fixture fixture;
+
+    @Param({"true", "false"})
+    public boolean buffered;
+
+    @Setup
+    public void setup() {
+        BenchmarkFilters.install();
+        fixture.bytes();
+    }
+
+    @Benchmark
+    public ChanLoaderResponse load() throws Exception {
+        ChanReaderRequest request = fixture.request(Collections.<Post>emptyList(), null);
+        try {
+            InputStream body = new ChunkedInputStream(fixture.bytes(), CHUNK_SIZE);
+            if (buffered) {
+                ByteArrayOutputStream os = new ByteArrayOutputStream();
+                IOUtils.copy(body, os);
+                body = new ByteArrayInputStream(os.toByteArray());
+            }
+            return request.readStream(body);
+        } finally {
+            // Don't let the prefetch of the other comments run into the next invocation.
+            request.cancel();
+        }
+    }
+
+    private static class ChunkedInputStream extends InputStream {
+        private final byte[] bytes;
+        private final int chunkSize;
+        private int position;
+
+        ChunkedInputStream(byte[] bytes, int chunkSize) {
+            this.bytes = bytes;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public int read() {
+            return position < bytes.length ? bytes[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position >= bytes.length) {
+                return -1;
+            }
+            int read = Math.min(Math.min(len, chunkSize), bytes.length - position);
+            System.arraycopy(bytes, position, b, off, read);
+            position += read;
+            return read;
+        }
+    }
+}
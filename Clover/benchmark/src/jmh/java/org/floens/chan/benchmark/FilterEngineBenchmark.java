@@ -0,0 +1,79 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.benchmark;
+
+import org.floens.chan.core.manager.CompiledFilters;
+import org.floens.chan.core.manager.FilterEngine;
+import org.floens.chan.core.model.Post;
+import org.floens.chan.core.model.orm.Board;
+import org.floens.chan.core.model.orm.Filter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * Finding the filter to apply to every post, like PostParseCallable does before a post is
+ * parsed. With the compiled filters, or by matching every filter one by one.
+ */
+@State(Scope.Thread)
+public class FilterEngineBenchmark {
+    @Param({"CHAN4_THREAD_HUGE", "CHAN4_CATALOG", "DVACH_THREAD"})
+    public Fixture fixture;
+
+    @Param({"true", "false"})
+    public boolean compiled;
+
+    private FilterEngine filterEngine;
+    private Board board;
+    private List<Filter> boardFilters;
+    private List<Post.Builder> builders;
+
+    @Setup
+    public void setup() {
+        filterEngine = BenchmarkFilters.install();
+        board = fixture.board();
+        boardFilters = BenchmarkFilters.forBoard(filterEngine, board);
+        // Matching doesn't change the builders.
+        builders = fixture.readBuilders();
+    }
+
+    @Benchmark
+    public int match() {
+        int matched = 0;
+        if (compiled) {
+            // Compiled once per request, the cached one is used after the first time.
+            CompiledFilters filters = filterEngine.getCompiledFilters(board);
+            for (int i = 0; i < builders.size(); i++) {
+                if (filters.match(builders.get(i)) != null) {
+                    matched++;
+                }
+            }
+        } else {
+            for (int i = 0; i < builders.size(); i++) {
+                if (BenchmarkFilters.matchOneByOne(filterEngine, boardFilters, builders.get(i)) != null) {
+                    matched++;
+                }
+            }
+        }
+        return matched;
+    }
+}
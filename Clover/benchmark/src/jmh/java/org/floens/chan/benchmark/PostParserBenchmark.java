@@ -0,0 +1,89 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.benchmark;
+
+import org.floens.chan.core.model.Post;
+import org.floens.chan.core.site.common.DefaultPostParser;
+import org.floens.chan.core.site.parser.PostParser;
+import org.floens.chan.ui.theme.Theme;
+import org.floens.chan.ui.theme.ThemeHelper;
+import org.floens.chan.utils.IntSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+
+/**
+ * Parsing the posts on one thread, with the comment html parsed by the CommentTokenizer or by
+ * the Jsoup path. Both run the style rules of the CommentParser of the site.
+ */
+@State(Scope.Thread)
+public class PostParserBenchmark {
+    @Param({"CHAN4_THREAD_HUGE", "CHAN4_CATALOG", "VICHAN_THREAD", "DVACH_THREAD"})
+    public Fixture fixture;
+
+    @Param({"true", "false"})
+    public boolean tokenizer;
+
+    private DefaultPostParser parser;
+    private Theme theme;
+    private PostParser.Callback callback;
+    private List<Post.Builder> builders;
+
+    @Setup
+    public void setup() {
+        parser = (DefaultPostParser) fixture.site().chanReader().getParser();
+        parser.setUseTokenizer(tokenizer);
+        theme = ThemeHelper.theme();
+
+        final IntSet internalIds = new IntSet();
+        for (Post.Builder builder : fixture.readBuilders()) {
+            internalIds.add(builder.id);
+        }
+        callback = new PostParser.Callback() {
+            @Override
+            public boolean isSaved(int postNo) {
+                return false;
+            }
+
+            @Override
+            public boolean isInternal(int postNo) {
+                return internalIds.contains(postNo);
+            }
+        };
+    }
+
+    // Parsing changes the builders, read them again for every parse.
+    @Setup(Level.Invocation)
+    public void readBuilders() {
+        builders = fixture.readBuilders();
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        for (int i = 0; i < builders.size(); i++) {
+            Post post = parser.parse(theme, builders.get(i), callback);
+            blackhole.consume(post.getComment());
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.cache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+/**
+ * A large file from a local server that sends every response at a limited rate, like a media
+ * server does per connection. In one stream, and in segments at the same time.
+ */
+@State(Scope.Benchmark)
+public class DownloadBenchmark {
+    private static final int LENGTH = 4 * 1024 * 1024;
+    // 6.4 MB/s per response.
+    private static final long THROTTLE_BYTES = 64 * 1024;
+    private static final long THROTTLE_PERIOD_MS = 10;
+
+    @Param({"1", "2", "3", "4"})
+    public int segments;
+
+    private MockWebServer server;
+    private OkHttpClient httpClient;
+    private File file;
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] bytes = new byte[LENGTH];
+        new Random(1).nextBytes(bytes);
+
+        server = new MockWebServer();
+        server.setDispatcher(new RangeDispatcher(bytes));
+        server.start();
+
+        httpClient = new OkHttpClient();
+        file = File.createTempFile("download", ".tmp");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        server.shutdown();
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    @Benchmark
+    public long download() throws IOException {
+        ResumableDownload download = new ResumableDownload(
+                httpClient, server.url("/file.webm").toString(), "benchmark", file);
+        // As if the scheduler had room for all of them.
+        download.segmented(segments, 0, new ResumableDownload.Slots() {
+            @Override
+            public int acquire(int wanted) {
+                return wanted;
+            }
+
+            @Override
+            public void release() {
+            }
+        });
+        download.execute((downloaded, total) -> {
+        });
+        if (download.getLength() != LENGTH) {
+            throw new IllegalStateException("Downloaded " + download.getLength());
+        }
+        return download.getLength();
+    }
+
+    private static class RangeDispatcher extends Dispatcher {
+        private final byte[] bytes;
+
+        RangeDispatcher(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            MockResponse response = new MockResponse()
+                    .setHeader("ETag", "\"file\"")
+                    .throttleBody(THROTTLE_BYTES, THROTTLE_PERIOD_MS, TimeUnit.MILLISECONDS);
+
+            // bytes=start- or bytes=start-end
+            String range = request.getHeader("Range");
+            if (range == null) {
+                return response.setBody(new Buffer().write(bytes));
+            }
+            String[] parts = range.substring("bytes=".length()).split("-", -1);
+            int start = Integer.parseInt(parts[0]);
+            int end = parts[1].isEmpty() ? bytes.length - 1 : Integer.parseInt(parts[1]);
+            return response.setResponseCode(206)
+                    .setHeader("Content-Range", "bytes " + start + "-" + end + "/" + bytes.length)
+                    .setBody(new Buffer().write(bytes, start, end - start + 1));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.database;
+
+import com.j256.ormlite.jdbc.JdbcConnectionSource;
+
+import org.floens.chan.benchmark.Sites;
+import org.floens.chan.core.model.orm.History;
+import org.floens.chan.core.model.orm.Loadable;
+import org.floens.chan.core.site.Site;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Loading the history table with its loadables from an sqlite database on disk, like the history
+ * screen does.
+ */
+@State(Scope.Benchmark)
+public class HistoryLoadBenchmark {
+    private static final String[] BOARDS = {"a", "g", "v", "tv", "int"};
+
+    @Param({"100", "10000"})
+    public int rows;
+
+    private File file;
+    private JdbcConnectionSource connectionSource;
+    private DatabaseManager databaseManager;
+    private DatabaseHelper helper;
+    private DatabaseLoadableManager cachedLoadableManager;
+
+    @Setup
+    public void setup() throws Exception {
+        Site site = Sites.get(Sites.Format.CHAN4);
+
+        file = File.createTempFile("history", ".db");
+        connectionSource = new JdbcConnectionSource("jdbc:sqlite:" + file.getAbsolutePath());
+        databaseManager = new DatabaseManager();
+        helper = new DatabaseHelper(connectionSource);
+
+        helper.historyDao.callBatchTasks(() -> {
+            for (int i = 0; i < rows; i++) {
+                Loadable loadable = Loadable.forThread(site, site.board(BOARDS[i % BOARDS.length]), 100000 + i, "Thread " + i);
+                helper.loadableDao.create(loadable);
+
+                History history = new History();
+                history.loadable = loadable;
+                history.date = i;
+                helper.historyDao.create(history);
+            }
+            return null;
+        });
+
+        cachedLoadableManager = new DatabaseLoadableManager(databaseManager, helper);
+        cachedLoadableManager.refreshForeign(helper.loadableDao.queryForAll());
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        connectionSource.close();
+        if (!file.delete()) {
+            throw new IOException("Could not delete " + file);
+        }
+    }
+
+    /**
+     * The first load after starting, all loadables are read from the database.
+     */
+    @Benchmark
+    public List<History> getHistory() throws Exception {
+        DatabaseLoadableManager loadableManager = new DatabaseLoadableManager(databaseManager, helper);
+        return new DatabaseHistoryManager(databaseManager, helper, loadableManager).getHistory().call();
+    }
+
+    /**
+     * The next loads, all loadables are already cached.
+     */
+    @Benchmark
+    public List<History> getHistoryCached() throws Exception {
+        return new DatabaseHistoryManager(databaseManager, helper, cachedLoadableManager).getHistory().call();
+    }
+
+    /**
+     * The first load with a query per row, like the history was loaded before the loadables of
+     * all rows were read at once.
+     */
+    @Benchmark
+    public List<History> getHistoryPerRow() throws Exception {
+        DatabaseLoadableManager loadableManager = new DatabaseLoadableManager(databaseManager, helper);
+        List<History> histories = helper.historyDao.queryBuilder().orderBy("date", false).query();
+        for (int i = 0; i < histories.size(); i++) {
+            History history = histories.get(i);
+            history.loadable = loadableManager.refreshForeign(history.loadable);
+        }
+        return histories;
+    }
+}
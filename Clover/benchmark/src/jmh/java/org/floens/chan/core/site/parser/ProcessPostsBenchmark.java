@@ -0,0 +1,83 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.site.parser;
+
+import android.util.JsonReader;
+
+import org.floens.chan.benchmark.Fixture;
+import org.floens.chan.core.model.Post;
+import org.floens.chan.core.site.loader.ChanLoaderResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ChanReaderRequest.processPosts on its own, for a first load and for a reload where every post
+ * is reused. The posts are parsed once in the setup.
+ */
+@State(Scope.Thread)
+public class ProcessPostsBenchmark {
+    @Param({"CHAN4_THREAD_HUGE", "CHAN4_CATALOG", "DVACH_THREAD"})
+    public Fixture fixture;
+
+    @Param({"false", "true"})
+    public boolean reload;
+
+    private ChanLoaderResponse first;
+
+    private ChanReaderRequest request;
+    private ChanReaderProcessingQueue queue;
+    private List<Post> allPosts;
+
+    @Setup
+    public void setup() throws Exception {
+        ChanReaderRequest firstRequest = fixture.request(Collections.<Post>emptyList(), null);
+        first = firstRequest.readStream(new ByteArrayInputStream(fixture.bytes()));
+        firstRequest.cancel();
+    }
+
+    // processPosts changes the reply graph of the request and sorts the list, start over.
+    @Setup(Level.Invocation)
+    public void prepare() throws Exception {
+        List<Post> cached = reload ? first.posts : Collections.<Post>emptyList();
+        request = fixture.request(cached, reload ? first.replyGraph : null);
+
+        JsonReader reader = fixture.jsonReader();
+        try {
+            queue = FixtureQueues.read(fixture.site().chanReader(), fixture.loadable(), cached, reader);
+        } finally {
+            reader.close();
+        }
+
+        // The parsed posts, the reused ones on a reload.
+        allPosts = new ArrayList<>(first.posts);
+    }
+
+    @Benchmark
+    public ChanLoaderResponse processPosts() throws Exception {
+        return request.processPosts(queue, allPosts);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.benchmark;
+
+import org.floens.chan.Chan;
+import org.floens.chan.core.manager.FilterEngine;
+import org.floens.chan.core.manager.FilterType;
+import org.floens.chan.core.model.Post;
+import org.floens.chan.core.model.orm.Board;
+import org.floens.chan.core.model.orm.Filter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A filter list like users set up: some words, a few regexes, tripcodes, ids and filenames.
+ * Padded to 150 filters with ones that rarely match, the size of the lists of heavy users.
+ */
+public class BenchmarkFilters {
+    private static boolean installed;
+
+    /**
+     * Add the filters to the FilterEngine, once.
+     *
+     * @return the engine, with the filters enabled
+     */
+    public static synchronized FilterEngine install() {
+        // The engine needs the injector of the sites.
+        Sites.get(Sites.Format.CHAN4);
+        FilterEngine filterEngine = Chan.injector().instance(FilterEngine.class);
+        if (!installed) {
+            installed = true;
+            addTo(filterEngine);
+        }
+        return filterEngine;
+    }
+
+    /**
+     * Add the filters to an engine, {@link #install()} adds them to the one of the injector.
+     */
+    public static void addTo(FilterEngine filterEngine) {
+        int comment = FilterType.COMMENT.flag;
+        int subjectComment = FilterType.SUBJECT.flag | FilterType.COMMENT.flag;
+        add(filterEngine, subjectComment, "shill");
+        add(filterEngine, subjectComment, "coomer doomer");
+        add(filterEngine, comment, "soy*");
+        add(filterEngine, comment, "\"release patch\"");
+        add(filterEngine, comment, "/\\b(?:linux|windows) (?:update|install)\\b/i");
+        add(filterEngine, comment, "/\\bke+k\\b/i");
+        add(filterEngine, comment, "/youtube\\.com\\/watch/");
+        add(filterEngine, FilterType.SUBJECT.flag, "/^fixture/i");
+        add(filterEngine, FilterType.TRIPCODE.flag, "!!Abc0123defG");
+        add(filterEngine, FilterType.NAME.flag, "Moot");
+        add(filterEngine, FilterType.ID.flag, "a1B2c3D4");
+        add(filterEngine, FilterType.FILENAME.flag, "/^IMG_\\d+$/");
+        add(filterEngine, FilterType.FILENAME.flag, "Screenshot*");
+
+        for (int i = 0; i < 90; i++) {
+            add(filterEngine, subjectComment, "spamword" + i);
+        }
+        for (int i = 0; i < 30; i++) {
+            add(filterEngine, comment, "/\\bspam" + i + "[a-z]*\\b/i");
+        }
+        for (int i = 0; i < 10; i++) {
+            add(filterEngine, comment, "\"buy cheap " + i + "\"");
+        }
+        for (int i = 0; i < 7; i++) {
+            add(filterEngine, FilterType.ID.flag | FilterType.TRIPCODE.flag, "!!Spam" + i);
+        }
+    }
+
+    /**
+     * The enabled filters for the board, the way the filters were selected before they were
+     * compiled.
+     */
+    public static List<Filter> forBoard(FilterEngine filterEngine, Board board) {
+        List<Filter> filters = new ArrayList<>();
+        for (Filter filter : filterEngine.getEnabledFilters()) {
+            if (filterEngine.matchesBoard(filter, board)) {
+                filters.add(filter.copy());
+            }
+        }
+        return filters;
+    }
+
+    /**
+     * Match the filters one by one, the way PostParseCallable did before the filters were
+     * compiled.
+     *
+     * @return the last matching filter, or {@code null}
+     */
+    public static Filter matchOneByOne(FilterEngine filterEngine, List<Filter> filters, Post.Builder post) {
+        Filter last = null;
+        for (int i = 0; i < filters.size(); i++) {
+            Filter filter = filters.get(i);
+            if (filterEngine.matches(filter, post)) {
+                last = filter;
+            }
+        }
+        return last;
+    }
+
+    private static void add(FilterEngine filterEngine, int type, String pattern) {
+        Filter filter = new Filter();
+        filter.type = type;
+        filter.pattern = pattern;
+        filter.action = FilterEngine.FilterAction.HIDE.id;
+        filterEngine.createOrUpdateFilter(filter);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.benchmark;
+
+import android.util.JsonReader;
+
+import org.floens.chan.core.model.Post;
+import org.floens.chan.core.model.ReplyGraph;
+import org.floens.chan.core.model.orm.Board;
+import org.floens.chan.core.model.orm.Loadable;
+import org.floens.chan.core.pool.ParseScheduler;
+import org.floens.chan.core.site.Site;
+import org.floens.chan.core.site.loader.ChanLoaderRequestParams;
+import org.floens.chan.core.site.parser.ChanReaderRequest;
+import org.floens.chan.core.site.parser.FixtureQueues;
+import org.floens.chan.utils.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The json responses in src/main/resources/fixtures. They are generated, but shaped like the
+ * responses of the sites: 4chan (FutabaChanReader), vichan and 2ch.hk. Captures of real responses
+ * can be added in the captures directory of this module, see CommentTokenizerFixtureTest.
+ */
+public enum Fixture {
+    CHAN4_THREAD_SMALL("chan4_thread_small", Sites.Format.CHAN4, "g", 470000000),
+    CHAN4_THREAD_HUGE("chan4_thread_huge", Sites.Format.CHAN4, "vg", 480000000),
+    CHAN4_CATALOG("chan4_catalog", Sites.Format.CHAN4, "g", -1),
+    VICHAN_THREAD("vichan_thread", Sites.Format.VICHAN, "tech", 12000),
+    VICHAN_CATALOG("vichan_catalog", Sites.Format.VICHAN, "tech", -1),
+    DVACH_THREAD("dvach_thread", Sites.Format.DVACH, "b", 290000000),
+    DVACH_CATALOG("dvach_catalog", Sites.Format.DVACH, "b", -1);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public final String fileName;
+    public final Sites.Format format;
+    public final String boardCode;
+    public final int threadNo;
+
+    private byte[] bytes;
+
+    Fixture(String name, Sites.Format format, String boardCode, int threadNo) {
+        this.fileName = "fixtures/" + name + ".json";
+        this.format = format;
+        this.boardCode = boardCode;
+        this.threadNo = threadNo;
+    }
+
+    public boolean isThread() {
+        return threadNo >= 0;
+    }
+
+    public synchronized byte[] bytes() {
+        if (bytes == null) {
+            InputStream is = Fixture.class.getClassLoader().getResourceAsStream(fileName);
+            if (is == null) {
+                throw new IllegalStateException("Missing fixture " + fileName);
+            }
+            try {
+                ByteArrayOutputStream os = new ByteArrayOutputStream();
+                IOUtils.copy(is, os);
+                bytes = os.toByteArray();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                IOUtils.closeQuietly(is);
+            }
+        }
+        return bytes;
+    }
+
+    public JsonReader jsonReader() {
+        return new JsonReader(new InputStreamReader(new ByteArrayInputStream(bytes()), UTF8));
+    }
+
+    public Site site() {
+        return Sites.get(format);
+    }
+
+    public Board board() {
+        return Board.fromSiteNameCode(site(), boardCode, boardCode);
+    }
+
+    /**
+     * A new loadable for the fixture, without an id so that no snapshots are written.
+     */
+    public Loadable loadable() {
+        Board board = board();
+        return isThread() ? Loadable.forThread(board.site, board, threadNo) : Loadable.forCatalog(board);
+    }
+
+    /**
+     * A new request for the fixture, as ChanThreadLoader makes them. The response is read with
+     * {@link ChanReaderRequest#readStream}, it isn't delivered.
+     *
+     * @param cached     the posts of the previous load, or an empty list
+     * @param replyGraph the reply graph of the previous load, or {@code null}
+     */
+    public ChanReaderRequest request(List<Post> cached, ReplyGraph replyGraph) {
+        ParseScheduler.Priority priority = isThread() ?
+                ParseScheduler.Priority.FOREGROUND_THREAD : ParseScheduler.Priority.FOREGROUND_CATALOG;
+        return new ChanReaderRequest(new ChanLoaderRequestParams(loadable(), site().chanReader(),
+                cached, replyGraph, priority, response -> {
+        }, error -> {
+        }));
+    }
+
+    /**
+     * Read the posts of the fixture with the reader of its site, like a first load.
+     *
+     * @return new builders of the posts, in the order of the response
+     */
+    public List<Post.Builder> readBuilders() {
+        return readBuilders(site(), loadable(), bytes());
+    }
+
+    /**
+     * Read the posts of a response with the reader of the site, like a first load.
+     *
+     * @return new builders of the posts, in the order of the response
+     */
+    public static List<Post.Builder> readBuilders(Site site, Loadable loadable, byte[] json) {
+        JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(json), UTF8));
+        try {
+            return FixtureQueues.toParse(FixtureQueues.read(site.chanReader(), loadable,
+                    Collections.<Post>emptyList(), reader));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.benchmark;
+
+import org.floens.chan.core.model.Post;
+import org.floens.chan.core.model.orm.Board;
+import org.floens.chan.core.model.orm.Loadable;
+import org.floens.chan.core.site.SiteEndpoints;
+
+import java.util.Map;
+
+import okhttp3.HttpUrl;
+
+/**
+ * Endpoints for the fixture sites. The urls are built like the 4chan ones, so that the readers
+ * do the same work, but they point nowhere.
+ */
+public class FixtureEndpoints implements SiteEndpoints {
+    private final HttpUrl root;
+
+    public FixtureEndpoints(String host) {
+        root = new HttpUrl.Builder()
+                .scheme("https")
+                .host(host)
+                .build();
+    }
+
+    @Override
+    public HttpUrl catalog(Board board) {
+        return root.newBuilder()
+                .addPathSegment(board.code)
+                .addPathSegment("catalog.json")
+                .build();
+    }
+
+    @Override
+    public HttpUrl thread(Board board, Loadable loadable) {
+        return root.newBuilder()
+                .addPathSegment(board.code)
+                .addPathSegment("thread")
+                .addPathSegment(loadable.no + ".json")
+                .build();
+    }
+
+    @Override
+    public HttpUrl imageUrl(Post.Builder post, Map<String, String> arg) {
+        return file(post, "src", arg);
+    }
+
+    @Override
+    public HttpUrl thumbnailUrl(Post.Builder post, boolean spoiler, Map<String, String> arg) {
+        return file(post, spoiler ? "spoiler" : "thumb", arg);
+    }
+
+    @Override
+    public HttpUrl icon(Post.Builder post, String icon, Map<String, String> arg) {
+        return file(post, icon, arg);
+    }
+
+    @Override
+    public HttpUrl boards() {
+        return root.newBuilder().addPathSegment("boards.json").build();
+    }
+
+    @Override
+    public HttpUrl archive(Board board) {
+        return null;
+    }
+
+    @Override
+    public HttpUrl threadIndex(Board board) {
+        return null;
+    }
+
+    @Override
+    public HttpUrl reply(Loadable thread) {
+        return null;
+    }
+
+    @Override
+    public HttpUrl delete(Post post) {
+        return null;
+    }
+
+    @Override
+    public HttpUrl report(Post post) {
+        return null;
+    }
+
+    @Override
+    public HttpUrl login() {
+        return null;
+    }
+
+    private HttpUrl file(Post.Builder post, String kind, Map<String, String> arg) {
+        HttpUrl.Builder url = root.newBuilder()
+                .addPathSegment(post.board.code)
+                .addPathSegment(kind);
+        if (arg != null) {
+            for (String value : arg.values()) {
+                url.addPathSegments(value);
+            }
+        }
+        return url.build();
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.benchmark;
+
+import org.codejargon.feather.Provides;
+import org.floens.chan.Chan;
+import org.floens.chan.core.cache.ThreadSnapshotStore;
+import org.floens.chan.core.model.orm.Board;
+import org.floens.chan.core.pool.ParseScheduler;
+import org.floens.chan.core.repository.SiteRepository;
+import org.floens.chan.core.site.Site;
+import org.floens.chan.core.site.SiteEndpoints;
+import org.floens.chan.core.site.common.CommonSite;
+import org.floens.chan.core.site.common.FutabaChanReader;
+import org.floens.chan.core.site.common.vichan.VichanApi;
+import org.floens.chan.core.site.common.vichan.VichanCommentParser;
+import org.floens.chan.core.site.parser.ChanReader;
+import org.floens.chan.core.site.sites.dvach.DvachFixtures;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import javax.inject.Singleton;
+
+/**
+ * The sites of the fixtures, set up like Chan4, Chan8 and Dvach set up their reader and parser.
+ */
+public class Sites {
+    public enum Format {
+        CHAN4,
+        VICHAN,
+        DVACH
+    }
+
+    private static Site chan4;
+    private static CommonSite vichan;
+    private static CommonSite dvach;
+
+    public static synchronized Site get(Format format) {
+        if (chan4 == null) {
+            initialize();
+        }
+
+        switch (format) {
+            case CHAN4:
+                return chan4;
+            case VICHAN:
+                return vichan;
+            case DVACH:
+                return dvach;
+            default:
+                throw new IllegalArgumentException();
+        }
+    }
+
+    private static void initialize() {
+        Chan.initialize(new BenchmarkModule());
+
+        chan4 = new FutabaSite(1, "4chan", new FixtureEndpoints("a.4cdn.invalid"));
+
+        vichan = new CommonSite(2, "vichan") {
+        };
+        vichan.setEndpoints(new FixtureEndpoints("vichan.invalid"));
+        vichan.setApi(new VichanApi(vichan));
+        vichan.setParser(new VichanCommentParser());
+
+        dvach = new CommonSite(3, "2ch.hk") {
+        };
+        dvach.setEndpoints(new FixtureEndpoints("2ch.invalid"));
+        dvach.setApi(DvachFixtures.createApi(dvach));
+        dvach.setParser(new VichanCommentParser());
+
+        SiteRepository.add(chan4);
+        SiteRepository.add(vichan);
+        SiteRepository.add(dvach);
+    }
+
+    private static class FutabaSite implements Site {
+        private final int id;
+        private final String name;
+        private final SiteEndpoints endpoints;
+        private final ChanReader chanReader = new FutabaChanReader();
+
+        FutabaSite(int id, String name, SiteEndpoints endpoints) {
+            this.id = id;
+            this.name = name;
+            this.endpoints = endpoints;
+        }
+
+        @Override
+        public int id() {
+            return id;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public SiteEndpoints endpoints() {
+            return endpoints;
+        }
+
+        @Override
+        public ChanReader chanReader() {
+            return chanReader;
+        }
+
+        @Override
+        public Board board(String code) {
+            return Board.fromSiteNameCode(this, code, code);
+        }
+    }
+
+    /**
+     * The singletons the loader injects that aren't stubbed, the rest is created by Feather.
+     */
+    public static class BenchmarkModule {
+        @Provides
+        @Singleton
+        public ThreadSnapshotStore provideThreadSnapshotStore() {
+            File directory;
+            try {
+                directory = Files.createTempDirectory("snapshots").toFile();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            directory.deleteOnExit();
+            return new ThreadSnapshotStore(directory, 1024 * 1024);
+        }
+
+        @Provides
+        @Singleton
+        public ParseScheduler provideParseScheduler() {
+            return new ParseScheduler();
+        }
+    }
+}
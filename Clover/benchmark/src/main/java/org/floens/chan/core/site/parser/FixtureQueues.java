@@ -0,0 +1,49 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.site.parser;
+
+import android.util.JsonReader;
+
+import org.floens.chan.core.model.Post;
+import org.floens.chan.core.model.orm.Loadable;
+
+import java.util.List;
+
+/**
+ * Reads a response with a site reader into a processing queue, like ChanReaderRequest does.
+ */
+public class FixtureQueues {
+    public static ChanReaderProcessingQueue read(ChanReader chanReader, Loadable loadable,
+                                                 List<Post> cached, JsonReader reader) throws Exception {
+        ChanReaderProcessingQueue queue = new ChanReaderProcessingQueue(cached, loadable);
+        if (loadable.isThreadMode()) {
+            chanReader.loadThread(reader, queue);
+        } else {
+            chanReader.loadCatalog(reader, queue);
+        }
+        return queue;
+    }
+
+    public static List<Post.Builder> toParse(ChanReaderProcessingQueue queue) {
+        return queue.getToParse();
+    }
+
+    public static List<Post> toReuse(ChanReaderProcessingQueue queue) {
+        return queue.getToReuse();
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package android.text;
+
+public class SpannableString extends SpannableStringInternal implements Spannable {
+    public SpannableString(CharSequence source) {
+        super(source, 0, source.length());
+    }
+
+    private SpannableString(CharSequence source, int start, int end) {
+        super(source, start, end);
+    }
+
+    public static SpannableString valueOf(CharSequence source) {
+        if (source instanceof SpannableString) {
+            return (SpannableString) source;
+        }
+        return new SpannableString(source);
+    }
+
+    @Override
+    public void setSpan(Object what, int start, int end, int flags) {
+        addSpan(what, start, end, flags);
+    }
+
+    @Override
+    public void removeSpan(Object what) {
+        deleteSpan(what);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new SpannableString(this, start, end);
+    }
+}
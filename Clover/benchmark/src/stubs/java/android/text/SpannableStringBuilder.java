@@ -0,0 +1,94 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package android.text;
+
+public class SpannableStringBuilder extends SpannableStringInternal implements Spannable, Appendable {
+    public SpannableStringBuilder() {
+        super("", 0, 0);
+    }
+
+    public SpannableStringBuilder(CharSequence text) {
+        super(text, 0, text.length());
+    }
+
+    public SpannableStringBuilder(CharSequence text, int start, int end) {
+        super(text, start, end);
+    }
+
+    public SpannableStringBuilder replace(int start, int end, CharSequence tb) {
+        return replace(start, end, tb, 0, tb.length());
+    }
+
+    public SpannableStringBuilder replace(int start, int end, CharSequence tb, int tbStart, int tbEnd) {
+        if (start < 0 || end > text.length() || start > end) {
+            throw new IndexOutOfBoundsException("replace " + start + "..." + end +
+                    " outside of length " + text.length());
+        }
+
+        text.replace(start, end, tb.subSequence(tbStart, tbEnd).toString());
+        moveSpans(start, end, tbEnd - tbStart);
+        if (tb instanceof Spanned) {
+            copySpans((Spanned) tb, tbStart, tbEnd, start);
+        }
+        return this;
+    }
+
+    public SpannableStringBuilder insert(int where, CharSequence tb) {
+        return replace(where, where, tb);
+    }
+
+    public SpannableStringBuilder delete(int start, int end) {
+        return replace(start, end, "");
+    }
+
+    public void clear() {
+        replace(0, length(), "");
+    }
+
+    @Override
+    public SpannableStringBuilder append(CharSequence text) {
+        int length = length();
+        return replace(length, length, text);
+    }
+
+    @Override
+    public SpannableStringBuilder append(CharSequence text, int start, int end) {
+        int length = length();
+        return replace(length, length, text, start, end);
+    }
+
+    @Override
+    public SpannableStringBuilder append(char text) {
+        return append(String.valueOf(text));
+    }
+
+    @Override
+    public void setSpan(Object what, int start, int end, int flags) {
+        addSpan(what, start, end, flags);
+    }
+
+    @Override
+    public void removeSpan(Object what) {
+        deleteSpan(what);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new SpannableStringBuilder(this, start, end);
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package android.text;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+
+/**
+ * Text with spans, the storage of the span stubs. Spans are kept in plain arrays in the order
+ * they were set, enough to run the parsers on the JVM with comparable costs.
+ */
+abstract class SpannableStringInternal implements Spanned {
+    StringBuilder text;
+
+    private Object[] spans = new Object[0];
+    private int[] starts = new int[0];
+    private int[] ends = new int[0];
+    private int[] flags = new int[0];
+    private int spanCount;
+
+    SpannableStringInternal(CharSequence source, int start, int end) {
+        text = new StringBuilder(end - start);
+        text.append(source, start, end);
+        if (source instanceof Spanned) {
+            copySpans((Spanned) source, start, end, 0);
+        }
+    }
+
+    void copySpans(Spanned source, int start, int end, int offset) {
+        Object[] sourceSpans = source.getSpans(start, end, Object.class);
+        for (Object span : sourceSpans) {
+            int spanStart = Math.max(start, source.getSpanStart(span));
+            int spanEnd = Math.min(end, source.getSpanEnd(span));
+            if (spanStart > spanEnd) {
+                continue;
+            }
+            addSpan(span, spanStart - start + offset, spanEnd - start + offset,
+                    source.getSpanFlags(span));
+        }
+    }
+
+    void addSpan(Object what, int start, int end, int flag) {
+        if (start < 0 || end > text.length() || start > end) {
+            throw new IndexOutOfBoundsException("span " + start + "..." + end +
+                    " outside of length " + text.length());
+        }
+
+        int index = indexOf(what);
+        if (index >= 0) {
+            starts[index] = start;
+            ends[index] = end;
+            flags[index] = flag;
+            return;
+        }
+
+        if (spanCount == spans.length) {
+            int capacity = Math.max(4, spanCount * 2);
+            spans = Arrays.copyOf(spans, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+        }
+        spans[spanCount] = what;
+        starts[spanCount] = start;
+        ends[spanCount] = end;
+        flags[spanCount] = flag;
+        spanCount++;
+    }
+
+    void deleteSpan(Object what) {
+        int index = indexOf(what);
+        if (index >= 0) {
+            removeAt(index);
+        }
+    }
+
+    /**
+     * Move the spans for text that replaced the range {@code start..end} with {@code length}
+     * characters. Spans that enclose the range grow or shrink with it, spans after it shift.
+     */
+    void moveSpans(int start, int end, int length) {
+        int delta = length - (end - start);
+        for (int i = spanCount - 1; i >= 0; i--) {
+            int spanStart = starts[i];
+            int spanEnd = ends[i];
+
+            if (spanStart >= end) {
+                spanStart += delta;
+            } else if (spanStart > start) {
+                spanStart = start;
+            }
+
+            if (spanEnd > end || (spanEnd == end && start != end)) {
+                spanEnd += delta;
+            } else if (spanEnd > start) {
+                spanEnd = start;
+            }
+
+            if (spanEnd < spanStart) {
+                spanEnd = spanStart;
+            }
+
+            if (spanStart == spanEnd && starts[i] != ends[i]) {
+                // All of its text was removed.
+                removeAt(i);
+            } else {
+                starts[i] = spanStart;
+                ends[i] = spanEnd;
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T[] getSpans(int queryStart, int queryEnd, Class<T> type) {
+        int count = 0;
+        T[] result = (T[]) Array.newInstance(type, spanCount);
+        for (int i = 0; i < spanCount; i++) {
+            int spanStart = starts[i];
+            int spanEnd = ends[i];
+            if (spanStart > queryEnd || spanEnd < queryStart) {
+                continue;
+            }
+            if (spanStart != spanEnd && queryStart != queryEnd &&
+                    (spanStart == queryEnd || spanEnd == queryStart)) {
+                continue;
+            }
+            if (type.isInstance(spans[i])) {
+                result[count++] = (T) spans[i];
+            }
+        }
+        return count == spanCount ? result : Arrays.copyOf(result, count);
+    }
+
+    @Override
+    public int getSpanStart(Object tag) {
+        int index = indexOf(tag);
+        return index >= 0 ? starts[index] : -1;
+    }
+
+    @Override
+    public int getSpanEnd(Object tag) {
+        int index = indexOf(tag);
+        return index >= 0 ? ends[index] : -1;
+    }
+
+    @Override
+    public int getSpanFlags(Object tag) {
+        int index = indexOf(tag);
+        return index >= 0 ? flags[index] : 0;
+    }
+
+    @Override
+    public int nextSpanTransition(int start, int limit, Class type) {
+        if (type == null) {
+            type = Object.class;
+        }
+        for (int i = 0; i < spanCount; i++) {
+            if (!type.isInstance(spans[i])) {
+                continue;
+            }
+            if (starts[i] > start && starts[i] < limit) {
+                limit = starts[i];
+            }
+            if (ends[i] > start && ends[i] < limit) {
+                limit = ends[i];
+            }
+        }
+        return limit;
+    }
+
+    @Override
+    public int length() {
+        return text.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return text.charAt(index);
+    }
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+
+    private int indexOf(Object what) {
+        for (int i = 0; i < spanCount; i++) {
+            if (spans[i] == what) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void removeAt(int index) {
+        int move = spanCount - index - 1;
+        System.arraycopy(spans, index + 1, spans, index, move);
+        System.arraycopy(starts, index + 1, starts, index, move);
+        System.arraycopy(ends, index + 1, ends, index, move);
+        System.arraycopy(flags, index + 1, flags, index, move);
+        spanCount--;
+        spans[spanCount] = null;
+    }
+}
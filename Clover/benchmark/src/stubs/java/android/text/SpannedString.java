@@ -0,0 +1,40 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package android.text;
+
+public final class SpannedString extends SpannableStringInternal {
+    public SpannedString(CharSequence source) {
+        super(source, 0, source.length());
+    }
+
+    private SpannedString(CharSequence source, int start, int end) {
+        super(source, start, end);
+    }
+
+    public static SpannedString valueOf(CharSequence source) {
+        if (source instanceof SpannedString) {
+            return (SpannedString) source;
+        }
+        return new SpannedString(source);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new SpannedString(this, start, end);
+    }
+}
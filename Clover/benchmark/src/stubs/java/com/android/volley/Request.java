@@ -0,0 +1,88 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.android.volley;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The parts of the Volley request that the readers extend, requests are never sent.
+ */
+public abstract class Request<T> implements Comparable<Request<T>> {
+    public interface Method {
+        int GET = 0;
+        int POST = 1;
+    }
+
+    public enum Priority {
+        LOW,
+        NORMAL,
+        HIGH,
+        IMMEDIATE
+    }
+
+    private final int method;
+    private final String url;
+    private final Response.ErrorListener errorListener;
+    private volatile boolean canceled;
+
+    public Request(int method, String url, Response.ErrorListener errorListener) {
+        this.method = method;
+        this.url = url;
+        this.errorListener = errorListener;
+    }
+
+    public int getMethod() {
+        return method;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public Priority getPriority() {
+        return Priority.NORMAL;
+    }
+
+    public Map<String, String> getHeaders() throws AuthFailureError {
+        return Collections.emptyMap();
+    }
+
+    public void cancel() {
+        canceled = true;
+    }
+
+    public boolean isCanceled() {
+        return canceled;
+    }
+
+    public void deliverError(VolleyError error) {
+        if (errorListener != null) {
+            errorListener.onErrorResponse(error);
+        }
+    }
+
+    protected abstract Response<T> parseNetworkResponse(NetworkResponse response);
+
+    protected abstract void deliverResponse(T response);
+
+    @Override
+    public int compareTo(Request<T> other) {
+        return other.getPriority().ordinal() - getPriority().ordinal();
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.android.volley;
+
+public class Response<T> {
+    public interface Listener<T> {
+        void onResponse(T response);
+    }
+
+    public interface ErrorListener {
+        void onErrorResponse(VolleyError error);
+    }
+
+    public final T result;
+    public final Cache.Entry cacheEntry;
+    public final VolleyError error;
+
+    private Response(T result, Cache.Entry cacheEntry) {
+        this.result = result;
+        this.cacheEntry = cacheEntry;
+        this.error = null;
+    }
+
+    private Response(VolleyError error) {
+        this.result = null;
+        this.cacheEntry = null;
+        this.error = error;
+    }
+
+    public static <T> Response<T> success(T result, Cache.Entry cacheEntry) {
+        return new Response<>(result, cacheEntry);
+    }
+
+    public static <T> Response<T> error(VolleyError error) {
+        return new Response<>(error);
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.database;
+
+import org.floens.chan.core.model.orm.Filter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+public class DatabaseFilterManager {
+    private final List<Filter> filters = new ArrayList<>();
+    private int nextId = 1;
+
+    public Callable<Filter> createFilter(final Filter filter) {
+        return () -> {
+            filter.id = nextId++;
+            filters.add(filter);
+            return filter;
+        };
+    }
+
+    public Callable<Void> deleteFilter(final Filter filter) {
+        return () -> {
+            filters.remove(filter);
+            return null;
+        };
+    }
+
+    public Callable<Filter> updateFilter(final Filter filter) {
+        return () -> filter;
+    }
+
+    public Callable<List<Filter>> getFilters() {
+        return () -> new ArrayList<>(filters);
+    }
+}
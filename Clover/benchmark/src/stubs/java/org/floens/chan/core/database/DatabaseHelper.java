@@ -0,0 +1,57 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.database;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.table.TableUtils;
+
+import org.floens.chan.core.model.orm.History;
+import org.floens.chan.core.model.orm.Loadable;
+import org.floens.chan.core.model.orm.Pin;
+
+import java.sql.SQLException;
+
+/**
+ * The daos of the loadable, pin and history tables, on a JDBC connection source instead of the
+ * android sqlite helper.
+ */
+public class DatabaseHelper {
+    public Dao<Pin, Integer> pinDao;
+    public Dao<Loadable, Integer> loadableDao;
+    public Dao<History, Integer> historyDao;
+
+    private final ConnectionSource connectionSource;
+
+    public DatabaseHelper(ConnectionSource connectionSource) throws SQLException {
+        this.connectionSource = connectionSource;
+
+        TableUtils.createTableIfNotExists(connectionSource, Loadable.class);
+        TableUtils.createTableIfNotExists(connectionSource, Pin.class);
+        TableUtils.createTableIfNotExists(connectionSource, History.class);
+
+        pinDao = DaoManager.createDao(connectionSource, Pin.class);
+        loadableDao = DaoManager.createDao(connectionSource, Loadable.class);
+        historyDao = DaoManager.createDao(connectionSource, History.class);
+    }
+
+    public ConnectionSource getConnectionSource() {
+        return connectionSource;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.database;
+
+import com.j256.ormlite.dao.Dao;
+
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+
+import javax.inject.Singleton;
+
+/**
+ * The database managers the loader uses, kept in memory. Tasks run on the calling thread.
+ */
+@Singleton
+public class DatabaseManager {
+    private final DatabaseFilterManager databaseFilterManager = new DatabaseFilterManager();
+    private final DatabaseSavedReplyManager databaseSavedReplyManager = new DatabaseSavedReplyManager();
+
+    public DatabaseFilterManager getDatabaseFilterManager() {
+        return databaseFilterManager;
+    }
+
+    public DatabaseSavedReplyManager getDatabaseSavedReplyManager() {
+        return databaseSavedReplyManager;
+    }
+
+    /*package*/ void trimTable(Dao dao, String table, long trigger, long trim) {
+        try {
+            if (dao.countOf() > trigger) {
+                dao.executeRaw("DELETE FROM " + table + " WHERE id IN (SELECT id FROM " + table + " ORDER BY id ASC LIMIT ?)", String.valueOf(trim));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static <T> Callable<T> read(Callable<T> taskCallable) {
+        return taskCallable;
+    }
+
+    public <T> T runTask(Callable<T> taskCallable) {
+        try {
+            return taskCallable.call();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
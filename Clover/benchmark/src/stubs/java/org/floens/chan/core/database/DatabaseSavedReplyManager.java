@@ -0,0 +1,43 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.database;
+
+import org.floens.chan.core.model.orm.Board;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Saved replies by post number, looked up like the app does.
+ */
+public class DatabaseSavedReplyManager {
+    private final Map<Integer, String> savedRepliesByNo = new HashMap<>();
+
+    public boolean isSaved(Board board, int postNo) {
+        synchronized (savedRepliesByNo) {
+            String boardCode = savedRepliesByNo.get(postNo);
+            return boardCode != null && boardCode.equals(board.code);
+        }
+    }
+
+    public void addSaved(Board board, int postNo) {
+        synchronized (savedRepliesByNo) {
+            savedRepliesByNo.put(postNo, board.code);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.repository;
+
+import org.floens.chan.core.site.Site;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The sites by id that the database managers look up, filled by the benchmark sites.
+ */
+public class SiteRepository {
+    private static final Map<Integer, Site> sitesById = new HashMap<>();
+
+    public static synchronized void add(Site site) {
+        sitesById.put(site.id(), site);
+    }
+
+    public static synchronized Site forId(int id) {
+        Site s = sitesById.get(id);
+        if (s == null) {
+            throw new IllegalArgumentException("No site with id (" + id + ")");
+        }
+        return s;
+    }
+}
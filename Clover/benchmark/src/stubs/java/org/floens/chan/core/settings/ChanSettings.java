@@ -0,0 +1,46 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.settings;
+
+/**
+ * The settings the parsers read, with the default values of the app.
+ */
+public class ChanSettings {
+    public static final Value<Boolean> anonymize = new Value<>(false);
+    public static final Value<Boolean> anonymizeIds = new Value<>(false);
+    public static final Value<Boolean> showAnonymousName = new Value<>(false);
+    public static final Value<Boolean> revealImageSpoilers = new Value<>(false);
+    public static final Value<Boolean> revealTextSpoilers = new Value<>(false);
+    public static final Value<String> fontSize = new Value<>("14");
+
+    public static class Value<T> {
+        private volatile T value;
+
+        Value(T value) {
+            this.value = value;
+        }
+
+        public T get() {
+            return value;
+        }
+
+        public void set(T value) {
+            this.value = value;
+        }
+    }
+}
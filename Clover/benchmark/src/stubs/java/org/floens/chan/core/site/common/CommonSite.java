@@ -0,0 +1,92 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.core.site.common;
+
+import org.floens.chan.core.model.orm.Board;
+import org.floens.chan.core.site.Site;
+import org.floens.chan.core.site.SiteEndpoints;
+import org.floens.chan.core.site.parser.ChanReader;
+import org.floens.chan.core.site.parser.CommentParser;
+import org.floens.chan.core.site.parser.PostParser;
+
+/**
+ * The setup of a common site that the vichan and dvach readers need.
+ */
+public abstract class CommonSite implements Site {
+    private final int id;
+    private final String name;
+
+    private SiteEndpoints endpoints;
+    private CommonApi api;
+    private PostParser postParser;
+
+    public CommonSite(int id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    public void setEndpoints(SiteEndpoints endpoints) {
+        this.endpoints = endpoints;
+    }
+
+    public void setApi(CommonApi api) {
+        this.api = api;
+    }
+
+    public void setParser(CommentParser commentParser) {
+        postParser = new DefaultPostParser(commentParser);
+    }
+
+    @Override
+    public int id() {
+        return id;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public SiteEndpoints endpoints() {
+        return endpoints;
+    }
+
+    @Override
+    public ChanReader chanReader() {
+        return api;
+    }
+
+    @Override
+    public Board board(String code) {
+        return Board.fromSiteNameCode(this, code, code);
+    }
+
+    public abstract static class CommonApi implements ChanReader {
+        protected CommonSite site;
+
+        public CommonApi(CommonSite site) {
+            this.site = site;
+        }
+
+        @Override
+        public PostParser getParser() {
+            return site.postParser;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Clover - 4chan browser https://github.com/Floens/Clover/
+ * Copyright (C) 2014  Floens
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.floens.chan.ui.theme;
+
+/**
+ * The colors of the light theme, without the resources.
+ */
+public class Theme {
+    public boolean isLightTheme = true;
+
+    public int textPrimary = 0xde000000;
+    public int textSecondary = 0x8a000000;
+    public int textHint = 0x61000000;
+    public int quoteColor = 0xffdd0000;
+    public int highlightQuoteColor = 0xff2c71b7;
+    public int linkColor = 0xff0000ee;
+    public int spoilerColor = 0xff000000;
+    public int inlineQuoteColor = 0xff789922;
+    public int subjectColor = 0xff0f0c5d;
+    public int nameColor = 0xff117743;
+    public int idBackgroundLight = 0xff333333;
+    public int idBackgroundDark = 0xffeeeeee;
+    public int capcodeColor = 0xffff0000;
+    public int detailsColor = 0xff646464;
+    public int highlightedColor = 0xffd6bad0;
+    public int savedReplyColor = 0xffd6bad0;
+    public int selectedColor = 0x8a000000;
+    public int textColorRevealSpoiler = 0xffffffff;
+}
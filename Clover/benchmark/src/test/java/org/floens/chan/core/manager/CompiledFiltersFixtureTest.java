@@ -0,0 +1,98 @@
+package org.floens.chan.core.manager;
+
+import org.floens.chan.benchmark.BenchmarkFilters;
+import org.floens.chan.benchmark.Fixture;
+import org.floens.chan.core.database.DatabaseManager;
+import org.floens.chan.core.model.Post;
+import org.floens.chan.core.model.orm.Board;
+import org.floens.chan.core.model.orm.Filter;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The compiled filters must pick the same filter as matching the filters one by one, for every
+ * post of the fixtures.
+ */
+public class CompiledFiltersFixtureTest {
+    @Test
+    public void sameAsOneByOne() {
+        FilterEngine filterEngine = new FilterEngine(new DatabaseManager(), new BoardManager());
+        int comment = FilterType.COMMENT.flag;
+        // Words and sentences that the fixtures have, some more than once.
+        add(filterEngine, comment, "quotelink", FilterEngine.FilterAction.COLOR);
+        add(filterEngine, comment | FilterType.SUBJECT.flag, "the be", FilterEngine.FilterAction.HIDE);
+        add(filterEngine, comment, "\"the be\"", FilterEngine.FilterAction.REMOVE);
+        add(filterEngine, comment, "&gt; wbr", FilterEngine.FilterAction.COLOR);
+        add(filterEngine, comment, "C++ p4", FilterEngine.FilterAction.HIDE);
+        add(filterEngine, FilterType.FILENAME.flag, "image", FilterEngine.FilterAction.COLOR);
+        add(filterEngine, FilterType.NAME.flag, "Anonymous", FilterEngine.FilterAction.HIDE);
+        add(filterEngine, FilterType.NAME.flag, "\u0410\u043d\u043e\u043d\u0438\u043c", FilterEngine.FilterAction.COLOR);
+        // These stay regexes.
+        add(filterEngine, comment, "based* cod*", FilterEngine.FilterAction.COLOR);
+        add(filterEngine, comment, "the  be", FilterEngine.FilterAction.HIDE);
+        add(filterEngine, comment, "\u0410\u043d\u043e\u043d\u0438\u043c \u0411\u0440\u0435\u0434", FilterEngine.FilterAction.COLOR);
+        add(filterEngine, FilterType.SUBJECT.flag, "\"\"", FilterEngine.FilterAction.HIDE);
+        add(filterEngine, comment, "/(\\w)\\1{2}/", FilterEngine.FilterAction.COLOR);
+        add(filterEngine, comment, "/(?x) fast # a comment/", FilterEngine.FilterAction.HIDE);
+        add(filterEngine, comment, "/\\Qslow./", FilterEngine.FilterAction.COLOR);
+        add(filterEngine, comment, "/[/", FilterEngine.FilterAction.HIDE);
+        add(filterEngine, FilterType.SUBJECT.flag, "/^[A-Z]\\w+ \\w+/", FilterEngine.FilterAction.REMOVE);
+        // Regexes with and without literals that they require.
+        add(filterEngine, comment, "/wbr|ne(x|w)t/", FilterEngine.FilterAction.HIDE);
+        add(filterEngine, comment, "/colou?r|\\bthe\\b/i", FilterEngine.FilterAction.COLOR);
+        add(filterEngine, comment, "/q+uot[e]link\\./", FilterEngine.FilterAction.HIDE);
+        add(filterEngine, comment, "/(?i)QUOTE|x{0}ab/", FilterEngine.FilterAction.COLOR);
+        add(filterEngine, comment, "/[^]\\[]class=\"q/", FilterEngine.FilterAction.HIDE);
+        add(filterEngine, comment, "quotelink", FilterEngine.FilterAction.REMOVE);
+        BenchmarkFilters.addTo(filterEngine);
+
+        int matched = 0;
+        for (Fixture fixture : Fixture.values()) {
+            Board board = fixture.board();
+            CompiledFilters compiled = filterEngine.getCompiledFilters(board);
+            List<Filter> filters = BenchmarkFilters.forBoard(filterEngine, board);
+
+            for (Post.Builder post : fixture.readBuilders()) {
+                Filter expected = BenchmarkFilters.matchOneByOne(filterEngine, filters, post);
+                Filter actual = compiled.match(post);
+                String message = fixture + " post " + post.id;
+                assertEquals(message, describe(expected), describe(actual));
+                if (expected != null) {
+                    matched++;
+                }
+            }
+        }
+        assertTrue(matched > 0);
+    }
+
+    @Test
+    public void recompiledAfterUpdate() {
+        FilterEngine filterEngine = new FilterEngine(new DatabaseManager(), new BoardManager());
+        Board board = Fixture.CHAN4_THREAD_SMALL.board();
+        CompiledFilters empty = filterEngine.getCompiledFilters(board);
+        assertTrue(empty.isEmpty());
+        assertTrue(empty == filterEngine.getCompiledFilters(board));
+
+        add(filterEngine, FilterType.COMMENT.flag, "quotelink", FilterEngine.FilterAction.HIDE);
+        CompiledFilters compiled = filterEngine.getCompiledFilters(board);
+        assertTrue(compiled.version > empty.version);
+        assertEquals(filterEngine.getVersion(), compiled.version);
+        assertTrue(compiled.match(Fixture.CHAN4_THREAD_SMALL.readBuilders().get(1)) != null);
+    }
+
+    private void add(FilterEngine filterEngine, int type, String pattern, FilterEngine.FilterAction action) {
+        Filter filter = new Filter();
+        filter.type = type;
+        filter.pattern = pattern;
+        filter.action = action.id;
+        filterEngine.createOrUpdateFilter(filter);
+    }
+
+    private String describe(Filter filter) {
+        return filter == null ? null : filter.type + " " + filter.pattern + " " + filter.action;
+    }
+}
@@ -0,0 +1,143 @@
+package org.floens.chan.core.site.common;
+
+import android.text.Spanned;
+
+import org.floens.chan.benchmark.Fixture;
+import org.floens.chan.benchmark.Sites;
+import org.floens.chan.core.model.Post;
+import org.floens.chan.core.model.orm.Board;
+import org.floens.chan.core.model.orm.Loadable;
+import org.floens.chan.core.site.Site;
+import org.floens.chan.core.site.parser.PostParser;
+import org.floens.chan.ui.theme.ThemeHelper;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The tokenizer must give the same comments as the Jsoup path, for every comment of the fixtures.
+ * <p>
+ * The fixtures are generated. Captured responses of the sites are checked too when they are in the
+ * captures directory of this module, named {@code <site>_<board>_<thread no or catalog>.json} with
+ * site chan4, vichan or dvach, like {@code captures/chan4_g_catalog.json}.
+ */
+public class CommentTokenizerFixtureTest {
+    private static final File CAPTURES = new File("captures");
+
+    @Test
+    public void chan4() {
+        assertSameComments(Fixture.CHAN4_THREAD_HUGE);
+        assertSameComments(Fixture.CHAN4_CATALOG);
+    }
+
+    @Test
+    public void vichan() {
+        assertSameComments(Fixture.VICHAN_THREAD);
+        assertSameComments(Fixture.VICHAN_CATALOG);
+    }
+
+    @Test
+    public void dvach() {
+        assertSameComments(Fixture.DVACH_THREAD);
+        assertSameComments(Fixture.DVACH_CATALOG);
+    }
+
+    @Test
+    public void captures() throws IOException {
+        File[] files = CAPTURES.listFiles((dir, name) -> name.endsWith(".json"));
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            String[] parts = file.getName().substring(0, file.getName().length() - 5).split("_");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Capture not named site_board_no.json: " + file);
+            }
+
+            Site site = Sites.get(Sites.Format.valueOf(parts[0].toUpperCase(Locale.ENGLISH)));
+            Board board = Board.fromSiteNameCode(site, parts[1], parts[1]);
+            Loadable loadable = parts[2].equals("catalog") ?
+                    Loadable.forCatalog(board) : Loadable.forThread(site, board, Integer.parseInt(parts[2]));
+            byte[] json = Files.readAllBytes(file.toPath());
+
+            assertSameComments(file.getName(), site, () -> Fixture.readBuilders(site, loadable, json));
+        }
+    }
+
+    private void assertSameComments(Fixture fixture) {
+        assertSameComments(fixture.toString(), fixture.site(), fixture::readBuilders);
+    }
+
+    private void assertSameComments(String name, Site site, Supplier<List<Post.Builder>> builders) {
+        List<Post> tokenized = parse(site, builders.get(), true);
+        List<Post> jsoup = parse(site, builders.get(), false);
+
+        assertEquals(jsoup.size(), tokenized.size());
+        for (int i = 0; i < jsoup.size(); i++) {
+            Post expected = jsoup.get(i);
+            Post actual = tokenized.get(i);
+            String message = name + " post " + expected.no;
+
+            assertEquals(message, expected.getComment().toString(), actual.getComment().toString());
+            assertEquals(message, describeSpans(expected.getComment()), describeSpans(actual.getComment()));
+            assertEquals(message, expected.getLinkables().size(), actual.getLinkables().size());
+            assertArrayEquals(message, expected.repliesTo, actual.repliesTo);
+        }
+    }
+
+    private List<Post> parse(Site site, List<Post.Builder> builders, boolean tokenizer) {
+        DefaultPostParser parser = (DefaultPostParser) site.chanReader().getParser();
+        List<Post> posts = new ArrayList<>(builders.size());
+
+        final List<Integer> ids = new ArrayList<>();
+        for (Post.Builder builder : builders) {
+            ids.add(builder.id);
+        }
+        PostParser.Callback callback = new PostParser.Callback() {
+            @Override
+            public boolean isSaved(int postNo) {
+                return false;
+            }
+
+            @Override
+            public boolean isInternal(int postNo) {
+                return ids.contains(postNo);
+            }
+        };
+
+        parser.setUseTokenizer(tokenizer);
+        try {
+            for (Post.Builder builder : builders) {
+                posts.add(parser.parse(ThemeHelper.theme(), builder, callback));
+            }
+        } finally {
+            parser.setUseTokenizer(true);
+        }
+        return posts;
+    }
+
+    private List<String> describeSpans(CharSequence comment) {
+        List<String> spans = new ArrayList<>();
+        if (comment instanceof Spanned) {
+            Spanned spanned = (Spanned) comment;
+            for (Object span : spanned.getSpans(0, spanned.length(), Object.class)) {
+                spans.add(spanned.getSpanStart(span) + "-" + spanned.getSpanEnd(span) + " " +
+                        span.getClass().getSimpleName());
+            }
+        }
+        // Spans over the same range may be added in another order.
+        Collections.sort(spans);
+        return spans;
+    }
+}
@@ -0,0 +1,102 @@
+package org.floens.chan.core.site.loader;
+
+import android.text.Spanned;
+
+import org.floens.chan.benchmark.BenchmarkFilters;
+import org.floens.chan.benchmark.Fixture;
+import org.floens.chan.core.manager.FilterEngine;
+import org.floens.chan.core.manager.FilterType;
+import org.floens.chan.core.model.Post;
+import org.floens.chan.core.model.orm.Filter;
+import org.floens.chan.core.site.parser.ChanReaderRequest;
+import org.floens.chan.ui.theme.ThemeHelper;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Matching loaded posts again after the filters changed must give the same result as loading
+ * them again.
+ */
+public class PostRefilterFixtureTest {
+    @Test
+    public void sameAsLoadingAgain() throws Exception {
+        FilterEngine filterEngine = BenchmarkFilters.install();
+
+        Map<Fixture, List<Post>> loaded = new HashMap<>();
+        for (Fixture fixture : Fixture.values()) {
+            loaded.put(fixture, load(fixture));
+        }
+
+        // Hide a common word, color another one and remove the posts of a name.
+        List<Filter> added = new ArrayList<>();
+        added.add(add(filterEngine, FilterType.COMMENT.flag, "the", FilterEngine.FilterAction.HIDE));
+        added.add(add(filterEngine, FilterType.COMMENT.flag, "/quotelink/", FilterEngine.FilterAction.COLOR));
+        added.add(add(filterEngine, FilterType.NAME.flag, "Anonymous", FilterEngine.FilterAction.REMOVE));
+        try {
+            int changed = 0;
+            for (Fixture fixture : Fixture.values()) {
+                List<Post> posts = loaded.get(fixture);
+                PostRefilter refilter = new PostRefilter(
+                        fixture.site().chanReader().getParser(), ThemeHelper.theme(), posts);
+                refilter.match(filterEngine.getCompiledFilters(fixture.board()));
+                changed += refilter.apply().size();
+
+                Map<Integer, Post> expected = new HashMap<>();
+                for (Post post : load(fixture)) {
+                    expected.put(post.no, post);
+                }
+                for (Post post : posts) {
+                    Post loadedAgain = expected.get(post.no);
+                    String message = fixture + " post " + post.no;
+                    assertEquals(message, loadedAgain.getFilterVersion(), post.getFilterVersion());
+                    assertEquals(message, describe(loadedAgain), describe(post));
+                }
+            }
+            assertTrue(changed > 0);
+        } finally {
+            for (Filter filter : added) {
+                filterEngine.deleteFilter(filter);
+            }
+        }
+    }
+
+    private List<Post> load(Fixture fixture) throws Exception {
+        ChanReaderRequest request = fixture.request(Collections.<Post>emptyList(), null);
+        try {
+            return request.readStream(new ByteArrayInputStream(fixture.bytes())).posts;
+        } finally {
+            request.cancel();
+        }
+    }
+
+    private Filter add(FilterEngine filterEngine, int type, String pattern, FilterEngine.FilterAction action) {
+        Filter filter = new Filter();
+        filter.type = type;
+        filter.pattern = pattern;
+        filter.action = action.id;
+        filter.color = 0xff00ff00;
+        filterEngine.createOrUpdateFilter(filter);
+        return filter;
+    }
+
+    private String describe(Post post) {
+        String subject = null;
+        CharSequence subjectSpan = post.getSubjectSpan();
+        if (subjectSpan != null) {
+            // Stubs don't color the subject.
+            int spans = ((Spanned) subjectSpan).getSpans(0, subjectSpan.length(), Object.class).length;
+            subject = subjectSpan + " with " + spans + " spans";
+        }
+        return post.getFilterHighlightedColor() + " " + post.isFilterStub() + " " +
+                post.isFilterRemove() + " " + subject;
+    }
+}